@@ -0,0 +1,177 @@
+package com.quanlycanhan.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.quanlycanhan.entity.Category;
+
+/**
+ * Serializer giá trị Redis dạng nhị phân có header phiên bản
+ * - Header 3 byte: MAGIC, VERSION, FLAGS (FLAG_DEFLATE: payload nén, FLAG_NULL: NullValue của cache)
+ * - Payload: Smile (JSON nhị phân) kèm kiểu (@class) để đọc lại đúng DTO/entity thay vì LinkedHashMap
+ * - Payload lớn hơn compressThreshold byte được nén deflate nếu nhỏ đi
+ * - Byte không bắt đầu bằng MAGIC là bản JSON cũ, đọc bằng legacy serializer (đọc được trong lúc rollout)
+ * - writeSmile = false (app.cache.serializer=json): ghi JSON cũ nhưng vẫn đọc được cả hai dạng,
+ *   nên đổi qua lại giữa smile và json không cần xóa Redis
+ * Category bỏ children khi cache (collection lazy của Hibernate, API không dùng).
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    static final byte MAGIC = (byte) 0xFE;
+    static final byte VERSION = 1;
+    static final byte FLAG_DEFLATE = 1;
+    static final byte FLAG_NULL = 1 << 1;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private final ObjectMapper mapper;
+    private final RedisSerializer<Object> legacy;
+    private final int compressThreshold;
+    private final boolean writeSmile;
+
+    @JsonIgnoreProperties({"children"})
+    private abstract static class CategoryCacheMixin {
+    }
+
+    public CacheValueSerializer(RedisSerializer<Object> legacy, int compressThreshold) {
+        this(legacy, compressThreshold, true);
+    }
+
+    public CacheValueSerializer(RedisSerializer<Object> legacy, int compressThreshold, boolean writeSmile) {
+        this.legacy = legacy;
+        this.compressThreshold = compressThreshold;
+        this.writeSmile = writeSmile;
+        this.mapper = createMapper();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ObjectMapper createMapper() {
+        BasicPolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("com.quanlycanhan.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.lang.")
+            .allowIfSubType("java.math.")
+            .allowIfSubType("java.time.")
+            .build();
+        ObjectMapper smile = SmileMapper.builder()
+            .addModule(new JavaTimeModule())
+            .addMixIn(Category.class, CategoryCacheMixin.class)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+        smile.activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+        return smile;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!writeSmile) {
+            return legacy.serialize(value);
+        }
+        if (value instanceof NullValue) {
+            return new byte[] {MAGIC, VERSION, FLAG_NULL};
+        }
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write cache value", e);
+        }
+        byte flags = 0;
+        if (payload.length > compressThreshold) {
+            byte[] compressed = deflate(payload);
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = flags;
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return legacy.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            throw new SerializationException("Unsupported cache value version: " + (bytes.length > 1 ? bytes[1] : -1));
+        }
+        byte flags = bytes[2];
+        if ((flags & FLAG_NULL) != 0) {
+            return NullValue.INSTANCE;
+        }
+        byte[] payload = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+        if ((flags & FLAG_DEFLATE) != 0) {
+            payload = inflate(payload);
+        }
+        try {
+            return mapper.readValue(payload, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read cache value", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("Truncated compressed cache value");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupt compressed cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
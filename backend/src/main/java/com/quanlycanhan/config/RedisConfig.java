@@ -1,5 +1,13 @@
 package com.quanlycanhan.config;
 
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -7,13 +15,22 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.quanlycanhan.service.CategoryDirectory;
+import com.quanlycanhan.service.FxRateService;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Cấu hình Redis FIX HOÀN HẢO CHO LocalDateTime
@@ -22,6 +39,12 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 @EnableCaching
 public class RedisConfig {
 
+    @Value("${app.cache.serializer:smile}")
+    private String serializer = "smile";
+
+    @Value("${app.cache.compress-threshold-bytes:512}")
+    private int compressThresholdBytes = 512;
+
     /**
      * RedisTemplate với JSON hỗ trợ JavaTime (LocalDateTime, LocalDate,...)
      */
@@ -30,48 +53,110 @@ public class RedisConfig {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
-        // Tạo ObjectMapper có hỗ trợ Java 8 Time (LocalDateTime,...)
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());  // <<< DÒNG THẦN THÁNH FIX LỖI
-
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(mapper);
+        RedisSerializer<Object> valueSerializer = valueSerializer();
 
         // Key: String
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // Value: JSON hỗ trợ LocalDateTime
-        template.setValueSerializer(jsonSerializer);
-        template.setHashValueSerializer(jsonSerializer);
+        // Value: Smile nhị phân (hoặc JSON nếu app.cache.serializer=json), hỗ trợ LocalDateTime
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
 
         template.afterPropertiesSet();
         return template;
     }
 
     /**
-     * CacheManager với JSON hỗ trợ JavaTime
+     * CacheManager: single-flight / stale-while-revalidate, Caffeine L1 (app.cache.l1.enabled, mặc định bật),
+     * Redis L2
+     */
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, StringRedisTemplate stringRedisTemplate,
+                                     MeterRegistry meterRegistry, Environment environment) {
+        CacheManager cacheManager = redisCacheManager(connectionFactory);
+        if (environment.getProperty("app.cache.l1.enabled", Boolean.class, true)) {
+            cacheManager = new TwoLevelCacheManager(cacheManager, stringRedisTemplate, meterRegistry, environment);
+        }
+        // SWR cần đọc lại đúng kiểu StampedValue: chỉ mặc định bật khi giá trị lưu dạng Smile có kiểu
+        Map<String, Long> defaultFreshSeconds = "json".equalsIgnoreCase(serializer)
+            ? Map.of()
+            : Map.of("aiPrediction", 1800L);
+        return new SingleFlightCacheManager(cacheManager, stringRedisTemplate, meterRegistry, environment,
+            cacheRefreshExecutor(), defaultFreshSeconds);
+    }
+
+    /**
+     * Thread nền làm mới cache đã cũ (nhỏ, hàng đợi giới hạn; đầy thì bỏ lượt làm mới)
+     */
+    private static Executor cacheRefreshExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100), r -> {
+            Thread thread = new Thread(r, "cache-refresh-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Nhận tin invalidation từ các node khác: L1 (kênh TwoLevelCacheManager.CHANNEL)
+     * danh bạ danh mục (kênh CategoryDirectory.CHANNEL) và tỷ giá (kênh FxRateService.CHANNEL)
      */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            CacheManager cacheManager,
+                                                                            CategoryDirectory categoryDirectory,
+                                                                            FxRateService fxRateService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(categoryDirectory, new ChannelTopic(CategoryDirectory.CHANNEL));
+        container.addMessageListener(fxRateService, new ChannelTopic(FxRateService.CHANNEL));
+        CacheManager target = cacheManager instanceof SingleFlightCacheManager singleFlight
+            ? singleFlight.getDelegate()
+            : cacheManager;
+        if (target instanceof TwoLevelCacheManager twoLevelCacheManager) {
+            container.addMessageListener(twoLevelCacheManager, new ChannelTopic(TwoLevelCacheManager.CHANNEL));
+        }
+        return container;
+    }
+
+    /**
+     * Serializer giá trị Redis
+     * - smile (mặc định): CacheValueSerializer - nhị phân có kiểu, nén khi lớn hơn app.cache.compress-threshold-bytes
+     * - json: ghi JSON như cũ
+     * Cả hai chế độ đều đọc được cả Smile lẫn JSON nên đổi qua lại (kể cả rollback về json) không cần xóa cache.
+     */
+    private RedisSerializer<Object> valueSerializer() {
+        // Tạo ObjectMapper có hỗ trợ Java 8 Time (LocalDateTime,...)
         ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
+        mapper.registerModule(new JavaTimeModule());  // <<< DÒNG THẦN THÁNH FIX LỖI
 
         GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(mapper);
+        return new CacheValueSerializer(jsonSerializer, compressThresholdBytes, !"json".equalsIgnoreCase(serializer));
+    }
+
+    /**
+     * Redis CacheManager (L2)
+     */
+    private RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
+        RedisSerializer<Object> valueSerializer = valueSerializer();
 
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jsonSerializer))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer))
                 .entryTtl(java.time.Duration.ofMinutes(30)); // Cache 30 phút mặc định
 
         // AI Prediction cache 1 giờ (giảm tải khi data lớn)
         RedisCacheConfiguration aiPredictionConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jsonSerializer))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer))
                 .entryTtl(java.time.Duration.ofHours(1));
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager cacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(defaultConfig)
                 .withCacheConfiguration("aiPrediction", aiPredictionConfig)
                 .build();
+        cacheManager.initializeCaches();
+        return cacheManager;
     }
 }
\ No newline at end of file
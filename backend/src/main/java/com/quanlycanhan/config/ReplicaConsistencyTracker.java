@@ -0,0 +1,188 @@
+package com.quanlycanhan.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Theo dõi read-your-writes cho định tuyến đọc sang replica
+ * - Transaction ghi của user (theo principal name) được đánh dấu sau khi commit
+ * - Trong app.datasource.replica.sticky-window-ms sau lần ghi, đọc của user chỉ đi replica đã bắt kịp
+ *   thời điểm ghi đó, không có thì về primary
+ * - Vị trí replica: mỗi lần probe lấy gtid_executed của primary; replica chứa đủ tập GTID đó (GTID_SUBSET)
+ *   nghĩa là đã có mọi commit trước lần lấy. MySQL không bật GTID thì chỉ dựa vào cửa sổ thời gian
+ * - Replica lỗi khi probe bị bỏ khỏi vòng định tuyến tới lần probe thành công kế tiếp
+ */
+@Slf4j
+public class ReplicaConsistencyTracker implements AutoCloseable {
+
+    private final JdbcTemplate primary;
+    private final Map<String, DataSource> replicas;
+    private final Map<String, JdbcTemplate> replicaTemplates = new LinkedHashMap<>();
+    private final long stickyWindowMs;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> caughtUpTo = new ConcurrentHashMap<>();
+    private final Set<String> unhealthy = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean gtidSupported = true;
+    private volatile String probeGtid;
+    private volatile long probeAt;
+
+    public ReplicaConsistencyTracker(DataSource primary, Map<String, DataSource> replicas,
+                                     long stickyWindowMs, LongSupplier clock) {
+        this.primary = new JdbcTemplate(primary);
+        this.replicas = Collections.unmodifiableMap(new LinkedHashMap<>(replicas));
+        this.replicas.forEach((name, ds) -> replicaTemplates.put(name, new JdbcTemplate(ds)));
+        this.stickyWindowMs = stickyWindowMs;
+        this.clock = clock;
+    }
+
+    public Map<String, DataSource> replicas() {
+        return replicas;
+    }
+
+    /**
+     * Principal của request hiện tại (null nếu chạy nền / chưa đăng nhập)
+     */
+    static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    /**
+     * User vừa commit một transaction ghi
+     */
+    public void markWrite(String user) {
+        if (user != null) {
+            lastWrites.put(user, clock.getAsLong());
+        }
+    }
+
+    /**
+     * Thời điểm ghi gần nhất của user nếu còn trong cửa sổ sticky, null nếu không
+     */
+    Long pendingWrite(String user) {
+        if (user == null) {
+            return null;
+        }
+        Long writtenAt = lastWrites.get(user);
+        if (writtenAt == null) {
+            return null;
+        }
+        if (clock.getAsLong() - writtenAt >= stickyWindowMs) {
+            lastWrites.remove(user, writtenAt);
+            return null;
+        }
+        return writtenAt;
+    }
+
+    /**
+     * Replica đã có mọi commit tới thời điểm writtenAt
+     */
+    boolean isCaughtUp(String replica, long writtenAt) {
+        Long position = caughtUpTo.get(replica);
+        return position != null && position >= writtenAt;
+    }
+
+    List<String> healthyReplicas() {
+        List<String> names = new ArrayList<>(replicas.size());
+        for (String name : replicas.keySet()) {
+            if (!unhealthy.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    void recordCatchUp(String replica, long at) {
+        caughtUpTo.merge(replica, at, Math::max);
+    }
+
+    /**
+     * Độ trễ của replica so với primary (ms) theo lần bắt kịp gần nhất; NaN nếu chưa đo được
+     */
+    public double lagMs(String replica) {
+        Long position = caughtUpTo.get(replica);
+        return position != null ? clock.getAsLong() - position : Double.NaN;
+    }
+
+    /**
+     * Kiểm tra replica còn sống + đã bắt kịp GTID lấy ở lần probe trước chưa, rồi lấy GTID mới của primary
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.replica.probe-interval-ms:1000}")
+    public void probe() {
+        long now = clock.getAsLong();
+        lastWrites.values().removeIf(writtenAt -> now - writtenAt >= stickyWindowMs);
+
+        String previousGtid = probeGtid;
+        long previousAt = probeAt;
+        for (Map.Entry<String, JdbcTemplate> replica : replicaTemplates.entrySet()) {
+            String name = replica.getKey();
+            try {
+                if (previousGtid != null) {
+                    Integer subset = replica.getValue().queryForObject(
+                        "SELECT GTID_SUBSET(?, @@GLOBAL.gtid_executed)", Integer.class, previousGtid);
+                    if (subset != null && subset == 1) {
+                        recordCatchUp(name, previousAt);
+                    }
+                } else {
+                    replica.getValue().queryForObject("SELECT 1", Integer.class);
+                }
+                if (unhealthy.remove(name)) {
+                    log.info("Replica {} is reachable again", name);
+                }
+            } catch (DataAccessException e) {
+                if (unhealthy.add(name)) {
+                    log.warn("Replica {} removed from read routing: {}", name, e.getMessage());
+                }
+            }
+        }
+
+        if (gtidSupported) {
+            try {
+                String gtid = primary.queryForObject("SELECT @@GLOBAL.gtid_executed", String.class);
+                if (gtid == null || gtid.isBlank()) {
+                    throw new IllegalStateException("gtid_executed is empty");
+                }
+                probeAt = now;
+                probeGtid = gtid.replace("\n", "");
+            } catch (DataAccessException | IllegalStateException e) {
+                gtidSupported = false;
+                probeGtid = null;
+                log.info("GTID not available on primary, read-your-writes uses the sticky window only: {}",
+                    e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource ds : replicas.values()) {
+            if (ds instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.quanlycanhan.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Tách đọc/ghi: transaction readOnly đọc từ replica, còn lại đi primary
+ * - Bật bằng app.datasource.replica.enabled=true, app.datasource.replica.urls (phân cách bằng dấu phẩy);
+ *   username/password mặc định giống spring.datasource
+ * - DataSource chính là LazyConnectionDataSourceProxy: connection thật chỉ được lấy ở câu SQL đầu tiên,
+ *   lúc đó đã biết transaction có readOnly hay không
+ * - Read-your-writes và vị trí replica: xem ReplicaConsistencyTracker
+ * - Metric: datasource.routing (target, reason), datasource.replica.lag (ms, theo replica)
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Value("${app.datasource.replica.urls:}")
+    private String[] replicaUrls = new String[0];
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.pool-size:10}")
+    private int replicaPoolSize = 10;
+
+    @Value("${app.datasource.replica.sticky-window-ms:5000}")
+    private long stickyWindowMs = 5000;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaConsistencyTracker replicaConsistencyTracker(HikariDataSource primaryDataSource,
+                                                               DataSourceProperties properties,
+                                                               MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replicas.put(name, replica);
+        }
+        ReplicaConsistencyTracker tracker =
+            new ReplicaConsistencyTracker(primaryDataSource, replicas, stickyWindowMs, System::currentTimeMillis);
+        for (String name : replicas.keySet()) {
+            Gauge.builder("datasource.replica.lag", tracker, t -> t.lagMs(name))
+                .tag("replica", name)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        }
+        return tracker;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaConsistencyTracker tracker,
+                                 MeterRegistry meterRegistry) {
+        LazyConnectionDataSourceProxy proxy =
+            new LazyConnectionDataSourceProxy(new WriteTrackingDataSource(primaryDataSource, tracker, meterRegistry));
+        proxy.setReadOnlyDataSource(new ReplicaRoutingDataSource(primaryDataSource, tracker, meterRegistry));
+        return proxy;
+    }
+
+    /**
+     * Connection không readOnly (đi primary): trong transaction ghi thì đánh dấu user sau khi commit
+     */
+    static class WriteTrackingDataSource extends DelegatingDataSource {
+
+        private final ReplicaConsistencyTracker tracker;
+        private final MeterRegistry meterRegistry;
+
+        WriteTrackingDataSource(DataSource primary, ReplicaConsistencyTracker tracker, MeterRegistry meterRegistry) {
+            super(primary);
+            this.tracker = tracker;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            track();
+            return super.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            track();
+            return super.getConnection(username, password);
+        }
+
+        private void track() {
+            boolean writing = TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+            meterRegistry.counter("datasource.routing", "target", ReplicaRoutingDataSource.PRIMARY,
+                "reason", writing ? "write" : "default").increment();
+            if (!writing || !TransactionSynchronizationManager.isSynchronizationActive()) {
+                return;
+            }
+            String user = ReplicaConsistencyTracker.currentUser();
+            if (user == null) {
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tracker.markWrite(user);
+                }
+            });
+        }
+    }
+}
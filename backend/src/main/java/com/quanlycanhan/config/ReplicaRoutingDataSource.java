@@ -0,0 +1,66 @@
+package com.quanlycanhan.config;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * DataSource cho connection readOnly (LazyConnectionDataSourceProxy.setReadOnlyDataSource)
+ * - Mặc định: replica khỏe theo vòng tròn
+ * - User vừa ghi (ReplicaConsistencyTracker): chỉ replica đã bắt kịp lần ghi đó, không có thì primary
+ * - Không còn replica khỏe: primary
+ * Mỗi quyết định được đếm vào metric datasource.routing (target, reason).
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final ReplicaConsistencyTracker tracker;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaConsistencyTracker tracker, MeterRegistry meterRegistry) {
+        this.tracker = tracker;
+        this.meterRegistry = meterRegistry;
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        targets.put(PRIMARY, primary);
+        targets.putAll(tracker.replicas());
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        List<String> healthy = tracker.healthyReplicas();
+        if (healthy.isEmpty()) {
+            return route(PRIMARY, "no_replica");
+        }
+        Long writtenAt = tracker.pendingWrite(ReplicaConsistencyTracker.currentUser());
+        if (writtenAt == null) {
+            return route(pick(healthy), "read_only");
+        }
+        List<String> caughtUp = healthy.stream().filter(r -> tracker.isCaughtUp(r, writtenAt)).toList();
+        if (caughtUp.isEmpty()) {
+            return route(PRIMARY, "read_your_writes");
+        }
+        return route(pick(caughtUp), "caught_up");
+    }
+
+    private String pick(List<String> replicas) {
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+
+    private String route(String target, String reason) {
+        meterRegistry.counter("datasource.routing", "target", target, "reason", reason).increment();
+        return target;
+    }
+}
@@ -0,0 +1,291 @@
+package com.quanlycanhan.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chống cache stampede cho @Cacheable(sync = true)
+ * - Single-flight trong node: mỗi key chỉ 1 lần gọi loader, request khác chờ chung kết quả
+ * - Giữa các node: lease Redis (SET NX PX); node không giữ lease chờ giá trị xuất hiện ở cache,
+ *   quá waitMs thì tự tính
+ * - Stale-while-revalidate (freshMs > 0): giá trị lưu kèm hạn "tươi" (StampedValue); hết hạn thì vẫn trả
+ *   giá trị cũ và làm mới nền. evict xóa hẳn (lần đọc sau là miss, load single-flight): đánh dấu hết tươi bằng
+ *   get rồi put không nguyên tử, put của lần làm mới chạy xen vào có thể bị ghi đè bởi bản cũ
+ * - Làm mới nền mang SecurityContext của request kích hoạt: ReplicaRoutingDataSource vẫn áp read-your-writes
+ *   cho user đó thay vì đọc replica có thể chưa bắt kịp rồi lưu kết quả như bản tươi
+ * Đường get(key) thường (không sync) coi giá trị đã cũ là miss.
+ */
+@Slf4j
+public class SingleFlightCache implements Cache {
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0", Long.class);
+
+    private static final long POLL_MS = 50;
+
+    /**
+     * Giá trị kèm thời điểm hết tươi (epoch ms)
+     */
+    public record StampedValue(Object value, long freshUntil) {
+    }
+
+    private final Cache delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Executor refreshExecutor;
+    private final long freshMs;
+    private final long leaseMs;
+    private final long waitMs;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    SingleFlightCache(Cache delegate, StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                      Executor refreshExecutor, long freshMs, long leaseMs, long waitMs, LongSupplier clock) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = refreshExecutor;
+        this.freshMs = freshMs;
+        this.leaseMs = leaseMs;
+        this.waitMs = waitMs;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null || !(wrapper.get() instanceof StampedValue stamped)) {
+            return wrapper;
+        }
+        return stamped.freshUntil() > clock.getAsLong() ? new SimpleValueWrapper(stamped.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            if (!(wrapper.get() instanceof StampedValue stamped)) {
+                return (T) wrapper.get();
+            }
+            if (stamped.freshUntil() <= clock.getAsLong()) {
+                refreshInBackground(key, valueLoader, stamped.value());
+                count("stale_served");
+            }
+            return (T) stamped.value();
+        }
+        return (T) loadOnce(key, valueLoader);
+    }
+
+    /**
+     * Một lần load cho mỗi key trong node; các request cùng key chờ chung future
+     */
+    private Object loadOnce(Object key, Callable<?> valueLoader) {
+        String flightKey = TwoLevelCache.localKey(key);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inflight.putIfAbsent(flightKey, mine);
+        if (running != null) {
+            count("joined");
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            Object value = loadWithLease(key, valueLoader);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(flightKey, mine);
+        }
+    }
+
+    private Object loadWithLease(Object key, Callable<?> valueLoader) {
+        String leaseKey = leaseKey(key);
+        String token = UUID.randomUUID().toString();
+        boolean leased = tryLease(leaseKey, token);
+        if (!leased) {
+            count("lease_wait");
+            long deadline = clock.getAsLong() + waitMs;
+            while (clock.getAsLong() < deadline) {
+                if (!sleep()) {
+                    break;
+                }
+                ValueWrapper wrapper = get(key);
+                if (wrapper != null) {
+                    return wrapper.get();
+                }
+            }
+        }
+        try {
+            Object value = valueLoader.call();
+            put(key, value);
+            count("loaded");
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            if (leased) {
+                releaseLease(leaseKey, token);
+            }
+        }
+    }
+
+    /**
+     * Làm mới nền khi giá trị đã cũ: chỉ 1 lần trong node và chỉ node giữ lease
+     */
+    private void refreshInBackground(Object key, Callable<?> valueLoader, Object staleValue) {
+        String flightKey = TwoLevelCache.localKey(key);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        if (inflight.putIfAbsent(flightKey, mine) != null) {
+            return;
+        }
+        String leaseKey = leaseKey(key);
+        String token = UUID.randomUUID().toString();
+        if (!tryLease(leaseKey, token)) {
+            inflight.remove(flightKey, mine);
+            mine.complete(staleValue);
+            return;
+        }
+        try {
+            refreshExecutor.execute(new DelegatingSecurityContextRunnable(() -> {
+                try {
+                    Object value = valueLoader.call();
+                    put(key, value);
+                    count("refreshed");
+                    mine.complete(value);
+                } catch (Exception e) {
+                    log.warn("Background refresh of cache {} key {} failed: {}", getName(), key, e.getMessage());
+                    mine.complete(staleValue);
+                } finally {
+                    inflight.remove(flightKey, mine);
+                    releaseLease(leaseKey, token);
+                }
+            }));
+        } catch (RuntimeException e) {
+            // Executor đầy: bỏ lượt làm mới này, request sau thử lại
+            inflight.remove(flightKey, mine);
+            mine.complete(staleValue);
+            releaseLease(leaseKey, token);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, wrap(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, wrap(value));
+        if (existing != null && existing.get() instanceof StampedValue stamped) {
+            return new SimpleValueWrapper(stamped.value());
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    private Object wrap(Object value) {
+        return freshMs > 0 && value != null ? new StampedValue(value, clock.getAsLong() + freshMs) : value;
+    }
+
+    private String leaseKey(Object key) {
+        return "lease:" + getName() + ":" + TwoLevelCache.localKey(key);
+    }
+
+    /**
+     * Redis lỗi thì coi như có lease (tính tại node, vẫn single-flight trong node)
+     */
+    private boolean tryLease(String leaseKey, String token) {
+        try {
+            return Boolean.TRUE.equals(
+                redisTemplate.opsForValue().setIfAbsent(leaseKey, token, Duration.ofMillis(leaseMs)));
+        } catch (RuntimeException e) {
+            log.debug("Cache lease unavailable for {}: {}", leaseKey, e.getMessage());
+            return true;
+        }
+    }
+
+    private void releaseLease(String leaseKey, String token) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey), token);
+        } catch (RuntimeException e) {
+            log.debug("Could not release cache lease {}: {}", leaseKey, e.getMessage());
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(POLL_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("cache.single_flight", "cache", getName(), "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,69 @@
+package com.quanlycanhan.config;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bọc mọi cache bằng SingleFlightCache (có hiệu lực với @Cacheable(sync = true))
+ * - app.cache.single-flight.lease-ms (30000) / wait-ms (5000): lease Redis và thời gian chờ node giữ lease
+ * - app.cache.swr.{cacheName}.fresh-seconds > 0: bật stale-while-revalidate cho cache đó;
+ *   giá trị cũ được phục vụ từ lúc hết tươi tới khi Redis hết TTL
+ */
+public class SingleFlightCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final Executor refreshExecutor;
+    private final Map<String, Long> defaultFreshSeconds;
+    private final ConcurrentHashMap<String, SingleFlightCache> caches = new ConcurrentHashMap<>();
+
+    public SingleFlightCacheManager(CacheManager delegate, StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                    Environment environment, Executor refreshExecutor,
+                                    Map<String, Long> defaultFreshSeconds) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+        this.refreshExecutor = refreshExecutor;
+        this.defaultFreshSeconds = defaultFreshSeconds;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        SingleFlightCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new SingleFlightCache(target, redisTemplate, meterRegistry,
+            refreshExecutor,
+            environment.getProperty("app.cache.swr." + n + ".fresh-seconds", Long.class,
+                defaultFreshSeconds.getOrDefault(n, 0L)) * 1000,
+            environment.getProperty("app.cache.single-flight.lease-ms", Long.class, 30000L),
+            environment.getProperty("app.cache.single-flight.wait-ms", Long.class, 5000L),
+            System::currentTimeMillis));
+    }
+
+    public CacheManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
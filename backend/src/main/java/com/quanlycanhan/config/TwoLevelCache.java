@@ -0,0 +1,190 @@
+package com.quanlycanhan.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Cache 2 tầng: Caffeine trong process (L1) trước Redis (L2)
+ * - L1 chỉ được nạp từ giá trị đọc ra ở L2, nên luôn giống hệt bản Redis trả về (đã qua JSON)
+ * - Mỗi lần bỏ key ở L1 (evict/put tại node hoặc tin E|node|cache|key, clear) tăng thế hệ của key; giá trị L2 đọc
+ *   trước đó không được giữ ở L1 nếu thế hệ đã đổi trong lúc đọc, tránh bản cũ sống hết TTL L1 sau khi đã bị evict
+ * - put/evict/clear: ghi L2, bỏ key ở L1 rồi báo các node khác qua Redis pub/sub (TwoLevelCacheManager)
+ * - Metric cache.tier.requests (cache, tier = l1|l2, result = hit|miss)
+ */
+public class TwoLevelCache implements Cache {
+
+    /**
+     * Số ngăn thế hệ (theo hash key); hai key chung ngăn chỉ làm bỏ qua nạp L1 thừa, không sai dữ liệu
+     */
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final String name;
+    private final Cache redisCache;
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local;
+    private final TwoLevelCacheManager manager;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong clearGeneration = new AtomicLong();
+
+    private final Counter l1Hit;
+    private final Counter l1Miss;
+    private final Counter l2Hit;
+    private final Counter l2Miss;
+
+    TwoLevelCache(String name, Cache redisCache, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local,
+                  TwoLevelCacheManager manager, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.redisCache = redisCache;
+        this.local = local;
+        this.manager = manager;
+        this.l1Hit = counter(meterRegistry, "l1", "hit");
+        this.l1Miss = counter(meterRegistry, "l1", "miss");
+        this.l2Hit = counter(meterRegistry, "l2", "hit");
+        this.l2Miss = counter(meterRegistry, "l2", "miss");
+        meterRegistry.gauge("cache.l1.size", Tags.of("cache", name), local,
+            com.github.benmanes.caffeine.cache.Cache::estimatedSize);
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String tier, String result) {
+        return meterRegistry.counter("cache.tier.requests", "cache", name, "tier", tier, "result", result);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        ValueWrapper cached = local.getIfPresent(localKey);
+        if (cached != null) {
+            l1Hit.increment();
+            return cached;
+        }
+        l1Miss.increment();
+        int stripe = stripe(localKey);
+        long generation = generations.get(stripe);
+        long cleared = clearGeneration.get();
+        ValueWrapper remote = redisCache.get(key);
+        if (remote == null) {
+            l2Miss.increment();
+            return null;
+        }
+        l2Hit.increment();
+        if (generations.get(stripe) == generation && clearGeneration.get() == cleared) {
+            local.put(localKey, new SimpleValueWrapper(remote.get()));
+            // Evict chạy xen giữa lần kiểm tra và put: bỏ lại bản vừa nạp
+            if (generations.get(stripe) != generation || clearGeneration.get() != cleared) {
+                local.invalidate(localKey);
+            }
+        }
+        return remote;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        return redisCache.get(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        evictLocal(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        evictLocal(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        evictLocal(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = redisCache.evictIfPresent(key);
+        evictLocal(key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        clearGeneration.incrementAndGet();
+        local.invalidateAll();
+        manager.publishClear(name);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = redisCache.invalidate();
+        clearGeneration.incrementAndGet();
+        local.invalidateAll();
+        manager.publishClear(name);
+        return invalidated;
+    }
+
+    private void evictLocal(Object key) {
+        String localKey = localKey(key);
+        evictLocalOnly(localKey);
+        manager.publishEvict(name, localKey);
+    }
+
+    /**
+     * Bỏ key ở L1 khi node khác báo thay đổi
+     */
+    void evictLocalOnly(String localKey) {
+        generations.incrementAndGet(stripe(localKey));
+        local.invalidate(localKey);
+    }
+
+    void clearLocalOnly() {
+        clearGeneration.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    private static int stripe(String localKey) {
+        return Math.floorMod(localKey.hashCode(), GENERATION_STRIPES);
+    }
+
+    /**
+     * Key L1 dạng chuỗi (giống cách Redis đổi key) để node khác bỏ được qua pub/sub
+     */
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
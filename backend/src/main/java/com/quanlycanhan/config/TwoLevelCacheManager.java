@@ -0,0 +1,121 @@
+package com.quanlycanhan.config;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CacheManager 2 tầng: mỗi cache Redis (L2) có thêm một Caffeine L1 giới hạn kích thước/TTL
+ * - Cấu hình L1 theo cache: app.cache.l1.{cacheName}.max-size / ttl-seconds, mặc định app.cache.l1.default.*
+ * - Thay đổi ở một node được phát lên kênh Redis CHANNEL; node khác nhận và bỏ key ở L1 của mình
+ *   (bỏ qua tin của chính node). TTL L1 ngắn giới hạn độ cũ nếu mất tin pub/sub
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    public static final String CHANNEL = "cache:l1-invalidation";
+
+    private static final String EVICT = "E";
+    private static final String CLEAR = "C";
+
+    private final CacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, StringRedisTemplate redisTemplate,
+                                MeterRegistry meterRegistry, Environment environment) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, redisCache, buildLocal(n), this, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<String, Cache.ValueWrapper> buildLocal(String name) {
+        long maxSize = l1Property(name, "max-size", 1000L);
+        long ttlSeconds = l1Property(name, "ttl-seconds", 60L);
+        return Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+    }
+
+    private long l1Property(String cacheName, String property, long defaultValue) {
+        Long fallback = environment.getProperty("app.cache.l1.default." + property, Long.class, defaultValue);
+        return environment.getProperty("app.cache.l1." + cacheName + "." + property, Long.class, fallback);
+    }
+
+    void publishEvict(String cacheName, String localKey) {
+        publish(String.join("|", EVICT, nodeId, cacheName, localKey));
+    }
+
+    void publishClear(String cacheName) {
+        publish(String.join("|", CLEAR, nodeId, cacheName));
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, message);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish L1 cache invalidation, other nodes keep entries until TTL: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        handle(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tin dạng E|node|cache|key hoặc C|node|cache
+     */
+    void handle(String message) {
+        String[] parts = message.split("\\|", 4);
+        if (parts.length < 3 || nodeId.equals(parts[1])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[2]);
+        if (cache == null) {
+            return;
+        }
+        if (CLEAR.equals(parts[0])) {
+            cache.clearLocalOnly();
+        } else if (EVICT.equals(parts[0]) && parts.length == 4) {
+            cache.evictLocalOnly(parts[3]);
+        }
+    }
+}
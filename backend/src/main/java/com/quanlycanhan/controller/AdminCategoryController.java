@@ -5,7 +5,9 @@ import com.quanlycanhan.entity.Category;
 import com.quanlycanhan.exception.BusinessException;
 import com.quanlycanhan.exception.ErrorCode;
 import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.service.CategoryDirectory;
 import com.quanlycanhan.service.CategoryService;
+import com.quanlycanhan.service.TransactionSummaryService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -30,6 +32,8 @@ public class AdminCategoryController {
 
     private final CategoryRepository categoryRepository;
     private final CategoryService categoryService;
+    private final TransactionSummaryService transactionSummaryService;
+    private final CategoryDirectory categoryDirectory;
 
     /**
      * Lấy tất cả categories (phân trang, tìm kiếm)
@@ -76,6 +80,8 @@ public class AdminCategoryController {
                 .build();
 
         Category saved = categoryRepository.save(category);
+        categoryService.addToHierarchy(saved);
+        invalidateDirectory(saved);
         return ResponseEntity.ok(ApiResponse.success(saved));
     }
 
@@ -92,6 +98,7 @@ public class AdminCategoryController {
         if (request.getName() != null) {
             category.setName(request.getName());
         }
+        boolean typeChanged = request.getType() != null && !request.getType().equals(category.getType());
         if (request.getType() != null) {
             category.setType(request.getType());
         }
@@ -109,6 +116,11 @@ public class AdminCategoryController {
         }
 
         Category saved = categoryRepository.save(category);
+        if (typeChanged) {
+            // Đồng bộ loại trên bảng tổng hợp theo ngày (thống kê thu/chi)
+            transactionSummaryService.changeCategoryType(saved.getId(), saved.getType());
+        }
+        invalidateDirectory(saved);
         return ResponseEntity.ok(ApiResponse.success(saved));
     }
 
@@ -122,9 +134,21 @@ public class AdminCategoryController {
 
         category.setDeleted(true);
         categoryRepository.save(category);
+        invalidateDirectory(category);
         return ResponseEntity.ok(ApiResponse.success("Xóa category thành công", null));
     }
 
+    /**
+     * Danh mục hệ thống dùng chung cho mọi user nên bỏ toàn bộ CategoryDirectory; danh mục riêng chỉ bỏ của chủ sở hữu
+     */
+    private void invalidateDirectory(Category category) {
+        if (Boolean.TRUE.equals(category.getSystemDefault()) || category.getUser() == null) {
+            categoryDirectory.invalidateAll();
+        } else {
+            categoryDirectory.invalidateUser(category.getUser().getId());
+        }
+    }
+
     @lombok.Data
     public static class CreateCategoryRequest {
         private String name;
@@ -1,7 +1,9 @@
 package com.quanlycanhan.controller;
 
 import com.quanlycanhan.dto.response.ApiResponse;
+import com.quanlycanhan.dto.response.CursorPageResponse;
 import com.quanlycanhan.dto.response.TransactionResponseDTO;
+import com.quanlycanhan.entity.FxRate;
 import com.quanlycanhan.entity.Transaction;
 import com.quanlycanhan.entity.User;
 import com.quanlycanhan.exception.BusinessException;
@@ -9,20 +11,34 @@ import com.quanlycanhan.exception.ErrorCode;
 import com.quanlycanhan.mapper.TransactionMapper;
 import com.quanlycanhan.repository.UserRepository;
 import com.quanlycanhan.service.AdminService;
+import com.quanlycanhan.service.FxRateImporter;
+import com.quanlycanhan.service.FxRateService;
+import com.quanlycanhan.service.FxRenormalizationJob;
+import com.quanlycanhan.service.TransactionPartitionMaintainer;
 import com.quanlycanhan.service.TransactionService;
+import com.quanlycanhan.service.TransactionSummaryService;
 import com.quanlycanhan.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.List;
 /**
  * Controller Admin - Quản lý users và giao dịch của users
  * - Yêu cầu role ADMIN
@@ -35,9 +51,14 @@ public class AdminController {
 
     private final AdminService adminService;
     private final TransactionService transactionService;
+    private final TransactionSummaryService transactionSummaryService;
     private final TransactionMapper transactionMapper;
     private final UserRepository userRepository;
     private final SecurityUtil securityUtil;
+    private final ObjectProvider<TransactionPartitionMaintainer> partitionMaintainer;
+    private final FxRateService fxRateService;
+    private final FxRateImporter fxRateImporter;
+    private final FxRenormalizationJob fxRenormalizationJob;
 
     /**
      * Lấy danh sách users (phân trang, tìm kiếm)
@@ -192,6 +213,75 @@ public class AdminController {
         return ResponseEntity.ok(ApiResponse.success("Xóa giao dịch thành công", null));
     }
 
+    /**
+     * Dựng lại bảng tổng hợp theo ngày của user từ giao dịch gốc (đối soát số liệu dashboard)
+     */
+    @PostMapping("/users/{userId}/summary/rebuild")
+    public ResponseEntity<ApiResponse<Integer>> rebuildUserSummary(@PathVariable Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new BusinessException(ErrorCode.USER_NOT_FOUND);
+        }
+        int rows = transactionSummaryService.rebuildUser(userId);
+        return ResponseEntity.ok(ApiResponse.success("Đã dựng lại dữ liệu thống kê", rows));
+    }
+
+    /**
+     * Partition của bảng transactions + kiểm tra pruning (EXPLAIN) cho query theo tháng hiện tại
+     * Chỉ có khi bật app.partitioning.enabled
+     */
+    @GetMapping("/maintenance/transaction-partitions")
+    public ResponseEntity<ApiResponse<PartitionReport>> getTransactionPartitions() {
+        TransactionPartitionMaintainer maintainer = partitionMaintainer.getIfAvailable();
+        if (maintainer == null) {
+            throw new BusinessException(ErrorCode.PARTITIONING_DISABLED);
+        }
+        LocalDate today = LocalDate.now();
+        PartitionReport report = new PartitionReport(maintainer.listPartitions(), maintainer.verifyPruning(today));
+        return ResponseEntity.ok(ApiResponse.success(report));
+    }
+
+    /**
+     * Bảng tỷ giá quy đổi ra VND (lọc theo loại tiền nếu có)
+     */
+    @GetMapping("/fx-rates")
+    public ResponseEntity<ApiResponse<List<FxRate>>> getFxRates(@RequestParam(required = false) String currency) {
+        return ResponseEntity.ok(ApiResponse.success(fxRateService.listRates(currency)));
+    }
+
+    /**
+     * Import tỷ giá từ file CSV (currency,rate_date,rate); giao dịch cũ dùng tỷ giá bị sửa được tính lại ở nền
+     */
+    @PostMapping(value = "/fx-rates/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<FxRateImporter.ImportResult>> importFxRates(
+            @RequestPart("file") MultipartFile file
+    ) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new BusinessException(ErrorCode.FX_RATE_IMPORT_INVALID, "File không được để trống");
+        }
+        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+            FxRateImporter.ImportResult result = fxRateImporter.importCsv(reader, file.getOriginalFilename());
+            return ResponseEntity.ok(ApiResponse.success("Import tỷ giá thành công", result));
+        }
+    }
+
+    /**
+     * Tính lại số tiền quy đổi của một loại tiền trong khoảng ngày (trả về số user đã dựng lại thống kê)
+     */
+    @PostMapping("/fx-rates/renormalize")
+    public ResponseEntity<ApiResponse<Integer>> renormalizeFx(
+            @RequestParam String currency,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {
+        if (!fxRateService.hasRates(currency)) {
+            throw new BusinessException(ErrorCode.FX_RATE_NOT_FOUND);
+        }
+        int users = fxRenormalizationJob.renormalize(currency,
+            startDate != null ? startDate : TransactionService.MIN_DATE,
+            endDate != null ? endDate : TransactionService.MAX_DATE);
+        return ResponseEntity.ok(ApiResponse.success("Đã tính lại số tiền quy đổi", users));
+    }
+
     /**
      * Thống kê tổng quan hệ thống
      */
@@ -220,6 +310,22 @@ public class AdminController {
         return ResponseEntity.ok(ApiResponse.success(dtoPage));
     }
 
+    /**
+     * Lấy transactions theo cursor (keyset pagination) - không bị chậm dần ở các trang sâu
+     */
+    @GetMapping("/transactions/cursor")
+    public ResponseEntity<ApiResponse<CursorPageResponse<TransactionResponseDTO>>> getAllTransactionsByCursor(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        CursorPageResponse<Transaction> transactions =
+            adminService.getAllTransactionsByCursor(userId, startDate, endDate, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOCursorPage(transactions)));
+    }
+
     @lombok.Data
     public static class CreateTransactionRequest {
         private Long categoryId;
@@ -248,5 +354,12 @@ public class AdminController {
         private long totalTransactions;
         private BigDecimal totalAmount;
     }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class PartitionReport {
+        private List<TransactionPartitionMaintainer.PartitionInfo> partitions;
+        private List<TransactionPartitionMaintainer.PruningCheck> pruning;
+    }
 }
 
@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.quanlycanhan.dto.response.ApiResponse;
+import com.quanlycanhan.dto.response.CategoryTreeNode;
 import com.quanlycanhan.entity.Category;
 import com.quanlycanhan.service.CategoryService;
 import com.quanlycanhan.util.SecurityUtil;
@@ -49,6 +50,15 @@ public class CategoryController {
         return ResponseEntity.ok(ApiResponse.success(categories));
     }
 
+    /**
+     * Cây danh mục (cha - con) của user, dựng trong 1 lần đọc
+     */
+    @GetMapping("/tree")
+    public ResponseEntity<ApiResponse<List<CategoryTreeNode>>> getCategoryTree(Authentication authentication) {
+        Long userId = securityUtil.getUserId(authentication);
+        return ResponseEntity.ok(ApiResponse.success(categoryService.getCategoryTree(userId)));
+    }
+
     /**
      * Tạo danh mục mới
      */
@@ -96,16 +106,20 @@ public class CategoryController {
     }
 
     /**
-     * Xóa danh mục
+     * Xóa danh mục (cả nhánh con)
+     * - reassignTo: chuyển giao dịch của nhánh sang danh mục khác
+     * - deleteTransactions=true: xóa luôn giao dịch của nhánh
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<ApiResponse<String>> deleteCategory(
+    public ResponseEntity<ApiResponse<CategoryService.DeleteResult>> deleteCategory(
             @PathVariable Long id,
+            @RequestParam(required = false) Long reassignTo,
+            @RequestParam(defaultValue = "false") boolean deleteTransactions,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
-        categoryService.deleteCategory(id, userId);
-        return ResponseEntity.ok(ApiResponse.success("Xóa danh mục thành công", null));
+        CategoryService.DeleteResult result = categoryService.deleteCategory(id, userId, reassignTo, deleteTransactions);
+        return ResponseEntity.ok(ApiResponse.success("Xóa danh mục thành công", result));
     }
 
     @lombok.Data
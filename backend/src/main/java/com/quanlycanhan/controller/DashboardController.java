@@ -1,17 +1,10 @@
 package com.quanlycanhan.controller;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.Year;
 import java.time.YearMonth;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -22,9 +15,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.quanlycanhan.dto.response.ApiResponse;
-import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.dto.response.TrendResponse;
 import com.quanlycanhan.entity.Transaction;
-import com.quanlycanhan.service.CategoryService;
+import com.quanlycanhan.service.DashboardService;
+import com.quanlycanhan.service.ExpenseTrendService;
 import com.quanlycanhan.service.TransactionService;
 import com.quanlycanhan.util.SecurityUtil;
 
@@ -39,9 +33,33 @@ import lombok.RequiredArgsConstructor;
 public class DashboardController {
 
     private final TransactionService transactionService;
-    private final CategoryService categoryService;
+    private final DashboardService dashboardService;
+    private final ExpenseTrendService expenseTrendService;
     private final SecurityUtil securityUtil;
 
+    /**
+     * Toàn bộ dữ liệu trang dashboard trong 1 request (thay cho 6 request riêng lẻ)
+     * Các khối chạy song song; khối bị lỗi/quá thời gian trả về null, "partial" = true
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getSummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "10") int recentLimit,
+            @RequestParam(defaultValue = "5") int topLimit,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        if (startDate == null || endDate == null) {
+            YearMonth ym = YearMonth.now();
+            startDate = ym.atDay(1);
+            endDate = ym.atEndOfMonth();
+        }
+        int recent = Math.max(1, Math.min(recentLimit, 50));
+        int top = Math.max(1, Math.min(topLimit, 50));
+        return ResponseEntity.ok(ApiResponse.success(dashboardService.getSummary(userId, startDate, endDate, recent, top)));
+    }
+
     /**
      * Tổng hợp số liệu (income, expense, net) cho khoảng thời gian (mặc định: tháng hiện tại)
      */
@@ -57,15 +75,7 @@ public class DashboardController {
             startDate = ym.atDay(1);
             endDate = ym.atEndOfMonth();
         }
-
-        Object[] totals = transactionService.getIncomeAndExpenseTotals(userId, startDate, endDate);
-        BigDecimal income = new BigDecimal(totals[0].toString());
-        BigDecimal expense = new BigDecimal(totals[1].toString());
-        Map<String, Object> out = new HashMap<>();
-        out.put("income", income);
-        out.put("expense", expense);
-        out.put("net", income.subtract(expense));
-        return ResponseEntity.ok(ApiResponse.success(out));
+        return ResponseEntity.ok(ApiResponse.success(dashboardService.getStats(userId, startDate, endDate)));
     }
 
     /**
@@ -76,90 +86,47 @@ public class DashboardController {
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @RequestParam(required = false, defaultValue = "expense") String type,
+            @RequestParam(defaultValue = "false") boolean includeSubcategories,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
-        List<Object[]> raw = transactionService.getTotalAmountByCategoryAndType(userId, startDate, endDate, type);
-        // Map categoryId -> sum
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Object[] r : raw) {
-            Long catId = ((Number) r[0]).longValue();
-            BigDecimal sum = new BigDecimal(r[1].toString());
-            Optional<Category> cat = categoryService.getUserCategories(userId).stream().filter(c->c.getId().equals(catId)).findFirst();
-            Map<String, Object> m = new HashMap<>();
-            m.put("categoryId", catId);
-            m.put("sum", sum);
-            cat.ifPresent(c -> { m.put("name", c.getName()); m.put("icon", c.getIcon()); m.put("color", c.getColor()); });
-            result.add(m);
-        }
-        // sort descending by sum
-        result.sort((a,b) -> ((BigDecimal)b.get("sum")).compareTo((BigDecimal)a.get("sum")));
-        return ResponseEntity.ok(ApiResponse.success(result));
+        return ResponseEntity.ok(ApiResponse.success(
+            dashboardService.getCategoryTotals(userId, startDate, endDate, type, includeSubcategories)));
     }
 
     /**
-     * Xu hướng (trend) chi tiêu theo period: day/week/month/year
-     * - year: trả về tổng theo tháng trong year param (mặc định current year)
+     * Xu hướng thu/chi theo bucket: period = day / week (ISO, từ thứ Hai) / month / year
+     * - Có startDate/endDate: mọi khoảng tùy ý, bucket trống = 0
+     * - Không truyền khoảng: 30 ngày / 12 tuần / 12 tháng gần nhất;
+     *   riêng period=year giữ hành vi cũ: 12 tháng của năm `year` (mặc định năm hiện tại)
      */
     @GetMapping("/expense-trend")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> getExpenseTrend(
+    public ResponseEntity<ApiResponse<TrendResponse>> getExpenseTrend(
             @RequestParam(defaultValue = "month") String period,
             @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
-        Map<String, Object> out = new LinkedHashMap<>();
-        if ("year".equalsIgnoreCase(period)) {
+        ExpenseTrendService.Period p = ExpenseTrendService.Period.parse(period);
+        if (p == ExpenseTrendService.Period.YEAR && startDate == null && endDate == null) {
             int y = year != null ? year : Year.now().getValue();
-            LocalDate start = Year.of(y).atDay(1);
-            LocalDate end = Year.of(y).atMonth(12).atEndOfMonth();
-            List<Object[]> byCat = transactionService.getTotalAmountByCategory(userId, start, end);
-            // We'll compute month sums for expense categories
-            // For simplicity return empty series if none
-            List<BigDecimal> months = new ArrayList<>(Collections.nCopies(12, BigDecimal.ZERO));
-            // Query transactions in range and group by month
-            List<Transaction> txs = transactionService.getTransactionsByDateRange(userId, start, end);
-            for (Transaction t : txs) {
-                if (t.getCategory() != null && "expense".equalsIgnoreCase(t.getCategory().getType())) {
-                    int m = t.getTransactionDate().getMonthValue();
-                    months.set(m-1, months.get(m-1).add(t.getAmount()));
-                }
-            }
-            out.put("period", "year");
-            out.put("year", y);
-            out.put("labels", Arrays.asList("Jan","Feb","Mar","Apr","May","Jun","Jul","Aug","Sep","Oct","Nov","Dec"));
-            out.put("values", months);
-            return ResponseEntity.ok(ApiResponse.success(out));
+            return ResponseEntity.ok(ApiResponse.success(expenseTrendService.getYearView(userId, y)));
         }
-
-        // other periods not yet implemented — return empty
-        out.put("period", period);
-        out.put("labels", Collections.emptyList());
-        out.put("values", Collections.emptyList());
-        return ResponseEntity.ok(ApiResponse.success(out));
+        return ResponseEntity.ok(ApiResponse.success(expenseTrendService.getTrend(userId, p, startDate, endDate)));
     }
 
     @GetMapping("/top-categories")
     public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getTopCategories(
             @RequestParam(defaultValue = "5") int limit,
+            @RequestParam(defaultValue = "false") boolean includeSubcategories,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
         LocalDate start = YearMonth.now().atDay(1);
         LocalDate end = YearMonth.now().atEndOfMonth();
-        List<Object[]> raw = transactionService.getTotalAmountByCategoryAndType(userId, start, end, "expense");
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (Object[] r : raw) {
-            Long catId = ((Number) r[0]).longValue();
-            BigDecimal sum = new BigDecimal(r[1].toString());
-            Optional<Category> cat = categoryService.getUserCategories(userId).stream().filter(c->c.getId().equals(catId)).findFirst();
-            Map<String, Object> m = new HashMap<>();
-            m.put("categoryId", catId);
-            m.put("sum", sum);
-            cat.ifPresent(c -> { m.put("name", c.getName()); m.put("icon", c.getIcon()); m.put("color", c.getColor()); });
-            list.add(m);
-        }
-        list.sort((a,b) -> ((BigDecimal)b.get("sum")).compareTo((BigDecimal)a.get("sum")));
+        List<Map<String, Object>> list = dashboardService.getCategoryTotals(userId, start, end, "expense", includeSubcategories);
         if (list.size() > limit) list = list.subList(0, limit);
         return ResponseEntity.ok(ApiResponse.success(list));
     }
@@ -170,8 +137,8 @@ public class DashboardController {
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
-        // reuse repository pagination via service
-        var page = transactionService.getUserTransactions(userId, org.springframework.data.domain.PageRequest.of(0, limit, org.springframework.data.domain.Sort.by("transactionDate").descending()));
-        return ResponseEntity.ok(ApiResponse.success(page.getContent()));
+        // Slice: chỉ lấy limit dòng gần nhất, không cần COUNT toàn bộ lịch sử
+        var slice = transactionService.getUserTransactionSlice(userId, org.springframework.data.domain.PageRequest.of(0, limit, org.springframework.data.domain.Sort.by("transactionDate").descending()));
+        return ResponseEntity.ok(ApiResponse.success(slice.getContent()));
     }
 }
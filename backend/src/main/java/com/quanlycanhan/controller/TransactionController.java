@@ -7,7 +7,9 @@ import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -22,11 +24,20 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.quanlycanhan.dto.response.ApiResponse;
+import com.quanlycanhan.dto.response.CursorPageResponse;
+import com.quanlycanhan.dto.response.ImportJobResponse;
+import com.quanlycanhan.dto.response.SliceResponse;
 import com.quanlycanhan.dto.response.TransactionResponseDTO;
 import com.quanlycanhan.entity.Transaction;
 import com.quanlycanhan.mapper.TransactionMapper;
+import com.quanlycanhan.service.TransactionBatchService;
+import com.quanlycanhan.service.TransactionExportService;
+import com.quanlycanhan.service.TransactionImportService;
+import com.quanlycanhan.service.importer.ImportJob;
+import com.quanlycanhan.service.importer.ImportOptions;
 import com.quanlycanhan.service.TransactionService;
 import com.quanlycanhan.util.SecurityUtil;
 
@@ -43,51 +54,94 @@ public class TransactionController {
     private final SecurityUtil securityUtil;
     private final TransactionMapper transactionMapper;
     private final com.quanlycanhan.service.FileStorageService fileStorageService;
+    private final TransactionBatchService transactionBatchService;
+    private final TransactionImportService transactionImportService;
+    private final TransactionExportService transactionExportService;
 
     /**
      * Lấy danh sách giao dịch của user (phân trang)
      * Trả về DTO để ẩn các field nhạy cảm của Entity
+     * - withTotal=false: trả về Slice (chỉ có hasNext), bỏ qua query COUNT(*) trên toàn bộ lịch sử
      */
     @GetMapping
-    public ResponseEntity<ApiResponse<Page<TransactionResponseDTO>>> getTransactions(
+    public ResponseEntity<ApiResponse<?>> getTransactions(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
         Pageable pageable = PageRequest.of(page, size, Sort.by("transactionDate").descending());
-        Page<Transaction> transactions;
-        
-        if (keyword != null && !keyword.trim().isEmpty()) {
-            transactions = transactionService.searchTransactions(userId, keyword, pageable);
-        } else if (startDate != null || endDate != null) {
-            transactions = transactionService.getTransactionsByDateRange(userId, startDate, endDate, pageable);
-        } else {
-            transactions = transactionService.getUserTransactions(userId, pageable);
+        boolean hasKeyword = keyword != null && !keyword.trim().isEmpty();
+
+        if (hasKeyword) {
+            if (!withTotal) {
+                Slice<Transaction> slice = transactionService.searchTransactionSlice(userId, keyword, pageable);
+                return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOSlice(slice)));
+            }
+            Page<Transaction> transactions = transactionService.searchTransactions(userId, keyword, pageable);
+            return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOPage(transactions)));
         }
-        
-        // Convert Entity sang DTO để ẩn các field nhạy cảm
-        Page<TransactionResponseDTO> dtoPage = transactionMapper.toDTOPage(transactions);
+
+        // Danh sách thường: query chiếu thẳng vào DTO, không hydrate entity
+        if (!withTotal) {
+            Slice<TransactionResponseDTO> slice =
+                transactionService.getTransactionDtoSliceByDateRange(userId, startDate, endDate, pageable);
+            return ResponseEntity.ok(ApiResponse.success(SliceResponse.of(slice)));
+        }
+        Page<TransactionResponseDTO> dtoPage =
+            transactionService.getTransactionDtosByDateRange(userId, startDate, endDate, pageable);
         return ResponseEntity.ok(ApiResponse.success(dtoPage));
     }
 
+    /**
+     * Lấy danh sách giao dịch theo cursor (keyset pagination) cho infinite scroll / user nhiều dữ liệu
+     * - Lần đầu không truyền cursor; các lần sau gửi lại nextCursor của response trước
+     * - Không có tổng số bản ghi (không chạy COUNT(*))
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPageResponse<TransactionResponseDTO>>> getTransactionsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        CursorPageResponse<TransactionResponseDTO> transactions =
+            transactionService.getUserTransactionDtosByCursor(userId, startDate, endDate, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(transactions));
+    }
+
     /**
      * Tìm kiếm giao dịch
      * Trả về DTO để ẩn các field nhạy cảm của Entity
+     * - withTotal=false: trả về Slice, không COUNT
+     * - Không phân biệt dấu/hoa thường; khớp note, location, tên danh mục và số tiền
+     * - minAmount/maxAmount: lọc khoảng số tiền (có thể dùng không kèm keyword)
      */
     @GetMapping("/search")
-    public ResponseEntity<ApiResponse<Page<TransactionResponseDTO>>> searchTransactions(
-            @RequestParam String keyword,
+    public ResponseEntity<ApiResponse<?>> searchTransactions(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) BigDecimal minAmount,
+            @RequestParam(required = false) BigDecimal maxAmount,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
         Pageable pageable = PageRequest.of(page, size, Sort.by("transactionDate").descending());
-        Page<Transaction> transactions = transactionService.searchTransactions(userId, keyword, pageable);
+        if (!withTotal) {
+            Slice<Transaction> slice =
+                transactionService.searchTransactionSlice(userId, keyword, minAmount, maxAmount, pageable);
+            return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOSlice(slice)));
+        }
+        Page<Transaction> transactions =
+            transactionService.searchTransactions(userId, keyword, minAmount, maxAmount, pageable);
         Page<TransactionResponseDTO> dtoPage = transactionMapper.toDTOPage(transactions);
         return ResponseEntity.ok(ApiResponse.success(dtoPage));
     }
@@ -174,6 +228,156 @@ public class TransactionController {
         return ResponseEntity.ok(ApiResponse.success("Xóa giao dịch thành công", null));
     }
 
+    /**
+     * Thùng rác: giao dịch đã xóa, khôi phục được trong thời hạn lưu (app.trash.retention-days)
+     */
+    @GetMapping("/trash")
+    public ResponseEntity<ApiResponse<Page<TransactionResponseDTO>>> getTrash(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        Pageable pageable = PageRequest.of(page, Math.min(Math.max(size, 1), 100), Sort.by("deletedAt").descending());
+        return ResponseEntity.ok(ApiResponse.success(transactionService.getTrashDtos(userId, pageable)));
+    }
+
+    /**
+     * Khôi phục giao dịch từ thùng rác
+     */
+    @PostMapping("/{id}/restore")
+    public ResponseEntity<ApiResponse<TransactionResponseDTO>> restoreTransaction(
+            @PathVariable Long id,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        Transaction transaction = transactionService.restoreTransaction(id, userId);
+        return ResponseEntity.ok(ApiResponse.success("Khôi phục giao dịch thành công", transactionMapper.toDTO(transaction)));
+    }
+
+    /**
+     * Tạo nhiều giao dịch trong một request (đồng bộ offline)
+     * Cả lô thành công hoặc không ghi gì; tối đa TransactionBatchService.MAX_BATCH_SIZE phần tử
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<List<TransactionResponseDTO>>> createTransactions(
+            @RequestBody BatchCreateTransactionRequest request,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        List<TransactionBatchService.TransactionInput> items = request.getItems() == null ? List.of()
+            : request.getItems().stream()
+                .map(item -> new TransactionBatchService.TransactionInput(
+                    null,
+                    item.getCategoryId(),
+                    parseAmount(item.getAmount()),
+                    item.getCurrency(),
+                    item.getTransactionDate(),
+                    item.getNote(),
+                    item.getLocation(),
+                    item.getReceiptImage()))
+                .toList();
+        List<Transaction> created = transactionBatchService.createTransactions(
+            userId, items, Transaction.CreatedBy.USER, null);
+        return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOList(created)));
+    }
+
+    /**
+     * Cập nhật nhiều giao dịch trong một request (mỗi phần tử có id, field null = giữ nguyên)
+     */
+    @PutMapping("/batch")
+    public ResponseEntity<ApiResponse<List<TransactionResponseDTO>>> updateTransactions(
+            @RequestBody BatchUpdateTransactionRequest request,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        List<TransactionBatchService.TransactionInput> items = request.getItems() == null ? List.of()
+            : request.getItems().stream()
+                .map(item -> new TransactionBatchService.TransactionInput(
+                    item.getId(),
+                    item.getCategoryId(),
+                    item.getAmount() != null ? parseAmount(item.getAmount()) : null,
+                    item.getCurrency(),
+                    item.getTransactionDate(),
+                    item.getNote(),
+                    item.getLocation(),
+                    item.getReceiptImage()))
+                .toList();
+        List<Transaction> updated = transactionBatchService.updateTransactions(userId, items);
+        return ResponseEntity.ok(ApiResponse.success(transactionMapper.toDTOList(updated)));
+    }
+
+    /**
+     * Xóa (mềm) nhiều giao dịch trong một request, trả về số giao dịch đã xóa
+     */
+    @PostMapping("/batch/delete")
+    public ResponseEntity<ApiResponse<Integer>> deleteTransactions(
+            @RequestBody BatchDeleteTransactionRequest request,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        int deleted = transactionBatchService.deleteTransactions(userId, request.getIds());
+        return ResponseEntity.ok(ApiResponse.success("Xóa giao dịch thành công", deleted));
+    }
+
+    /**
+     * Import giao dịch từ file CSV/XLSX (chạy nền), trả về jobId để theo dõi tiến độ
+     * - Dòng đầu là tiêu đề; cột ngày + số tiền bắt buộc, danh mục/ghi chú/địa điểm tùy chọn
+     * - Tên cột tự nhận (Ngày, Số tiền, Danh mục, Ghi chú, Địa điểm...) hoặc chỉ định qua xxxColumn
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<ImportJobResponse>> importTransactions(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(required = false) String dateColumn,
+            @RequestParam(required = false) String amountColumn,
+            @RequestParam(required = false) String categoryColumn,
+            @RequestParam(required = false) String noteColumn,
+            @RequestParam(required = false) String locationColumn,
+            @RequestParam(required = false) Long defaultCategoryId,
+            @RequestParam(defaultValue = "true") boolean skipDuplicates,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        ImportOptions options = new ImportOptions(dateColumn, amountColumn, categoryColumn, noteColumn,
+            locationColumn, defaultCategoryId, skipDuplicates);
+        ImportJob job = transactionImportService.startImport(userId, file, options);
+        return ResponseEntity.ok(ApiResponse.success(ImportJobResponse.from(job)));
+    }
+
+    /**
+     * Tiến độ import
+     */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<ApiResponse<ImportJobResponse>> getImportStatus(
+            @PathVariable String jobId,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        ImportJob job = transactionImportService.getJob(jobId, userId);
+        return ResponseEntity.ok(ApiResponse.success(ImportJobResponse.from(job)));
+    }
+
+    /**
+     * Xuất lịch sử giao dịch (format = csv | xlsx | pdf), không truyền ngày = toàn bộ lịch sử
+     * Dữ liệu được stream thẳng ra response, không dựng cả file trong bộ nhớ
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            Authentication authentication
+    ) {
+        Long userId = securityUtil.getUserId(authentication);
+        TransactionExportService.Format exportFormat = TransactionExportService.Format.parse(format);
+        StreamingResponseBody body = transactionExportService.export(userId, startDate, endDate, exportFormat);
+        String fileName = "giao-dich-" + LocalDate.now() + "." + exportFormat.getExtension();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .body(body);
+    }
+
     /**
      * Lấy tổng chi trong khoảng thời gian
      */
@@ -214,10 +418,12 @@ public class TransactionController {
     public ResponseEntity<ApiResponse<List<java.util.Map<String, Object>>>> getCategoryStats(
             @RequestParam LocalDate startDate,
             @RequestParam LocalDate endDate,
+            @RequestParam(defaultValue = "false") boolean includeSubcategories,
             Authentication authentication
     ) {
         Long userId = securityUtil.getUserId(authentication);
-        List<java.util.Map<String, Object>> stats = transactionService.getCategoryStats(userId, startDate, endDate);
+        List<java.util.Map<String, Object>> stats =
+            transactionService.getCategoryStats(userId, startDate, endDate, includeSubcategories);
         return ResponseEntity.ok(ApiResponse.success(stats));
     }
 
@@ -266,6 +472,39 @@ public class TransactionController {
         private String receiptImage;
     }
 
+    /**
+     * DTO request tạo nhiều giao dịch
+     */
+    @lombok.Data
+    public static class BatchCreateTransactionRequest {
+        private List<CreateTransactionRequest> items;
+    }
+
+    /**
+     * Một phần tử trong request cập nhật nhiều giao dịch
+     */
+    @lombok.Data
+    @lombok.EqualsAndHashCode(callSuper = true)
+    public static class BatchUpdateTransactionItem extends UpdateTransactionRequest {
+        private Long id;
+    }
+
+    /**
+     * DTO request cập nhật nhiều giao dịch
+     */
+    @lombok.Data
+    public static class BatchUpdateTransactionRequest {
+        private List<BatchUpdateTransactionItem> items;
+    }
+
+    /**
+     * DTO request xóa nhiều giao dịch
+     */
+    @lombok.Data
+    public static class BatchDeleteTransactionRequest {
+        private List<Long> ids;
+    }
+
     // Helper to parse formatted amount strings into BigDecimal
     private BigDecimal parseAmount(String raw) {
         if (raw == null) return null;
@@ -0,0 +1,38 @@
+package com.quanlycanhan.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO response cho cây danh mục (GET /categories/tree)
+ * - Danh mục của user + hệ thống, chưa xóa; con sắp xếp theo sortOrder, tên
+ * - Danh mục có cha không còn hiển thị (đã xóa) được đưa lên gốc
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CategoryTreeNode {
+
+    private Long id;
+    private String name;
+    private String icon;
+    private String color;
+    private String type;
+    private Long parentId;
+    private Boolean systemDefault;
+    private Integer sortOrder;
+
+    /**
+     * Độ sâu trong cây (0 = gốc)
+     */
+    private Integer depth;
+
+    @Builder.Default
+    private List<CategoryTreeNode> children = new ArrayList<>();
+}
@@ -0,0 +1,46 @@
+package com.quanlycanhan.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * DTO response cho keyset (cursor) pagination
+ * - Không có totalElements/totalPages: không cần COUNT(*)
+ * - nextCursor = null khi đã hết dữ liệu
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPageResponse<T> {
+
+    private List<T> content;
+    private int size;
+    private String nextCursor;
+    private boolean hasNext;
+
+    /**
+     * Dựng response từ danh sách đã query dư 1 phần tử (size + 1):
+     * có phần tử thứ size + 1 nghĩa là còn trang sau, cursor lấy từ phần tử cuối của trang hiện tại.
+     */
+    public static <T> CursorPageResponse<T> fromOverfetch(List<T> rows, int size, Function<? super T, String> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext && !content.isEmpty() ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new CursorPageResponse<>(content, size, nextCursor, hasNext);
+    }
+
+    /**
+     * Chuyển đổi content sang kiểu khác (ví dụ Entity -> DTO), giữ nguyên cursor
+     */
+    public <R> CursorPageResponse<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = content.stream().map(mapper).collect(Collectors.toList());
+        return new CursorPageResponse<>(mapped, size, nextCursor, hasNext);
+    }
+}
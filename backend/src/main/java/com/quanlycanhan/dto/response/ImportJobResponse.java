@@ -0,0 +1,48 @@
+package com.quanlycanhan.dto.response;
+
+import com.quanlycanhan.service.importer.ImportJob;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO response tiến độ import giao dịch
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJobResponse {
+
+    private String jobId;
+    private String fileName;
+    private String status; // PENDING, RUNNING, COMPLETED, FAILED
+    private long processedRows;
+    private long importedRows;
+    private long duplicateRows;
+    private long errorRows;
+    private List<String> errors; // tối đa ImportJob.MAX_ERRORS dòng đầu tiên
+    private String message;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    public static ImportJobResponse from(ImportJob job) {
+        return ImportJobResponse.builder()
+                .jobId(job.getId())
+                .fileName(job.getFileName())
+                .status(job.getStatus().name())
+                .processedRows(job.getProcessedRows().get())
+                .importedRows(job.getImportedRows().get())
+                .duplicateRows(job.getDuplicateRows().get())
+                .errorRows(job.getErrorRows().get())
+                .errors(job.errorSnapshot())
+                .message(job.getMessage())
+                .createdAt(job.getCreatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.quanlycanhan.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+/**
+ * DTO response cho phân trang dạng Slice (không có tổng số bản ghi)
+ * - Dùng cho infinite scroll / "xem thêm": chỉ cần biết còn trang sau hay không
+ * - Không chạy COUNT(*) ở database
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SliceResponse<T> {
+
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean hasNext;
+
+    /**
+     * Dựng response từ Spring Data Slice (content đã là kiểu cần trả về)
+     */
+    public static <T> SliceResponse<T> of(Slice<T> slice) {
+        return new SliceResponse<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext());
+    }
+}
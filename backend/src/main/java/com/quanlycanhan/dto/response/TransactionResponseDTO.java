@@ -1,5 +1,6 @@
 package com.quanlycanhan.dto.response;
 
+import com.quanlycanhan.entity.Transaction;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -33,6 +34,32 @@ public class TransactionResponseDTO {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    /**
+     * Constructor phẳng cho JPQL constructor expression ({@code SELECT new ...TransactionResponseDTO(...)})
+     * Query trả thẳng DTO: không tạo entity, không đưa vào persistence context, không giữ snapshot dirty-checking.
+     */
+    public TransactionResponseDTO(Long id, BigDecimal amount, String currency, LocalDate transactionDate,
+                                  String note, String location, String receiptImage,
+                                  Transaction.CreatedBy createdBy, Long createdByAdminId,
+                                  LocalDateTime createdAt, LocalDateTime updatedAt,
+                                  Long categoryId, String categoryName, String categoryIcon, String categoryColor,
+                                  String categoryType, String categoryDescription) {
+        this.id = id;
+        this.category = categoryId != null
+                ? new CategoryInfo(categoryId, categoryName, categoryIcon, categoryColor, categoryType, categoryDescription)
+                : null;
+        this.amount = amount;
+        this.currency = currency;
+        this.transactionDate = transactionDate;
+        this.note = note;
+        this.location = location;
+        this.receiptImage = receiptImage;
+        this.createdBy = createdBy != null ? createdBy.name() : null;
+        this.createdByAdminId = createdByAdminId;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
     /**
      * Nested DTO cho Category info (chỉ expose các field cần thiết)
      */
@@ -0,0 +1,49 @@
+package com.quanlycanhan.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO response cho biểu đồ xu hướng thu/chi
+ * - Các mảng cùng độ dài, phần tử thứ i ứng với bucket thứ i (đã điền 0 cho bucket không có giao dịch)
+ * - values = expense (giữ tương thích với client cũ của /dashboard/expense-trend)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrendResponse {
+
+    /**
+     * Độ rộng bucket: day / week / month / year
+     */
+    private String period;
+
+    /**
+     * Năm đang xem (chỉ có ở chế độ xem theo năm: period=year không truyền khoảng thời gian)
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer year;
+
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    private List<String> labels;
+
+    /**
+     * Ngày bắt đầu của từng bucket (tuần bắt đầu từ thứ Hai theo ISO)
+     */
+    private List<LocalDate> bucketStarts;
+
+    private List<BigDecimal> income;
+    private List<BigDecimal> expense;
+    private List<BigDecimal> net;
+    private List<BigDecimal> values;
+}
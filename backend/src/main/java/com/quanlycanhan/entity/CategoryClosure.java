@@ -0,0 +1,48 @@
+package com.quanlycanhan.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Entity CategoryClosure - Quan hệ tổ tiên / hậu duệ trong cây danh mục
+ * - Mỗi danh mục có 1 dòng tự tham chiếu (depth = 0) và 1 dòng cho mỗi tổ tiên
+ * - Dùng để cộng dồn số liệu theo cả nhánh bằng 1 query (JOIN theo descendantId, GROUP BY ancestorId)
+ * - Được CategoryService cập nhật khi tạo danh mục / đổi danh mục cha
+ */
+@Entity
+@Table(name = "category_closure",
+        indexes = @Index(name = "idx_closure_descendant", columnList = "descendant_id, ancestor_id, depth"))
+@IdClass(CategoryClosure.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CategoryClosure {
+
+    @Id
+    @Column(name = "ancestor_id", nullable = false)
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id", nullable = false)
+    private Long descendantId;
+
+    /**
+     * Khoảng cách từ tổ tiên tới hậu duệ (0 = chính nó, 1 = con trực tiếp)
+     */
+    @Column(nullable = false)
+    private Integer depth;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long ancestorId;
+        private Long descendantId;
+    }
+}
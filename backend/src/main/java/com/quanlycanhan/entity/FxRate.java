@@ -0,0 +1,51 @@
+package com.quanlycanhan.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entity FxRate - Tỷ giá quy đổi ra VND
+ * - rate: số VND cho 1 đơn vị currency, hiệu lực từ rateDate tới ngày có tỷ giá kế tiếp
+ * - Nạp bởi FxRateImporter (file CSV hoặc service tỷ giá nội bộ), đọc qua cache trong FxRateService
+ */
+@Entity
+@Table(name = "fx_rates",
+        uniqueConstraints = @UniqueConstraint(name = "uk_fx_rates_currency_date",
+                columnNames = {"currency", "rate_date"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FxRate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 10)
+    private String currency;
+
+    @Column(name = "rate_date", nullable = false)
+    private LocalDate rateDate;
+
+    @Column(nullable = false, precision = 24, scale = 10)
+    private BigDecimal rate;
+
+    /**
+     * Nguồn nạp (tên file / URL)
+     */
+    @Column(length = 255)
+    private String source;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -7,6 +7,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import com.quanlycanhan.util.SearchTextNormalizer;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -26,7 +27,8 @@ import java.time.LocalDateTime;
         @Index(name = "idx_user_date", columnList = "user_id, transaction_date"),
         @Index(name = "idx_category", columnList = "category_id"),
         @Index(name = "idx_date", columnList = "transaction_date"),
-        @Index(name = "idx_user_category_date", columnList = "user_id, category_id, transaction_date")
+        @Index(name = "idx_user_category_date", columnList = "user_id, category_id, transaction_date"),
+        @Index(name = "idx_transactions_deleted_at", columnList = "deleted, deleted_at")
 })
 @Data
 @NoArgsConstructor
@@ -62,6 +64,13 @@ public class Transaction {
     @Column(nullable = false, precision = 15, scale = 2)
     private BigDecimal amount;
 
+    /**
+     * Số tiền quy đổi ra VND theo tỷ giá ngày giao dịch (FxRateService, lúc ghi)
+     * - Mọi SUM/tổng hợp dùng cột này; NULL = ngoại tệ chưa có tỷ giá, chưa được tính
+     */
+    @Column(name = "base_amount", precision = 15, scale = 2)
+    private BigDecimal baseAmount;
+
     /**
      * Ngày chi tiêu
      */
@@ -87,6 +96,15 @@ public class Transaction {
     @Column(length = 200)
     private String location;
 
+    /**
+     * Văn bản tìm kiếm đã chuẩn hóa (note + location, bỏ dấu, chữ thường)
+     * - Có FULLTEXT index (ngram) để tìm kiếm không phụ thuộc dấu tiếng Việt
+     * - Tự cập nhật khi persist/update, không set thủ công
+     */
+    @Column(name = "search_text", length = SearchTextNormalizer.MAX_DOCUMENT_LENGTH)
+    @JsonIgnore
+    private String searchText;
+
     /**
      * Giao dịch được tạo bởi ai
      * - USER: Người dùng tự nhập
@@ -118,7 +136,7 @@ public class Transaction {
     private LocalDateTime updatedAt;
 
     /**
-     * Tiền tệ (VND, USD, EUR, etc.)
+     * Tiền tệ (VND, USD, EUR, etc.) - mã viết hoa
      */
     @Column(nullable = false, length = 10)
     @Builder.Default
@@ -131,6 +149,21 @@ public class Transaction {
     @Builder.Default
     private Boolean deleted = false;
 
+    /**
+     * Thời điểm xóa mềm - hết thời hạn lưu thùng rác thì được chuyển sang transactions_archive
+     */
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    /**
+     * Đồng bộ cột search_text với note/location trước mỗi lần ghi
+     */
+    @PrePersist
+    @PreUpdate
+    void refreshSearchText() {
+        this.searchText = SearchTextNormalizer.buildDocument(this.note, this.location);
+    }
+
     public boolean isDeleted() {
         return Boolean.TRUE.equals(this.deleted);
     }
@@ -116,6 +116,12 @@ public class User {
     @Builder.Default
     private Integer failedLoginAttempts = 0;
 
+    /**
+     * Thời điểm đăng nhập thành công gần nhất (ưu tiên làm nóng cache AI)
+     */
+    @Column(name = "last_login_at")
+    private LocalDateTime lastLoginAt;
+
     /**
      * Ngôn ngữ ưa thích (vi, en)
      */
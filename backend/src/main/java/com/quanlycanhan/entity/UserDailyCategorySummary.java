@@ -0,0 +1,63 @@
+package com.quanlycanhan.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entity UserDailyCategorySummary - Tổng hợp giao dịch theo ngày
+ * - Mỗi dòng: tổng tiền + số giao dịch chưa xóa của 1 user trong 1 ngày, 1 danh mục
+ * - Dữ liệu dẫn xuất từ transactions, được cập nhật bằng delta khi ghi giao dịch (TransactionSummaryService)
+ * - Dashboard/thống kê đọc bảng này thay vì quét toàn bộ giao dịch
+ */
+@Entity
+@Table(name = "user_daily_category_summary",
+        uniqueConstraints = @UniqueConstraint(name = "uk_summary_user_date_category",
+                columnNames = {"user_id", "summary_date", "category_id"}),
+        indexes = {
+                @Index(name = "idx_summary_category", columnList = "category_id")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserDailyCategorySummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "summary_date", nullable = false)
+    private LocalDate summaryDate;
+
+    @Column(name = "category_id", nullable = false)
+    private Long categoryId;
+
+    /**
+     * Loại danh mục tại thời điểm ghi (expense/income), đồng bộ khi đổi loại danh mục
+     */
+    @Column(nullable = false, length = 20)
+    private String type;
+
+    @Column(name = "total_amount", nullable = false, precision = 19, scale = 2)
+    @Builder.Default
+    private BigDecimal totalAmount = BigDecimal.ZERO;
+
+    @Column(name = "txn_count", nullable = false)
+    @Builder.Default
+    private Integer txnCount = 0;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -25,6 +25,24 @@ public enum ErrorCode {
     // Transaction
     TRANSACTION_NOT_FOUND("TRANSACTION_NOT_FOUND", "Không tìm thấy giao dịch"),
     TRANSACTION_ACCESS_DENIED("TRANSACTION_ACCESS_DENIED", "Không có quyền truy cập giao dịch này"),
+    CURSOR_INVALID("CURSOR_INVALID", "Cursor phân trang không hợp lệ"),
+    TRANSACTION_BATCH_INVALID("TRANSACTION_BATCH_INVALID", "Danh sách giao dịch không hợp lệ"),
+    TRANSACTION_BATCH_TOO_LARGE("TRANSACTION_BATCH_TOO_LARGE", "Số lượng giao dịch trong một lần vượt quá giới hạn"),
+
+    // Import
+    IMPORT_FILE_INVALID("IMPORT_FILE_INVALID", "File import không hợp lệ"),
+    IMPORT_JOB_NOT_FOUND("IMPORT_JOB_NOT_FOUND", "Không tìm thấy tiến trình import"),
+    IMPORT_JOB_RUNNING("IMPORT_JOB_RUNNING", "Đang có một tiến trình import khác chạy"),
+    EXPORT_FORMAT_INVALID("EXPORT_FORMAT_INVALID", "Định dạng xuất file không được hỗ trợ"),
+    FX_RATE_NOT_FOUND("FX_RATE_NOT_FOUND", "Chưa có tỷ giá cho loại tiền này"),
+    FX_RATE_IMPORT_INVALID("FX_RATE_IMPORT_INVALID", "Dữ liệu tỷ giá không hợp lệ"),
+
+    // Dashboard
+    TREND_PERIOD_INVALID("TREND_PERIOD_INVALID", "Chu kỳ thống kê không hợp lệ"),
+    TREND_RANGE_INVALID("TREND_RANGE_INVALID", "Khoảng thời gian thống kê không hợp lệ"),
+
+    // Bảo trì
+    PARTITIONING_DISABLED("PARTITIONING_DISABLED", "Chưa bật phân vùng bảng giao dịch"),
 
     // Category
     CATEGORY_NOT_FOUND("CATEGORY_NOT_FOUND", "Không tìm thấy danh mục"),
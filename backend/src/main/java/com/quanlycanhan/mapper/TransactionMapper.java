@@ -1,8 +1,11 @@
 package com.quanlycanhan.mapper;
 
+import com.quanlycanhan.dto.response.CursorPageResponse;
+import com.quanlycanhan.dto.response.SliceResponse;
 import com.quanlycanhan.dto.response.TransactionResponseDTO;
 import com.quanlycanhan.entity.Transaction;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -78,5 +81,29 @@ public class TransactionMapper {
                 transactionPage.getTotalElements()
         );
     }
-}
 
+    /**
+     * Convert CursorPageResponse<Transaction> sang CursorPageResponse<TransactionResponseDTO>
+     */
+    public CursorPageResponse<TransactionResponseDTO> toDTOCursorPage(CursorPageResponse<Transaction> cursorPage) {
+        if (cursorPage == null) {
+            return null;
+        }
+        return cursorPage.map(this::toDTO);
+    }
+
+    /**
+     * Convert Slice<Transaction> sang SliceResponse<TransactionResponseDTO> (không có tổng số bản ghi)
+     */
+    public SliceResponse<TransactionResponseDTO> toDTOSlice(Slice<Transaction> transactionSlice) {
+        if (transactionSlice == null) {
+            return null;
+        }
+        return SliceResponse.<TransactionResponseDTO>builder()
+                .content(toDTOList(transactionSlice.getContent()))
+                .number(transactionSlice.getNumber())
+                .size(transactionSlice.getSize())
+                .hasNext(transactionSlice.hasNext())
+                .build();
+    }
+}
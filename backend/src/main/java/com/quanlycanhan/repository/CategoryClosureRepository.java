@@ -0,0 +1,60 @@
+package com.quanlycanhan.repository;
+
+import com.quanlycanhan.entity.CategoryClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository cho bảng closure của cây danh mục
+ * - Thêm danh mục mới vào cây, chuyển cả nhánh sang cha khác
+ * - Tra danh sách hậu duệ của một danh mục
+ */
+@Repository
+public interface CategoryClosureRepository extends JpaRepository<CategoryClosure, CategoryClosure.Key> {
+
+    /**
+     * Id của danh mục và mọi hậu duệ (cả nhánh)
+     */
+    @Query("SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId")
+    List<Long> findSubtreeIds(@Param("categoryId") Long categoryId);
+
+    /**
+     * Kiểm tra descendantId có nằm trong nhánh của ancestorId (kể cả chính nó)
+     */
+    boolean existsByAncestorIdAndDescendantId(Long ancestorId, Long descendantId);
+
+    /**
+     * Thêm danh mục mới: dòng tự tham chiếu + 1 dòng cho mỗi tổ tiên của cha (parentId null = danh mục gốc)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+                   "SELECT :categoryId, :categoryId, 0 " +
+                   "UNION ALL " +
+                   "SELECT ancestor_id, :categoryId, depth + 1 FROM category_closure WHERE descendant_id = :parentId",
+           nativeQuery = true)
+    int insertNode(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    /**
+     * Tách nhánh khỏi các tổ tiên cũ (giữ quan hệ bên trong nhánh)
+     */
+    @Modifying
+    @Query("DELETE FROM CategoryClosure cc WHERE cc.descendantId IN :subtreeIds AND cc.ancestorId NOT IN :subtreeIds")
+    int detachSubtree(@Param("subtreeIds") Collection<Long> subtreeIds);
+
+    /**
+     * Gắn cả nhánh của categoryId dưới parentId: mọi tổ tiên của cha x mọi nút trong nhánh
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+                   "SELECT a.ancestor_id, s.descendant_id, a.depth + s.depth + 1 " +
+                   "FROM category_closure a JOIN category_closure s ON s.ancestor_id = :categoryId " +
+                   "WHERE a.descendant_id = :parentId",
+           nativeQuery = true)
+    int attachSubtree(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+}
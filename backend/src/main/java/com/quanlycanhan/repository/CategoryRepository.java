@@ -2,6 +2,7 @@ package com.quanlycanhan.repository;
 
 import com.quanlycanhan.entity.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -50,6 +51,36 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
            "AND c.deleted = false")
     boolean existsByIdAndUserOrSystemDefault(@Param("categoryId") Long categoryId, @Param("userId") Long userId);
 
+    /**
+     * Lấy các danh mục trong danh sách id mà user được dùng (của user hoặc hệ thống) - 1 query cho cả lô
+     */
+    @Query("SELECT c FROM Category c WHERE c.id IN :categoryIds " +
+           "AND (c.user.id = :userId OR c.systemDefault = true) " +
+           "AND c.deleted = false")
+    List<Category> findAccessibleByIds(@Param("categoryIds") java.util.Collection<Long> categoryIds,
+                                       @Param("userId") Long userId);
+
+    /**
+     * Dữ liệu cho CategoryDirectory: danh mục của user + hệ thống, kể cả đã xóa mềm
+     * [id, name, icon, color, type, parentId, systemDefault, deleted, sortOrder]
+     */
+    @Query("SELECT c.id, c.name, c.icon, c.color, c.type, p.id, c.systemDefault, c.deleted, c.sortOrder " +
+           "FROM Category c LEFT JOIN c.parent p " +
+           "WHERE c.user.id = :userId OR c.systemDefault = true " +
+           "ORDER BY c.sortOrder ASC, c.name ASC")
+    List<Object[]> findDirectoryRows(@Param("userId") Long userId);
+
+    /**
+     * Xóa mềm cả nhánh (danh mục + mọi con cháu theo bảng closure) bằng 1 câu UPDATE
+     */
+    @Modifying
+    @Query("UPDATE Category c SET c.deleted = true, c.updatedAt = :now " +
+           "WHERE c.id IN (SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId) " +
+           "AND c.user.id = :userId AND c.deleted = false")
+    int softDeleteSubtree(@Param("categoryId") Long categoryId,
+                          @Param("userId") Long userId,
+                          @Param("now") java.time.LocalDateTime now);
+
     /**
      * Tìm các danh mục con của một danh mục cha
      */
@@ -0,0 +1,18 @@
+package com.quanlycanhan.repository;
+
+import com.quanlycanhan.entity.FxRate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository cho bảng tỷ giá (fx_rates) - bảng nhỏ, FxRateService nạp toàn bộ vào bộ nhớ
+ */
+@Repository
+public interface FxRateRepository extends JpaRepository<FxRate, Long> {
+
+    List<FxRate> findAllByOrderByCurrencyAscRateDateAsc();
+
+    List<FxRate> findByCurrencyOrderByRateDateAsc(String currency);
+}
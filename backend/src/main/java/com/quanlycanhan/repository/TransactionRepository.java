@@ -3,14 +3,21 @@ package com.quanlycanhan.repository;
 import java.time.LocalDate;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
 import com.quanlycanhan.entity.Transaction;
 
 /**
@@ -21,6 +28,15 @@ import com.quanlycanhan.entity.Transaction;
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
 
+    /**
+     * Constructor expression dùng chung cho các query trả thẳng TransactionResponseDTO
+     * (alias bắt buộc: t = Transaction, c = Category)
+     */
+    String DTO_PROJECTION = "new com.quanlycanhan.dto.response.TransactionResponseDTO(" +
+        "t.id, t.amount, t.currency, t.transactionDate, t.note, t.location, t.receiptImage, " +
+        "t.createdBy, t.createdByAdminId, t.createdAt, t.updatedAt, " +
+        "c.id, c.name, c.icon, c.color, c.type, c.description)";
+
     /**
      * Tìm tất cả giao dịch của user (phân trang) kèm category để tránh N+1 query.
      *
@@ -30,6 +46,12 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     @EntityGraph(attributePaths = "category")
     Page<Transaction> findByUserIdAndDeletedFalse(Long userId, Pageable pageable);
 
+    /**
+     * Giống findByUserIdAndDeletedFalse nhưng trả về Slice: chỉ query size + 1 dòng, không chạy COUNT(*).
+     */
+    @EntityGraph(attributePaths = "category")
+    Slice<Transaction> findSliceByUserIdAndDeletedFalse(Long userId, Pageable pageable);
+
     /**
      * Tìm giao dịch của user trong khoảng thời gian (không phân trang - for backward compatibility)
      * Kèm category để tránh N+1 query.
@@ -61,99 +83,179 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     );
 
     /**
-     * Tìm giao dịch của user theo danh mục, kèm category để tránh N+1 query
+     * Slice variant của findByUserIdAndDateRange (không COUNT)
      */
     @EntityGraph(attributePaths = "category")
-    Page<Transaction> findByUserIdAndCategoryIdAndDeletedFalse(
-        Long userId, Long categoryId, Pageable pageable
+    @Query("SELECT t FROM Transaction t WHERE t.user.id = :userId " +
+            "AND t.deleted = false " +
+            "AND t.transactionDate BETWEEN :startDate AND :endDate ")
+    Slice<Transaction> findSliceByUserIdAndDateRange(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate,
+        Pageable pageable
     );
 
     /**
-     * Tìm kiếm giao dịch của user (theo note, amount) kèm category để tránh N+1 query
+     * Danh sách giao dịch của user chiếu thẳng vào TransactionResponseDTO (không load entity).
+     * countQuery tách riêng để COUNT không phải JOIN category.
      */
-    @EntityGraph(attributePaths = "category")
-    @Query("SELECT t FROM Transaction t WHERE t.user.id = :userId " +
-            "AND t.deleted = false " +
-            "AND (:keyword IS NULL OR :keyword = '' OR " +
-            "LOWER(t.note) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "CAST(t.amount AS string) LIKE CONCAT('%', :keyword, '%'))")
-    Page<Transaction> searchTransactions(
+    @Query(value = "SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+                   "WHERE t.user.id = :userId AND t.deleted = false",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.user.id = :userId AND t.deleted = false")
+    Page<TransactionResponseDTO> findDtoByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Thùng rác: giao dịch đã xóa mềm (chưa bị chuyển sang bảng lưu trữ), chiếu thẳng vào DTO
+     */
+    @Query(value = "SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+                   "WHERE t.user.id = :userId AND t.deleted = true",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.user.id = :userId AND t.deleted = true")
+    Page<TransactionResponseDTO> findTrashDtoByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Slice variant của findDtoByUserId (không COUNT)
+     */
+    @Query("SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+           "WHERE t.user.id = :userId AND t.deleted = false")
+    Slice<TransactionResponseDTO> findDtoSliceByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Giao dịch của user trong khoảng thời gian, chiếu thẳng vào DTO
+     */
+    @Query(value = "SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+                   "WHERE t.user.id = :userId AND t.deleted = false " +
+                   "AND t.transactionDate BETWEEN :startDate AND :endDate",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.user.id = :userId AND t.deleted = false " +
+                        "AND t.transactionDate BETWEEN :startDate AND :endDate")
+    Page<TransactionResponseDTO> findDtoByUserIdAndDateRange(
         @Param("userId") Long userId,
-        @Param("keyword") String keyword,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate,
         Pageable pageable
     );
 
     /**
-     * Tính tổng chi của user trong khoảng thời gian
+     * Slice variant của findDtoByUserIdAndDateRange (không COUNT)
      */
-    @Query("SELECT COALESCE(SUM(t.amount), 0) FROM Transaction t " +
-           "WHERE t.user.id = :userId " +
-           "AND t.deleted = false " +
+    @Query("SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+           "WHERE t.user.id = :userId AND t.deleted = false " +
            "AND t.transactionDate BETWEEN :startDate AND :endDate")
-    Object getTotalAmountByUserIdAndDateRange(
+    Slice<TransactionResponseDTO> findDtoSliceByUserIdAndDateRange(
         @Param("userId") Long userId,
         @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
+        @Param("endDate") LocalDate endDate,
+        Pageable pageable
     );
 
-    @Query(value = "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = :userId AND deleted = 0 AND transaction_date BETWEEN :startDate AND :endDate", nativeQuery = true)
-    Object getTotalAmountByUserIdAndDateRangeNative(
+    /**
+     * Keyset pagination chiếu thẳng vào DTO (cùng điều kiện seek với findByUserIdAfterCursor)
+     */
+    @Query("SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+           "WHERE t.user.id = :userId AND t.deleted = false " +
+           "AND t.transactionDate BETWEEN :startDate AND :endDate " +
+           "AND t.transactionDate <= :cursorDate " +
+           "AND (t.transactionDate < :cursorDate OR t.id < :cursorId) " +
+           "ORDER BY t.transactionDate DESC, t.id DESC")
+    List<TransactionResponseDTO> findDtoByUserIdAfterCursor(
         @Param("userId") Long userId,
         @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
+        @Param("endDate") LocalDate endDate,
+        @Param("cursorDate") LocalDate cursorDate,
+        @Param("cursorId") Long cursorId,
+        Limit limit
     );
 
     /**
-     * Tính tổng chi của user theo danh mục trong khoảng thời gian
+     * Stream toàn bộ giao dịch trong khoảng thời gian (dạng DTO) cho export
+     * - fetch size + useCursorFetch=true (JDBC URL): MySQL trả từng lô 1000 dòng qua server-side cursor
+     *   thay vì nạp cả result set vào RAM
+     * - DTO nên persistence context không phình theo số dòng
+     * Phải gọi trong transaction và đóng stream sau khi dùng.
      */
-    @Query("SELECT t.category.id, COALESCE(SUM(t.amount), 0) FROM Transaction t " +
-           "WHERE t.user.id = :userId " +
-           "AND t.deleted = false " +
+    @QueryHints({
+        @QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT " + DTO_PROJECTION + " FROM Transaction t JOIN t.category c " +
+           "WHERE t.user.id = :userId AND t.deleted = false " +
            "AND t.transactionDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY t.category.id")
-    List<Object[]> getTotalAmountByCategory(
+           "ORDER BY t.transactionDate DESC, t.id DESC")
+    java.util.stream.Stream<TransactionResponseDTO> streamDtoByUserIdAndDateRange(
         @Param("userId") Long userId,
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate
     );
 
     /**
-     * Tính tổng theo danh mục nhưng chỉ lấy các danh mục có `type` tương ứng ("expense" hoặc "income").
+     * Keyset pagination: lấy giao dịch của user nằm "sau" cursor (transactionDate, id), sắp xếp giảm dần.
+     * Điều kiện {@code transactionDate <= :cursorDate} cho MySQL một range seek trên
+     * idx_transactions_user_deleted_date (InnoDB ngầm gắn id vào cuối index), nên trang thứ 500
+     * tốn chi phí như trang đầu tiên và không cần COUNT(*).
      */
-    @Query("SELECT t.category.id, COALESCE(SUM(t.amount), 0) FROM Transaction t " +
-           "WHERE t.user.id = :userId " +
+    @EntityGraph(attributePaths = "category")
+    @Query("SELECT t FROM Transaction t WHERE t.user.id = :userId " +
            "AND t.deleted = false " +
-           "AND t.category.type = :type " +
            "AND t.transactionDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY t.category.id")
-    List<Object[]> getTotalAmountByCategoryAndType(
+           "AND t.transactionDate <= :cursorDate " +
+           "AND (t.transactionDate < :cursorDate OR t.id < :cursorId) " +
+           "ORDER BY t.transactionDate DESC, t.id DESC")
+    List<Transaction> findByUserIdAfterCursor(
         @Param("userId") Long userId,
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate,
-        @Param("type") String type
+        @Param("cursorDate") LocalDate cursorDate,
+        @Param("cursorId") Long cursorId,
+        Limit limit
     );
 
     /**
-     * Tính tổng income / expense trong khoảng thời gian (tách theo category.type)
+     * Keyset pagination cho admin (tất cả users), seek trên idx_date (transaction_date, id).
      */
-    @Query("SELECT " +
-           "COALESCE(SUM(CASE WHEN t.category.type = 'income' THEN t.amount ELSE 0 END), 0), " +
-           "COALESCE(SUM(CASE WHEN t.category.type = 'expense' THEN t.amount ELSE 0 END), 0) " +
-           "FROM Transaction t " +
-           "WHERE t.user.id = :userId " +
-           "AND t.deleted = false " +
-           "AND t.transactionDate BETWEEN :startDate AND :endDate")
-    Object[] getIncomeAndExpenseTotals(
-        @Param("userId") Long userId,
+    @EntityGraph(attributePaths = "category")
+    @Query("SELECT t FROM Transaction t WHERE t.deleted = false " +
+           "AND t.transactionDate BETWEEN :startDate AND :endDate " +
+           "AND t.transactionDate <= :cursorDate " +
+           "AND (t.transactionDate < :cursorDate OR t.id < :cursorId) " +
+           "ORDER BY t.transactionDate DESC, t.id DESC")
+    List<Transaction> findAllAfterCursor(
         @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
+        @Param("endDate") LocalDate endDate,
+        @Param("cursorDate") LocalDate cursorDate,
+        @Param("cursorId") Long cursorId,
+        Limit limit
     );
 
+    /**
+     * Tìm giao dịch của user theo danh mục, kèm category để tránh N+1 query
+     */
+    @EntityGraph(attributePaths = "category")
+    Page<Transaction> findByUserIdAndCategoryIdAndDeletedFalse(
+        Long userId, Long categoryId, Pageable pageable
+    );
+
+    /**
+     * Load giao dịch theo danh sách id kèm category (bước 2 của tìm kiếm: id đã lọc + sắp xếp bằng FULLTEXT query)
+     */
+    @EntityGraph(attributePaths = "category")
+    @Query("SELECT t FROM Transaction t WHERE t.id IN :ids")
+    List<Transaction> findAllByIdInWithCategory(@Param("ids") java.util.Collection<Long> ids);
+
     /**
      * Đếm số giao dịch của user
      */
     long countByUserIdAndDeletedFalse(Long userId);
 
+    /**
+     * Giao dịch đã xóa mềm của user (để khôi phục), kèm category
+     */
+    @EntityGraph(attributePaths = "category")
+    @Query("SELECT t FROM Transaction t WHERE t.id = :id AND t.user.id = :userId AND t.deleted = true")
+    java.util.Optional<Transaction> findDeletedByIdAndUserId(
+        @Param("id") Long id,
+        @Param("userId") Long userId
+    );
+
     /**
      * Lấy giao dịch theo id + userId, kèm category để tránh N+1 và đảm bảo quyền sở hữu.
      */
@@ -165,80 +267,71 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     );
 
     /**
-     * Lấy tất cả giao dịch (admin) kèm category để tránh N+1 query.
+     * Lấy nhiều giao dịch của user theo id (cập nhật hàng loạt), kèm category
      */
     @EntityGraph(attributePaths = "category")
-    Page<Transaction> findAllByDeletedFalse(Pageable pageable);
+    @Query("SELECT t FROM Transaction t WHERE t.id IN :ids AND t.user.id = :userId AND t.deleted = false")
+    List<Transaction> findAllByIdInAndUserIdWithCategory(
+        @Param("ids") java.util.Collection<Long> ids,
+        @Param("userId") Long userId
+    );
 
     /**
-     * Tính tổng chi của user (tất cả thời gian)
+     * Soft delete mọi giao dịch chưa xóa trong các danh mục (xóa danh mục kèm giao dịch)
      */
-    @Query("SELECT COALESCE(SUM(t.amount), 0) FROM Transaction t WHERE t.user.id = :userId AND t.deleted = false")
-    Object getTotalAmountByUserId(@Param("userId") Long userId);
+    @Modifying
+    @Query("UPDATE Transaction t SET t.deleted = true, t.deletedAt = :now, t.updatedAt = :now " +
+           "WHERE t.category.id IN :categoryIds AND t.user.id = :userId AND t.deleted = false")
+    int softDeleteByCategoryIdsAndUserId(
+        @Param("categoryIds") java.util.Collection<Long> categoryIds,
+        @Param("userId") Long userId,
+        @Param("now") java.time.LocalDateTime now
+    );
 
-    @Query(value = "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = :userId AND deleted = 0", nativeQuery = true)
-    Object getTotalAmountByUserIdNative(@Param("userId") Long userId);
-    
     /**
-     * Tính tổng số tiền từ tất cả transactions (cho admin statistics)
+     * Chuyển mọi giao dịch chưa xóa trong các danh mục sang danh mục khác bằng 1 câu UPDATE
      */
-    @Query(value = "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE deleted = 0", nativeQuery = true)
-    Object getTotalAmountAllUsers();
+    @Modifying
+    @Query(value = "UPDATE transactions SET category_id = :targetCategoryId, updated_at = :now " +
+                   "WHERE category_id IN (:categoryIds) AND user_id = :userId AND deleted = 0",
+           nativeQuery = true)
+    int reassignCategory(
+        @Param("categoryIds") java.util.Collection<Long> categoryIds,
+        @Param("targetCategoryId") Long targetCategoryId,
+        @Param("userId") Long userId,
+        @Param("now") java.time.LocalDateTime now
+    );
 
     /**
-     * Lấy danh sách user_id có giao dịch từ ngày given (cho AI cache pre-warm)
+     * Soft delete hàng loạt bằng 1 câu UPDATE
      */
-    @Query("SELECT DISTINCT t.user.id FROM Transaction t WHERE t.deleted = false AND t.transactionDate >= :since")
-    List<Long> findDistinctUserIdsWithTransactionsSince(@Param("since") LocalDate since);
+    @Modifying
+    @Query("UPDATE Transaction t SET t.deleted = true, t.deletedAt = :now, t.updatedAt = :now " +
+           "WHERE t.id IN :ids AND t.user.id = :userId AND t.deleted = false")
+    int softDeleteByIdsAndUserId(
+        @Param("ids") java.util.Collection<Long> ids,
+        @Param("userId") Long userId,
+        @Param("now") java.time.LocalDateTime now
+    );
 
     /**
-     * Aggregation for Monthly Statistics: [Year, Month, TotalIncome, TotalExpense]
+     * Lấy tất cả giao dịch (admin) kèm category để tránh N+1 query.
      */
-    @Query("SELECT YEAR(t.transactionDate), MONTH(t.transactionDate), " +
-           "SUM(CASE WHEN t.category.type = 'income' THEN t.amount ELSE 0 END), " +
-           "SUM(CASE WHEN t.category.type = 'expense' THEN t.amount ELSE 0 END), " +
-           "COUNT(t.id) " +
-           "FROM Transaction t " +
-           "WHERE t.user.id = :userId AND t.deleted = false " +
-           "AND t.transactionDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY YEAR(t.transactionDate), MONTH(t.transactionDate) " +
-           "ORDER BY YEAR(t.transactionDate) ASC, MONTH(t.transactionDate) ASC")
-    List<Object[]> getMonthlyStats(
-        @Param("userId") Long userId,
-        @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
-    );
+    @EntityGraph(attributePaths = "category")
+    Page<Transaction> findAllByDeletedFalse(Pageable pageable);
 
     /**
-     * Aggregation for Daily Statistics in a month: [Day, TotalIncome, TotalExpense]
+     * Tính tổng chi của user (tất cả thời gian, quy đổi VND)
      */
-    @Query("SELECT DAY(t.transactionDate), " +
-           "SUM(CASE WHEN t.category.type = 'income' THEN t.amount ELSE 0 END), " +
-           "SUM(CASE WHEN t.category.type = 'expense' THEN t.amount ELSE 0 END) " +
-           "FROM Transaction t " +
-           "WHERE t.user.id = :userId AND t.deleted = false " +
-           "AND t.transactionDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY DAY(t.transactionDate) " +
-           "ORDER BY DAY(t.transactionDate) ASC")
-    List<Object[]> getDailyStats(
-        @Param("userId") Long userId,
-        @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
-    );
+    @Query("SELECT COALESCE(SUM(t.baseAmount), 0) FROM Transaction t WHERE t.user.id = :userId AND t.deleted = false")
+    Object getTotalAmountByUserId(@Param("userId") Long userId);
 
+    @Query(value = "SELECT COALESCE(SUM(base_amount), 0) FROM transactions WHERE user_id = :userId AND deleted = 0", nativeQuery = true)
+    Object getTotalAmountByUserIdNative(@Param("userId") Long userId);
+    
     /**
-     * Aggregation for Category Distribution: [CategoryName, TotalAmount, CategoryType]
+     * Lấy danh sách user_id có giao dịch từ ngày given (cho AI cache pre-warm)
      */
-    @Query("SELECT t.category.name, SUM(t.amount), t.category.type " +
-           "FROM Transaction t " +
-           "WHERE t.user.id = :userId AND t.deleted = false " +
-           "AND t.transactionDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY t.category.id, t.category.name, t.category.type " +
-           "ORDER BY SUM(t.amount) DESC")
-    List<Object[]> getCategoryStats(
-        @Param("userId") Long userId,
-        @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
-    );
+    @Query("SELECT DISTINCT t.user.id FROM Transaction t WHERE t.deleted = false AND t.transactionDate >= :since")
+    List<Long> findDistinctUserIdsWithTransactionsSince(@Param("since") LocalDate since);
 }
-
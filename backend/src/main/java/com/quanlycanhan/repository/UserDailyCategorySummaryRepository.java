@@ -0,0 +1,245 @@
+package com.quanlycanhan.repository;
+
+import com.quanlycanhan.entity.UserDailyCategorySummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Repository cho bảng tổng hợp theo ngày (user_daily_category_summary)
+ * - Các query thống kê trả về cùng dạng dữ liệu với query cũ trên transactions
+ * - Dòng có txn_count = 0 (giao dịch đã bị xóa hết) được bỏ qua khi nhóm theo danh mục/ngày/tháng
+ */
+@Repository
+public interface UserDailyCategorySummaryRepository extends JpaRepository<UserDailyCategorySummary, Long> {
+
+    /**
+     * Tổng tiền của user trong khoảng thời gian
+     */
+    @Query("SELECT COALESCE(SUM(s.totalAmount), 0) FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate")
+    Object getTotalAmount(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Tổng tiền toàn hệ thống (admin statistics)
+     */
+    @Query("SELECT COALESCE(SUM(s.totalAmount), 0) FROM UserDailyCategorySummary s")
+    Object getTotalAmountAllUsers();
+
+    /**
+     * Tổng theo danh mục: [categoryId, sum]
+     */
+    @Query("SELECT s.categoryId, COALESCE(SUM(s.totalAmount), 0) FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY s.categoryId HAVING SUM(s.txnCount) > 0")
+    List<Object[]> getTotalAmountByCategory(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Tổng theo danh mục của một loại (expense/income): [categoryId, sum]
+     */
+    @Query("SELECT s.categoryId, COALESCE(SUM(s.totalAmount), 0) FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.type = :type AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY s.categoryId HAVING SUM(s.txnCount) > 0")
+    List<Object[]> getTotalAmountByCategoryAndType(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate,
+        @Param("type") String type
+    );
+
+    /**
+     * Tổng thu và tổng chi: [income, expense]
+     */
+    @Query("SELECT " +
+           "COALESCE(SUM(CASE WHEN s.type = 'income' THEN s.totalAmount ELSE 0 END), 0), " +
+           "COALESCE(SUM(CASE WHEN s.type = 'expense' THEN s.totalAmount ELSE 0 END), 0) " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate")
+    Object[] getIncomeAndExpenseTotals(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Thống kê theo tháng: [year, month, income, expense, count]
+     */
+    @Query("SELECT YEAR(s.summaryDate), MONTH(s.summaryDate), " +
+           "SUM(CASE WHEN s.type = 'income' THEN s.totalAmount ELSE 0 END), " +
+           "SUM(CASE WHEN s.type = 'expense' THEN s.totalAmount ELSE 0 END), " +
+           "SUM(s.txnCount) " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY YEAR(s.summaryDate), MONTH(s.summaryDate) " +
+           "HAVING SUM(s.txnCount) > 0 " +
+           "ORDER BY YEAR(s.summaryDate) ASC, MONTH(s.summaryDate) ASC")
+    List<Object[]> getMonthlyStats(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Tổng theo tháng và danh mục cho dự đoán: [year, month, categoryId, type, sum]
+     * (số dòng tỉ lệ với số tháng x số danh mục, không phụ thuộc số giao dịch)
+     */
+    @Query("SELECT YEAR(s.summaryDate), MONTH(s.summaryDate), s.categoryId, s.type, SUM(s.totalAmount) " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY YEAR(s.summaryDate), MONTH(s.summaryDate), s.categoryId, s.type " +
+           "HAVING SUM(s.txnCount) > 0")
+    List<Object[]> getMonthlyCategoryStats(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Thống kê theo ngày trong tháng: [day, income, expense]
+     */
+    @Query("SELECT DAY(s.summaryDate), " +
+           "SUM(CASE WHEN s.type = 'income' THEN s.totalAmount ELSE 0 END), " +
+           "SUM(CASE WHEN s.type = 'expense' THEN s.totalAmount ELSE 0 END) " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY DAY(s.summaryDate) " +
+           "HAVING SUM(s.txnCount) > 0 " +
+           "ORDER BY DAY(s.summaryDate) ASC")
+    List<Object[]> getDailyStats(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Chuỗi theo ngày cho biểu đồ xu hướng: [date, income, expense] (chỉ những ngày có dữ liệu)
+     */
+    @Query("SELECT s.summaryDate, " +
+           "SUM(CASE WHEN s.type = 'income' THEN s.totalAmount ELSE 0 END), " +
+           "SUM(CASE WHEN s.type = 'expense' THEN s.totalAmount ELSE 0 END) " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY s.summaryDate " +
+           "ORDER BY s.summaryDate ASC")
+    List<Object[]> getDailySeries(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Phân bổ theo danh mục: [categoryId, sum, type] (tên ghép qua CategoryDirectory)
+     */
+    @Query("SELECT s.categoryId, SUM(s.totalAmount), s.type " +
+           "FROM UserDailyCategorySummary s " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY s.categoryId, s.type " +
+           "HAVING SUM(s.txnCount) > 0 " +
+           "ORDER BY SUM(s.totalAmount) DESC")
+    List<Object[]> getCategoryStats(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Tổng theo cả nhánh danh mục: [ancestorId, sum] - mỗi danh mục cộng cả các danh mục con cháu
+     */
+    @Query("SELECT cc.ancestorId, COALESCE(SUM(s.totalAmount), 0) " +
+           "FROM UserDailyCategorySummary s JOIN CategoryClosure cc ON cc.descendantId = s.categoryId " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY cc.ancestorId HAVING SUM(s.txnCount) > 0")
+    List<Object[]> getSubtreeTotals(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Tổng theo cả nhánh danh mục của một loại: [ancestorId, sum]
+     */
+    @Query("SELECT cc.ancestorId, COALESCE(SUM(s.totalAmount), 0) " +
+           "FROM UserDailyCategorySummary s JOIN CategoryClosure cc ON cc.descendantId = s.categoryId " +
+           "WHERE s.userId = :userId AND s.type = :type AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY cc.ancestorId HAVING SUM(s.txnCount) > 0")
+    List<Object[]> getSubtreeTotalsByType(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate,
+        @Param("type") String type
+    );
+
+    /**
+     * Phân bổ theo cả nhánh danh mục: [ancestorId, sum, type]
+     */
+    @Query("SELECT cc.ancestorId, SUM(s.totalAmount), s.type " +
+           "FROM UserDailyCategorySummary s JOIN CategoryClosure cc ON cc.descendantId = s.categoryId " +
+           "WHERE s.userId = :userId AND s.summaryDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY cc.ancestorId, s.type " +
+           "HAVING SUM(s.txnCount) > 0 " +
+           "ORDER BY SUM(s.totalAmount) DESC")
+    List<Object[]> getSubtreeCategoryStats(
+        @Param("userId") Long userId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+
+    /**
+     * Đồng bộ loại khi danh mục đổi expense <-> income
+     */
+    @Modifying
+    @Query("UPDATE UserDailyCategorySummary s SET s.type = :type WHERE s.categoryId = :categoryId AND s.type <> :type")
+    int updateTypeByCategoryId(@Param("categoryId") Long categoryId, @Param("type") String type);
+
+    /**
+     * Xóa toàn bộ dòng tổng hợp của user (trước khi dựng lại)
+     */
+    @Modifying
+    @Query("DELETE FROM UserDailyCategorySummary s WHERE s.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+
+    /**
+     * Xóa dòng tổng hợp của các danh mục (giao dịch trong các danh mục này đã bị xóa hết)
+     */
+    @Modifying
+    @Query("DELETE FROM UserDailyCategorySummary s WHERE s.userId = :userId AND s.categoryId IN :categoryIds")
+    int deleteByUserIdAndCategoryIds(
+        @Param("userId") Long userId,
+        @Param("categoryIds") java.util.Collection<Long> categoryIds
+    );
+
+    /**
+     * Dựng lại tổng hợp của user từ transactions bằng 1 câu INSERT ... SELECT GROUP BY
+     * Tổng theo base_amount (VND); giao dịch ngoại tệ chưa có tỷ giá (NULL) chưa được tính cả tổng lẫn số lượng
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_daily_category_summary " +
+                   "(user_id, summary_date, category_id, type, total_amount, txn_count, updated_at) " +
+                   "SELECT t.user_id, t.transaction_date, t.category_id, c.type, COALESCE(SUM(t.base_amount), 0), COUNT(*), NOW() " +
+                   "FROM transactions t JOIN categories c ON c.id = t.category_id " +
+                   "WHERE t.user_id = :userId AND t.deleted = 0 AND t.base_amount IS NOT NULL " +
+                   "GROUP BY t.user_id, t.transaction_date, t.category_id, c.type",
+           nativeQuery = true)
+    int insertAggregatesForUser(@Param("userId") Long userId);
+
+    /**
+     * User có giao dịch nhưng chưa có dòng tổng hợp nào (dữ liệu trước V5)
+     */
+    @Query(value = "SELECT DISTINCT t.user_id FROM transactions t WHERE t.deleted = 0 " +
+                   "AND NOT EXISTS (SELECT 1 FROM user_daily_category_summary s WHERE s.user_id = t.user_id)",
+           nativeQuery = true)
+    List<Long> findUserIdsWithoutSummary();
+}
@@ -2,7 +2,9 @@ package com.quanlycanhan.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -10,6 +12,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.quanlycanhan.controller.AdminController;
+import com.quanlycanhan.dto.response.CursorPageResponse;
 import com.quanlycanhan.entity.AdminActivityLog;
 import com.quanlycanhan.entity.Transaction;
 import com.quanlycanhan.entity.User;
@@ -17,7 +20,10 @@ import com.quanlycanhan.exception.BusinessException;
 import com.quanlycanhan.exception.ErrorCode;
 import com.quanlycanhan.repository.AdminActivityLogRepository;
 import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
 import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.util.Money;
+import com.quanlycanhan.util.TransactionCursor;
 
 import lombok.RequiredArgsConstructor;
 
@@ -34,6 +40,8 @@ public class AdminService {
     public final TransactionRepository transactionRepository;
     private final AdminActivityLogRepository adminActivityLogRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TransactionSearchService transactionSearchService;
+    private final UserDailyCategorySummaryRepository summaryRepository;
 
     /**
      * Tìm kiếm users
@@ -112,21 +120,13 @@ public class AdminService {
         long activeUsers = userRepository.countByStatus(User.UserStatus.ACTIVE);
         long totalTransactions = transactionRepository.count();
 
-        // Tính tổng số tiền từ tất cả transactions
-        Object totalAmountRaw = transactionRepository.getTotalAmountAllUsers();
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        if (totalAmountRaw != null) {
-            if (totalAmountRaw instanceof BigDecimal) {
-                totalAmount = (BigDecimal) totalAmountRaw;
-            } else if (totalAmountRaw instanceof Number) {
-                totalAmount = BigDecimal.valueOf(((Number) totalAmountRaw).doubleValue());
-            } else {
-                try {
-                    totalAmount = new BigDecimal(totalAmountRaw.toString());
-                } catch (Exception e) {
-                    totalAmount = BigDecimal.ZERO;
-                }
-            }
+        // Tính tổng số tiền từ bảng tổng hợp theo ngày
+        Object totalAmountRaw = summaryRepository.getTotalAmountAllUsers();
+        BigDecimal totalAmount;
+        try {
+            totalAmount = Money.decimalOf(totalAmountRaw);
+        } catch (NumberFormatException e) {
+            totalAmount = BigDecimal.ZERO;
         }
 
         return AdminController.SystemStatistics.builder()
@@ -150,7 +150,7 @@ public class AdminService {
         if (userId != null) {
             // Lấy transactions của user cụ thể
             if (keyword != null && !keyword.trim().isEmpty()) {
-                transactions = transactionRepository.searchTransactions(userId, keyword, pageable);
+                transactions = transactionSearchService.search(userId, keyword, null, null, pageable);
             } else if (startDate != null || endDate != null) {
                 LocalDate start = startDate != null ? startDate : LocalDate.of(1970, 1, 1);
                 LocalDate end = endDate != null ? endDate : LocalDate.now();
@@ -168,6 +168,30 @@ public class AdminService {
         return transactions;
     }
 
+    /**
+     * Lấy transactions theo keyset (cursor) pagination (admin xem tất cả users hoặc 1 user)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public CursorPageResponse<Transaction> getAllTransactionsByCursor(Long userId,
+            LocalDate startDate,
+            LocalDate endDate,
+            String cursor,
+            int size) {
+        TransactionCursor position = TransactionCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(size, TransactionService.MAX_CURSOR_PAGE_SIZE));
+        LocalDate start = startDate != null ? startDate : TransactionService.MIN_DATE;
+        LocalDate end = endDate != null ? endDate : TransactionService.MAX_DATE;
+
+        List<Transaction> rows = userId != null
+            ? transactionRepository.findByUserIdAfterCursor(userId, start, end,
+                position.transactionDate(), position.id(), Limit.of(pageSize + 1))
+            : transactionRepository.findAllAfterCursor(start, end,
+                position.transactionDate(), position.id(), Limit.of(pageSize + 1));
+
+        return CursorPageResponse.fromOverfetch(rows, pageSize,
+            t -> new TransactionCursor(t.getTransactionDate(), t.getId()).encode());
+    }
+
     /**
      * Log hoạt động admin
      */
@@ -1,20 +1,52 @@
 package com.quanlycanhan.service;
 
-import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Pre-warm cache AI Prediction - Chạy nền mỗi giờ
- * Giảm tải khi user request vì kết quả đã được cache sẵn
+ * - Chỉ tính lại user có sự kiện trong transaction_outbox từ lần chạy trước (mọi đường ghi đều có sự kiện: giao dịch,
+ *   xóa danh mục, tính lại tỷ giá); mốc lưu trong Redis, dùng chung giữa các node
+ * - Mỗi lượt chỉ một node chạy (lock Redis SET NX PX, như lease của SingleFlightCache); node khác bỏ lượt
+ * - Tính thẳng (computeNextMonth) rồi put vào cache: đi qua predictNextMonth thì SWR trả ngay bản cũ hết tươi và
+ *   đẩy việc tính sang executor làm mới nền của cache, warmer không thực sự tính gì
+ * - User có sự kiện mới trong lúc đang tính thì không put (kết quả có thể đã cũ, evict của sự kiện đó có thể đã chạy);
+ *   lượt sau sẽ tính lại user này
+ * - User tính lỗi: mốc chỉ tiến tới ngay trước thay đổi đầu tiên của user lỗi sớm nhất, lượt sau thử lại
+ * - User đăng nhập gần đây được làm nóng trước
+ * - Chạy trên virtual thread, tối đa app.ai-prediction.cache-warm-concurrency user cùng lúc để giới hạn kết nối DB
+ * - Metric: ai.prediction.warm.users (result=warmed/failed/superseded),
+ *   ai.prediction.warm.throughput (user/giây của lần chạy cuối)
  */
 @Slf4j
 @Service
@@ -22,43 +54,179 @@ import java.util.List;
 @ConditionalOnProperty(name = "app.ai-prediction.cache-warm-enabled", havingValue = "true", matchIfMissing = false)
 public class AiPredictionCacheWarmer {
 
+    static final String WATERMARK_KEY = "ai-prediction:warm:watermark";
+    static final String LOCK_KEY = "ai-prediction:warm:lock";
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0", Long.class);
+
     private final AiPredictionService aiPredictionService;
-    private final TransactionRepository transactionRepository;
+    private final TransactionOutbox transactionOutbox;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final CacheManager cacheManager;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.ai-prediction.cache-warm-concurrency:4}")
+    private int concurrency = 4;
+
+    /**
+     * Lần chạy đầu (chưa có mốc): xét thay đổi trong khoảng này
+     */
+    @Value("${app.ai-prediction.cache-warm-initial-lookback-minutes:60}")
+    private long initialLookbackMinutes = 60;
 
-    @Value("${app.ai-prediction.cache-warm-limit:100}")
-    private int maxUsersPerRun;
+    /**
+     * Lùi mốc một đoạn để không sót thay đổi do lệch giờ giữa app và DB (created_at = NOW(3) của DB)
+     * và transaction commit muộn
+     */
+    @Value("${app.ai-prediction.cache-warm-overlap-seconds:120}")
+    private long overlapSeconds = 120;
 
     /**
-     * Chạy mỗi giờ - pre-warm cache cho users có giao dịch gần đây
+     * Hạn lock giữa các node; nên ngắn hơn chu kỳ cron để node chết giữa chừng không chặn lượt sau
+     */
+    @Value("${app.ai-prediction.cache-warm-lock-ms:3300000}")
+    private long lockMs = 3300000;
+
+    private Counter warmedCounter;
+    private Counter failedCounter;
+    private Counter supersededCounter;
+    private volatile double lastThroughput;
+
+    /**
+     * Kết quả một lần làm nóng
+     */
+    record WarmRun(int users, int warmed, int failed, long elapsedMs, Set<Long> failedUserIds) {
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        warmedCounter = meterRegistry.counter("ai.prediction.warm.users", "result", "warmed");
+        failedCounter = meterRegistry.counter("ai.prediction.warm.users", "result", "failed");
+        supersededCounter = meterRegistry.counter("ai.prediction.warm.users", "result", "superseded");
+        Gauge.builder("ai.prediction.warm.throughput", this, warmer -> warmer.lastThroughput)
+            .baseUnit("users/s")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Chạy mỗi giờ - pre-warm cache cho users có dữ liệu thay đổi
      */
     @Scheduled(cron = "${app.ai-prediction.cache-warm-cron:0 0 * * * *}")
     @Async
     public void warmCache() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("AI cache warm: previous run still in progress");
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        boolean locked = false;
         try {
-            LocalDate since = LocalDate.now().minusMonths(6);
-            List<Long> userIds = transactionRepository.findDistinctUserIdsWithTransactionsSince(since);
-
-            if (userIds.isEmpty()) {
-                log.debug("AI cache warm: No users with recent transactions");
+            locked = Boolean.TRUE.equals(
+                redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, Duration.ofMillis(lockMs)));
+            if (!locked) {
+                log.debug("AI cache warm: another node is running");
                 return;
             }
+            LocalDateTime startedAt = LocalDateTime.now();
+            LocalDateTime since = readWatermark(startedAt).minusSeconds(overlapSeconds);
+            List<TransactionOutbox.ChangedUser> changed = transactionOutbox.findUsersChangedSince(since);
 
-            int limit = Math.min(userIds.size(), maxUsersPerRun);
-            int warmed = 0;
+            LocalDateTime watermark = startedAt;
+            if (changed.isEmpty()) {
+                log.debug("AI cache warm: No users changed since {}", since);
+            } else {
+                WarmRun run = warm(changed.stream().map(TransactionOutbox.ChangedUser::userId).toList());
+                log.info("AI prediction cache warmed {}/{} changed users in {} ms ({} failed, {} users/s)",
+                    run.warmed(), run.users(), run.elapsedMs(), run.failed(), String.format("%.1f", lastThroughput));
+                for (TransactionOutbox.ChangedUser user : changed) {
+                    if (run.failedUserIds().contains(user.userId()) && user.firstChangedAt().isBefore(watermark)) {
+                        watermark = user.firstChangedAt().minusNanos(1_000_000);
+                    }
+                }
+            }
+            writeWatermark(watermark);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("AI cache warm error", e);
+        } finally {
+            if (locked) {
+                releaseLock(token);
+            }
+            running.set(false);
+        }
+    }
 
-            for (int i = 0; i < limit; i++) {
+    /**
+     * Tính lại dự đoán theo thứ tự danh sách (đã xếp theo đăng nhập gần nhất), tối đa concurrency user cùng lúc
+     */
+    WarmRun warm(List<Long> userIds) throws InterruptedException {
+        Cache cache = cacheManager.getCache("aiPrediction");
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicInteger warmed = new AtomicInteger();
+        Set<Long> failed = ConcurrentHashMap.newKeySet();
+        long start = System.nanoTime();
+        for (Long userId : userIds) {
+            permits.acquire();
+            executor.execute(() -> {
                 try {
-                    aiPredictionService.predictNextMonth(userIds.get(i));
-                    warmed++;
+                    long before = transactionOutbox.lastEventId(userId);
+                    AiPredictionService.PredictionResult result = aiPredictionService.computeNextMonth(userId);
+                    if (transactionOutbox.lastEventId(userId) != before) {
+                        supersededCounter.increment();
+                        log.debug("AI cache warm: user {} changed while computing, not caching", userId);
+                        return;
+                    }
+                    if (cache != null) {
+                        cache.put(userId, result);
+                    }
+                    warmed.incrementAndGet();
+                    warmedCounter.increment();
                 } catch (Exception e) {
-                    log.warn("AI cache warm failed for user {}: {}", userIds.get(i), e.getMessage());
+                    failed.add(userId);
+                    failedCounter.increment();
+                    log.warn("AI cache warm failed for user {}: {}", userId, e.getMessage());
+                } finally {
+                    permits.release();
                 }
-            }
+            });
+        }
+        // Chờ các user đang chạy xong
+        permits.acquire(concurrency);
+        permits.release(concurrency);
 
-            log.info("AI prediction cache warmed for {}/{} users", warmed, userIds.size());
-        } catch (Exception e) {
-            log.error("AI cache warm error", e);
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        lastThroughput = warmed.get() * 1e9 / elapsedNanos;
+        return new WarmRun(userIds.size(), warmed.get(), failed.size(), elapsedNanos / 1_000_000, Set.copyOf(failed));
+    }
+
+    private void releaseLock(String token) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(LOCK_KEY), token);
+        } catch (RuntimeException e) {
+            log.debug("Could not release AI cache warm lock: {}", e.getMessage());
         }
     }
-}
 
+    private LocalDateTime readWatermark(LocalDateTime now) {
+        String value = redisTemplate.opsForValue().get(WATERMARK_KEY);
+        if (value == null) {
+            return now.minusMinutes(initialLookbackMinutes);
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneId.systemDefault());
+    }
+
+    private void writeWatermark(LocalDateTime startedAt) {
+        long epochMilli = startedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        redisTemplate.opsForValue().set(WATERMARK_KEY, Long.toString(epochMilli));
+    }
+}
@@ -0,0 +1,40 @@
+package com.quanlycanhan.service;
+
+import java.util.List;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.service.outbox.TransactionChangeEvent;
+import com.quanlycanhan.service.outbox.TransactionChangeListener;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Bỏ cache aiPrediction của user có giao dịch thay đổi, theo sự kiện outbox
+ * (thay cho @CacheEvict trên từng hàm ghi giao dịch; dự đoán có thể cũ thêm tối đa 1 chu kỳ poll sau khi ghi)
+ */
+@Service
+@RequiredArgsConstructor
+public class AiPredictionOutboxListener implements TransactionChangeListener {
+
+    private final CacheManager cacheManager;
+
+    @Override
+    public String consumerName() {
+        return "ai-prediction-cache";
+    }
+
+    @Override
+    public void onEvents(List<TransactionChangeEvent> events) {
+        Cache cache = cacheManager.getCache("aiPrediction");
+        if (cache == null) {
+            return;
+        }
+        events.stream()
+            .map(TransactionChangeEvent::userId)
+            .distinct()
+            .forEach(cache::evict);
+    }
+}
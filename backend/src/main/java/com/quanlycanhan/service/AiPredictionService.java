@@ -1,233 +1,200 @@
 package com.quanlycanhan.service;
 
-import com.quanlycanhan.entity.Transaction;
-import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+import com.quanlycanhan.service.forecast.MonthlyForecaster;
+import com.quanlycanhan.util.Money;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service AI dự đoán chi tiêu
- * - Dự đoán chi tiêu tháng tới dựa trên dữ liệu 3-6 tháng gần nhất
- * - Sử dụng EMA (Exponential Moving Average) và Linear Regression đơn giản
+ * - Đọc tổng theo tháng x danh mục từ bảng tổng hợp (GROUP BY), không load giao dịch: chi phí chỉ phụ thuộc
+ *   số tháng và số danh mục
+ * - Dự đoán riêng thu, chi và từng danh mục cho tháng tới, kèm khoảng dự đoán 90% (MonthlyForecaster:
+ *   EMA + Linear Regression, thêm Holt-Winters theo mùa khi đủ 24 tháng)
+ * - Chỉ dùng các tháng đã kết thúc; tháng đang chạy chưa đủ số liệu nên không đưa vào chuỗi
  */
 @Service
 @RequiredArgsConstructor
 public class AiPredictionService {
 
-    private final TransactionRepository transactionRepository;
+    private final UserDailyCategorySummaryRepository summaryRepository;
+    private final CategoryDirectory categoryDirectory;
 
     /**
-     * Dự đoán chi tiêu tháng tới
-     * - Phân tích dữ liệu 6 tháng gần nhất
-     * - Tính EMA và Linear Regression
-     * - Cache 1 giờ để giảm tải khi data lớn
+     * Số tháng lịch sử đọc lên (>= 24 để Holt-Winters có 2 chu kỳ)
      */
-    @Cacheable(value = "aiPrediction", key = "#userId")
+    @Value("${app.ai-prediction.history-months:24}")
+    private int historyMonths = 24;
+
+    /**
+     * Dự đoán thu/chi tháng tới
+     * - predictedAmount: tổng chi dự đoán (giữ cho client cũ)
+     * - Cache 1 giờ để giảm tải khi data lớn; sync: chỉ 1 lần tính cho mỗi user khi cache trống,
+     *   quá 30 phút thì trả bản cũ và tính lại nền (SingleFlightCache)
+     */
+    @Cacheable(value = "aiPrediction", key = "#userId", sync = true)
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public PredictionResult predictNextMonth(Long userId) {
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate = endDate.minusMonths(6);
+        return computeNextMonth(userId);
+    }
 
-        // Lấy dữ liệu 6 tháng gần nhất
-        List<Transaction> transactions = transactionRepository.findByUserIdAndDateRange(
-            userId, startDate, endDate
-        );
+    /**
+     * Tính dự đoán không qua cache (AiPredictionCacheWarmer tính rồi tự put vào cache aiPrediction)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public PredictionResult computeNextMonth(Long userId) {
+        YearMonth current = YearMonth.now();
+        YearMonth lastComplete = current.minusMonths(1);
+        YearMonth firstMonth = current.minusMonths(historyMonths);
+        YearMonth target = current.plusMonths(1);
+        int horizon = (int) lastComplete.until(target, ChronoUnit.MONTHS);
+
+        List<Object[]> rows = summaryRepository.getMonthlyCategoryStats(
+            userId, firstMonth.atDay(1), lastComplete.atEndOfMonth());
+
+        long[] income = new long[historyMonths];
+        long[] expense = new long[historyMonths];
+        Map<Long, long[]> categorySeries = new LinkedHashMap<>();
+        Map<Long, String> categoryTypes = new HashMap<>();
+        int firstActive = historyMonths;
+        for (Object[] row : rows) {
+            YearMonth month = YearMonth.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue());
+            int i = (int) firstMonth.until(month, ChronoUnit.MONTHS);
+            if (i < 0 || i >= historyMonths) {
+                continue;
+            }
+            Long categoryId = ((Number) row[2]).longValue();
+            String type = (String) row[3];
+            long amount = Money.minorOf(row[4]);
+            long[] totals = "income".equals(type) ? income : expense;
+            totals[i] = Money.add(totals[i], amount);
+            long[] series = categorySeries.computeIfAbsent(categoryId, id -> new long[historyMonths]);
+            series[i] = Money.add(series[i], amount);
+            categoryTypes.put(categoryId, type);
+            firstActive = Math.min(firstActive, i);
+        }
 
-        if (transactions.isEmpty()) {
+        if (firstActive == historyMonths) {
             return PredictionResult.builder()
                 .predictedAmount(BigDecimal.ZERO)
                 .confidence(0.0)
                 .message("Chưa có đủ dữ liệu để dự đoán")
+                .targetMonth(target.toString())
+                .historyMonths(0)
+                .categories(List.of())
                 .build();
         }
 
-        // Tính tổng chi theo tháng
-        List<MonthlyTotal> monthlyTotals = calculateMonthlyTotals(transactions, startDate, endDate);
-
-        if (monthlyTotals.size() < 3) {
-            return PredictionResult.builder()
-                .predictedAmount(monthlyTotals.get(monthlyTotals.size() - 1).getTotal())
-                .confidence(0.5)
-                .message("Dữ liệu chưa đủ, dự đoán dựa trên tháng gần nhất")
-                .build();
+        // Bỏ các tháng trước khi user bắt đầu ghi chép (không phải tháng chi 0 đồng)
+        long[] expenseSeries = Arrays.copyOfRange(expense, firstActive, historyMonths);
+        long[] incomeSeries = Arrays.copyOfRange(income, firstActive, historyMonths);
+        MonthlyForecaster.Forecast expenseForecast = MonthlyForecaster.forecast(expenseSeries, horizon);
+        MonthlyForecaster.Forecast incomeForecast = MonthlyForecaster.forecast(incomeSeries, horizon);
+
+        CategoryDirectory.Snapshot directory = categoryDirectory.get(userId);
+        List<CategoryForecast> categories = new ArrayList<>(categorySeries.size());
+        for (Map.Entry<Long, long[]> entry : categorySeries.entrySet()) {
+            MonthlyForecaster.Forecast forecast = MonthlyForecaster.forecast(
+                Arrays.copyOfRange(entry.getValue(), firstActive, historyMonths), horizon);
+            if (forecast.upper() == 0) {
+                continue;
+            }
+            CategoryDirectory.Entry category = directory.get(entry.getKey());
+            categories.add(CategoryForecast.builder()
+                .categoryId(entry.getKey())
+                .categoryName(category != null ? category.name() : null)
+                .type(categoryTypes.get(entry.getKey()))
+                .forecast(toForecastRange(forecast))
+                .build());
         }
-
-        // Tính EMA (Exponential Moving Average)
-        BigDecimal emaPrediction = calculateEMA(monthlyTotals);
-
-        // Tính Linear Regression
-        BigDecimal lrPrediction = calculateLinearRegression(monthlyTotals);
-
-        // Kết hợp EMA và Linear Regression (trung bình có trọng số)
-        BigDecimal predictedAmount = emaPrediction.multiply(BigDecimal.valueOf(0.6))
-            .add(lrPrediction.multiply(BigDecimal.valueOf(0.4)));
-
-        // Tính độ tin cậy (confidence) dựa trên độ ổn định của dữ liệu
-        double confidence = calculateConfidence(monthlyTotals);
-
+        categories.sort(Comparator.comparing(CategoryForecast::getType)
+            .thenComparing(c -> c.getForecast().getPredicted(), Comparator.reverseOrder()));
+
+        int months = expenseSeries.length;
+        String message = months < 3
+            ? "Dữ liệu chưa đủ, dự đoán dựa trên tháng gần nhất"
+            : "Dự đoán dựa trên dữ liệu " + months + " tháng gần nhất"
+                + (expenseForecast.method().startsWith("HOLT_WINTERS") ? " (có tính mùa vụ)" : "");
         return PredictionResult.builder()
-            .predictedAmount(predictedAmount.setScale(2, RoundingMode.HALF_UP))
-            .confidence(confidence)
-            .message("Dự đoán dựa trên dữ liệu " + monthlyTotals.size() + " tháng gần nhất")
-            .trend(calculateTrend(monthlyTotals))
+            .predictedAmount(Money.toBigDecimal(expenseForecast.predicted()))
+            .confidence(months < 3 ? 0.5 : MonthlyForecaster.confidence(expenseSeries))
+            .message(message)
+            .trend(MonthlyForecaster.trend(expenseSeries))
+            .targetMonth(target.toString())
+            .historyMonths(months)
+            .expense(toForecastRange(expenseForecast))
+            .income(toForecastRange(incomeForecast))
+            .categories(categories)
             .build();
     }
 
-    /**
-     * Tính tổng chi theo tháng
-     */
-    private List<MonthlyTotal> calculateMonthlyTotals(List<Transaction> transactions,
-                                                      LocalDate startDate, LocalDate endDate) {
-        List<MonthlyTotal> monthlyTotals = new ArrayList<>();
-        LocalDate current = startDate.withDayOfMonth(1);
-
-        while (!current.isAfter(endDate)) {
-            LocalDate monthStart = current;
-            LocalDate monthEnd = current.plusMonths(1).minusDays(1);
-
-            BigDecimal total = transactions.stream()
-                .filter(t -> !t.getTransactionDate().isBefore(monthStart) &&
-                           !t.getTransactionDate().isAfter(monthEnd))
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            monthlyTotals.add(new MonthlyTotal(monthStart, total));
-            current = current.plusMonths(1);
-        }
-
-        return monthlyTotals;
-    }
-
-    /**
-     * Tính EMA (Exponential Moving Average)
-     * - Alpha = 0.3 (trọng số cho giá trị gần nhất)
-     */
-    private BigDecimal calculateEMA(List<MonthlyTotal> monthlyTotals) {
-        double alpha = 0.3;
-        BigDecimal ema = monthlyTotals.get(0).getTotal();
-
-        for (int i = 1; i < monthlyTotals.size(); i++) {
-            ema = monthlyTotals.get(i).getTotal()
-                .multiply(BigDecimal.valueOf(alpha))
-                .add(ema.multiply(BigDecimal.valueOf(1 - alpha)));
-        }
-
-        return ema;
-    }
-
-    /**
-     * Tính Linear Regression đơn giản
-     * - y = a + b*x
-     */
-    private BigDecimal calculateLinearRegression(List<MonthlyTotal> monthlyTotals) {
-        int n = monthlyTotals.size();
-        double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0;
-
-        for (int i = 0; i < n; i++) {
-            double x = i;
-            double y = monthlyTotals.get(i).getTotal().doubleValue();
-            sumX += x;
-            sumY += y;
-            sumXY += x * y;
-            sumX2 += x * x;
-        }
-
-        double b = (n * sumXY - sumX * sumY) / (n * sumX2 - sumX * sumX);
-        double a = (sumY - b * sumX) / n;
-
-        // Dự đoán tháng tiếp theo (x = n)
-        double prediction = a + b * n;
-        return BigDecimal.valueOf(Math.max(0, prediction));
-    }
-
-    /**
-     * Tính độ tin cậy (0.0 - 1.0)
-     * - Dựa trên độ ổn định của dữ liệu (độ lệch chuẩn)
-     */
-    private double calculateConfidence(List<MonthlyTotal> monthlyTotals) {
-        if (monthlyTotals.size() < 2) {
-            return 0.5;
-        }
-
-        // Tính trung bình
-        double mean = monthlyTotals.stream()
-            .mapToDouble(m -> m.getTotal().doubleValue())
-            .average()
-            .orElse(0);
-
-        // Tính độ lệch chuẩn
-        double variance = monthlyTotals.stream()
-            .mapToDouble(m -> Math.pow(m.getTotal().doubleValue() - mean, 2))
-            .average()
-            .orElse(0);
-        double stdDev = Math.sqrt(variance);
-
-        // Độ tin cậy = 1 - (coefficient of variation)
-        double cv = mean > 0 ? stdDev / mean : 1.0;
-        return Math.max(0.0, Math.min(1.0, 1.0 - cv * 0.5));
+    private static ForecastRange toForecastRange(MonthlyForecaster.Forecast forecast) {
+        return ForecastRange.builder()
+            .predicted(Money.toBigDecimal(forecast.predicted()))
+            .lower(Money.toBigDecimal(forecast.lower()))
+            .upper(Money.toBigDecimal(forecast.upper()))
+            .method(forecast.method())
+            .build();
     }
 
     /**
-     * Tính xu hướng (tăng/giảm/ổn định)
+     * Kết quả dự đoán
      */
-    private String calculateTrend(List<MonthlyTotal> monthlyTotals) {
-        if (monthlyTotals.size() < 2) {
-            return "KHÔNG_XÁC_ĐỊNH";
-        }
-
-        BigDecimal first = monthlyTotals.get(0).getTotal();
-        BigDecimal last = monthlyTotals.get(monthlyTotals.size() - 1).getTotal();
-        BigDecimal diff = last.subtract(first);
-        BigDecimal percentChange = first.compareTo(BigDecimal.ZERO) > 0
-            ? diff.divide(first, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-            : BigDecimal.ZERO;
-
-        if (percentChange.compareTo(BigDecimal.valueOf(5)) > 0) {
-            return "TĂNG";
-        } else if (percentChange.compareTo(BigDecimal.valueOf(-5)) < 0) {
-            return "GIẢM";
-        } else {
-            return "ỔN_ĐỊNH";
-        }
+    @lombok.Data
+    @lombok.Builder
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    public static class PredictionResult {
+        private BigDecimal predictedAmount;
+        private double confidence;
+        private String message;
+        private String trend; // TĂNG, GIẢM, ỔN_ĐỊNH
+        private String targetMonth; // yyyy-MM
+        private int historyMonths;
+        private ForecastRange expense;
+        private ForecastRange income;
+        private List<CategoryForecast> categories;
     }
 
     /**
-     * Class lưu tổng chi theo tháng
+     * Giá trị dự đoán và khoảng dự đoán 90% [lower, upper]
      */
-    private static class MonthlyTotal {
-        private final LocalDate month;
-        private final BigDecimal total;
-
-        public MonthlyTotal(LocalDate month, BigDecimal total) {
-            this.month = month;
-            this.total = total;
-        }
-
-        public LocalDate getMonth() {
-            return month;
-        }
-
-        public BigDecimal getTotal() {
-            return total;
-        }
+    @lombok.Data
+    @lombok.Builder
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    public static class ForecastRange {
+        private BigDecimal predicted;
+        private BigDecimal lower;
+        private BigDecimal upper;
+        private String method; // BLEND, HOLT_WINTERS+BLEND, LAST
     }
 
     /**
-     * Kết quả dự đoán
+     * Dự đoán của một danh mục
      */
     @lombok.Data
     @lombok.Builder
-    public static class PredictionResult {
-        private BigDecimal predictedAmount;
-        private double confidence;
-        private String message;
-        private String trend; // TĂNG, GIẢM, ỔN_ĐỊNH
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    public static class CategoryForecast {
+        private Long categoryId;
+        private String categoryName;
+        private String type; // expense, income
+        private ForecastRange forecast;
     }
 }
-
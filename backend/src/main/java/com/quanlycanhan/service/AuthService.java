@@ -1,5 +1,6 @@
 package com.quanlycanhan.service;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -175,6 +176,7 @@ public class AuthService {
         }
 
         loginAttemptService.resetFailedLoginAttempts(request.getEmail());
+        user.setLastLoginAt(LocalDateTime.now());
 
         UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
         String accessToken = jwtService.generateToken(userDetails);
@@ -0,0 +1,243 @@
+package com.quanlycanhan.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Danh bạ danh mục trong bộ nhớ, theo từng user
+ * - Snapshot bất biến gồm danh mục của user + danh mục hệ thống, tra theo id O(1)
+ * - Gồm cả danh mục đã xóa mềm để số liệu cũ vẫn có tên; active() chỉ trả danh mục còn dùng
+ * - Ghi danh mục gọi invalidateUser / invalidateAll, snapshot bị bỏ sau khi commit và load lại ở lần đọc kế tiếp
+ * - Invalidation được phát lên kênh Redis CHANNEL để các node khác bỏ snapshot của mình (bỏ qua tin của chính node)
+ * - Mỗi snapshot có version (tăng dần); TTL giới hạn độ cũ nếu mất tin pub/sub
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CategoryDirectory implements MessageListener {
+
+    public static final String CHANNEL = "category-directory:invalidation";
+
+    private static final String USER = "U";
+    private static final String ALL = "A";
+
+    private final CategoryRepository categoryRepository;
+    private final StringRedisTemplate redisTemplate;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${app.category-directory.ttl-seconds:300}")
+    private long ttlSeconds = 300;
+
+    @Value("${app.category-directory.max-users:10000}")
+    private int maxUsers = 10000;
+
+    private final ConcurrentHashMap<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Tăng mỗi lần invalidate; snapshot load trước một lần invalidate không được đưa vào cache
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Thông tin danh mục dùng để ghép với dòng tổng hợp (không giữ entity Hibernate)
+     */
+    public record Entry(Long id, String name, String icon, String color, String type, Long parentId,
+                        boolean systemDefault, boolean deleted, int sortOrder, String foldedName) {
+    }
+
+    /**
+     * Snapshot bất biến danh mục của một user
+     */
+    public static final class Snapshot {
+
+        private final Long userId;
+        private final long version;
+        private final long loadedAt;
+        private final Map<Long, Entry> byId;
+        private final List<Entry> active;
+
+        Snapshot(Long userId, long version, long loadedAt, List<Entry> entries) {
+            this.userId = userId;
+            this.version = version;
+            this.loadedAt = loadedAt;
+            Map<Long, Entry> map = new HashMap<>(entries.size() * 2);
+            List<Entry> activeEntries = new ArrayList<>(entries.size());
+            for (Entry e : entries) {
+                map.put(e.id(), e);
+                if (!e.deleted()) {
+                    activeEntries.add(e);
+                }
+            }
+            this.byId = Collections.unmodifiableMap(map);
+            this.active = Collections.unmodifiableList(activeEntries);
+        }
+
+        public Long userId() {
+            return userId;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Danh mục theo id (kể cả đã xóa mềm), null nếu không thuộc user/hệ thống
+         */
+        public Entry get(Long categoryId) {
+            return categoryId != null ? byId.get(categoryId) : null;
+        }
+
+        /**
+         * Danh mục chưa xóa, sắp xếp theo sortOrder, tên
+         */
+        public List<Entry> active() {
+            return active;
+        }
+
+        public int size() {
+            return byId.size();
+        }
+    }
+
+    /**
+     * Snapshot hiện tại của user (load 1 query nếu chưa có / hết hạn)
+     */
+    public Snapshot get(Long userId) {
+        Snapshot snapshot = snapshots.get(userId);
+        if (snapshot != null && !isExpired(snapshot)) {
+            return snapshot;
+        }
+        long loadGeneration = generation.get();
+        Snapshot fresh = new Snapshot(userId, loadGeneration, System.nanoTime(), load(userId));
+        if (snapshots.size() >= maxUsers) {
+            snapshots.values().removeIf(this::isExpired);
+            if (snapshots.size() >= maxUsers) {
+                snapshots.clear();
+            }
+        }
+        snapshots.compute(userId, (id, current) -> generation.get() == loadGeneration ? fresh : current);
+        return fresh;
+    }
+
+    /**
+     * Bỏ snapshot của user sau khi commit (user tạo/sửa/xóa danh mục riêng), trên mọi node
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            evictUser(userId);
+            publish(String.join("|", USER, nodeId, userId.toString()));
+        });
+    }
+
+    /**
+     * Bỏ mọi snapshot sau khi commit (danh mục hệ thống thay đổi), trên mọi node
+     */
+    public void invalidateAll() {
+        afterCommit(() -> {
+            evictAll();
+            publish(String.join("|", ALL, nodeId));
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        handle(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tin dạng U|node|userId hoặc A|node
+     */
+    void handle(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length < 2 || nodeId.equals(parts[1])) {
+            return;
+        }
+        if (ALL.equals(parts[0])) {
+            evictAll();
+        } else if (USER.equals(parts[0]) && parts.length == 3) {
+            evictUser(Long.valueOf(parts[2]));
+        }
+    }
+
+    private void evictUser(Long userId) {
+        generation.incrementAndGet();
+        snapshots.remove(userId);
+    }
+
+    private void evictAll() {
+        generation.incrementAndGet();
+        snapshots.clear();
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, message);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish category directory invalidation, other nodes keep snapshots until TTL: {}",
+                e.getMessage());
+        }
+    }
+
+    private List<Entry> load(Long userId) {
+        List<Object[]> rows = categoryRepository.findDirectoryRows(userId);
+        List<Entry> entries = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            String name = (String) r[1];
+            entries.add(new Entry(
+                ((Number) r[0]).longValue(),
+                name,
+                (String) r[2],
+                (String) r[3],
+                (String) r[4],
+                r[5] != null ? ((Number) r[5]).longValue() : null,
+                Boolean.TRUE.equals(r[6]),
+                Boolean.TRUE.equals(r[7]),
+                r[8] != null ? ((Number) r[8]).intValue() : 0,
+                SearchTextNormalizer.fold(name)));
+        }
+        return entries;
+    }
+
+    private boolean isExpired(Snapshot snapshot) {
+        return System.nanoTime() - snapshot.loadedAt > TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
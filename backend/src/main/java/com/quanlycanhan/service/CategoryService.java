@@ -1,21 +1,31 @@
 package com.quanlycanhan.service;
 
+import com.quanlycanhan.dto.response.CategoryTreeNode;
 import com.quanlycanhan.entity.Category;
 import com.quanlycanhan.entity.User;
 import com.quanlycanhan.exception.BusinessException;
 import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.CategoryClosureRepository;
 import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.repository.TransactionRepository;
 import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Service xử lý danh mục chi tiêu
  * - CRUD danh mục
  * - Lấy danh mục mặc định hệ thống
+ * - Duy trì bảng closure (category_closure) khi tạo danh mục / đổi danh mục cha
  */
 @Service
 @RequiredArgsConstructor
@@ -23,12 +33,17 @@ public class CategoryService {
 
     private final CategoryRepository categoryRepository;
     private final UserRepository userRepository;
+    private final TransactionSummaryService transactionSummaryService;
+    private final CategoryDirectory categoryDirectory;
+    private final CategoryClosureRepository categoryClosureRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransactionOutbox transactionOutbox;
 
     /**
      * Lấy tất cả danh mục của user (bao gồm system default)
      */
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
-    @org.springframework.cache.annotation.Cacheable(value = "userCategories", key = "#userId")
+    @org.springframework.cache.annotation.Cacheable(value = "userCategories", key = "#userId", sync = true)
     public List<Category> getUserCategories(Long userId) {
         return categoryRepository.findByUserIdOrSystemDefault(userId);
     }
@@ -37,14 +52,59 @@ public class CategoryService {
      * Lấy danh mục mặc định hệ thống
      */
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
-    @org.springframework.cache.annotation.Cacheable(value = "systemCategories")
+    @org.springframework.cache.annotation.Cacheable(value = "systemCategories", sync = true)
     public List<Category> getSystemDefaultCategories() {
         return categoryRepository.findBySystemDefaultTrueAndDeletedFalseOrderBySortOrderAscNameAsc();
     }
 
     /**
-     * Tạo danh mục mới cho user
+     * Cây danh mục của user (gồm hệ thống) dựng từ CategoryDirectory - 1 query khi snapshot chưa có
      */
+    public List<CategoryTreeNode> getCategoryTree(Long userId) {
+        List<CategoryDirectory.Entry> entries = categoryDirectory.get(userId).active();
+        Map<Long, CategoryTreeNode> nodes = new HashMap<>(entries.size() * 2);
+        for (CategoryDirectory.Entry e : entries) {
+            nodes.put(e.id(), CategoryTreeNode.builder()
+                .id(e.id())
+                .name(e.name())
+                .icon(e.icon())
+                .color(e.color())
+                .type(e.type())
+                .parentId(e.parentId())
+                .systemDefault(e.systemDefault())
+                .sortOrder(e.sortOrder())
+                .build());
+        }
+        // entries đã sắp xếp theo sortOrder, tên nên danh sách con giữ đúng thứ tự
+        List<CategoryTreeNode> roots = new ArrayList<>();
+        for (CategoryDirectory.Entry e : entries) {
+            CategoryTreeNode parent = e.parentId() != null ? nodes.get(e.parentId()) : null;
+            if (parent != null) {
+                parent.getChildren().add(nodes.get(e.id()));
+            } else {
+                roots.add(nodes.get(e.id()));
+            }
+        }
+        setDepth(roots, 0);
+        return roots;
+    }
+
+    private void setDepth(List<CategoryTreeNode> nodes, int depth) {
+        for (CategoryTreeNode node : nodes) {
+            node.setDepth(depth);
+            setDepth(node.getChildren(), depth + 1);
+        }
+    }
+
+    /**
+     * Thêm danh mục vừa lưu vào bảng closure (dùng chung cho danh mục của user và danh mục do admin tạo)
+     */
+    @Transactional
+    public void addToHierarchy(Category category) {
+        categoryClosureRepository.insertNode(category.getId(),
+            category.getParent() != null ? category.getParent().getId() : null);
+    }
+
     /**
      * Tạo danh mục mới cho user
      */
@@ -80,7 +140,10 @@ public class CategoryService {
             .parent(parent)
             .build();
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        addToHierarchy(saved);
+        categoryDirectory.invalidateUser(userId);
+        return saved;
     }
 
     /**
@@ -96,8 +159,9 @@ public class CategoryService {
         if (name != null) {
             category.setName(name);
         }
-        if (type != null) {
+        if (type != null && !type.equals(category.getType())) {
             category.setType(type);
+            transactionSummaryService.changeCategoryType(id, type);
         }
         if (icon != null) {
             category.setIcon(icon);
@@ -112,8 +176,10 @@ public class CategoryService {
             category.setSortOrder(sortOrder);
         }
         
+        Long oldParentId = category.getParent() != null ? category.getParent().getId() : null;
         if (parentId != null) {
-            if (parentId.equals(id)) {
+            // Không chọn chính mình hoặc một danh mục con cháu làm cha (tạo vòng)
+            if (parentId.equals(id) || categoryClosureRepository.existsByAncestorIdAndDescendantId(id, parentId)) {
                 throw new BusinessException(ErrorCode.CATEGORY_INVALID_PARENT); 
             }
             Category parent = categoryRepository.findById(parentId)
@@ -129,15 +195,30 @@ public class CategoryService {
             category.setParent(null);
         }
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        if (!Objects.equals(oldParentId, parentId)) {
+            moveSubtree(id, parentId);
+        }
+        categoryDirectory.invalidateUser(userId);
+        return saved;
+    }
+
+    /**
+     * Kết quả xóa danh mục: số danh mục đã xóa (cả nhánh) và số giao dịch được chuyển / xóa theo
+     */
+    public record DeleteResult(int deletedCategories, int affectedTransactions) {
     }
 
     /**
-     * Xóa danh mục (soft delete)
+     * Xóa mềm cả nhánh danh mục bằng 1 câu UPDATE (theo bảng closure)
+     * - reassignToCategoryId: chuyển giao dịch của cả nhánh sang danh mục này
+     * - deleteTransactions: xóa mềm giao dịch của cả nhánh
+     * - Không chọn gì: giao dịch giữ danh mục cũ (đã xóa) như trước
+     * Bảng tổng hợp được cập nhật theo tập (gộp / xóa dòng theo danh mục), giao dịch đổi được báo qua outbox 1 sự kiện BULK
      */
     @Transactional
     @org.springframework.cache.annotation.CacheEvict(value = "userCategories", key = "#userId")
-    public void deleteCategory(Long id, Long userId) {
+    public DeleteResult deleteCategory(Long id, Long userId, Long reassignToCategoryId, boolean deleteTransactions) {
         Category category = categoryRepository.findByIdAndUserId(id, userId)
             .orElseThrow(() -> new BusinessException(ErrorCode.CATEGORY_NOT_FOUND_OR_NO_PERMISSION));
 
@@ -145,18 +226,63 @@ public class CategoryService {
         if (category.getSystemDefault()) {
             throw new BusinessException(ErrorCode.CATEGORY_FORBIDDEN_DELETE_SYSTEM);
         }
+        if (reassignToCategoryId != null && deleteTransactions) {
+            throw new BusinessException(ErrorCode.CATEGORY_INVALID, "Chỉ chọn một: chuyển hoặc xóa giao dịch");
+        }
 
-        softDeleteRecursive(category);
-    }
+        List<Long> closureIds = categoryClosureRepository.findSubtreeIds(id);
+        if (closureIds.isEmpty()) {
+            // Danh mục chưa có trong closure (dữ liệu trước migration): thêm nút để UPDATE theo nhánh vẫn chạy
+            categoryClosureRepository.insertNode(id, category.getParent() != null ? category.getParent().getId() : null);
+        }
+        List<Long> subtreeIds = closureIds.isEmpty() ? List.of(id) : closureIds;
 
-    private void softDeleteRecursive(Category category) {
-        category.setDeleted(true);
-        if (category.getChildren() != null) {
-            for (Category child : category.getChildren()) {
-                softDeleteRecursive(child);
+        Category target = null;
+        if (reassignToCategoryId != null) {
+            target = categoryRepository.findAccessibleByIds(List.of(reassignToCategoryId), userId).stream()
+                .findFirst()
+                .filter(c -> !subtreeIds.contains(c.getId()))
+                .orElseThrow(() -> new BusinessException(ErrorCode.CATEGORY_INVALID, "reassignTo: " + reassignToCategoryId));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int affected = 0;
+        if (target != null) {
+            affected = transactionRepository.reassignCategory(subtreeIds, target.getId(), userId, now);
+            if (affected > 0) {
+                transactionSummaryService.moveCategories(userId, subtreeIds, target.getId(), target.getType());
             }
+        } else if (deleteTransactions) {
+            // Giao dịch vào thùng rác; ảnh hóa đơn được xóa khi job dọn rác chuyển giao dịch sang lưu trữ
+            affected = transactionRepository.softDeleteByCategoryIdsAndUserId(subtreeIds, userId, now);
+            if (affected > 0) {
+                transactionSummaryService.removeCategories(userId, subtreeIds);
+            }
+        }
+
+        if (affected > 0) {
+            transactionOutbox.appendBulk(userId);
+        }
+
+        int deleted = categoryRepository.softDeleteSubtree(id, userId, now);
+        categoryDirectory.invalidateUser(userId);
+        return new DeleteResult(deleted, affected);
+    }
+
+    /**
+     * Chuyển cả nhánh của categoryId sang cha mới trong bảng closure (newParentId null = thành gốc)
+     */
+    private void moveSubtree(Long categoryId, Long newParentId) {
+        List<Long> subtreeIds = categoryClosureRepository.findSubtreeIds(categoryId);
+        if (subtreeIds.isEmpty()) {
+            // Danh mục chưa có trong closure (dữ liệu trước migration): thêm nút, cây con giữ nguyên
+            categoryClosureRepository.insertNode(categoryId, newParentId);
+            return;
+        }
+        categoryClosureRepository.detachSubtree(subtreeIds);
+        if (newParentId != null) {
+            categoryClosureRepository.attachSubtree(categoryId, newParentId);
         }
-        categoryRepository.save(category);
     }
 }
 
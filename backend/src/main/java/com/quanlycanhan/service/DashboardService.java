@@ -0,0 +1,217 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service tổng hợp dữ liệu dashboard
+ * - Các khối số liệu dùng chung cho các endpoint /dashboard/*
+ * - getSummary: chạy song song mọi khối trên virtual thread, mỗi khối có timeout riêng;
+ *   khối lỗi/chậm trả về null và được liệt kê trong "failedSections" thay vì làm hỏng cả response
+ * - Mọi khối đều dùng kết nối DB: giới hạn theo request, tối đa app.dashboard.max-concurrent-summaries summary
+ *   chạy cùng lúc (mặc định 2, tức tối đa 2 x 5 khối; spring.datasource.hikari.maximum-pool-size nên lớn hơn);
+ *   request vượt quá chờ lượt tối đa app.dashboard.summary-queue-timeout-ms trước khi bắt đầu tính timeout các khối,
+ *   nên các khối của một summary không phải tranh kết nối với summary khác
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardService {
+
+    private final TransactionService transactionService;
+    private final CategoryDirectory categoryDirectory;
+    private final AiPredictionService aiPredictionService;
+    private final ExpenseTrendService expenseTrendService;
+
+    /**
+     * Mang SecurityContext của request sang thread của từng khối: định tuyến replica (read-your-writes) theo user
+     * đang đăng nhập, thiếu context thì khối đọc replica có thể chưa có giao dịch vừa ghi
+     */
+    private final ExecutorService executor =
+        new DelegatingSecurityContextExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+
+    @Value("${app.dashboard.section-timeout-ms:2000}")
+    private long sectionTimeoutMs = 2000;
+
+    @Value("${app.dashboard.ai-timeout-ms:3000}")
+    private long aiTimeoutMs = 3000;
+
+    @Value("${app.dashboard.summary-queue-timeout-ms:5000}")
+    private long summaryQueueTimeoutMs = 5000;
+
+    private Semaphore summaryPermits = new Semaphore(2);
+
+    @Value("${app.dashboard.max-concurrent-summaries:2}")
+    void setMaxConcurrentSummaries(int permits) {
+        this.summaryPermits = new Semaphore(permits);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tổng thu, tổng chi, chênh lệch trong khoảng thời gian
+     */
+    public Map<String, Object> getStats(Long userId, LocalDate startDate, LocalDate endDate) {
+        Object[] totals = transactionService.getIncomeAndExpenseTotals(userId, startDate, endDate);
+        BigDecimal income = new BigDecimal(totals[0].toString());
+        BigDecimal expense = new BigDecimal(totals[1].toString());
+        Map<String, Object> out = new HashMap<>();
+        out.put("income", income);
+        out.put("expense", expense);
+        out.put("net", income.subtract(expense));
+        return out;
+    }
+
+    /**
+     * Tổng theo danh mục của một loại, kèm tên/icon/màu, sắp xếp giảm dần theo tổng
+     */
+    public List<Map<String, Object>> getCategoryTotals(Long userId, LocalDate startDate, LocalDate endDate, String type) {
+        return getCategoryTotals(userId, startDate, endDate, type, false);
+    }
+
+    /**
+     * includeSubcategories = true: mỗi danh mục cộng cả nhánh con (vd. "Ăn uống" gồm "Ăn uống > Cà phê")
+     */
+    public List<Map<String, Object>> getCategoryTotals(Long userId, LocalDate startDate, LocalDate endDate, String type,
+                                                       boolean includeSubcategories) {
+        List<Object[]> raw = includeSubcategories
+            ? transactionService.getSubtreeTotalsByCategory(userId, startDate, endDate, type)
+            : transactionService.getTotalAmountByCategoryAndType(userId, startDate, endDate, type);
+        CategoryDirectory.Snapshot categories = categoryDirectory.get(userId);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Object[] r : raw) {
+            Long catId = ((Number) r[0]).longValue();
+            Map<String, Object> m = new HashMap<>();
+            m.put("categoryId", catId);
+            m.put("sum", new BigDecimal(r[1].toString()));
+            CategoryDirectory.Entry c = categories.get(catId);
+            if (c != null) {
+                m.put("name", c.name());
+                m.put("icon", c.icon());
+                m.put("color", c.color());
+                m.put("parentId", c.parentId());
+            }
+            result.add(m);
+        }
+        result.sort((a, b) -> ((BigDecimal) b.get("sum")).compareTo((BigDecimal) a.get("sum")));
+        return result;
+    }
+
+    /**
+     * Toàn bộ dữ liệu trang dashboard trong 1 lần gọi
+     * topCategories lấy từ categoryExpenses (cùng khoảng thời gian) nên không cần query riêng
+     */
+    public Map<String, Object> getSummary(Long userId, LocalDate startDate, LocalDate endDate, int recentLimit, int topLimit) {
+        Semaphore permits = summaryPermits;
+        boolean admitted;
+        try {
+            admitted = permits.tryAcquire(summaryQueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            log.warn("Dashboard summary for user {} not started: {} ms waiting for a slot", userId, summaryQueueTimeoutMs);
+            return unavailable(startDate, endDate);
+        }
+        try {
+            return computeSummary(userId, startDate, endDate, recentLimit, topLimit);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Map<String, Object> computeSummary(Long userId, LocalDate startDate, LocalDate endDate, int recentLimit,
+                                               int topLimit) {
+        Map<String, Future<?>> sections = new LinkedHashMap<>();
+        sections.put("stats", submit(() -> getStats(userId, startDate, endDate)));
+        sections.put("categoryExpenses", submit(() -> getCategoryTotals(userId, startDate, endDate, "expense")));
+        sections.put("expenseTrend", submit(() -> expenseTrendService.getYearView(userId, endDate.getYear())));
+        sections.put("recentTransactions", submit(() -> transactionService.getUserTransactionDtoSlice(userId,
+            PageRequest.of(0, recentLimit, Sort.by("transactionDate").descending())).getContent()));
+        sections.put("aiPrediction", submit(() -> aiPredictionService.predictNextMonth(userId)));
+
+        long startedAt = System.nanoTime();
+        Map<String, Object> out = new LinkedHashMap<>();
+        List<String> failed = new ArrayList<>();
+        sections.forEach((name, future) -> {
+            long timeoutMs = "aiPrediction".equals(name) ? aiTimeoutMs : sectionTimeoutMs;
+            long remainingMs = timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            out.put(name, await(name, future, remainingMs, failed));
+        });
+
+        Object categoryExpenses = out.get("categoryExpenses");
+        if (categoryExpenses instanceof List<?> list) {
+            out.put("topCategories", list.size() > topLimit ? list.subList(0, topLimit) : list);
+        } else {
+            out.put("topCategories", null);
+            failed.add("topCategories");
+        }
+        out.put("startDate", startDate);
+        out.put("endDate", endDate);
+        out.put("partial", !failed.isEmpty());
+        out.put("failedSections", failed);
+        return out;
+    }
+
+    /**
+     * Không vào được lượt: mọi khối coi như lỗi (cùng dạng partial với khối timeout)
+     */
+    private Map<String, Object> unavailable(LocalDate startDate, LocalDate endDate) {
+        List<String> sections = List.of("stats", "categoryExpenses", "expenseTrend", "recentTransactions",
+            "aiPrediction", "topCategories");
+        Map<String, Object> out = new LinkedHashMap<>();
+        sections.forEach(name -> out.put(name, null));
+        out.put("startDate", startDate);
+        out.put("endDate", endDate);
+        out.put("partial", true);
+        out.put("failedSections", sections);
+        return out;
+    }
+
+    private Future<?> submit(Callable<?> task) {
+        return executor.submit(task);
+    }
+
+    private Object await(String name, Future<?> future, long timeoutMs, List<String> failed) {
+        try {
+            return future.get(Math.max(timeoutMs, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Dashboard section {} timed out after {} ms", name, timeoutMs);
+        } catch (ExecutionException e) {
+            log.warn("Dashboard section {} failed: {}", name, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        }
+        failed.add(name);
+        return null;
+    }
+}
@@ -0,0 +1,182 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.dto.response.TrendResponse;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+import com.quanlycanhan.util.Money;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service tính xu hướng thu/chi theo bucket thời gian (ngày / tuần ISO / tháng / năm)
+ * - Đọc bảng tổng hợp theo ngày: day/week từ chuỗi theo ngày, month/year từ query GROUP BY tháng
+ *   (số dòng đọc lên tỉ lệ với số ngày/tháng, không phụ thuộc số giao dịch, không load entity)
+ * - Gom vào bucket theo chỉ số, bucket trống được điền 0
+ * - Cộng dồn bằng long (Money, đơn vị nhỏ nhất), chỉ đổi sang BigDecimal khi dựng response
+ */
+@Service
+@RequiredArgsConstructor
+public class ExpenseTrendService {
+
+    /**
+     * Số bucket tối đa trong một lần gọi (vd. ~2.7 năm theo ngày)
+     */
+    public static final int MAX_BUCKETS = 1000;
+
+    private static final List<String> MONTH_LABELS =
+        Arrays.asList("Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec");
+
+    private final UserDailyCategorySummaryRepository summaryRepository;
+
+    public enum Period {
+        DAY, WEEK, MONTH, YEAR;
+
+        public static Period parse(String value) {
+            if (value == null || value.isBlank()) {
+                return MONTH;
+            }
+            try {
+                return Period.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException(ErrorCode.TREND_PERIOD_INVALID, value);
+            }
+        }
+
+        LocalDate bucketStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date;
+                case WEEK -> date.with(DayOfWeek.MONDAY);
+                case MONTH -> date.withDayOfMonth(1);
+                case YEAR -> date.withDayOfYear(1);
+            };
+        }
+
+        LocalDate next(LocalDate bucketStart) {
+            return switch (this) {
+                case DAY -> bucketStart.plusDays(1);
+                case WEEK -> bucketStart.plusWeeks(1);
+                case MONTH -> bucketStart.plusMonths(1);
+                case YEAR -> bucketStart.plusYears(1);
+            };
+        }
+
+        String label(LocalDate bucketStart) {
+            return switch (this) {
+                case DAY -> bucketStart.toString();
+                case WEEK -> String.format("%d-W%02d",
+                    bucketStart.get(IsoFields.WEEK_BASED_YEAR), bucketStart.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+                case MONTH -> String.format("%d-%02d", bucketStart.getYear(), bucketStart.getMonthValue());
+                case YEAR -> String.valueOf(bucketStart.getYear());
+            };
+        }
+
+        /**
+         * Khoảng mặc định khi client không truyền ngày: 30 ngày / 12 tuần / 12 tháng / 5 năm gần nhất
+         */
+        LocalDate defaultStart(LocalDate today) {
+            return switch (this) {
+                case DAY -> today.minusDays(29);
+                case WEEK -> today.with(DayOfWeek.MONDAY).minusWeeks(11);
+                case MONTH -> today.withDayOfMonth(1).minusMonths(11);
+                case YEAR -> today.withDayOfYear(1).minusYears(4);
+            };
+        }
+    }
+
+    /**
+     * Xu hướng trong khoảng [startDate, endDate] theo độ rộng bucket period
+     * startDate được lùi về đầu bucket chứa nó (vd. thứ Hai của tuần) để bucket đầu không bị cắt
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public TrendResponse getTrend(Long userId, Period period, LocalDate startDate, LocalDate endDate) {
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        LocalDate start = period.bucketStart(startDate != null ? startDate : period.defaultStart(end));
+        if (start.isAfter(end)) {
+            throw new BusinessException(ErrorCode.TREND_RANGE_INVALID, start + " > " + end);
+        }
+
+        List<LocalDate> bucketStarts = new ArrayList<>();
+        for (LocalDate b = start; !b.isAfter(end); b = period.next(b)) {
+            if (bucketStarts.size() == MAX_BUCKETS) {
+                throw new BusinessException(ErrorCode.TREND_RANGE_INVALID, "Tối đa " + MAX_BUCKETS + " bucket");
+            }
+            bucketStarts.add(b);
+        }
+
+        long[] income = new long[bucketStarts.size()];
+        long[] expense = new long[bucketStarts.size()];
+        if (period == Period.DAY || period == Period.WEEK) {
+            for (Object[] row : summaryRepository.getDailySeries(userId, start, end)) {
+                int i = indexOf(bucketStarts, period.bucketStart((LocalDate) row[0]));
+                add(income, expense, i, row[1], row[2]);
+            }
+        } else {
+            for (Object[] row : summaryRepository.getMonthlyStats(userId, start, end)) {
+                LocalDate month = LocalDate.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue(), 1);
+                int i = indexOf(bucketStarts, period.bucketStart(month));
+                add(income, expense, i, row[2], row[3]);
+            }
+        }
+
+        List<BigDecimal> incomeList = new ArrayList<>(bucketStarts.size());
+        List<BigDecimal> expenseList = new ArrayList<>(bucketStarts.size());
+        List<BigDecimal> net = new ArrayList<>(bucketStarts.size());
+        for (int i = 0; i < bucketStarts.size(); i++) {
+            incomeList.add(Money.toBigDecimal(income[i]));
+            expenseList.add(Money.toBigDecimal(expense[i]));
+            net.add(Money.toBigDecimal(Money.subtract(income[i], expense[i])));
+        }
+        return TrendResponse.builder()
+            .period(period.name().toLowerCase(Locale.ROOT))
+            .startDate(start)
+            .endDate(end)
+            .labels(bucketStarts.stream().map(period::label).toList())
+            .bucketStarts(bucketStarts)
+            .income(incomeList)
+            .expense(expenseList)
+            .net(net)
+            .values(expenseList)
+            .build();
+    }
+
+    /**
+     * Chế độ xem theo năm (hành vi cũ của period=year): 12 bucket tháng của năm, nhãn Jan..Dec
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public TrendResponse getYearView(Long userId, int year) {
+        TrendResponse trend = getTrend(userId, Period.MONTH, Year.of(year).atDay(1), Year.of(year).atMonth(12).atEndOfMonth());
+        trend.setPeriod("year");
+        trend.setYear(year);
+        trend.setLabels(MONTH_LABELS);
+        return trend;
+    }
+
+    /**
+     * Vị trí bucket (các bucket cách đều theo period, tìm nhị phân trên danh sách đã sắp xếp)
+     */
+    private static int indexOf(List<LocalDate> bucketStarts, LocalDate bucketStart) {
+        return Collections.binarySearch(bucketStarts, bucketStart);
+    }
+
+    private static void add(long[] income, long[] expense, int i, Object incomeValue, Object expenseValue) {
+        if (i < 0) {
+            return;
+        }
+        income[i] = Money.add(income[i], Money.minorOf(incomeValue));
+        expense[i] = Money.add(expense[i], Money.minorOf(expenseValue));
+    }
+}
@@ -0,0 +1,279 @@
+package com.quanlycanhan.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Nạp tỷ giá vào fx_rates từ CSV: currency,rate_date,rate (header và dòng bắt đầu bằng # được bỏ qua)
+ * - Nguồn: file upload của admin, hoặc app.fx.source (đường dẫn file / URL http của service tỷ giá nội bộ) theo lịch
+ * - Chỉ ghi dòng mới hoặc khác tỷ giá đang có (INSERT ... ON DUPLICATE KEY UPDATE trong 1 transaction)
+ * - Tỷ giá bị sửa / thêm xen vào lịch sử: báo mọi node nạp lại tỷ giá, rồi FxRenormalizationJob tính lại
+ *   base_amount đoạn ngày bị ảnh hưởng; tính lại lần nữa sau app.fx.renormalize-recheck-ms cho giao dịch ghi
+ *   bằng tỷ giá cũ ở node nhận tin muộn / mất tin (chờ tới lần nạp định kỳ)
+ * - Việc tính lại chạy tuần tự trên 1 thread nền, request import của admin trả về ngay sau khi ghi tỷ giá
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FxRateImporter {
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO fx_rates (currency, rate_date, rate, source, updated_at) " +
+        "VALUES (:currency, :rateDate, :rate, :source, NOW()) " +
+        "ON DUPLICATE KEY UPDATE rate = VALUES(rate), source = VALUES(source), updated_at = NOW()";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FxRateService fxRateService;
+    private final FxRenormalizationJob renormalizationJob;
+    private final TaskScheduler taskScheduler;
+
+    private Executor renormalizeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fx-renormalize");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${app.fx.source:}")
+    private String configuredSource = "";
+
+    @Value("${app.fx.source-timeout-ms:10000}")
+    private long sourceTimeoutMs = 10000;
+
+    /**
+     * Phải lớn hơn app.fx.refresh-ms để mọi node đã nạp tỷ giá mới trước lần tính lại thứ hai
+     */
+    @Value("${app.fx.renormalize-recheck-ms:660000}")
+    private long renormalizeRecheckMs = 660000;
+
+    /**
+     * Một dòng tỷ giá đã đọc
+     */
+    public record RateRow(String currency, LocalDate rateDate, BigDecimal rate) {
+    }
+
+    /**
+     * Kết quả import: số dòng đọc được, số dòng mới / sửa, các tiền tệ đã xếp hàng tính lại base_amount
+     */
+    public record ImportResult(int read, int inserted, int updated, List<String> renormalizingCurrencies) {
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (renormalizeExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Scheduled(cron = "${app.fx.import-cron:0 15 6 * * *}")
+    public void importScheduled() {
+        if (configuredSource == null || configuredSource.isBlank()) {
+            return;
+        }
+        try {
+            ImportResult result = importFrom(configuredSource.trim());
+            log.info("FX import from {}: {}", configuredSource, result);
+        } catch (Exception e) {
+            log.error("FX import from {} failed", configuredSource, e);
+        }
+    }
+
+    /**
+     * Import từ đường dẫn file hoặc URL http(s)
+     */
+    public ImportResult importFrom(String source) throws IOException {
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(sourceTimeoutMs)).build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(source))
+                .timeout(Duration.ofMillis(sourceTimeoutMs))
+                .GET()
+                .build();
+            try {
+                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() != 200) {
+                    response.body().close();
+                    throw new IOException("FX source responded " + response.statusCode());
+                }
+                try (Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                    return importCsv(reader, source);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching FX rates", e);
+            }
+        }
+        try (Reader reader = Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)) {
+            return importCsv(reader, source);
+        }
+    }
+
+    /**
+     * Đọc CSV, ghi các dòng thay đổi rồi xếp hàng tính lại base_amount cho phần lịch sử bị ảnh hưởng
+     */
+    public ImportResult importCsv(Reader reader, String source) throws IOException {
+        List<RateRow> rows = parse(reader);
+        List<RateRow> inserted = new ArrayList<>();
+        List<RateRow> updated = new ArrayList<>();
+        for (RateRow row : rows) {
+            BigDecimal current = fxRateService.ratesOf(row.currency()).get(row.rateDate());
+            if (current == null) {
+                inserted.add(row);
+            } else if (current.compareTo(row.rate()) != 0) {
+                updated.add(row);
+            }
+        }
+        List<RateRow> changed = new ArrayList<>(inserted);
+        changed.addAll(updated);
+        if (changed.isEmpty()) {
+            return new ImportResult(rows.size(), 0, 0, List.of());
+        }
+
+        SqlParameterSource[] params = changed.stream()
+            .map(row -> (SqlParameterSource) new MapSqlParameterSource()
+                .addValue("currency", row.currency())
+                .addValue("rateDate", row.rateDate())
+                .addValue("rate", row.rate())
+                .addValue("source", truncate(source)))
+            .toArray(SqlParameterSource[]::new);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, params));
+        fxRateService.reloadEverywhere();
+
+        Map<String, LocalDate[]> ranges = new TreeMap<>();
+        changedDates(changed).forEach((currency, dates) ->
+            ranges.put(currency, affectedRange(fxRateService.ratesOf(currency), dates)));
+        renormalizeExecutor.execute(() -> renormalizeLogged(ranges, "FX renormalization", false));
+        taskScheduler.schedule(() -> renormalizeExecutor.execute(
+                () -> renormalizeLogged(ranges, "FX renormalization recheck", true)),
+            Instant.now().plusMillis(renormalizeRecheckMs));
+        return new ImportResult(rows.size(), inserted.size(), updated.size(), List.copyOf(ranges.keySet()));
+    }
+
+    private int renormalize(Map<String, LocalDate[]> ranges) {
+        int renormalized = 0;
+        for (Map.Entry<String, LocalDate[]> entry : ranges.entrySet()) {
+            renormalized += renormalizationJob.renormalize(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        return renormalized;
+    }
+
+    private void renormalizeLogged(Map<String, LocalDate[]> ranges, String label, boolean reload) {
+        try {
+            if (reload) {
+                fxRateService.reload();
+            }
+            int users = renormalize(ranges);
+            log.info("{} for {}: {} users rebuilt", label, ranges.keySet(), users);
+        } catch (Exception e) {
+            log.error("{} for {} failed", label, ranges.keySet(), e);
+        }
+    }
+
+    /**
+     * Khoảng ngày giao dịch dùng tỷ giá ở các ngày đã đổi: từ ngày đổi sớm nhất (hoặc đầu lịch sử nếu đó là
+     * tỷ giá đầu tiên) tới trước ngày hiệu lực kế tiếp sau ngày đổi muộn nhất
+     */
+    static LocalDate[] affectedRange(NavigableMap<LocalDate, BigDecimal> rates, List<LocalDate> changedDates) {
+        LocalDate first = changedDates.stream().min(LocalDate::compareTo).orElseThrow();
+        LocalDate last = changedDates.stream().max(LocalDate::compareTo).orElseThrow();
+        LocalDate from = first.equals(rates.firstKey()) ? TransactionService.MIN_DATE : first;
+        LocalDate next = rates.higherKey(last);
+        LocalDate to = next != null ? next.minusDays(1) : TransactionService.MAX_DATE;
+        return new LocalDate[]{from, to};
+    }
+
+    static List<RateRow> parse(Reader source) throws IOException {
+        List<RateRow> rows = new ArrayList<>();
+        BufferedReader reader = source instanceof BufferedReader buffered ? buffered : new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (lineNumber == 1 && trimmed.startsWith("\uFEFF")) {
+                trimmed = trimmed.substring(1);
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("#")
+                    || (lineNumber == 1 && trimmed.toLowerCase(Locale.ROOT).startsWith("currency"))) {
+                continue;
+            }
+            String[] parts = trimmed.split("[,;]");
+            if (parts.length < 3) {
+                throw invalid(lineNumber, "cần 3 cột currency,rate_date,rate");
+            }
+            String currency = FxRateService.normalizeCurrency(parts[0]);
+            if (currency.length() > 10 || FxRateService.BASE_CURRENCY.equals(currency)) {
+                throw invalid(lineNumber, "mã tiền tệ không hợp lệ: " + parts[0].strip());
+            }
+            try {
+                LocalDate rateDate = LocalDate.parse(parts[1].strip());
+                BigDecimal rate = new BigDecimal(parts[2].strip());
+                if (rate.signum() <= 0) {
+                    throw invalid(lineNumber, "tỷ giá phải lớn hơn 0");
+                }
+                rows.add(new RateRow(currency, rateDate, rate));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw invalid(lineNumber, e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private static Map<String, List<LocalDate>> changedDates(List<RateRow> changed) {
+        Map<String, List<LocalDate>> byCurrency = new TreeMap<>();
+        for (RateRow row : changed) {
+            byCurrency.computeIfAbsent(row.currency(), c -> new ArrayList<>()).add(row.rateDate());
+        }
+        return byCurrency;
+    }
+
+    private static BusinessException invalid(int lineNumber, String reason) {
+        return new BusinessException(ErrorCode.FX_RATE_IMPORT_INVALID, "Dòng " + lineNumber + ": " + reason);
+    }
+
+    private static String truncate(String source) {
+        if (source == null) {
+            return null;
+        }
+        return source.length() > 255 ? source.substring(0, 255) : source;
+    }
+}
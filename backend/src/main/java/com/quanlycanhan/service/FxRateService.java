@@ -0,0 +1,170 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.entity.FxRate;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.FxRateRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Quy đổi số tiền ra tiền gốc (VND) lúc ghi giao dịch
+ * - Toàn bộ fx_rates được giữ trong bộ nhớ (currency -> ngày hiệu lực -> tỷ giá), thay cả bảng khi reload
+ * - Tỷ giá áp dụng: bản gần nhất có rateDate <= ngày giao dịch; giao dịch trước tỷ giá đầu tiên dùng tỷ giá đầu tiên
+ * - Import xong gọi reloadEverywhere: nạp lại ở node này và phát tin lên kênh Redis CHANNEL để các node khác
+ *   nạp lại ngay; định kỳ (app.fx.refresh-ms) vẫn nạp lại phòng khi mất tin
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FxRateService implements MessageListener {
+
+    public static final String BASE_CURRENCY = "VND";
+
+    public static final String CHANNEL = "fx-rates:reload";
+
+    private final FxRateRepository fxRateRepository;
+    private final StringRedisTemplate redisTemplate;
+
+    private volatile Map<String, NavigableMap<LocalDate, BigDecimal>> rates;
+
+    /**
+     * Mã tiền tệ chuẩn (viết hoa, bỏ khoảng trắng); null/rỗng là VND
+     */
+    public static String normalizeCurrency(String currency) {
+        if (currency == null || currency.isBlank()) {
+            return BASE_CURRENCY;
+        }
+        return currency.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Chuẩn hóa mã tiền tệ và điền baseAmount của giao dịch
+     */
+    public void normalize(Transaction transaction) {
+        String currency = normalizeCurrency(transaction.getCurrency());
+        transaction.setCurrency(currency);
+        transaction.setBaseAmount(toBase(transaction.getAmount(), currency, transaction.getTransactionDate()));
+    }
+
+    /**
+     * Quy đổi amount ra VND, làm tròn 2 chữ số (HALF_UP, giống ROUND của MySQL khi chuẩn hóa lại theo lô)
+     */
+    public BigDecimal toBase(BigDecimal amount, String currency, LocalDate date) {
+        if (amount == null) {
+            return null;
+        }
+        return amount.multiply(rateOf(currency, date)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Tỷ giá áp dụng cho ngày date
+     */
+    public BigDecimal rateOf(String currency, LocalDate date) {
+        String code = normalizeCurrency(currency);
+        if (BASE_CURRENCY.equals(code)) {
+            return BigDecimal.ONE;
+        }
+        NavigableMap<LocalDate, BigDecimal> history = ratesOf(code);
+        if (history.isEmpty()) {
+            throw new BusinessException(ErrorCode.FX_RATE_NOT_FOUND, "Chưa có tỷ giá " + code + "/" + BASE_CURRENCY);
+        }
+        Map.Entry<LocalDate, BigDecimal> entry = date != null ? history.floorEntry(date) : history.lastEntry();
+        return (entry != null ? entry : history.firstEntry()).getValue();
+    }
+
+    /**
+     * Lịch sử tỷ giá của một loại tiền (rỗng nếu chưa có)
+     */
+    public NavigableMap<LocalDate, BigDecimal> ratesOf(String currency) {
+        NavigableMap<LocalDate, BigDecimal> history = snapshot().get(normalizeCurrency(currency));
+        return history != null ? history : Collections.emptyNavigableMap();
+    }
+
+    /**
+     * Danh sách tỷ giá trong database (admin), currency null = mọi loại tiền
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public List<FxRate> listRates(String currency) {
+        return currency == null || currency.isBlank()
+            ? fxRateRepository.findAllByOrderByCurrencyAscRateDateAsc()
+            : fxRateRepository.findByCurrencyOrderByRateDateAsc(normalizeCurrency(currency));
+    }
+
+    public boolean hasRates(String currency) {
+        String code = normalizeCurrency(currency);
+        return BASE_CURRENCY.equals(code) || !ratesOf(code).isEmpty();
+    }
+
+    /**
+     * Nạp lại toàn bộ bảng tỷ giá
+     */
+    public synchronized void reload() {
+        Map<String, NavigableMap<LocalDate, BigDecimal>> loaded = new HashMap<>();
+        for (FxRate rate : fxRateRepository.findAllByOrderByCurrencyAscRateDateAsc()) {
+            loaded.computeIfAbsent(normalizeCurrency(rate.getCurrency()), c -> new TreeMap<>())
+                .put(rate.getRateDate(), rate.getRate());
+        }
+        loaded.replaceAll((currency, history) -> Collections.unmodifiableNavigableMap(history));
+        rates = Map.copyOf(loaded);
+        log.debug("Loaded FX rates for {} currencies", loaded.size());
+    }
+
+    /**
+     * Nạp lại ở node này rồi báo các node khác nạp lại
+     */
+    public void reloadEverywhere() {
+        reload();
+        try {
+            redisTemplate.convertAndSend(CHANNEL, "reload");
+        } catch (RuntimeException e) {
+            log.warn("Could not publish FX reload, other nodes refresh within app.fx.refresh-ms: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("FX rate reload on broadcast failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.fx.refresh-ms:600000}", initialDelayString = "${app.fx.refresh-ms:600000}")
+    public void refreshScheduled() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("FX rate refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, NavigableMap<LocalDate, BigDecimal>> snapshot() {
+        Map<String, NavigableMap<LocalDate, BigDecimal>> current = rates;
+        if (current == null) {
+            reload();
+            current = rates;
+        }
+        return current;
+    }
+}
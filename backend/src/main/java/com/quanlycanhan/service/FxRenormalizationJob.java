@@ -0,0 +1,159 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tính lại base_amount khi tỷ giá được thêm / sửa
+ * - Mỗi user là 1 transaction ngắn: UPDATE theo từng đoạn ngày có cùng tỷ giá (index (user_id, transaction_date)),
+ *   rồi dựng lại bảng tổng hợp của user đó
+ * - renormalize: mọi giao dịch của 1 loại tiền trong khoảng ngày (sau khi import sửa tỷ giá)
+ * - normalizeMissing (định kỳ): giao dịch ngoại tệ còn base_amount NULL (dữ liệu trước V9) nay đã có tỷ giá
+ * Cả giao dịch trong thùng rác cũng được tính lại để khôi phục ra đúng số.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FxRenormalizationJob {
+
+    private static final String AFFECTED_USERS_SQL =
+        "SELECT DISTINCT user_id FROM transactions " +
+        "WHERE currency = :currency AND transaction_date BETWEEN :from AND :to ORDER BY user_id";
+
+    private static final String MISSING_SQL =
+        "SELECT DISTINCT user_id, currency FROM transactions WHERE base_amount IS NULL ORDER BY user_id";
+
+    private static final String UPDATE_SQL =
+        "UPDATE transactions SET base_amount = ROUND(amount * :rate, 2) " +
+        "WHERE user_id = :userId AND currency = :currency AND transaction_date BETWEEN :from AND :to";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FxRateService fxRateService;
+    private final TransactionSummaryService transactionSummaryService;
+    private final TransactionOutbox transactionOutbox;
+
+    /**
+     * Đoạn ngày [from, to] dùng cùng một tỷ giá
+     */
+    record Segment(LocalDate from, LocalDate to, BigDecimal rate) {
+    }
+
+    @Scheduled(cron = "${app.fx.renormalize-cron:0 45 6 * * *}")
+    public void normalizeMissingScheduled() {
+        try {
+            normalizeMissing();
+        } catch (Exception e) {
+            log.error("FX normalization of pending transactions failed", e);
+        }
+    }
+
+    /**
+     * Tính lại base_amount của currency trong [from, to]; trả về số user đã dựng lại tổng hợp
+     */
+    public int renormalize(String currency, LocalDate from, LocalDate to) {
+        String code = FxRateService.normalizeCurrency(currency);
+        List<Segment> segments = segments(fxRateService.ratesOf(code), from, to);
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        List<Long> userIds = jdbcTemplate.queryForList(AFFECTED_USERS_SQL, new MapSqlParameterSource()
+            .addValue("currency", code)
+            .addValue("from", from)
+            .addValue("to", to), Long.class);
+        for (Long userId : userIds) {
+            transactionTemplate.executeWithoutResult(status -> {
+                update(userId, code, segments);
+                transactionSummaryService.rebuildUser(userId);
+                transactionOutbox.appendBulk(userId);
+            });
+        }
+        if (!userIds.isEmpty()) {
+            log.info("Renormalized {} transactions {} - {} for {} users", code, from, to, userIds.size());
+        }
+        return userIds.size();
+    }
+
+    /**
+     * Điền base_amount còn NULL cho các loại tiền đã có tỷ giá; trả về số user đã dựng lại tổng hợp
+     */
+    public int normalizeMissing() {
+        Map<Long, List<String>> pending = new LinkedHashMap<>();
+        jdbcTemplate.query(MISSING_SQL, rs -> {
+            String currency = rs.getString("currency");
+            if (fxRateService.hasRates(currency)) {
+                pending.computeIfAbsent(rs.getLong("user_id"), u -> new ArrayList<>()).add(currency);
+            }
+        });
+        pending.forEach((userId, currencies) -> transactionTemplate.executeWithoutResult(status -> {
+            for (String currency : currencies) {
+                update(userId, currency, segments(rates(currency), TransactionService.MIN_DATE, TransactionService.MAX_DATE));
+            }
+            transactionSummaryService.rebuildUser(userId);
+            transactionOutbox.appendBulk(userId);
+        }));
+        if (!pending.isEmpty()) {
+            log.info("Filled base amounts for {} users", pending.size());
+        }
+        return pending.size();
+    }
+
+    private NavigableMap<LocalDate, BigDecimal> rates(String currency) {
+        return FxRateService.BASE_CURRENCY.equals(FxRateService.normalizeCurrency(currency))
+            ? new TreeMap<>(Map.of(TransactionService.MIN_DATE, BigDecimal.ONE))
+            : fxRateService.ratesOf(currency);
+    }
+
+    private void update(Long userId, String currency, List<Segment> segments) {
+        for (Segment segment : segments) {
+            jdbcTemplate.update(UPDATE_SQL, new MapSqlParameterSource()
+                .addValue("rate", segment.rate())
+                .addValue("userId", userId)
+                .addValue("currency", currency)
+                .addValue("from", segment.from())
+                .addValue("to", segment.to()));
+        }
+    }
+
+    /**
+     * Chia [from, to] theo ngày hiệu lực của tỷ giá; đoạn trước tỷ giá đầu tiên dùng tỷ giá đầu tiên
+     */
+    static List<Segment> segments(NavigableMap<LocalDate, BigDecimal> rates, LocalDate from, LocalDate to) {
+        List<Segment> segments = new ArrayList<>();
+        if (rates.isEmpty() || from.isAfter(to)) {
+            return segments;
+        }
+        LocalDate start = TransactionService.MIN_DATE;
+        for (Map.Entry<LocalDate, BigDecimal> entry : rates.entrySet()) {
+            LocalDate next = rates.higherKey(entry.getKey());
+            LocalDate end = next != null ? next.minusDays(1) : TransactionService.MAX_DATE;
+            LocalDate segFrom = start.isAfter(from) ? start : from;
+            LocalDate segTo = end.isBefore(to) ? end : to;
+            if (!segFrom.isAfter(segTo)) {
+                segments.add(new Segment(segFrom, segTo, entry.getValue()));
+            }
+            if (next == null) {
+                break;
+            }
+            start = next;
+        }
+        return segments;
+    }
+}
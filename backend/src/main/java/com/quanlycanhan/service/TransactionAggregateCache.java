@@ -0,0 +1,356 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache tổng hợp số tiền theo user trên Redis (thay cho cache "evict-only" totalAmount/totalByCategory)
+ * - Mỗi user 1 hash agg:{userId}, field "{start}|{end}|{view}" lưu tổng (đơn vị xu, để HINCRBY chính xác)
+ *   view: total / income / expense (số), cat / cat-income / cat-expense (theo danh mục, item "...#{categoryId}")
+ * - Ghi giao dịch: delta được cộng thẳng vào mọi field có khoảng ngày chứa ngày giao dịch (Lua, nguyên tử)
+ *   sau khi transaction commit, thay vì xóa cả cache
+ * - Chống ghi đè giá trị cũ khi fill: _gen tăng mỗi lần ghi, _pending > 0 khi đang có transaction ghi chưa xong;
+ *   fill chỉ được lưu nếu _gen không đổi kể từ lúc đọc và không có ghi đang chờ
+ * - Lỗi Redis không làm hỏng request: đọc thẳng DB, ghi thì xóa hash của user (TTL giới hạn dữ liệu cũ)
+ * Metrics: aggregate.cache.requests{view, result=hit|miss}, aggregate.cache.fills{outcome}, aggregate.cache.errors
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransactionAggregateCache {
+
+    public static final String VIEW_TOTAL = "total";
+    public static final String VIEW_CATEGORY = "cat";
+
+    private static final String KEY_PREFIX = "agg:";
+    private static final String GEN_FIELD = "_gen";
+    private static final String PENDING_FIELD = "_pending";
+
+    private static final RedisScript<Long> BEGIN_WRITE_SCRIPT = new DefaultRedisScript<>(
+        "redis.call('HINCRBY', KEYS[1], '_pending', 1) " +
+        "redis.call('HINCRBY', KEYS[1], '_gen', 1) " +
+        "if redis.call('TTL', KEYS[1]) < 0 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end " +
+        "return 1", Long.class);
+
+    /**
+     * ARGV: ttl, committed (1/0), rồi từng bộ 4 (ngày, categoryId, type, số xu)
+     * Hash hết hạn giữa BEGIN và END (không còn _pending > 0): không biết fill nào đã chứa delta nên xóa cả hash,
+     * không tạo lại hash với _pending âm
+     */
+    private static final RedisScript<Long> END_WRITE_SCRIPT = new DefaultRedisScript<>(
+        "local pending = tonumber(redis.call('HGET', KEYS[1], '_pending') or '0') " +
+        "if pending <= 0 then redis.call('DEL', KEYS[1]) return 0 end " +
+        "if ARGV[2] == '1' then " +
+        "  local fields = redis.call('HKEYS', KEYS[1]) " +
+        "  for _, f in ipairs(fields) do " +
+        "    local s, e, view = string.match(f, '^([^|]+)|([^|]+)|([^#]+)$') " +
+        "    if s then " +
+        "      for i = 3, #ARGV, 4 do " +
+        "        local d, cat, typ, cents = ARGV[i], ARGV[i + 1], ARGV[i + 2], ARGV[i + 3] " +
+        "        if d >= s and d <= e then " +
+        "          if view == 'total' or view == typ then " +
+        "            redis.call('HINCRBY', KEYS[1], f, cents) " +
+        "          elseif view == 'cat' or view == 'cat-' .. typ then " +
+        "            redis.call('HINCRBY', KEYS[1], f .. '#' .. cat, cents) " +
+        "          end " +
+        "        end " +
+        "      end " +
+        "    end " +
+        "  end " +
+        "end " +
+        "redis.call('HINCRBY', KEYS[1], '_pending', -1) " +
+        "redis.call('HINCRBY', KEYS[1], '_gen', 1) " +
+        "if redis.call('TTL', KEYS[1]) < 0 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end " +
+        "return 1", Long.class);
+
+    /**
+     * ARGV: _gen đã đọc, ttl, rồi từng cặp (field, giá trị)
+     */
+    private static final RedisScript<Long> FILL_SCRIPT = new DefaultRedisScript<>(
+        "local gen = redis.call('HGET', KEYS[1], '_gen') or '0' " +
+        "local pending = tonumber(redis.call('HGET', KEYS[1], '_pending') or '0') " +
+        "if gen ~= ARGV[1] or pending > 0 then return 0 end " +
+        "for i = 3, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+        "if redis.call('TTL', KEYS[1]) < 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end " +
+        "return 1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.aggregate-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.aggregate-cache.ttl-seconds:1800}")
+    private long ttlSeconds = 1800;
+
+    /**
+     * Delta của một (ngày, danh mục) do thao tác ghi giao dịch sinh ra
+     */
+    public record Delta(LocalDate date, Long categoryId, String type, BigDecimal amount) {
+    }
+
+    /**
+     * Đọc nhiều tổng dạng số (total/income/expense) của cùng khoảng ngày; thiếu bất kỳ field nào thì load lại cả nhóm
+     */
+    public Map<String, BigDecimal> getAmounts(Long userId, LocalDate startDate, LocalDate endDate,
+                                              List<String> views, Supplier<Map<String, BigDecimal>> loader) {
+        String metricView = String.join(",", views);
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = key(userId);
+        List<Object> fields = new ArrayList<>(views.size() + 1);
+        fields.add(GEN_FIELD);
+        views.forEach(v -> fields.add(field(startDate, endDate, v)));
+        List<Object> cached;
+        try {
+            cached = redisTemplate.opsForHash().multiGet(key, fields);
+        } catch (RuntimeException e) {
+            return fallback("read", e, loader);
+        }
+
+        if (cached != null && cached.subList(1, cached.size()).stream().allMatch(v -> v != null)) {
+            count(metricView, "hit");
+            Map<String, BigDecimal> result = new LinkedHashMap<>();
+            for (int i = 0; i < views.size(); i++) {
+                result.put(views.get(i), fromCents(cached.get(i + 1)));
+            }
+            return result;
+        }
+
+        count(metricView, "miss");
+        String gen = cached != null && cached.get(0) != null ? cached.get(0).toString() : "0";
+        Map<String, BigDecimal> loaded = loader.get();
+        List<String> values = new ArrayList<>();
+        for (String view : views) {
+            values.add(field(startDate, endDate, view));
+            values.add(toCents(loaded.getOrDefault(view, BigDecimal.ZERO)));
+        }
+        fill(key, gen, values);
+        return loaded;
+    }
+
+    /**
+     * Đọc tổng theo danh mục (type null = mọi loại)
+     */
+    public Map<Long, BigDecimal> getByCategory(Long userId, LocalDate startDate, LocalDate endDate, String type,
+                                               Supplier<Map<Long, BigDecimal>> loader) {
+        String view = type != null ? VIEW_CATEGORY + "-" + type : VIEW_CATEGORY;
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = key(userId);
+        String marker = field(startDate, endDate, view);
+        String prefix = marker + "#";
+        List<Object> header;
+        Map<Long, BigDecimal> result = new LinkedHashMap<>();
+        try {
+            header = redisTemplate.opsForHash().multiGet(key, List.of(GEN_FIELD, marker));
+            if (header != null && header.get(1) != null) {
+                // Chỉ quét các item của khoảng ngày này, không kéo cả hash của user về
+                ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(500).build();
+                try (Cursor<Map.Entry<Object, Object>> items = redisTemplate.opsForHash().scan(key, options)) {
+                    while (items.hasNext()) {
+                        Map.Entry<Object, Object> item = items.next();
+                        BigDecimal amount = fromCents(item.getValue());
+                        if (amount.signum() != 0) {
+                            result.put(Long.valueOf(item.getKey().toString().substring(prefix.length())), amount);
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            return fallback("read", e, loader);
+        }
+
+        if (header != null && header.get(1) != null) {
+            count(view, "hit");
+            return result;
+        }
+
+        count(view, "miss");
+        Object gen = header != null ? header.get(0) : null;
+        Map<Long, BigDecimal> loaded = loader.get();
+        List<String> values = new ArrayList<>();
+        values.add(marker);
+        values.add("1");
+        loaded.forEach((categoryId, amount) -> {
+            values.add(marker + "#" + categoryId);
+            values.add(toCents(amount));
+        });
+        fill(key, gen != null ? gen.toString() : "0", values);
+        return loaded;
+    }
+
+    /**
+     * Ghi nhận delta của một user trong transaction hiện tại
+     * Đánh dấu "đang ghi" ngay (chặn fill), cộng delta sau khi commit; rollback thì chỉ bỏ đánh dấu
+     */
+    public void recordDeltas(Long userId, Collection<Delta> deltas) {
+        if (!enabled || deltas.isEmpty()) {
+            return;
+        }
+        String key = key(userId);
+        List<Delta> snapshot = List.copyOf(deltas);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            beginWrite(key);
+            endWrite(key, snapshot, true);
+            return;
+        }
+        beginWrite(key);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                endWrite(key, snapshot, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    /**
+     * Xóa cache của user sau khi transaction hiện tại commit (dựng lại rollup)
+     */
+    public void evictUserAfterCommit(Long userId) {
+        afterCommit(() -> evict(key(userId)));
+    }
+
+    /**
+     * Xóa cache của mọi user sau khi commit (đổi loại danh mục: view income/expense không còn cộng dồn được)
+     */
+    public void evictAllAfterCommit() {
+        afterCommit(() -> {
+            try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(500).build())) {
+                List<String> batch = new ArrayList<>();
+                while (keys.hasNext()) {
+                    batch.add(keys.next());
+                    if (batch.size() == 500) {
+                        redisTemplate.unlink(batch);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    redisTemplate.unlink(batch);
+                }
+            } catch (RuntimeException e) {
+                error("evict", e);
+            }
+        });
+    }
+
+    private void beginWrite(String key) {
+        try {
+            redisTemplate.execute(BEGIN_WRITE_SCRIPT, List.of(key), String.valueOf(ttlSeconds));
+        } catch (RuntimeException e) {
+            error("write", e);
+            evict(key);
+        }
+    }
+
+    private void endWrite(String key, List<Delta> deltas, boolean committed) {
+        List<String> args = new ArrayList<>(2 + deltas.size() * 4);
+        args.add(String.valueOf(ttlSeconds));
+        args.add(committed ? "1" : "0");
+        if (committed) {
+            for (Delta d : deltas) {
+                args.add(d.date().toString());
+                args.add(String.valueOf(d.categoryId()));
+                args.add(d.type());
+                args.add(toCents(d.amount()));
+            }
+        }
+        try {
+            redisTemplate.execute(END_WRITE_SCRIPT, List.of(key), args.toArray());
+        } catch (RuntimeException e) {
+            error("write", e);
+            evict(key);
+        }
+    }
+
+    private void fill(String key, String gen, List<String> fieldValues) {
+        List<String> args = new ArrayList<>(fieldValues.size() + 2);
+        args.add(gen);
+        args.add(String.valueOf(ttlSeconds));
+        args.addAll(fieldValues);
+        try {
+            Long stored = redisTemplate.execute(FILL_SCRIPT, List.of(key), args.toArray());
+            meterRegistry.counter("aggregate.cache.fills",
+                "outcome", stored != null && stored == 1L ? "stored" : "rejected").increment();
+        } catch (RuntimeException e) {
+            error("fill", e);
+        }
+    }
+
+    private void evict(String key) {
+        try {
+            redisTemplate.delete(key);
+        } catch (RuntimeException e) {
+            log.warn("Aggregate cache evict failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private <T> T fallback(String operation, RuntimeException e, Supplier<T> loader) {
+        error(operation, e);
+        return loader.get();
+    }
+
+    private void error(String operation, RuntimeException e) {
+        meterRegistry.counter("aggregate.cache.errors", "operation", operation).increment();
+        log.warn("Aggregate cache {} failed: {}", operation, e.getMessage());
+    }
+
+    private void count(String view, String result) {
+        meterRegistry.counter("aggregate.cache.requests", "view", view, "result", result).increment();
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static String field(LocalDate startDate, LocalDate endDate, String view) {
+        return startDate + "|" + endDate + "|" + view;
+    }
+
+    static String toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    static BigDecimal fromCents(Object cents) {
+        return new BigDecimal(cents.toString()).movePointLeft(2);
+    }
+}
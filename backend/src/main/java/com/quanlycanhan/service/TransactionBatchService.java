@@ -0,0 +1,277 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.entity.User;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionChangeEvent;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service xử lý giao dịch hàng loạt (đồng bộ offline, import)
+ * - Kiểm tra danh mục của cả lô bằng 1 query
+ * - Insert bằng JDBC batch (multi-row INSERT khi bật rewriteBatchedStatements), lấy id sinh ra qua KeyHolder
+ * - Evict cache 1 lần cho cả lô, cập nhật bảng tổng hợp theo ngày bằng 1 batch delta
+ * Cả lô chạy trong 1 transaction: một phần tử lỗi thì không ghi phần tử nào.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransactionBatchService {
+
+    /**
+     * Số giao dịch tối đa trong một request
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Số dòng mỗi lần gửi batch INSERT xuống database
+     */
+    private static final int INSERT_CHUNK_SIZE = 500;
+
+    private static final String INSERT_SQL =
+        "INSERT INTO transactions (user_id, category_id, amount, base_amount, currency, transaction_date, note, " +
+        "location, search_text, receipt_image, created_by, created_by_admin_id, deleted, created_at, updated_at) " +
+        "VALUES (:userId, :categoryId, :amount, :baseAmount, :currency, :transactionDate, :note, :location, " +
+        ":searchText, :receiptImage, :createdBy, :createdByAdminId, 0, :now, :now)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionRepository transactionRepository;
+    private final CategoryRepository categoryRepository;
+    private final UserRepository userRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionSummaryService transactionSummaryService;
+    private final FxRateService fxRateService;
+    private final TransactionOutbox transactionOutbox;
+
+    /**
+     * Dữ liệu một giao dịch trong lô (id chỉ dùng khi cập nhật; field null = không đổi)
+     */
+    public record TransactionInput(Long id, Long categoryId, BigDecimal amount, String currency,
+                                   LocalDate transactionDate, String note, String location, String receiptImage) {
+    }
+
+    /**
+     * Tạo nhiều giao dịch trong một lần
+     * Trả về các giao dịch đã tạo (đúng thứ tự đầu vào, đã có id)
+     */
+    @Transactional
+    public List<Transaction> createTransactions(Long userId, List<TransactionInput> items,
+                                                Transaction.CreatedBy createdBy, Long createdByAdminId) {
+        checkSize(items);
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            TransactionInput item = items.get(i);
+            if (item.categoryId() == null) errors.add("items[" + i + "].categoryId");
+            if (item.amount() == null) errors.add("items[" + i + "].amount");
+            if (item.transactionDate() == null) errors.add("items[" + i + "].transactionDate");
+        }
+        if (!errors.isEmpty()) {
+            throw new BusinessException(ErrorCode.TRANSACTION_BATCH_INVALID, "Thiếu dữ liệu: " + String.join(", ", errors));
+        }
+
+        User user = userRepository.findById(userId)
+            .orElseThrow(() -> new BusinessException(ErrorCode.USER_NOT_FOUND));
+        Map<Long, Category> categories = loadCategories(userId, items);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Transaction> created = new ArrayList<>(items.size());
+        for (TransactionInput item : items) {
+            created.add(Transaction.builder()
+                .user(user)
+                .category(categories.get(item.categoryId()))
+                .amount(item.amount())
+                .currency(item.currency() != null ? item.currency() : "VND")
+                .transactionDate(item.transactionDate())
+                .note(item.note())
+                .location(item.location())
+                .searchText(SearchTextNormalizer.buildDocument(item.note(), item.location()))
+                .receiptImage(item.receiptImage())
+                .createdBy(createdBy)
+                .createdByAdminId(createdByAdminId)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        }
+        created.forEach(fxRateService::normalize);
+
+        for (int from = 0; from < created.size(); from += INSERT_CHUNK_SIZE) {
+            insertChunk(userId, created.subList(from, Math.min(from + INSERT_CHUNK_SIZE, created.size())), now);
+        }
+        transactionSummaryService.recordCreated(created);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.CREATED,
+            created.stream().map(Transaction::getId).toList());
+        return created;
+    }
+
+    /**
+     * Cập nhật nhiều giao dịch trong một lần
+     * Load toàn bộ giao dịch + danh mục bằng 2 query; Hibernate gom UPDATE thành batch khi flush
+     */
+    @Transactional
+    public List<Transaction> updateTransactions(Long userId, List<TransactionInput> items) {
+        checkSize(items);
+        Set<Long> ids = new LinkedHashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            Long id = items.get(i).id();
+            if (id == null || !ids.add(id)) {
+                throw new BusinessException(ErrorCode.TRANSACTION_BATCH_INVALID, "items[" + i + "].id thiếu hoặc bị trùng");
+            }
+        }
+
+        Map<Long, Transaction> existing = transactionRepository.findAllByIdInAndUserIdWithCategory(ids, userId).stream()
+            .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        if (existing.size() != ids.size()) {
+            List<Long> missing = ids.stream().filter(id -> !existing.containsKey(id)).toList();
+            throw new BusinessException(ErrorCode.TRANSACTION_NOT_FOUND, "id: " + missing);
+        }
+        Map<Long, Category> categories = loadCategories(userId, items);
+        List<TransactionSummaryService.Contribution> before = existing.values().stream()
+            .map(TransactionSummaryService.Contribution::of)
+            .toList();
+
+        List<Transaction> updated = new ArrayList<>(items.size());
+        for (TransactionInput item : items) {
+            Transaction transaction = existing.get(item.id());
+            if (item.categoryId() != null) {
+                transaction.setCategory(categories.get(item.categoryId()));
+            }
+            if (item.amount() != null) {
+                transaction.setAmount(item.amount());
+            }
+            if (item.currency() != null) {
+                transaction.setCurrency(item.currency());
+            }
+            if (item.transactionDate() != null) {
+                transaction.setTransactionDate(item.transactionDate());
+            }
+            if (item.note() != null) {
+                transaction.setNote(item.note());
+            }
+            if (item.location() != null) {
+                transaction.setLocation(item.location());
+            }
+            if (item.receiptImage() != null) {
+                String oldReceiptImage = transaction.getReceiptImage();
+                if (oldReceiptImage != null && oldReceiptImage.startsWith("/api/files/")
+                        && !oldReceiptImage.equals(item.receiptImage())) {
+                    fileStorageService.deleteFile(oldReceiptImage);
+                }
+                transaction.setReceiptImage(item.receiptImage());
+            }
+            if (item.amount() != null || item.currency() != null || item.transactionDate() != null) {
+                fxRateService.normalize(transaction);
+            }
+            updated.add(transaction);
+        }
+        transactionRepository.flush();
+        transactionSummaryService.recordUpdated(before, updated);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.UPDATED,
+            updated.stream().map(Transaction::getId).toList());
+        return updated;
+    }
+
+    /**
+     * Xóa mềm nhiều giao dịch bằng 1 câu UPDATE (vào thùng rác, ảnh hóa đơn giữ lại để khôi phục)
+     * Id không tồn tại / đã xóa được bỏ qua (client đồng bộ có thể gửi lại); trả về số giao dịch đã xóa
+     */
+    @Transactional
+    public int deleteTransactions(Long userId, List<Long> ids) {
+        checkSize(ids);
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) {
+            return 0;
+        }
+        List<Transaction> existing = transactionRepository.findAllByIdInAndUserIdWithCategory(distinctIds, userId);
+        List<TransactionSummaryService.Contribution> removed = existing.stream()
+            .map(TransactionSummaryService.Contribution::of)
+            .toList();
+        int deleted = transactionRepository.softDeleteByIdsAndUserId(distinctIds, userId, LocalDateTime.now());
+        transactionSummaryService.recordDeleted(removed);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.DELETED,
+            existing.stream().map(Transaction::getId).toList());
+        return deleted;
+    }
+
+    private void insertChunk(Long userId, List<Transaction> chunk, LocalDateTime now) {
+        SqlParameterSource[] params = new SqlParameterSource[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            Transaction t = chunk.get(i);
+            params[i] = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("categoryId", t.getCategory().getId())
+                .addValue("amount", t.getAmount())
+                .addValue("baseAmount", t.getBaseAmount())
+                .addValue("currency", t.getCurrency())
+                .addValue("transactionDate", t.getTransactionDate())
+                .addValue("note", t.getNote())
+                .addValue("location", t.getLocation())
+                .addValue("searchText", t.getSearchText())
+                .addValue("receiptImage", t.getReceiptImage())
+                .addValue("createdBy", t.getCreatedBy().name())
+                .addValue("createdByAdminId", t.getCreatedByAdminId())
+                .addValue("now", now);
+        }
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(INSERT_SQL, params, keyHolder, new String[] {"id"});
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < chunk.size() && i < keys.size(); i++) {
+            Object key = keys.get(i).values().iterator().next();
+            chunk.get(i).setId(((Number) key).longValue());
+        }
+    }
+
+    /**
+     * Kiểm tra toàn bộ categoryId trong lô bằng 1 query
+     */
+    private Map<Long, Category> loadCategories(Long userId, List<TransactionInput> items) {
+        Set<Long> categoryIds = items.stream()
+            .map(TransactionInput::categoryId)
+            .filter(java.util.Objects::nonNull)
+            .collect(Collectors.toSet());
+        if (categoryIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Category> categories = categoryRepository.findAccessibleByIds(categoryIds, userId).stream()
+            .collect(Collectors.toMap(Category::getId, Function.identity()));
+        if (categories.size() != categoryIds.size()) {
+            List<Long> invalid = categoryIds.stream().filter(id -> !categories.containsKey(id)).sorted().toList();
+            throw new BusinessException(ErrorCode.CATEGORY_INVALID, "categoryId: " + invalid);
+        }
+        return categories;
+    }
+
+    private void checkSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new BusinessException(ErrorCode.TRANSACTION_BATCH_INVALID, "Danh sách rỗng");
+        }
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new BusinessException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE, "Tối đa " + MAX_BATCH_SIZE);
+        }
+    }
+}
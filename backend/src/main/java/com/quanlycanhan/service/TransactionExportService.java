@@ -0,0 +1,112 @@
+package com.quanlycanhan.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.service.exporter.CsvExportWriter;
+import com.quanlycanhan.service.exporter.ExportWriter;
+import com.quanlycanhan.service.exporter.PdfExportWriter;
+import com.quanlycanhan.service.exporter.XlsxExportWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service xuất lịch sử giao dịch ra CSV / XLSX / PDF
+ * - Đọc bằng Stream (server-side cursor) + ghi từng dòng: bộ nhớ không phụ thuộc số giao dịch
+ * - Chạy trong StreamingResponseBody (thread async của MVC) nên tự mở transaction read-only
+ */
+@Slf4j
+@Service
+public class TransactionExportService {
+
+    /**
+     * Định dạng hỗ trợ
+     */
+    public enum Format {
+        CSV("text/csv; charset=UTF-8", "csv"),
+        XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx"),
+        PDF("application/pdf", "pdf");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (Exception e) {
+                throw new BusinessException(ErrorCode.EXPORT_FORMAT_INVALID, value);
+            }
+        }
+    }
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${app.export.pdf-font:}")
+    private String pdfFontPath;
+
+    public TransactionExportService(TransactionRepository transactionRepository,
+                                    PlatformTransactionManager transactionManager) {
+        this.transactionRepository = transactionRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Tạo body streaming cho response; dữ liệu chỉ được đọc khi MVC bắt đầu ghi response
+     */
+    public StreamingResponseBody export(Long userId, LocalDate startDate, LocalDate endDate, Format format) {
+        LocalDate start = startDate != null ? startDate : TransactionService.MIN_DATE;
+        LocalDate end = endDate != null ? endDate : TransactionService.MAX_DATE;
+        return out -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<TransactionResponseDTO> rows = transactionRepository.streamDtoByUserIdAndDateRange(userId, start, end);
+                 ExportWriter writer = createWriter(format, out, start, end)) {
+                Iterator<TransactionResponseDTO> it = rows.iterator();
+                while (it.hasNext()) {
+                    writer.write(it.next());
+                }
+                writer.finish();
+            } catch (IOException e) {
+                // Client ngắt kết nối giữa chừng: dừng đọc, không coi là lỗi hệ thống
+                log.warn("Export aborted for user {}: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    private ExportWriter createWriter(Format format, OutputStream out, LocalDate start, LocalDate end) throws IOException {
+        return switch (format) {
+            case CSV -> new CsvExportWriter(out);
+            case XLSX -> new XlsxExportWriter(out);
+            case PDF -> new PdfExportWriter(out, "Lịch sử giao dịch "
+                + (start.equals(TransactionService.MIN_DATE) ? "" : start + " ")
+                + "- " + (end.equals(TransactionService.MAX_DATE) ? LocalDate.now() : end), pdfFontPath);
+        };
+    }
+}
@@ -0,0 +1,200 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.service.importer.ImportColumnMapping;
+import com.quanlycanhan.service.importer.ImportJob;
+import com.quanlycanhan.service.importer.ImportOptions;
+import com.quanlycanhan.service.importer.RowReader;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Xử lý nền một file import: đọc streaming -> chuyển kiểu -> lọc trùng theo lô -> ghi bằng batch insert
+ * Mỗi lô CHUNK_SIZE dòng được ghi trong transaction riêng, nên bộ nhớ chỉ phụ thuộc kích thước lô.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransactionImportProcessor {
+
+    /**
+     * Số dòng mỗi lô lọc trùng + ghi (không vượt TransactionBatchService.MAX_BATCH_SIZE)
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    private final TransactionBatchService transactionBatchService;
+    private final CategoryDirectory categoryDirectory;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Async
+    public void process(ImportJob job, Path file, RowReader reader, ImportOptions options) {
+        job.start();
+        try {
+            Map<String, Long> categoryIds = categoryIdsByFoldedName(job.getUserId());
+            if (options.defaultCategoryId() != null && !categoryIds.containsValue(options.defaultCategoryId())) {
+                throw new BusinessException(ErrorCode.CATEGORY_INVALID, "defaultCategoryId: " + options.defaultCategoryId());
+            }
+
+            ChunkWriter writer = new ChunkWriter(job, options);
+            ImportColumnMapping[] mapping = new ImportColumnMapping[1];
+            reader.read(file, (rowNumber, cells) -> {
+                if (ImportColumnMapping.isBlank(cells)) {
+                    return;
+                }
+                if (mapping[0] == null) {
+                    mapping[0] = ImportColumnMapping.fromHeader(cells, options);
+                    return;
+                }
+                job.getProcessedRows().incrementAndGet();
+                try {
+                    ImportColumnMapping.ParsedRow row = mapping[0].parse(cells);
+                    Long categoryId = row.categoryName() != null
+                        ? categoryIds.get(SearchTextNormalizer.fold(row.categoryName()))
+                        : null;
+                    if (categoryId == null) {
+                        categoryId = options.defaultCategoryId();
+                    }
+                    if (categoryId == null) {
+                        throw new IllegalArgumentException(row.categoryName() != null
+                            ? "Không tìm thấy danh mục: " + row.categoryName()
+                            : "Thiếu danh mục");
+                    }
+                    writer.add(new TransactionBatchService.TransactionInput(null, categoryId, row.amount(), null,
+                        row.transactionDate(), row.note(), row.location(), null));
+                } catch (IllegalArgumentException e) {
+                    job.rowError(rowNumber, e.getMessage());
+                }
+            });
+            if (mapping[0] == null) {
+                throw new BusinessException(ErrorCode.IMPORT_FILE_INVALID, "File không có dữ liệu");
+            }
+            writer.flush();
+            job.complete();
+            log.info("Import {} for user {}: {} imported, {} duplicates, {} errors",
+                job.getId(), job.getUserId(), job.getImportedRows(), job.getDuplicateRows(), job.getErrorRows());
+        } catch (BusinessException e) {
+            job.fail(e.getDetails() != null ? e.getDetails() : e.getMessage());
+        } catch (Exception e) {
+            log.error("Import {} failed", job.getId(), e);
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (Exception e) {
+                log.warn("Could not delete import temp file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Danh mục theo tên đã bỏ dấu; trùng tên thì ưu tiên danh mục của user hơn danh mục hệ thống
+     */
+    private Map<String, Long> categoryIdsByFoldedName(Long userId) {
+        Map<String, Long> ids = new HashMap<>();
+        for (CategoryDirectory.Entry c : categoryDirectory.get(userId).active()) {
+            if (c.systemDefault()) {
+                ids.putIfAbsent(c.foldedName(), c.id());
+            } else {
+                ids.put(c.foldedName(), c.id());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gom dòng hợp lệ thành lô; mỗi lô lọc trùng (trong lô + với database) bằng 1 query rồi ghi bằng batch insert
+     */
+    private final class ChunkWriter {
+
+        private final ImportJob job;
+        private final ImportOptions options;
+        private final List<TransactionBatchService.TransactionInput> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        ChunkWriter(ImportJob job, ImportOptions options) {
+            this.job = job;
+            this.options = options;
+        }
+
+        void add(TransactionBatchService.TransactionInput input) {
+            chunk.add(input);
+            if (chunk.size() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<TransactionBatchService.TransactionInput> toInsert = options.skipDuplicates() ? dedupe() : chunk;
+            if (!toInsert.isEmpty()) {
+                transactionBatchService.createTransactions(job.getUserId(), toInsert, Transaction.CreatedBy.USER, null);
+                job.getImportedRows().addAndGet(toInsert.size());
+            }
+            chunk.clear();
+        }
+
+        private List<TransactionBatchService.TransactionInput> dedupe() {
+            Set<String> seen = existingKeys();
+            List<TransactionBatchService.TransactionInput> unique = new ArrayList<>(chunk.size());
+            for (TransactionBatchService.TransactionInput input : chunk) {
+                if (seen.add(key(input.transactionDate().toString(), input.amount(),
+                        SearchTextNormalizer.buildDocument(input.note(), input.location())))) {
+                    unique.add(input);
+                } else {
+                    job.getDuplicateRows().incrementAndGet();
+                }
+            }
+            return unique;
+        }
+
+        /**
+         * Khóa (ngày, số tiền, search_text) của giao dịch đã có trùng (ngày, số tiền) với lô hiện tại
+         */
+        private Set<String> existingKeys() {
+            Set<List<Object>> pairs = new LinkedHashSet<>();
+            for (TransactionBatchService.TransactionInput input : chunk) {
+                pairs.add(List.of(input.transactionDate(), input.amount()));
+            }
+            List<Object[]> tuples = pairs.stream().map(List::toArray).toList();
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", job.getUserId())
+                .addValue("pairs", tuples);
+            Set<String> keys = new HashSet<>();
+            jdbcTemplate.query(
+                "SELECT transaction_date, amount, search_text FROM transactions " +
+                "WHERE user_id = :userId AND deleted = 0 AND (transaction_date, amount) IN (:pairs)",
+                params,
+                (RowCallbackHandler) rs -> {
+                    keys.add(key(rs.getDate("transaction_date").toLocalDate().toString(),
+                        rs.getBigDecimal("amount"), rs.getString("search_text")));
+                });
+            return keys;
+        }
+
+        private String key(String date, BigDecimal amount, String searchText) {
+            return date + '|' + amount.stripTrailingZeros().toPlainString() + '|' + (searchText != null ? searchText : "");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.quanlycanhan.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.service.importer.CsvRowReader;
+import com.quanlycanhan.service.importer.ImportJob;
+import com.quanlycanhan.service.importer.ImportOptions;
+import com.quanlycanhan.service.importer.RowReader;
+import com.quanlycanhan.service.importer.XlsxRowReader;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service import giao dịch từ file CSV/XLSX
+ * - Lưu file upload ra file tạm rồi xử lý nền (TransactionImportProcessor), request trả về ngay jobId
+ * - Client hỏi tiến độ qua getJob; mỗi user chỉ chạy 1 import cùng lúc
+ * - Trạng thái job giữ trong bộ nhớ, tự dọn sau khi hoàn tất 1 giờ
+ */
+@Service
+@RequiredArgsConstructor
+public class TransactionImportService {
+
+    private final TransactionImportProcessor transactionImportProcessor;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Nhận file và bắt đầu import nền
+     */
+    public ImportJob startImport(Long userId, MultipartFile file, ImportOptions options) {
+        if (file == null || file.isEmpty()) {
+            throw new BusinessException(ErrorCode.IMPORT_FILE_INVALID, "File không được để trống");
+        }
+        String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : "import";
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        RowReader reader;
+        String suffix;
+        if (lowerName.endsWith(".xlsx")) {
+            reader = new XlsxRowReader();
+            suffix = ".xlsx";
+        } else if (lowerName.endsWith(".csv")) {
+            reader = new CsvRowReader();
+            suffix = ".csv";
+        } else {
+            throw new BusinessException(ErrorCode.IMPORT_FILE_INVALID, "Chỉ hỗ trợ file .csv hoặc .xlsx");
+        }
+
+        ImportJob job = new ImportJob(userId, fileName);
+        synchronized (jobs) {
+            boolean running = jobs.values().stream()
+                .anyMatch(j -> j.getUserId().equals(userId) && !j.isFinished());
+            if (running) {
+                throw new BusinessException(ErrorCode.IMPORT_JOB_RUNNING);
+            }
+            jobs.put(job.getId(), job);
+        }
+
+        Path temp;
+        try {
+            temp = Files.createTempFile("transaction-import-", suffix);
+            file.transferTo(temp);
+        } catch (IOException e) {
+            jobs.remove(job.getId());
+            throw new BusinessException(ErrorCode.IMPORT_FILE_INVALID, "Không lưu được file tạm: " + e.getMessage());
+        }
+        transactionImportProcessor.process(job, temp, reader, options);
+        return job;
+    }
+
+    /**
+     * Lấy tiến độ import (chỉ chủ sở hữu xem được)
+     */
+    public ImportJob getJob(String jobId, Long userId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new BusinessException(ErrorCode.IMPORT_JOB_NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * Dọn job đã xong quá 1 giờ
+     */
+    @Scheduled(fixedDelay = 600_000)
+    public void cleanupFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(1);
+        jobs.values().removeIf(j -> j.isFinished() && j.getFinishedAt().isBefore(cutoff));
+    }
+}
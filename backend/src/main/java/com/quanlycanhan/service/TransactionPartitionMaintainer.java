@@ -0,0 +1,365 @@
+package com.quanlycanhan.service;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.repository.TransactionRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Phân vùng và bảo trì phân vùng bảng transactions theo năm (RANGE COLUMNS trên transaction_date), khi bật
+ * app.partitioning.enabled
+ * - Khởi tạo bean: bảng chưa phân vùng thì chuyển đổi (giữ GET_LOCK để chỉ một node chạy), nên bật cờ lúc nào
+ *   cũng được; chuyển đổi không thành thì dừng khởi động thay vì bảo trì trên bảng thường
+ * - Chuyển đổi: MySQL không cho phân vùng bảng có FOREIGN KEY hoặc FULLTEXT nên bỏ FK user/category (chỉ xóa mềm)
+ *   và FULLTEXT search_text (TransactionSearchService tự chuyển sang LIKE); khóa chính thành (id, transaction_date)
+ * - Khi khởi động và đầu mỗi tháng: tách p_future thành partition cho các năm tới (app.partitioning.years-ahead),
+ *   để dữ liệu năm mới không dồn vào p_future
+ * - Kiểm tra partition pruning: EXPLAIN các query theo khoảng ngày của tháng hiện tại (dịch từ @Query của
+ *   TransactionRepository), chỉ được chạm partition chứa tháng đó (cảnh báo nếu quét cả năm cũ)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.partitioning.enabled", havingValue = "true")
+public class TransactionPartitionMaintainer {
+
+    static final String FUTURE_PARTITION = "p_future";
+
+    private static final Pattern YEAR_PARTITION = Pattern.compile("p(\\d{4})");
+
+    private static final String LOCK_NAME = "transactions_partitioning";
+
+    private static final String FOREIGN_KEYS_SQL =
+        "SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND CONSTRAINT_TYPE = 'FOREIGN KEY'";
+
+    private static final String FULLTEXT_INDEXES_SQL =
+        "SELECT DISTINCT INDEX_NAME FROM INFORMATION_SCHEMA.STATISTICS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND INDEX_TYPE = 'FULLTEXT'";
+
+    private static final String PRIMARY_KEY_COLUMNS_SQL =
+        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND CONSTRAINT_NAME = 'PRIMARY'";
+
+    private static final String LIST_PARTITIONS_SQL =
+        "SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS FROM INFORMATION_SCHEMA.PARTITIONS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND PARTITION_NAME IS NOT NULL " +
+        "ORDER BY PARTITION_ORDINAL_POSITION";
+
+    /**
+     * Query đọc transactions theo khoảng ngày cần kiểm tra pruning: tên -> method của TransactionRepository
+     */
+    static final Map<String, String> PRUNING_QUERIES = new LinkedHashMap<>();
+
+    static {
+        PRUNING_QUERIES.put("dateRange", "findDtoByUserIdAndDateRange");
+        PRUNING_QUERIES.put("cursor", "findDtoByUserIdAfterCursor");
+        PRUNING_QUERIES.put("export", "streamDtoByUserIdAndDateRange");
+    }
+
+    /**
+     * Thuộc tính JPQL dùng trong WHERE / ORDER BY của các query trên -> cột SQL
+     */
+    private static final Map<String, String> PRUNING_COLUMNS = Map.of(
+        "t.id", "t.id",
+        "t.user.id", "t.user_id",
+        "t.deleted", "t.deleted",
+        "t.transactionDate", "t.transaction_date");
+
+    private static final Pattern JPQL_PATH = Pattern.compile("\\bt(\\.[A-Za-z]+)+");
+
+    private static final Pattern JPQL_BOOLEAN = Pattern.compile("\\b(true|false)\\b");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.partitioning.years-ahead:1}")
+    private int yearsAhead = 1;
+
+    @Value("${app.partitioning.lock-timeout-seconds:3600}")
+    private int lockTimeoutSeconds = 3600;
+
+    /**
+     * Một partition: upperBound null = MAXVALUE
+     */
+    public record PartitionInfo(String name, LocalDate upperBound, long rows) {
+    }
+
+    /**
+     * Kết quả EXPLAIN một query: partition thực sự đọc so với partition chứa khoảng ngày
+     */
+    public record PruningCheck(String query, List<String> partitions, List<String> expected, boolean pruned) {
+    }
+
+    /**
+     * Chuyển bảng sang phân vùng nếu chưa; vẫn chưa phân vùng thì ném lỗi để dừng khởi động
+     */
+    @PostConstruct
+    void ensurePartitioned() {
+        if (!listPartitions().isEmpty()) {
+            return;
+        }
+        log.warn("Table transactions is not partitioned, converting it (locks the table while rebuilding)");
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // Cùng một kết nối cho GET_LOCK, kiểm tra lại và DDL
+            convert(new JdbcTemplate(new SingleConnectionDataSource(connection, true)), LocalDate.now());
+            return null;
+        });
+        if (listPartitions().isEmpty()) {
+            throw new IllegalStateException(
+                "app.partitioning.enabled=true but table transactions could not be partitioned");
+        }
+        log.info("Table transactions is now partitioned by year");
+    }
+
+    private void convert(JdbcTemplate connection, LocalDate today) {
+        Integer locked = connection.queryForObject("SELECT GET_LOCK(?, ?)", Integer.class, LOCK_NAME, lockTimeoutSeconds);
+        if (locked == null || locked != 1) {
+            throw new IllegalStateException("Could not acquire lock " + LOCK_NAME + " to partition transactions");
+        }
+        try {
+            // Node khác có thể đã chuyển đổi trong lúc chờ khóa
+            if (!connection.query(LIST_PARTITIONS_SQL, (rs, i) -> rs.getString("PARTITION_NAME")).isEmpty()) {
+                return;
+            }
+            Integer firstYear = connection.queryForObject(
+                "SELECT YEAR(MIN(transaction_date)) FROM transactions", Integer.class);
+            Integer primaryKeyColumns = connection.queryForObject(PRIMARY_KEY_COLUMNS_SQL, Integer.class);
+            List<String> statements = conversionStatements(
+                connection.queryForList(FOREIGN_KEYS_SQL, String.class),
+                connection.queryForList(FULLTEXT_INDEXES_SQL, String.class),
+                primaryKeyColumns != null && primaryKeyColumns == 1,
+                firstYear != null ? firstYear : today.getYear(),
+                today.getYear() + yearsAhead);
+            statements.forEach(connection::execute);
+        } finally {
+            connection.queryForObject("SELECT RELEASE_LOCK(?)", Integer.class, LOCK_NAME);
+        }
+    }
+
+    /**
+     * DDL chuyển transactions sang phân vùng: p<firstYear> ... p<lastYear>, p_future (MAXVALUE)
+     */
+    static List<String> conversionStatements(List<String> foreignKeys, List<String> fullTextIndexes,
+                                             boolean singleColumnPrimaryKey, int firstYear, int lastYear) {
+        List<String> statements = new ArrayList<>();
+        if (!foreignKeys.isEmpty()) {
+            statements.add("ALTER TABLE transactions " + String.join(", ",
+                foreignKeys.stream().map(fk -> "DROP FOREIGN KEY " + fk).toList()));
+        }
+        if (!fullTextIndexes.isEmpty()) {
+            statements.add("ALTER TABLE transactions " + String.join(", ",
+                fullTextIndexes.stream().map(index -> "DROP INDEX " + index).toList()));
+        }
+        if (singleColumnPrimaryKey) {
+            // id vẫn đứng đầu nên AUTO_INCREMENT và tra theo id không đổi
+            statements.add("ALTER TABLE transactions DROP PRIMARY KEY, ADD PRIMARY KEY (id, transaction_date)");
+        }
+        StringBuilder partition = new StringBuilder(
+            "ALTER TABLE transactions PARTITION BY RANGE COLUMNS (transaction_date) (");
+        for (int year = firstYear; year <= lastYear; year++) {
+            partition.append("PARTITION p").append(year)
+                .append(" VALUES LESS THAN ('").append(year + 1).append("-01-01'), ");
+        }
+        partition.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+        statements.add(partition.toString());
+        return statements;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${app.partitioning.cron:0 0 4 1 * *}")
+    public void maintainScheduled() {
+        maintain();
+    }
+
+    private void maintain() {
+        try {
+            LocalDate today = LocalDate.now();
+            ensureFuturePartitions(today);
+            verifyPruning(today);
+        } catch (Exception e) {
+            log.error("Transaction partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Partition hiện có của transactions theo thứ tự; rỗng nếu bảng chưa được phân vùng
+     */
+    public List<PartitionInfo> listPartitions() {
+        return jdbcTemplate.query(LIST_PARTITIONS_SQL, (rs, i) -> new PartitionInfo(
+            rs.getString("PARTITION_NAME"),
+            parseBound(rs.getString("PARTITION_DESCRIPTION")),
+            rs.getLong("TABLE_ROWS")));
+    }
+
+    /**
+     * Tạo partition năm còn thiếu tới năm (hiện tại + yearsAhead) bằng 1 lệnh REORGANIZE p_future
+     * Trả về số partition đã tạo
+     */
+    public int ensureFuturePartitions(LocalDate today) {
+        List<PartitionInfo> partitions = listPartitions();
+        if (partitions.isEmpty()) {
+            log.warn("Table transactions is not partitioned, skipping partition maintenance");
+            return 0;
+        }
+        if (partitions.stream().noneMatch(p -> FUTURE_PARTITION.equals(p.name()))) {
+            log.warn("Partition {} is missing, cannot add future partitions", FUTURE_PARTITION);
+            return 0;
+        }
+        int lastYear = today.getYear() - 1;
+        for (PartitionInfo p : partitions) {
+            Matcher m = YEAR_PARTITION.matcher(p.name());
+            if (m.matches()) {
+                lastYear = Math.max(lastYear, Integer.parseInt(m.group(1)));
+            }
+        }
+        int targetYear = today.getYear() + yearsAhead;
+        if (lastYear >= targetYear) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("ALTER TABLE transactions REORGANIZE PARTITION ")
+            .append(FUTURE_PARTITION).append(" INTO (");
+        for (int year = lastYear + 1; year <= targetYear; year++) {
+            sql.append("PARTITION p").append(year)
+               .append(" VALUES LESS THAN ('").append(year + 1).append("-01-01'), ");
+        }
+        sql.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+        jdbcTemplate.execute(sql.toString());
+        int created = targetYear - lastYear;
+        log.info("Added {} transaction partitions (p{}..p{})", created, lastYear + 1, targetYear);
+        return created;
+    }
+
+    /**
+     * EXPLAIN các query theo khoảng ngày của tháng hiện tại; pruned = chỉ đọc partition chứa tháng đó
+     */
+    public List<PruningCheck> verifyPruning(LocalDate today) {
+        List<PartitionInfo> partitions = listPartitions();
+        if (partitions.isEmpty()) {
+            return List.of();
+        }
+        LocalDate start = today.withDayOfMonth(1);
+        LocalDate end = today.withDayOfMonth(today.lengthOfMonth());
+        List<String> expected = partitionsCovering(partitions, start, end);
+
+        NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbcTemplate);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("userId", 0L)
+            .addValue("startDate", start)
+            .addValue("endDate", end)
+            .addValue("cursorDate", end)
+            .addValue("cursorId", Long.MAX_VALUE);
+
+        List<PruningCheck> checks = new ArrayList<>(PRUNING_QUERIES.size());
+        for (Map.Entry<String, String> query : pruningSql().entrySet()) {
+            List<String> used = new ArrayList<>();
+            named.query("EXPLAIN " + query.getValue(), params, (RowCallbackHandler) rs -> {
+                String partitionList = rs.getString("partitions");
+                if ("t".equals(rs.getString("table")) && partitionList != null) {
+                    used.addAll(List.of(partitionList.split(",")));
+                }
+            });
+            boolean pruned = !used.isEmpty() && expected.containsAll(used);
+            if (!pruned) {
+                log.warn("Query {} is not pruned to {}: reads partitions {}", query.getKey(), expected, used);
+            }
+            checks.add(new PruningCheck(query.getKey(), used, expected, pruned));
+        }
+        return checks;
+    }
+
+    /**
+     * SQL để EXPLAIN, dịch từ @Query của các method trong PRUNING_QUERIES nên luôn theo đúng query đang chạy:
+     * giữ nguyên WHERE / ORDER BY (tên thuộc tính -> cột, tham số giữ dạng :name), chỉ thay phần SELECT
+     * Thuộc tính chưa có trong PRUNING_COLUMNS thì ném lỗi thay vì kiểm tra một câu SQL sai
+     */
+    static Map<String, String> pruningSql() {
+        Map<String, String> sql = new LinkedHashMap<>();
+        for (Map.Entry<String, String> query : PRUNING_QUERIES.entrySet()) {
+            Method method = Arrays.stream(TransactionRepository.class.getMethods())
+                .filter(m -> m.getName().equals(query.getValue()) && m.isAnnotationPresent(Query.class))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                    "TransactionRepository." + query.getValue() + " with @Query not found"));
+            boolean limited = Arrays.stream(method.getParameterTypes())
+                .anyMatch(type -> Limit.class.equals(type) || Pageable.class.equals(type));
+            sql.put(query.getKey(), toSql(method.getAnnotation(Query.class).value(), limited));
+        }
+        return sql;
+    }
+
+    static String toSql(String jpql, boolean limited) {
+        int where = jpql.indexOf(" WHERE ");
+        if (!jpql.contains(" FROM Transaction t") || where < 0) {
+            throw new IllegalStateException("Unsupported query for pruning check: " + jpql);
+        }
+        Matcher path = JPQL_PATH.matcher(jpql.substring(where));
+        StringBuilder tail = new StringBuilder();
+        while (path.find()) {
+            String column = PRUNING_COLUMNS.get(path.group());
+            if (column == null) {
+                throw new IllegalStateException("No column mapping for " + path.group() + " in: " + jpql);
+            }
+            path.appendReplacement(tail, Matcher.quoteReplacement(column));
+        }
+        path.appendTail(tail);
+        String condition = JPQL_BOOLEAN.matcher(tail)
+            .replaceAll(b -> "true".equals(b.group(1)) ? "1" : "0");
+        String join = jpql.contains(" JOIN t.category c ") ? " JOIN categories c ON c.id = t.category_id" : "";
+        return "SELECT t.id FROM transactions t" + join + condition + (limited ? " LIMIT 20" : "");
+    }
+
+    /**
+     * Partition chứa ít nhất 1 ngày trong [start, end] (RANGE COLUMNS: partition i chứa [bound(i-1), bound(i)))
+     */
+    static List<String> partitionsCovering(List<PartitionInfo> partitions, LocalDate start, LocalDate end) {
+        List<String> names = new ArrayList<>();
+        LocalDate lower = null;
+        for (PartitionInfo p : partitions) {
+            boolean startsBeforeEnd = lower == null || !lower.isAfter(end);
+            boolean endsAfterStart = p.upperBound() == null || p.upperBound().isAfter(start);
+            if (startsBeforeEnd && endsAfterStart) {
+                names.add(p.name());
+            }
+            lower = p.upperBound();
+        }
+        return names;
+    }
+
+    private static LocalDate parseBound(String description) {
+        if (description == null || "MAXVALUE".equalsIgnoreCase(description)) {
+            return null;
+        }
+        return LocalDate.parse(description.replace("'", "").trim());
+    }
+}
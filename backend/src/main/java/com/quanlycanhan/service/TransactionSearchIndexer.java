@@ -0,0 +1,66 @@
+package com.quanlycanhan.service;
+
+import com.quanlycanhan.util.SearchTextNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Backfill cột search_text cho giao dịch cũ (tạo trước V4 hoặc ghi bằng SQL thuần)
+ * Chạy nền sau khi ứng dụng khởi động, xử lý theo lô theo thứ tự id để không khóa bảng lâu.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.search.backfill-on-startup", havingValue = "true", matchIfMissing = true)
+public class TransactionSearchIndexer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.search.backfill-batch-size:1000}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void backfill() {
+        try {
+            long lastId = 0;
+            int updated = 0;
+            while (true) {
+                List<Object[]> rows = jdbcTemplate.query(
+                    "SELECT id, note, location FROM transactions " +
+                    "WHERE id > ? AND search_text IS NULL " +
+                    "AND ((note IS NOT NULL AND note <> '') OR (location IS NOT NULL AND location <> '')) " +
+                    "ORDER BY id LIMIT ?",
+                    (rs, i) -> new Object[] {
+                        rs.getLong("id"),
+                        SearchTextNormalizer.buildDocument(rs.getString("note"), rs.getString("location"))
+                    },
+                    lastId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<Object[]> args = rows.stream()
+                    .filter(r -> r[1] != null)
+                    .map(r -> new Object[] { r[1], r[0] })
+                    .toList();
+                jdbcTemplate.batchUpdate("UPDATE transactions SET search_text = ? WHERE id = ?", args);
+                updated += args.size();
+                lastId = (Long) rows.get(rows.size() - 1)[0];
+            }
+            if (updated > 0) {
+                log.info("Search index backfill: updated {} transactions", updated);
+            }
+        } catch (Exception e) {
+            log.error("Search index backfill error", e);
+        }
+    }
+}
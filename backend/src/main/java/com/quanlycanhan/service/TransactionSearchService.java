@@ -0,0 +1,193 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service tìm kiếm giao dịch
+ * - Note/location: FULLTEXT (ngram) trên cột search_text đã bỏ dấu; LIKE nếu bảng đã phân vùng (không có FULLTEXT)
+ * - Tên danh mục: so khớp không dấu trên CategoryDirectory (tên đã bỏ dấu sẵn) rồi lọc theo category_id
+ * - Số tiền: so khớp kiểu số (từ khóa là số) và lọc khoảng minAmount/maxAmount
+ * Mỗi nhánh là một SELECT dùng được index riêng, gộp bằng UNION; bước 2 load entity theo id kèm category.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransactionSearchService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionRepository transactionRepository;
+    private final CategoryDirectory categoryDirectory;
+
+    /**
+     * Có FULLTEXT trên transactions.search_text không (TransactionPartitionMaintainer bỏ index này khi phân vùng bảng); kiểm tra 1 lần
+     */
+    private volatile Boolean fullTextIndex;
+
+    /**
+     * Tìm kiếm có tổng số bản ghi (Page)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Page<Transaction> search(Long userId, String keyword, BigDecimal minAmount, BigDecimal maxAmount,
+                                    Pageable pageable) {
+        SearchQuery query = buildQuery(userId, keyword, minAmount, maxAmount);
+        if (query == null) {
+            return transactionRepository.findByUserIdAndDeletedFalse(userId, pageable);
+        }
+        List<Long> ids = findIds(query, pageable.getPageSize(), pageable.getOffset());
+        Long total = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM (" + query.sql() + ") matched", query.params(), Long.class);
+        return new PageImpl<>(loadInOrder(ids), pageable, total != null ? total : 0L);
+    }
+
+    /**
+     * Tìm kiếm dạng Slice (không COUNT)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Slice<Transaction> searchSlice(Long userId, String keyword, BigDecimal minAmount, BigDecimal maxAmount,
+                                          Pageable pageable) {
+        SearchQuery query = buildQuery(userId, keyword, minAmount, maxAmount);
+        if (query == null) {
+            return transactionRepository.findSliceByUserIdAndDeletedFalse(userId, pageable);
+        }
+        List<Long> ids = findIds(query, pageable.getPageSize() + 1, pageable.getOffset());
+        boolean hasNext = ids.size() > pageable.getPageSize();
+        List<Long> pageIds = hasNext ? ids.subList(0, pageable.getPageSize()) : ids;
+        return new SliceImpl<>(loadInOrder(pageIds), pageable, hasNext);
+    }
+
+    private List<Long> findIds(SearchQuery query, int limit, long offset) {
+        MapSqlParameterSource params = new MapSqlParameterSource(query.params().getValues())
+            .addValue("limit", limit)
+            .addValue("offset", offset);
+        return jdbcTemplate.queryForList(
+            "SELECT id FROM (" + query.sql() + ") matched " +
+            "ORDER BY transaction_date DESC, id DESC LIMIT :limit OFFSET :offset",
+            params, Long.class);
+    }
+
+    /**
+     * Load entity kèm category theo danh sách id, giữ nguyên thứ tự đã sắp xếp ở bước tìm id
+     */
+    private List<Transaction> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Transaction> byId = transactionRepository.findAllByIdInWithCategory(ids).stream()
+            .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        List<Transaction> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Transaction t = byId.get(id);
+            if (t != null) {
+                ordered.add(t);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Dựng câu SQL dạng UNION các nhánh tìm kiếm.
+     * Trả về null nếu không có điều kiện nào (= danh sách thường).
+     */
+    SearchQuery buildQuery(Long userId, String keyword, BigDecimal minAmount, BigDecimal maxAmount) {
+        String folded = SearchTextNormalizer.fold(keyword);
+        if (folded.isEmpty() && minAmount == null && maxAmount == null) {
+            return null;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        StringBuilder common = new StringBuilder("t.user_id = :userId AND t.deleted = 0");
+        if (minAmount != null) {
+            common.append(" AND t.amount >= :minAmount");
+            params.addValue("minAmount", minAmount);
+        }
+        if (maxAmount != null) {
+            common.append(" AND t.amount <= :maxAmount");
+            params.addValue("maxAmount", maxAmount);
+        }
+
+        List<String> branches = new ArrayList<>();
+        if (folded.isEmpty()) {
+            // Chỉ lọc theo khoảng số tiền: idx_transactions_user_deleted_amount
+            branches.add(branch(common, null));
+        } else {
+            List<String> tokens = SearchTextNormalizer.indexableTokens(folded);
+            if (!tokens.isEmpty() && hasFullTextIndex()) {
+                branches.add(branch(common, "MATCH(t.search_text) AGAINST (:ftQuery IN BOOLEAN MODE)"));
+                params.addValue("ftQuery", SearchTextNormalizer.toBooleanQuery(tokens));
+            } else {
+                // Từ khóa 1 ký tự (ngram không tra được) hoặc bảng đã phân vùng (không có FULLTEXT):
+                // quét trong phạm vi user
+                branches.add(branch(common, "t.search_text LIKE :likeKeyword"));
+                params.addValue("likeKeyword", "%" + folded + "%");
+            }
+
+            List<Long> categoryIds = findMatchingCategoryIds(userId, folded);
+            if (!categoryIds.isEmpty()) {
+                branches.add(branch(common, "t.category_id IN (:categoryIds)"));
+                params.addValue("categoryIds", categoryIds);
+            }
+
+            BigDecimal exactAmount = SearchTextNormalizer.parseAmount(keyword);
+            if (exactAmount != null) {
+                branches.add(branch(common, "t.amount = :exactAmount"));
+                params.addValue("exactAmount", exactAmount);
+            }
+        }
+
+        return new SearchQuery(String.join(" UNION ", branches), params);
+    }
+
+    private String branch(CharSequence common, String condition) {
+        return "SELECT t.id, t.transaction_date FROM transactions t WHERE " + common
+            + (condition != null ? " AND " + condition : "");
+    }
+
+    private boolean hasFullTextIndex() {
+        Boolean available = fullTextIndex;
+        if (available == null) {
+            Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND INDEX_TYPE = 'FULLTEXT'",
+                new MapSqlParameterSource(), Integer.class);
+            available = count != null && count > 0;
+            fullTextIndex = available;
+        }
+        return available;
+    }
+
+    /**
+     * Danh mục (của user + hệ thống) có tên chứa từ khóa sau khi bỏ dấu
+     */
+    private List<Long> findMatchingCategoryIds(Long userId, String foldedKeyword) {
+        List<Long> ids = new ArrayList<>();
+        for (CategoryDirectory.Entry c : categoryDirectory.get(userId).active()) {
+            if (c.foldedName().contains(foldedKeyword)) {
+                ids.add(c.id());
+            }
+        }
+        return ids;
+    }
+
+    record SearchQuery(String sql, MapSqlParameterSource params) {
+    }
+}
@@ -2,13 +2,18 @@ package com.quanlycanhan.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.quanlycanhan.dto.response.CursorPageResponse;
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
 import com.quanlycanhan.entity.Category;
 import com.quanlycanhan.entity.Transaction;
 import com.quanlycanhan.entity.User;
@@ -16,7 +21,12 @@ import com.quanlycanhan.exception.BusinessException;
 import com.quanlycanhan.exception.ErrorCode;
 import com.quanlycanhan.repository.CategoryRepository;
 import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
 import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionChangeEvent;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+import com.quanlycanhan.util.Money;
+import com.quanlycanhan.util.TransactionCursor;
 
 import lombok.RequiredArgsConstructor;
 
@@ -30,10 +40,28 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class TransactionService {
 
+    /**
+     * Giới hạn kích thước trang cho cursor pagination
+     */
+    public static final int MAX_CURSOR_PAGE_SIZE = 100;
+
+    /**
+     * Biên ngày mặc định khi client không truyền khoảng thời gian (cursor mode)
+     */
+    public static final LocalDate MIN_DATE = LocalDate.of(1970, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
     private final FileStorageService fileStorageService;
+    private final TransactionSearchService transactionSearchService;
+    private final TransactionSummaryService transactionSummaryService;
+    private final UserDailyCategorySummaryRepository summaryRepository;
+    private final TransactionAggregateCache aggregateCache;
+    private final CategoryDirectory categoryDirectory;
+    private final FxRateService fxRateService;
+    private final TransactionOutbox transactionOutbox;
 
     /**
      * Lấy danh sách giao dịch của user (phân trang)
@@ -46,13 +74,132 @@ public class TransactionService {
     }
 
     /**
-     * Tìm kiếm giao dịch của user
-     * Đảm bảo category được load để tránh LazyInitializationException
+     * Lấy danh sách giao dịch của user dạng Slice (không COUNT tổng số bản ghi)
+     * Dùng cho infinite scroll / "recent" khi UI chỉ cần biết còn dữ liệu hay không
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Slice<Transaction> getUserTransactionSlice(Long userId, Pageable pageable) {
+        return transactionRepository.findSliceByUserIdAndDeletedFalse(userId, pageable);
+    }
+
+    /**
+     * Lấy danh sách giao dịch của user theo keyset (cursor) pagination
+     * - Seek theo (transactionDate, id) thay vì OFFSET, không có COUNT(*)
+     * - Query dư 1 dòng để biết còn trang sau hay không
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public CursorPageResponse<Transaction> getUserTransactionsByCursor(Long userId, LocalDate startDate, LocalDate endDate,
+                                                                      String cursor, int size) {
+        TransactionCursor position = TransactionCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        List<Transaction> rows = transactionRepository.findByUserIdAfterCursor(
+            userId,
+            startDate != null ? startDate : MIN_DATE,
+            endDate != null ? endDate : MAX_DATE,
+            position.transactionDate(),
+            position.id(),
+            Limit.of(pageSize + 1)
+        );
+        return CursorPageResponse.fromOverfetch(rows, pageSize,
+            t -> new TransactionCursor(t.getTransactionDate(), t.getId()).encode());
+    }
+
+    /**
+     * Danh sách giao dịch của user dạng DTO (fast path cho API list)
+     * Query trả thẳng TransactionResponseDTO: không hydrate entity, không mapper, không dirty-checking snapshot
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Page<TransactionResponseDTO> getUserTransactionDtos(Long userId, Pageable pageable) {
+        return transactionRepository.findDtoByUserId(userId, pageable);
+    }
+
+    /**
+     * Slice variant của getUserTransactionDtos (không COUNT)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Slice<TransactionResponseDTO> getUserTransactionDtoSlice(Long userId, Pageable pageable) {
+        return transactionRepository.findDtoSliceByUserId(userId, pageable);
+    }
+
+    /**
+     * Giao dịch trong khoảng thời gian dạng DTO (phân trang)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Page<TransactionResponseDTO> getTransactionDtosByDateRange(Long userId, LocalDate startDate, LocalDate endDate,
+                                                                     Pageable pageable) {
+        if (startDate == null && endDate == null) {
+            return getUserTransactionDtos(userId, pageable);
+        }
+        return transactionRepository.findDtoByUserIdAndDateRange(userId,
+            startDate != null ? startDate : MIN_DATE,
+            endDate != null ? endDate : LocalDate.now(),
+            pageable);
+    }
+
+    /**
+     * Slice variant của getTransactionDtosByDateRange (không COUNT)
      */
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Slice<TransactionResponseDTO> getTransactionDtoSliceByDateRange(Long userId, LocalDate startDate,
+                                                                          LocalDate endDate, Pageable pageable) {
+        if (startDate == null && endDate == null) {
+            return getUserTransactionDtoSlice(userId, pageable);
+        }
+        return transactionRepository.findDtoSliceByUserIdAndDateRange(userId,
+            startDate != null ? startDate : MIN_DATE,
+            endDate != null ? endDate : LocalDate.now(),
+            pageable);
+    }
+
+    /**
+     * Keyset (cursor) pagination dạng DTO
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public CursorPageResponse<TransactionResponseDTO> getUserTransactionDtosByCursor(Long userId, LocalDate startDate,
+                                                                                    LocalDate endDate, String cursor,
+                                                                                    int size) {
+        TransactionCursor position = TransactionCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        List<TransactionResponseDTO> rows = transactionRepository.findDtoByUserIdAfterCursor(
+            userId,
+            startDate != null ? startDate : MIN_DATE,
+            endDate != null ? endDate : MAX_DATE,
+            position.transactionDate(),
+            position.id(),
+            Limit.of(pageSize + 1)
+        );
+        return CursorPageResponse.fromOverfetch(rows, pageSize,
+            t -> new TransactionCursor(t.getTransactionDate(), t.getId()).encode());
+    }
+
+    /**
+     * Tìm kiếm giao dịch của user (note/location không dấu, tên danh mục, số tiền)
+     */
     public Page<Transaction> searchTransactions(Long userId, String keyword, Pageable pageable) {
-        // Đã dùng EntityGraph trong repository để load category, không cần trigger lazy load thủ công
-        return transactionRepository.searchTransactions(userId, keyword, pageable);
+        return searchTransactions(userId, keyword, null, null, pageable);
+    }
+
+    /**
+     * Tìm kiếm giao dịch của user kèm lọc khoảng số tiền
+     */
+    public Page<Transaction> searchTransactions(Long userId, String keyword, BigDecimal minAmount,
+                                                BigDecimal maxAmount, Pageable pageable) {
+        return transactionSearchService.search(userId, keyword, minAmount, maxAmount, pageable);
+    }
+
+    /**
+     * Tìm kiếm giao dịch của user dạng Slice (không COUNT)
+     */
+    public Slice<Transaction> searchTransactionSlice(Long userId, String keyword, Pageable pageable) {
+        return searchTransactionSlice(userId, keyword, null, null, pageable);
+    }
+
+    /**
+     * Tìm kiếm dạng Slice kèm lọc khoảng số tiền
+     */
+    public Slice<Transaction> searchTransactionSlice(Long userId, String keyword, BigDecimal minAmount,
+                                                     BigDecimal maxAmount, Pageable pageable) {
+        return transactionSearchService.searchSlice(userId, keyword, minAmount, maxAmount, pageable);
     }
 
     /**
@@ -69,7 +216,6 @@ public class TransactionService {
      * Tạo giao dịch mới
      */
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = {"totalAmount", "totalByCategory", "aiPrediction"}, key = "#userId")
     public Transaction createTransaction(Long userId, Long categoryId, BigDecimal amount, String currency,
                                        LocalDate transactionDate, String note, String location,
                                        String receiptImage, Transaction.CreatedBy createdBy, Long createdByAdminId) {
@@ -96,20 +242,24 @@ public class TransactionService {
             .createdBy(createdBy)
             .createdByAdminId(createdByAdminId)
             .build();
+        fxRateService.normalize(transaction);
 
         // EntityGraph sẽ lo việc load category khi cần; không trigger lazy load thủ công
-        return transactionRepository.save(transaction);
+        Transaction saved = transactionRepository.save(transaction);
+        transactionSummaryService.recordCreated(saved);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.CREATED, saved.getId());
+        return saved;
     }
 
     /**
      * Cập nhật giao dịch
      */
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = {"totalAmount", "totalByCategory", "aiPrediction"}, key = "#userId")
     public Transaction updateTransaction(Long id, Long userId, Long categoryId, BigDecimal amount, String currency,
                                        LocalDate transactionDate, String note, String location,
                                        String receiptImage) {
         Transaction transaction = getTransactionById(id, userId);
+        TransactionSummaryService.Contribution before = TransactionSummaryService.Contribution.of(transaction);
 
         // Cập nhật category nếu có
         if (categoryId != null) {
@@ -145,76 +295,132 @@ public class TransactionService {
             }
             transaction.setReceiptImage(receiptImage);
         }
+        if (amount != null || currency != null || transactionDate != null) {
+            fxRateService.normalize(transaction);
+        }
 
         // EntityGraph sẽ lo việc load category khi cần; không trigger lazy load thủ công
-        return transactionRepository.save(transaction);
+        Transaction saved = transactionRepository.save(transaction);
+        transactionSummaryService.recordUpdated(before, saved);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.UPDATED, saved.getId());
+        return saved;
     }
 
     /**
      * Xóa giao dịch
      */
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = {"totalAmount", "totalByCategory", "aiPrediction"}, key = "#userId")
     public void deleteTransaction(Long id, Long userId) {
         Transaction transaction = getTransactionById(id, userId);
-        
-        // Xóa file ảnh hóa đơn nếu có (nếu là URL, không phải base64)
-        String receiptImage = transaction.getReceiptImage();
-        if (receiptImage != null && receiptImage.startsWith("/api/files/")) {
-            fileStorageService.deleteFile(receiptImage);
-        }
 
-        // Soft delete thay vì xóa cứng
+        // Soft delete vào thùng rác; ảnh hóa đơn giữ lại để khôi phục, job dọn rác xóa khi hết hạn
         transaction.setDeleted(true);
+        transaction.setDeletedAt(LocalDateTime.now());
         transactionRepository.save(transaction);
+        transactionSummaryService.recordDeleted(transaction);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.DELETED, transaction.getId());
+    }
+
+    /**
+     * Khôi phục giao dịch từ thùng rác (khi chưa bị chuyển sang bảng lưu trữ)
+     */
+    @Transactional
+    public Transaction restoreTransaction(Long id, Long userId) {
+        Transaction transaction = transactionRepository.findDeletedByIdAndUserId(id, userId)
+            .orElseThrow(() -> new BusinessException(ErrorCode.TRANSACTION_NOT_FOUND));
+        transaction.setDeleted(false);
+        transaction.setDeletedAt(null);
+        Transaction saved = transactionRepository.save(transaction);
+        transactionSummaryService.recordCreated(saved);
+        transactionOutbox.append(userId, TransactionChangeEvent.ChangeType.RESTORED, saved.getId());
+        return saved;
+    }
+
+    /**
+     * Thùng rác của user dạng DTO (giao dịch đã xóa, còn khôi phục được)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Page<TransactionResponseDTO> getTrashDtos(Long userId, Pageable pageable) {
+        return transactionRepository.findTrashDtoByUserId(userId, pageable);
     }
 
     /**
      * Tính tổng chi của user trong khoảng thời gian
+     * Đọc qua TransactionAggregateCache, miss thì tính từ bảng tổng hợp theo ngày
      */
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public BigDecimal getTotalAmount(Long userId, LocalDate startDate, LocalDate endDate) {
-        try {
-            // Prefer native query, but treat its result defensively (DB driver may return Double/BigDecimal)
-            Object nativeResult = transactionRepository.getTotalAmountByUserIdAndDateRangeNative(userId, startDate, endDate);
-            if (nativeResult != null) {
-                if (nativeResult instanceof BigDecimal) return (BigDecimal) nativeResult;
-                if (nativeResult instanceof Number) return BigDecimal.valueOf(((Number) nativeResult).doubleValue());
-                try { return new BigDecimal(nativeResult.toString()); } catch (Exception ignored) {}
-            }
-        } catch (Exception ignored) {
-            // fall back to JPQL/raw handling below
-        }
-
-        Object raw = transactionRepository.getTotalAmountByUserIdAndDateRange(userId, startDate, endDate);
-        if (raw == null) return BigDecimal.ZERO;
-        if (raw instanceof BigDecimal) return (BigDecimal) raw;
-        if (raw instanceof Number) {
-            return BigDecimal.valueOf(((Number) raw).doubleValue());
-        }
-        try {
-            return new BigDecimal(raw.toString());
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
-        }
+        return aggregateCache.getAmounts(userId, startDate, endDate, List.of(TransactionAggregateCache.VIEW_TOTAL),
+                () -> java.util.Map.of(TransactionAggregateCache.VIEW_TOTAL,
+                    toBigDecimal(summaryRepository.getTotalAmount(userId, startDate, endDate))))
+            .get(TransactionAggregateCache.VIEW_TOTAL);
     }
 
     /**
-     * Tính tổng chi theo danh mục
+     * Tính tổng chi theo danh mục: [categoryId, sum]
      */
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public List<Object[]> getTotalAmountByCategory(Long userId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.getTotalAmountByCategory(userId, startDate, endDate);
+        return toRows(aggregateCache.getByCategory(userId, startDate, endDate, null,
+            () -> toMap(summaryRepository.getTotalAmountByCategory(userId, startDate, endDate))));
     }
 
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public List<Object[]> getTotalAmountByCategoryAndType(Long userId, LocalDate startDate, LocalDate endDate, String type) {
-        return transactionRepository.getTotalAmountByCategoryAndType(userId, startDate, endDate, type);
+        return toRows(aggregateCache.getByCategory(userId, startDate, endDate, type,
+            () -> toMap(summaryRepository.getTotalAmountByCategoryAndType(userId, startDate, endDate, type))));
     }
 
+    /**
+     * Tổng theo cả nhánh danh mục (danh mục + mọi danh mục con cháu): [categoryId, sum]; type null = mọi loại
+     * Không qua aggregate cache (delta chỉ ghi theo danh mục lá), 1 query JOIN bảng closure
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public List<Object[]> getSubtreeTotalsByCategory(Long userId, LocalDate startDate, LocalDate endDate, String type) {
+        return type != null
+            ? summaryRepository.getSubtreeTotalsByType(userId, startDate, endDate, type)
+            : summaryRepository.getSubtreeTotals(userId, startDate, endDate);
+    }
+
+    /**
+     * Tổng thu / tổng chi: [income, expense]
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public Object[] getIncomeAndExpenseTotals(Long userId, LocalDate startDate, LocalDate endDate) {
-        Object[] raw = transactionRepository.getIncomeAndExpenseTotals(userId, startDate, endDate);
-        if (raw == null) return new Object[]{BigDecimal.ZERO, BigDecimal.ZERO};
-        return raw;
+        java.util.Map<String, BigDecimal> totals = aggregateCache.getAmounts(userId, startDate, endDate,
+            List.of("income", "expense"), () -> {
+                Object[] raw = summaryRepository.getIncomeAndExpenseTotals(userId, startDate, endDate);
+                if (raw != null && raw.length == 1 && raw[0] instanceof Object[] row) {
+                    raw = row;
+                }
+                java.util.Map<String, BigDecimal> map = new java.util.HashMap<>();
+                map.put("income", raw != null && raw.length > 0 ? toBigDecimal(raw[0]) : BigDecimal.ZERO);
+                map.put("expense", raw != null && raw.length > 1 ? toBigDecimal(raw[1]) : BigDecimal.ZERO);
+                return map;
+            });
+        return new Object[]{totals.get("income"), totals.get("expense")};
+    }
+
+    private static BigDecimal toBigDecimal(Object raw) {
+        try {
+            return Money.decimalOf(raw);
+        } catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private static java.util.Map<Long, BigDecimal> toMap(List<Object[]> rows) {
+        java.util.Map<Long, BigDecimal> map = new java.util.LinkedHashMap<>();
+        for (Object[] row : rows) {
+            map.put(((Number) row[0]).longValue(), toBigDecimal(row[1]));
+        }
+        return map;
+    }
+
+    private static List<Object[]> toRows(java.util.Map<Long, BigDecimal> byCategory) {
+        List<Object[]> rows = new java.util.ArrayList<>(byCategory.size());
+        byCategory.forEach((categoryId, sum) -> rows.add(new Object[]{categoryId, sum}));
+        return rows;
     }
 
     /**
@@ -240,6 +446,23 @@ public class TransactionService {
         return transactionRepository.findByUserIdAndDateRange(userId, startDate, endDate, pageable);
     }
     
+    /**
+     * Lấy giao dịch trong khoảng thời gian dạng Slice (không COUNT)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public Slice<Transaction> getTransactionSliceByDateRange(Long userId, LocalDate startDate, LocalDate endDate, Pageable pageable) {
+        if (startDate == null && endDate == null) {
+            return getUserTransactionSlice(userId, pageable);
+        }
+        if (startDate == null) {
+            startDate = LocalDate.of(1970, 1, 1);
+        }
+        if (endDate == null) {
+            endDate = LocalDate.now();
+        }
+        return transactionRepository.findSliceByUserIdAndDateRange(userId, startDate, endDate, pageable);
+    }
+
     /**
      * Lấy giao dịch trong khoảng thời gian (không phân trang - for backward compatibility)
      */
@@ -251,7 +474,7 @@ public class TransactionService {
 
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public List<java.util.Map<String, Object>> getMonthlyStats(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = transactionRepository.getMonthlyStats(userId, startDate, endDate);
+        List<Object[]> results = summaryRepository.getMonthlyStats(userId, startDate, endDate);
         List<java.util.Map<String, Object>> stats = new java.util.ArrayList<>();
         
         for (Object[] row : results) {
@@ -268,7 +491,7 @@ public class TransactionService {
 
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public List<java.util.Map<String, Object>> getDailyStats(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = transactionRepository.getDailyStats(userId, startDate, endDate);
+        List<Object[]> results = summaryRepository.getDailyStats(userId, startDate, endDate);
         List<java.util.Map<String, Object>> stats = new java.util.ArrayList<>();
         
         for (Object[] row : results) {
@@ -283,12 +506,29 @@ public class TransactionService {
 
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public List<java.util.Map<String, Object>> getCategoryStats(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = transactionRepository.getCategoryStats(userId, startDate, endDate);
+        return getCategoryStats(userId, startDate, endDate, false);
+    }
+
+    /**
+     * Phân bổ theo danh mục; includeSubcategories = true thì mỗi danh mục cộng cả nhánh con
+     * (danh mục cha và con cùng xuất hiện, tổng các dòng không còn bằng tổng thu/chi)
+     */
+    @org.springframework.transaction.annotation.Transactional(readOnly = true)
+    public List<java.util.Map<String, Object>> getCategoryStats(Long userId, LocalDate startDate, LocalDate endDate,
+                                                                boolean includeSubcategories) {
+        List<Object[]> results = includeSubcategories
+            ? summaryRepository.getSubtreeCategoryStats(userId, startDate, endDate)
+            : summaryRepository.getCategoryStats(userId, startDate, endDate);
         List<java.util.Map<String, Object>> stats = new java.util.ArrayList<>();
-        
+        CategoryDirectory.Snapshot categories = categoryDirectory.get(userId);
+
         for (Object[] row : results) {
+            Long categoryId = ((Number) row[0]).longValue();
+            CategoryDirectory.Entry category = categories.get(categoryId);
             java.util.Map<String, Object> map = new java.util.HashMap<>();
-            map.put("name", row[0]);
+            map.put("categoryId", categoryId);
+            map.put("parentId", category != null ? category.parentId() : null);
+            map.put("name", category != null ? category.name() : null);
             map.put("value", row[1]);
             map.put("type", row[2]);
             stats.add(map);
@@ -0,0 +1,42 @@
+package com.quanlycanhan.service;
+
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Backfill bảng tổng hợp theo ngày cho user có giao dịch từ trước V5
+ * Chạy nền sau khi ứng dụng khởi động, mỗi user dựng lại trong 1 transaction riêng.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.summary.backfill-on-startup", havingValue = "true", matchIfMissing = true)
+public class TransactionSummaryBackfill {
+
+    private final UserDailyCategorySummaryRepository summaryRepository;
+    private final TransactionSummaryService transactionSummaryService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void backfill() {
+        try {
+            List<Long> userIds = summaryRepository.findUserIdsWithoutSummary();
+            for (Long userId : userIds) {
+                transactionSummaryService.rebuildUser(userId);
+            }
+            if (!userIds.isEmpty()) {
+                log.info("Daily summary backfill: rebuilt {} users", userIds.size());
+            }
+        } catch (Exception e) {
+            log.error("Daily summary backfill error", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service duy trì bảng tổng hợp theo ngày (user_daily_category_summary)
+ * - Mỗi thao tác ghi giao dịch cộng/trừ delta (tiền, số lượng) vào dòng (user, ngày, danh mục)
+ *   bằng INSERT ... ON DUPLICATE KEY UPDATE, trong cùng transaction với thao tác ghi
+ * - Delta của cả lô được gom theo khóa và gửi bằng 1 JDBC batch, sắp xếp theo khóa để hạn chế deadlock
+ * - Cùng delta được đẩy sang TransactionAggregateCache để cache tổng không phải xóa mỗi lần ghi
+ * - rebuildUser dựng lại từ transactions khi cần đối soát
+ * Số tiền là base_amount (đã quy đổi ra VND lúc ghi), tổng hợp không phụ thuộc tiền tệ của giao dịch;
+ * giao dịch chưa có base_amount (chưa có tỷ giá) không vào tổng lẫn số lượng cho tới khi được tính lại.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransactionSummaryService {
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO user_daily_category_summary " +
+        "(user_id, summary_date, category_id, type, total_amount, txn_count, updated_at) " +
+        "VALUES (:userId, :summaryDate, :categoryId, :type, :amount, :count, NOW()) " +
+        "ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), " +
+        "txn_count = txn_count + VALUES(txn_count), type = VALUES(type), updated_at = NOW()";
+
+    private static final String MERGE_CATEGORIES_SQL =
+        "INSERT INTO user_daily_category_summary " +
+        "(user_id, summary_date, category_id, type, total_amount, txn_count, updated_at) " +
+        "SELECT user_id, summary_date, :targetCategoryId, :targetType, SUM(total_amount), SUM(txn_count), NOW() " +
+        "FROM user_daily_category_summary WHERE user_id = :userId AND category_id IN (:categoryIds) " +
+        "GROUP BY user_id, summary_date " +
+        "ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), " +
+        "txn_count = txn_count + VALUES(txn_count), updated_at = NOW()";
+
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::userId)
+        .thenComparing(Key::summaryDate)
+        .thenComparing(Key::categoryId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final UserDailyCategorySummaryRepository summaryRepository;
+    private final TransactionAggregateCache aggregateCache;
+
+    /**
+     * Phần đóng góp của một giao dịch vào bảng tổng hợp (chụp lại trước khi sửa)
+     */
+    public record Contribution(Long userId, LocalDate summaryDate, Long categoryId, String type, BigDecimal amount) {
+
+        public static Contribution of(Transaction transaction) {
+            return new Contribution(
+                transaction.getUser().getId(),
+                transaction.getTransactionDate(),
+                transaction.getCategory().getId(),
+                transaction.getCategory().getType(),
+                transaction.getBaseAmount());
+        }
+    }
+
+    private record Key(Long userId, LocalDate summaryDate, Long categoryId, String type) {
+    }
+
+    private static final class Delta {
+        private BigDecimal amount = BigDecimal.ZERO;
+        private int count;
+    }
+
+    @Transactional
+    public void recordCreated(Transaction transaction) {
+        recordCreated(List.of(transaction));
+    }
+
+    @Transactional
+    public void recordCreated(Collection<Transaction> transactions) {
+        Map<Key, Delta> deltas = new TreeMap<>(KEY_ORDER);
+        for (Transaction t : transactions) {
+            add(deltas, Contribution.of(t), 1);
+        }
+        apply(deltas);
+    }
+
+    @Transactional
+    public void recordDeleted(Transaction transaction) {
+        recordDeleted(List.of(Contribution.of(transaction)));
+    }
+
+    @Transactional
+    public void recordDeleted(List<Contribution> contributions) {
+        Map<Key, Delta> deltas = new TreeMap<>(KEY_ORDER);
+        for (Contribution c : contributions) {
+            add(deltas, c, -1);
+        }
+        apply(deltas);
+    }
+
+    /**
+     * Giao dịch đã sửa: trừ phần cũ, cộng phần mới (cùng khóa thì chỉ còn chênh lệch số tiền)
+     */
+    @Transactional
+    public void recordUpdated(List<Contribution> before, Collection<Transaction> after) {
+        Map<Key, Delta> deltas = new TreeMap<>(KEY_ORDER);
+        for (Contribution c : before) {
+            add(deltas, c, -1);
+        }
+        for (Transaction t : after) {
+            add(deltas, Contribution.of(t), 1);
+        }
+        apply(deltas);
+    }
+
+    @Transactional
+    public void recordUpdated(Contribution before, Transaction after) {
+        recordUpdated(List.of(before), List.of(after));
+    }
+
+    /**
+     * Danh mục đổi loại (expense <-> income): cập nhật loại trên các dòng tổng hợp của danh mục
+     */
+    @Transactional
+    public void changeCategoryType(Long categoryId, String type) {
+        if (summaryRepository.updateTypeByCategoryId(categoryId, type) > 0) {
+            aggregateCache.evictAllAfterCommit();
+        }
+    }
+
+    /**
+     * Giao dịch của các danh mục được chuyển hết sang targetCategoryId: gộp dòng tổng hợp theo ngày vào danh mục đích
+     */
+    @Transactional
+    public void moveCategories(Long userId, Collection<Long> categoryIds, Long targetCategoryId, String targetType) {
+        jdbcTemplate.update(MERGE_CATEGORIES_SQL, new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("categoryIds", categoryIds)
+            .addValue("targetCategoryId", targetCategoryId)
+            .addValue("targetType", targetType));
+        summaryRepository.deleteByUserIdAndCategoryIds(userId, categoryIds);
+        aggregateCache.evictUserAfterCommit(userId);
+    }
+
+    /**
+     * Mọi giao dịch của các danh mục đã bị xóa: bỏ dòng tổng hợp của chúng
+     */
+    @Transactional
+    public void removeCategories(Long userId, Collection<Long> categoryIds) {
+        summaryRepository.deleteByUserIdAndCategoryIds(userId, categoryIds);
+        aggregateCache.evictUserAfterCommit(userId);
+    }
+
+    /**
+     * Dựng lại toàn bộ tổng hợp của user từ transactions
+     * Trả về số dòng tổng hợp đã tạo
+     */
+    @Transactional
+    public int rebuildUser(Long userId) {
+        summaryRepository.deleteByUserId(userId);
+        int rows = summaryRepository.insertAggregatesForUser(userId);
+        aggregateCache.evictUserAfterCommit(userId);
+        log.debug("Rebuilt daily summary for user {}: {} rows", userId, rows);
+        return rows;
+    }
+
+    private static void add(Map<Key, Delta> deltas, Contribution c, int sign) {
+        if (c.amount() == null) {
+            return;
+        }
+        Key key = new Key(c.userId(), c.summaryDate(), c.categoryId(), c.type());
+        Delta delta = deltas.computeIfAbsent(key, k -> new Delta());
+        delta.amount = sign > 0 ? delta.amount.add(c.amount()) : delta.amount.subtract(c.amount());
+        delta.count += sign;
+    }
+
+    private void apply(Map<Key, Delta> deltas) {
+        List<Map.Entry<Key, Delta>> changed = deltas.entrySet().stream()
+            .filter(e -> e.getValue().count != 0 || e.getValue().amount.signum() != 0)
+            .toList();
+        List<SqlParameterSource> params = changed.stream()
+            .map(e -> (SqlParameterSource) new MapSqlParameterSource()
+                .addValue("userId", e.getKey().userId())
+                .addValue("summaryDate", e.getKey().summaryDate())
+                .addValue("categoryId", e.getKey().categoryId())
+                .addValue("type", e.getKey().type())
+                .addValue("amount", e.getValue().amount)
+                .addValue("count", e.getValue().count))
+            .toList();
+        if (!params.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, params.toArray(new SqlParameterSource[0]));
+        }
+
+        Map<Long, List<TransactionAggregateCache.Delta>> byUser = new TreeMap<>();
+        for (Map.Entry<Key, Delta> e : changed) {
+            if (e.getValue().amount.signum() != 0) {
+                byUser.computeIfAbsent(e.getKey().userId(), u -> new ArrayList<>())
+                    .add(new TransactionAggregateCache.Delta(e.getKey().summaryDate(), e.getKey().categoryId(),
+                        e.getKey().type(), e.getValue().amount));
+            }
+        }
+        byUser.forEach(aggregateCache::recordDeltas);
+    }
+}
@@ -0,0 +1,137 @@
+package com.quanlycanhan.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dọn thùng rác giao dịch - chạy nền mỗi đêm
+ * - Giao dịch xóa mềm quá app.trash.retention-days ngày được chuyển sang transactions_archive rồi xóa cứng
+ * - Mỗi lô là 1 transaction ngắn (SELECT ... FOR UPDATE SKIP LOCKED theo index (deleted, deleted_at)),
+ *   nghỉ giữa các lô để không giữ lock lâu; nhiều instance chạy cùng lúc không lấy trùng dòng
+ * - Ảnh hóa đơn của giao dịch đã dọn được xóa sau khi lô commit
+ * Bảng tổng hợp không đổi: giao dịch đã xóa vốn không được tính.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.trash.purge-enabled", havingValue = "true", matchIfMissing = true)
+public class TransactionTrashPurger {
+
+    private static final String SELECT_EXPIRED_SQL =
+        "SELECT id, receipt_image FROM transactions " +
+        "WHERE deleted = 1 AND deleted_at < :cutoff " +
+        "ORDER BY deleted_at, id LIMIT :limit FOR UPDATE SKIP LOCKED";
+
+    private static final String ARCHIVE_SQL =
+        "INSERT IGNORE INTO transactions_archive (id, user_id, category_id, amount, base_amount, currency, " +
+        "transaction_date, note, location, receipt_image, created_by, created_by_admin_id, created_at, updated_at, " +
+        "deleted_at, archived_at) " +
+        "SELECT id, user_id, category_id, amount, base_amount, currency, transaction_date, note, location, receipt_image, " +
+        "created_by, created_by_admin_id, created_at, updated_at, deleted_at, NOW() " +
+        "FROM transactions WHERE id IN (:ids)";
+
+    private static final String DELETE_SQL = "DELETE FROM transactions WHERE id IN (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileStorageService fileStorageService;
+
+    @Value("${app.trash.retention-days:30}")
+    private int retentionDays = 30;
+
+    @Value("${app.trash.purge-batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${app.trash.purge-max-batches:200}")
+    private int maxBatches = 200;
+
+    @Value("${app.trash.purge-pause-ms:100}")
+    private long pauseMs = 100;
+
+    /**
+     * Kết quả một lô: số giao dịch đã dọn + ảnh hóa đơn cần xóa
+     */
+    record Batch(int purged, List<String> receipts) {
+    }
+
+    @Scheduled(cron = "${app.trash.purge-cron:0 30 3 * * *}")
+    public void purgeScheduled() {
+        try {
+            purgeExpired(LocalDateTime.now().minusDays(retentionDays));
+        } catch (Exception e) {
+            log.error("Trash purge failed", e);
+        }
+    }
+
+    /**
+     * Dọn mọi giao dịch xóa trước cutoff, tối đa maxBatches lô mỗi lần chạy
+     * Trả về số giao dịch đã chuyển sang bảng lưu trữ
+     */
+    public int purgeExpired(LocalDateTime cutoff) {
+        int total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            Batch batch = transactionTemplate.execute(status -> purgeBatch(cutoff));
+            if (batch == null || batch.purged() == 0) {
+                break;
+            }
+            total += batch.purged();
+            batch.receipts().forEach(fileStorageService::deleteFile);
+            if (batch.purged() < batchSize) {
+                break;
+            }
+            if (!pause()) {
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Archived {} soft-deleted transactions (deleted before {})", total, cutoff);
+        }
+        return total;
+    }
+
+    private Batch purgeBatch(LocalDateTime cutoff) {
+        List<Long> ids = new ArrayList<>();
+        List<String> receipts = new ArrayList<>();
+        jdbcTemplate.query(SELECT_EXPIRED_SQL,
+            new MapSqlParameterSource().addValue("cutoff", cutoff).addValue("limit", batchSize),
+            rs -> {
+                ids.add(rs.getLong("id"));
+                String receipt = rs.getString("receipt_image");
+                if (receipt != null && receipt.startsWith("/api/files/")) {
+                    receipts.add(receipt);
+                }
+            });
+        if (ids.isEmpty()) {
+            return new Batch(0, List.of());
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        jdbcTemplate.update(ARCHIVE_SQL, params);
+        int deleted = jdbcTemplate.update(DELETE_SQL, params);
+        return new Batch(deleted, receipts);
+    }
+
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
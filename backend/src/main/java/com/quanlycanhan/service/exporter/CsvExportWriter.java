@@ -0,0 +1,73 @@
+package com.quanlycanhan.service.exporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+
+/**
+ * Xuất CSV (UTF-8 có BOM để Excel hiển thị đúng tiếng Việt)
+ * Flush xuống response mỗi FLUSH_EVERY dòng để client nhận dữ liệu ngay, không đợi hết file.
+ */
+public class CsvExportWriter implements ExportWriter {
+
+    private static final int FLUSH_EVERY = 1000;
+
+    private final BufferedWriter writer;
+    private long rows;
+
+    public CsvExportWriter(OutputStream out) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write('\uFEFF');
+        writeLine(HEADERS);
+        writer.flush();
+    }
+
+    @Override
+    public void write(TransactionResponseDTO t) throws IOException {
+        writeLine(new String[] {
+            String.valueOf(t.getTransactionDate()),
+            ExportWriter.categoryName(t),
+            ExportWriter.categoryType(t),
+            t.getAmount() != null ? t.getAmount().toPlainString() : "",
+            t.getCurrency(),
+            t.getNote(),
+            t.getLocation()
+        });
+        if (++rows % FLUSH_EVERY == 0) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    private void writeLine(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escape(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        // Chặn CSV injection: ô bắt đầu bằng = + - @ bị Excel hiểu là công thức
+        if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
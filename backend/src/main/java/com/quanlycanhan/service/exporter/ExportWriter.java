@@ -0,0 +1,42 @@
+package com.quanlycanhan.service.exporter;
+
+import java.io.IOException;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+
+/**
+ * Ghi giao dịch ra file theo từng dòng (streaming)
+ * Vòng đời: tạo với OutputStream -> write(...) nhiều lần -> finish() một lần.
+ */
+public interface ExportWriter extends AutoCloseable {
+
+    /**
+     * Tiêu đề cột dùng chung cho mọi định dạng
+     */
+    String[] HEADERS = {"Ngày", "Danh mục", "Loại", "Số tiền", "Tiền tệ", "Ghi chú", "Địa điểm"};
+
+    void write(TransactionResponseDTO transaction) throws IOException;
+
+    /**
+     * Ghi phần kết thúc file và flush (không đóng OutputStream của response)
+     */
+    void finish() throws IOException;
+
+    /**
+     * Giải phóng tài nguyên tạm (file tạm SXSSF...) kể cả khi export lỗi giữa chừng
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    static String categoryName(TransactionResponseDTO t) {
+        return t.getCategory() != null ? t.getCategory().getName() : "";
+    }
+
+    static String categoryType(TransactionResponseDTO t) {
+        if (t.getCategory() == null || t.getCategory().getType() == null) {
+            return "";
+        }
+        return "income".equals(t.getCategory().getType()) ? "Thu" : "Chi";
+    }
+}
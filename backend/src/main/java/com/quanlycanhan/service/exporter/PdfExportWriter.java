@@ -0,0 +1,97 @@
+package com.quanlycanhan.service.exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+/**
+ * Xuất PDF bằng iText "large table": bảng được flush mỗi FLUSH_EVERY dòng,
+ * các trang đã đầy được ghi ngay ra response thay vì dựng cả bảng trong RAM.
+ * Font: dùng file TTF cấu hình (app.export.pdf-font) để hiển thị tiếng Việt;
+ * không có thì dùng Helvetica và bỏ dấu (Helvetica không có glyph tiếng Việt).
+ */
+public class PdfExportWriter implements ExportWriter {
+
+    private static final int FLUSH_EVERY = 100;
+    private static final float[] COLUMN_WIDTHS = {10, 16, 6, 14, 6, 32, 16};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final Document document;
+    private final Table table;
+    private final boolean unicodeFont;
+    private final DecimalFormat amountFormat = new DecimalFormat("#,##0.##", DecimalFormatSymbols.getInstance(Locale.US));
+    private long rows;
+
+    public PdfExportWriter(OutputStream out, String title, String fontPath) throws IOException {
+        PdfWriter pdfWriter = new PdfWriter(out);
+        // Không đóng OutputStream của response khi đóng document
+        pdfWriter.setCloseStream(false);
+        PdfDocument pdf = new PdfDocument(pdfWriter);
+        document = new Document(pdf, PageSize.A4.rotate());
+
+        PdfFont font;
+        if (fontPath != null && !fontPath.isBlank()) {
+            font = PdfFontFactory.createFont(fontPath, PdfEncodings.IDENTITY_H,
+                PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
+            unicodeFont = true;
+        } else {
+            font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+            unicodeFont = false;
+        }
+        document.setFont(font).setFontSize(9);
+        document.add(new Paragraph(text(title)).setFontSize(14).setBold());
+
+        table = new Table(UnitValue.createPercentArray(COLUMN_WIDTHS), true).useAllAvailableWidth();
+        for (String header : HEADERS) {
+            table.addHeaderCell(new Cell().add(new Paragraph(text(header)).setBold()));
+        }
+        document.add(table);
+    }
+
+    @Override
+    public void write(TransactionResponseDTO t) {
+        table.addCell(text(t.getTransactionDate() != null ? t.getTransactionDate().format(DATE_FORMAT) : ""));
+        table.addCell(text(ExportWriter.categoryName(t)));
+        table.addCell(text(ExportWriter.categoryType(t)));
+        table.addCell(new Cell().add(new Paragraph(t.getAmount() != null ? amountFormat.format(t.getAmount()) : ""))
+            .setTextAlignment(TextAlignment.RIGHT));
+        table.addCell(text(t.getCurrency()));
+        table.addCell(text(t.getNote()));
+        table.addCell(text(t.getLocation()));
+        if (++rows % FLUSH_EVERY == 0) {
+            table.flush();
+        }
+    }
+
+    @Override
+    public void finish() {
+        table.complete();
+        document.close();
+    }
+
+    private String text(String value) {
+        if (value == null) {
+            return "";
+        }
+        return unicodeFont ? value : SearchTextNormalizer.removeDiacritics(value);
+    }
+}
@@ -0,0 +1,99 @@
+package com.quanlycanhan.service.exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+
+/**
+ * Xuất XLSX bằng SXSSF: chỉ giữ ROW_WINDOW dòng trong RAM, các dòng cũ được ghi ra file tạm (nén)
+ * XLSX là file zip nên chỉ gửi được cho client ở finish(); bộ nhớ vẫn cố định theo cửa sổ dòng.
+ * Sheet Excel tối đa 1.048.576 dòng: quá giới hạn thì sang sheet mới.
+ */
+public class XlsxExportWriter implements ExportWriter {
+
+    private static final int ROW_WINDOW = 100;
+    private static final int MAX_ROWS_PER_SHEET = 1_048_575;
+
+    private final OutputStream out;
+    private final SXSSFWorkbook workbook;
+    private final CellStyle headerStyle;
+    private final CellStyle dateStyle;
+    private final CellStyle amountStyle;
+    private SXSSFSheet sheet;
+    private int rowIndex;
+
+    public XlsxExportWriter(OutputStream out) {
+        this.out = out;
+        this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+
+        Font bold = workbook.createFont();
+        bold.setBold(true);
+        headerStyle = workbook.createCellStyle();
+        headerStyle.setFont(bold);
+        dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+        amountStyle = workbook.createCellStyle();
+        amountStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.##"));
+        newSheet();
+    }
+
+    @Override
+    public void write(TransactionResponseDTO t) {
+        if (rowIndex > MAX_ROWS_PER_SHEET) {
+            newSheet();
+        }
+        Row row = sheet.createRow(rowIndex++);
+        Cell date = row.createCell(0);
+        if (t.getTransactionDate() != null) {
+            date.setCellValue(t.getTransactionDate());
+            date.setCellStyle(dateStyle);
+        }
+        row.createCell(1).setCellValue(ExportWriter.categoryName(t));
+        row.createCell(2).setCellValue(ExportWriter.categoryType(t));
+        Cell amount = row.createCell(3);
+        if (t.getAmount() != null) {
+            amount.setCellValue(t.getAmount().doubleValue());
+            amount.setCellStyle(amountStyle);
+        }
+        row.createCell(4).setCellValue(t.getCurrency());
+        row.createCell(5).setCellValue(t.getNote());
+        row.createCell(6).setCellValue(t.getLocation());
+    }
+
+    @Override
+    public void finish() throws IOException {
+        workbook.write(out);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+
+    private void newSheet() {
+        sheet = workbook.createSheet("Giao dịch" + (workbook.getNumberOfSheets() > 0 ? " " + (workbook.getNumberOfSheets() + 1) : ""));
+        sheet.setColumnWidth(0, 12 * 256);
+        sheet.setColumnWidth(1, 20 * 256);
+        sheet.setColumnWidth(3, 15 * 256);
+        sheet.setColumnWidth(5, 40 * 256);
+        sheet.setColumnWidth(6, 25 * 256);
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < HEADERS.length; i++) {
+            Cell cell = header.createCell(i);
+            cell.setCellValue(HEADERS[i]);
+            cell.setCellStyle(headerStyle);
+        }
+        rowIndex = 1;
+    }
+}
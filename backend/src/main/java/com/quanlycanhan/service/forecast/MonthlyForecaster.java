@@ -0,0 +1,203 @@
+package com.quanlycanhan.service.forecast;
+
+import com.quanlycanhan.util.Money;
+
+/**
+ * Dự đoán chuỗi tổng theo tháng (đơn vị nhỏ nhất, long) - chỉ tính toán, không truy cập database
+ * - Nền: EMA (alpha 0.3) * 0.6 + Linear Regression * 0.4
+ * - Đủ 2 chu kỳ (24 tháng): thêm Holt-Winters cộng tính (mùa 12 tháng), trộn với nền theo nghịch đảo MSE
+ *   của sai số dự đoán 1 bước trên các tháng sau chu kỳ khởi tạo (Holt-Winters chưa nhìn thấy)
+ * - Khoảng dự đoán: ± z * RMSE(sai số 1 bước) * sqrt(horizon), cận dưới không âm
+ * Chi phí chỉ phụ thuộc số tháng (tối đa vài chục điểm), không phụ thuộc số giao dịch.
+ */
+public final class MonthlyForecaster {
+
+    public static final int SEASON_LENGTH = 12;
+
+    /**
+     * z của khoảng dự đoán 90% (phân phối chuẩn)
+     */
+    public static final double Z_90 = 1.645;
+
+    private static final double EMA_ALPHA = 0.3;
+    private static final double EMA_WEIGHT = 0.6;
+    private static final double HW_ALPHA = 0.3;
+    private static final double HW_BETA = 0.1;
+    private static final double HW_GAMMA = 0.3;
+
+    /**
+     * Kết quả dự đoán: giá trị, khoảng [lower, upper] và phương pháp (BLEND / HOLT_WINTERS+BLEND / LAST / NONE)
+     */
+    public record Forecast(long predicted, long lower, long upper, String method) {
+
+        public static final Forecast NONE = new Forecast(0, 0, 0, "NONE");
+    }
+
+    private MonthlyForecaster() {
+    }
+
+    /**
+     * Dự đoán giá trị của tháng thứ horizon sau điểm cuối của series (horizon >= 1)
+     */
+    public static Forecast forecast(long[] series, int horizon) {
+        int n = series.length;
+        if (n == 0) {
+            return Forecast.NONE;
+        }
+        if (n < 3) {
+            long last = series[n - 1];
+            return interval(last, stdDev(series), horizon, "LAST");
+        }
+
+        // Sai số 1 bước của nền: dự đoán tháng t từ các tháng [0, t)
+        double[] blendErrors = new double[n];
+        for (int t = 2; t < n; t++) {
+            blendErrors[t] = series[t] - blend(series, t, 1);
+        }
+        double blend = blend(series, n, horizon);
+
+        if (n < 2 * SEASON_LENGTH) {
+            return interval(Money.roundToMinor(Math.max(0, blend)), rmse(blendErrors, 2, n), horizon, "BLEND");
+        }
+
+        double[] hwErrors = new double[n];
+        double hw = holtWinters(series, horizon, hwErrors);
+        double blendMse = mse(blendErrors, SEASON_LENGTH, n);
+        double hwMse = mse(hwErrors, SEASON_LENGTH, n);
+        double hwWeight = blendMse + hwMse > 0 ? blendMse / (blendMse + hwMse) : 0.5;
+
+        double[] combinedErrors = new double[n];
+        for (int t = SEASON_LENGTH; t < n; t++) {
+            combinedErrors[t] = hwWeight * hwErrors[t] + (1 - hwWeight) * blendErrors[t];
+        }
+        double predicted = hwWeight * hw + (1 - hwWeight) * blend;
+        return interval(Money.roundToMinor(Math.max(0, predicted)), rmse(combinedErrors, SEASON_LENGTH, n),
+            horizon, "HOLT_WINTERS+BLEND");
+    }
+
+    /**
+     * Độ tin cậy 0..1 theo độ ổn định của chuỗi: 1 - CV/2 (CV = độ lệch chuẩn / trung bình)
+     */
+    public static double confidence(long[] series) {
+        if (series.length < 2) {
+            return 0.5;
+        }
+        double mean = mean(series, series.length);
+        double cv = mean > 0 ? stdDev(series) / mean : 1.0;
+        return Math.max(0.0, Math.min(1.0, 1.0 - cv * 0.5));
+    }
+
+    /**
+     * Xu hướng giữa tháng đầu và tháng cuối, ngưỡng ±5% (so sánh nguyên, không chia)
+     */
+    public static String trend(long[] series) {
+        if (series.length < 2) {
+            return "KHÔNG_XÁC_ĐỊNH";
+        }
+        long first = series[0];
+        long last = series[series.length - 1];
+        if (first <= 0) {
+            return "ỔN_ĐỊNH";
+        }
+        long diffPercent = Math.multiplyExact(Money.subtract(last, first), 100L);
+        long threshold = Math.multiplyExact(first, 5L);
+        if (diffPercent > threshold) {
+            return "TĂNG";
+        } else if (diffPercent < -threshold) {
+            return "GIẢM";
+        }
+        return "ỔN_ĐỊNH";
+    }
+
+    /**
+     * EMA * 0.6 + Linear Regression * 0.4 trên n điểm đầu của series, dự đoán điểm n - 1 + horizon
+     */
+    static double blend(long[] series, int n, int horizon) {
+        double ema = series[0];
+        for (int i = 1; i < n; i++) {
+            ema = series[i] * EMA_ALPHA + ema * (1 - EMA_ALPHA);
+        }
+
+        double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0;
+        for (int i = 0; i < n; i++) {
+            sumX += i;
+            sumY += series[i];
+            sumXY += (double) i * series[i];
+            sumX2 += (double) i * i;
+        }
+        double denominator = n * sumX2 - sumX * sumX;
+        double b = denominator != 0 ? (n * sumXY - sumX * sumY) / denominator : 0;
+        double a = (sumY - b * sumX) / n;
+        double regression = Math.max(0, a + b * (n - 1 + horizon));
+
+        return EMA_WEIGHT * ema + (1 - EMA_WEIGHT) * regression;
+    }
+
+    /**
+     * Holt-Winters cộng tính, khởi tạo từ chu kỳ đầu (level = trung bình, trend = 0, mùa = độ lệch so với trung bình)
+     * rồi cập nhật từ tháng SEASON_LENGTH; oneStepErrors[t] (t >= SEASON_LENGTH) = thực tế - dự đoán 1 bước tại t,
+     * chỉ trên tháng chưa dùng để khởi tạo
+     */
+    static double holtWinters(long[] series, int horizon, double[] oneStepErrors) {
+        int m = SEASON_LENGTH;
+        double level = mean(series, 0, m);
+        double trend = 0;
+        double[] seasonal = new double[m];
+        for (int i = 0; i < m; i++) {
+            seasonal[i] = series[i] - level;
+        }
+
+        for (int t = m; t < series.length; t++) {
+            double y = series[t];
+            double season = seasonal[t % m];
+            oneStepErrors[t] = y - (level + trend + season);
+            double previousLevel = level;
+            level = HW_ALPHA * (y - season) + (1 - HW_ALPHA) * (level + trend);
+            trend = HW_BETA * (level - previousLevel) + (1 - HW_BETA) * trend;
+            seasonal[t % m] = HW_GAMMA * (y - level) + (1 - HW_GAMMA) * season;
+        }
+        return level + horizon * trend + seasonal[(series.length - 1 + horizon) % m];
+    }
+
+    private static Forecast interval(long predicted, double sigma, int horizon, String method) {
+        long halfWidth = Money.roundToMinor(Z_90 * sigma * Math.sqrt(horizon));
+        return new Forecast(predicted, Math.max(0, Money.subtract(predicted, halfWidth)),
+            Money.add(predicted, halfWidth), method);
+    }
+
+    private static double mean(long[] series, int n) {
+        return mean(series, 0, n);
+    }
+
+    private static double mean(long[] series, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += series[i];
+        }
+        return sum / (to - from);
+    }
+
+    private static double stdDev(long[] series) {
+        double mean = mean(series, series.length);
+        double variance = 0;
+        for (long value : series) {
+            variance += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(variance / series.length);
+    }
+
+    private static double mse(double[] errors, int from, int to) {
+        if (to <= from) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += errors[i] * errors[i];
+        }
+        return sum / (to - from);
+    }
+
+    private static double rmse(double[] errors, int from, int to) {
+        return Math.sqrt(mse(errors, from, to));
+    }
+}
@@ -0,0 +1,82 @@
+package com.quanlycanhan.service.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Đọc CSV từng dòng (RFC 4180: ô trong dấu ngoặc kép, "" là dấu " trong ô, xuống dòng trong ô)
+ * - Tự nhận dấu phân cách ',' hoặc ';' (Excel bản tiếng Việt xuất CSV bằng ';') từ dòng header
+ * - Bỏ BOM UTF-8 ở đầu file
+ */
+public class CsvRowReader implements RowReader {
+
+    @Override
+    public void read(Path file, RowHandler handler) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null) {
+                return;
+            }
+            if (!line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+            char delimiter = detectDelimiter(line);
+            long rowNumber = 0;
+            while (line != null) {
+                List<String> cells = new ArrayList<>();
+                StringBuilder cell = new StringBuilder();
+                boolean inQuotes = false;
+                while (true) {
+                    for (int i = 0; i < line.length(); i++) {
+                        char c = line.charAt(i);
+                        if (inQuotes) {
+                            if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                                cell.append('"');
+                                i++;
+                            } else if (c == '"') {
+                                inQuotes = false;
+                            } else {
+                                cell.append(c);
+                            }
+                        } else if (c == '"') {
+                            inQuotes = true;
+                        } else if (c == delimiter) {
+                            cells.add(cell.toString().trim());
+                            cell.setLength(0);
+                        } else {
+                            cell.append(c);
+                        }
+                    }
+                    if (!inQuotes) {
+                        break;
+                    }
+                    // Ô có xuống dòng: đọc tiếp dòng sau vào cùng ô
+                    line = reader.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    cell.append('\n');
+                }
+                cells.add(cell.toString().trim());
+                handler.handle(++rowNumber, cells);
+                line = reader.readLine();
+            }
+        }
+    }
+
+    private char detectDelimiter(String header) {
+        int commas = 0;
+        int semicolons = 0;
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == ',') commas++;
+            else if (c == ';') semicolons++;
+        }
+        return semicolons > commas ? ';' : ',';
+    }
+}
@@ -0,0 +1,174 @@
+package com.quanlycanhan.service.importer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.util.SearchTextNormalizer;
+
+/**
+ * Ánh xạ cột của file import sang field giao dịch và chuyển giá trị ô thành kiểu dữ liệu
+ * - Tên cột so khớp không dấu ("Ngày", "ngay", "Date" đều nhận)
+ * - Ngày: yyyy-MM-dd, dd/MM/yyyy, dd-MM-yyyy, dd.MM.yyyy, yyyy/MM/dd, dd/MM/yy
+ * - Số tiền: "50000", "50.000", "50,000đ", "1.234.567,89", "(50.000)"; số âm (cột ghi nợ) lấy trị tuyệt đối
+ */
+public final class ImportColumnMapping {
+
+    private static final List<String> DATE_ALIASES = List.of("ngay", "ngay giao dich", "date", "transaction date");
+    private static final List<String> AMOUNT_ALIASES = List.of("so tien", "amount", "gia tri", "tien");
+    private static final List<String> CATEGORY_ALIASES = List.of("danh muc", "category", "loai");
+    private static final List<String> NOTE_ALIASES = List.of("ghi chu", "note", "mo ta", "description", "noi dung");
+    private static final List<String> LOCATION_ALIASES = List.of("dia diem", "location", "noi");
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+        DateTimeFormatter.ISO_LOCAL_DATE,
+        DateTimeFormatter.ofPattern("d/M/uuuu"),
+        DateTimeFormatter.ofPattern("d-M-uuuu"),
+        DateTimeFormatter.ofPattern("d.M.uuuu"),
+        DateTimeFormatter.ofPattern("uuuu/M/d"),
+        DateTimeFormatter.ofPattern("d/M/uu")
+    );
+
+    private final int dateIndex;
+    private final int amountIndex;
+    private final int categoryIndex;
+    private final int noteIndex;
+    private final int locationIndex;
+
+    private ImportColumnMapping(int dateIndex, int amountIndex, int categoryIndex, int noteIndex, int locationIndex) {
+        this.dateIndex = dateIndex;
+        this.amountIndex = amountIndex;
+        this.categoryIndex = categoryIndex;
+        this.noteIndex = noteIndex;
+        this.locationIndex = locationIndex;
+    }
+
+    /**
+     * Dòng đã chuyển kiểu (categoryName có thể null)
+     */
+    public record ParsedRow(LocalDate transactionDate, BigDecimal amount, String categoryName, String note,
+                            String location) {
+    }
+
+    /**
+     * Xác định vị trí các cột từ dòng header; bắt buộc có cột ngày và số tiền
+     */
+    public static ImportColumnMapping fromHeader(List<String> header, ImportOptions options) {
+        int date = find(header, options.dateColumn(), DATE_ALIASES);
+        int amount = find(header, options.amountColumn(), AMOUNT_ALIASES);
+        if (date < 0 || amount < 0) {
+            throw new BusinessException(ErrorCode.IMPORT_FILE_INVALID,
+                "Không tìm thấy cột " + (date < 0 ? "ngày" : "số tiền") + " trong dòng tiêu đề");
+        }
+        return new ImportColumnMapping(date, amount,
+            find(header, options.categoryColumn(), CATEGORY_ALIASES),
+            find(header, options.noteColumn(), NOTE_ALIASES),
+            find(header, options.locationColumn(), LOCATION_ALIASES));
+    }
+
+    /**
+     * Chuyển một dòng dữ liệu; ném IllegalArgumentException kèm lý do nếu dòng không hợp lệ
+     */
+    public ParsedRow parse(List<String> cells) {
+        String rawDate = cell(cells, dateIndex);
+        String rawAmount = cell(cells, amountIndex);
+        if (rawDate == null) {
+            throw new IllegalArgumentException("Thiếu ngày");
+        }
+        if (rawAmount == null) {
+            throw new IllegalArgumentException("Thiếu số tiền");
+        }
+        return new ParsedRow(parseDate(rawDate), parseAmount(rawAmount),
+            cell(cells, categoryIndex), truncate(cell(cells, noteIndex), 500), truncate(cell(cells, locationIndex), 200));
+    }
+
+    /**
+     * Dòng trống hoàn toàn (thường gặp ở cuối file Excel) được bỏ qua, không tính là lỗi
+     */
+    public static boolean isBlank(List<String> cells) {
+        return cells.stream().allMatch(c -> c == null || c.isBlank());
+    }
+
+    static LocalDate parseDate(String raw) {
+        String value = raw.trim();
+        int timeSeparator = value.indexOf(' ') > 0 ? value.indexOf(' ') : value.indexOf('T');
+        if (timeSeparator > 0) {
+            value = value.substring(0, timeSeparator);
+        }
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value, format);
+            } catch (DateTimeParseException ignored) {
+                // thử format tiếp theo
+            }
+        }
+        throw new IllegalArgumentException("Ngày không hợp lệ: " + raw);
+    }
+
+    static BigDecimal parseAmount(String raw) {
+        String value = raw.trim().toLowerCase()
+            .replace("vnd", "").replace("đ", "").replace("₫", "")
+            .replaceAll("\\s", "");
+        if (value.startsWith("(") && value.endsWith(")")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (value.startsWith("-") || value.startsWith("+")) {
+            value = value.substring(1);
+        }
+
+        int lastDot = value.lastIndexOf('.');
+        int lastComma = value.lastIndexOf(',');
+        if (lastDot >= 0 && lastComma >= 0) {
+            // Dấu xuất hiện sau cùng là dấu thập phân
+            char decimal = lastDot > lastComma ? '.' : ',';
+            char grouping = decimal == '.' ? ',' : '.';
+            value = value.replace(String.valueOf(grouping), "").replace(decimal, '.');
+        } else if (lastDot >= 0 || lastComma >= 0) {
+            char separator = lastDot >= 0 ? '.' : ',';
+            int first = value.indexOf(separator);
+            int last = Math.max(lastDot, lastComma);
+            boolean grouping = first != last || value.length() - last - 1 == 3;
+            value = grouping ? value.replace(String.valueOf(separator), "") : value.replace(separator, '.');
+        }
+
+        try {
+            BigDecimal amount = new BigDecimal(value);
+            if (amount.signum() <= 0) {
+                throw new IllegalArgumentException("Số tiền phải lớn hơn 0: " + raw);
+            }
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Số tiền không hợp lệ: " + raw);
+        }
+    }
+
+    private static int find(List<String> header, String explicitName, List<String> aliases) {
+        List<String> candidates = explicitName != null && !explicitName.isBlank()
+            ? List.of(SearchTextNormalizer.fold(explicitName))
+            : aliases;
+        for (String candidate : candidates) {
+            for (int i = 0; i < header.size(); i++) {
+                if (SearchTextNormalizer.fold(header.get(i)).equals(candidate)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String cell(List<String> cells, int index) {
+        if (index < 0 || index >= cells.size()) {
+            return null;
+        }
+        String value = cells.get(index);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+}
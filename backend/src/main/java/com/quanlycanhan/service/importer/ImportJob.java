@@ -0,0 +1,80 @@
+package com.quanlycanhan.service.importer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Trạng thái một lần import chạy nền
+ * Chỉ giữ bộ đếm + tối đa MAX_ERRORS thông báo lỗi, không giữ dữ liệu dòng: bộ nhớ cố định dù file 100k+ dòng.
+ */
+@Getter
+public class ImportJob {
+
+    public static final int MAX_ERRORS = 100;
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Long userId;
+    private final String fileName;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private final AtomicLong processedRows = new AtomicLong();
+    private final AtomicLong importedRows = new AtomicLong();
+    private final AtomicLong duplicateRows = new AtomicLong();
+    private final AtomicLong errorRows = new AtomicLong();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private volatile Status status = Status.PENDING;
+    private volatile String message;
+    private volatile LocalDateTime finishedAt;
+
+    public ImportJob(Long userId, String fileName) {
+        this.userId = userId;
+        this.fileName = fileName;
+    }
+
+    public void start() {
+        status = Status.RUNNING;
+    }
+
+    public void complete() {
+        status = Status.COMPLETED;
+        finishedAt = LocalDateTime.now();
+    }
+
+    public void fail(String reason) {
+        status = Status.FAILED;
+        message = reason;
+        finishedAt = LocalDateTime.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Bản sao danh sách lỗi (an toàn khi job vẫn đang chạy)
+     */
+    public List<String> errorSnapshot() {
+        synchronized (errors) {
+            return List.copyOf(errors);
+        }
+    }
+
+    /**
+     * Ghi nhận dòng lỗi (chỉ lưu MAX_ERRORS thông báo đầu tiên)
+     */
+    public void rowError(long rowNumber, String reason) {
+        errorRows.incrementAndGet();
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Dòng " + rowNumber + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.quanlycanhan.service.importer;
+
+/**
+ * Tùy chọn import do client gửi lên
+ * - xxxColumn: tên cột trong header (null = tự nhận theo tên phổ biến, không phân biệt dấu/hoa thường)
+ * - defaultCategoryId: danh mục dùng khi dòng không có / không khớp danh mục nào
+ * - skipDuplicates: bỏ qua dòng trùng (cùng ngày, số tiền, ghi chú, địa điểm) với dữ liệu đã có
+ */
+public record ImportOptions(String dateColumn, String amountColumn, String categoryColumn, String noteColumn,
+                            String locationColumn, Long defaultCategoryId, boolean skipDuplicates) {
+}
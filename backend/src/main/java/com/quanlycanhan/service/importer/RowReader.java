@@ -0,0 +1,24 @@
+package com.quanlycanhan.service.importer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Đọc file import theo kiểu streaming: mỗi dòng được đẩy ngay cho handler, không giữ cả file trong bộ nhớ
+ */
+public interface RowReader {
+
+    /**
+     * Đọc lần lượt từng dòng (dòng đầu tiên là header)
+     */
+    void read(Path file, RowHandler handler) throws IOException;
+
+    /**
+     * Nhận từng dòng đã tách cột; rowNumber bắt đầu từ 1 (như số dòng trong Excel)
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void handle(long rowNumber, List<String> cells);
+    }
+}
@@ -0,0 +1,14 @@
+package com.quanlycanhan.service.outbox;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một sự kiện trong transaction_outbox
+ * - transactionId null: thay đổi hàng loạt của user (type BULK), consumer nên coi như toàn bộ dữ liệu user đã đổi
+ */
+public record TransactionChangeEvent(long id, Long userId, Long transactionId, ChangeType type, LocalDateTime createdAt) {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED, RESTORED, BULK
+    }
+}
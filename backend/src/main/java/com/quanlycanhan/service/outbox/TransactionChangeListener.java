@@ -0,0 +1,23 @@
+package com.quanlycanhan.service.outbox;
+
+import java.util.List;
+
+/**
+ * Consumer trong process của outbox giao dịch
+ * - Mỗi consumer có offset riêng (outbox_consumer_offsets.consumer = consumerName()), chạy độc lập với nhau
+ * - Giao ít nhất một lần: ném exception thì offset không tiến, cả lô được giao lại ở lần poll sau,
+ *   nên onEvents phải idempotent
+ * - Mỗi sự kiện được xử lý bởi 1 node trong cluster (khóa dòng offset), state dùng chung (Redis, DB) mới nhất quán
+ */
+public interface TransactionChangeListener {
+
+    /**
+     * Tên ổn định, dùng làm khóa offset (tối đa 100 ký tự)
+     */
+    String consumerName();
+
+    /**
+     * Xử lý một lô sự kiện theo thứ tự id tăng dần
+     */
+    void onEvents(List<TransactionChangeEvent> events);
+}
@@ -0,0 +1,98 @@
+package com.quanlycanhan.service.outbox;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ghi sự kiện thay đổi giao dịch vào transaction_outbox
+ * - Bắt buộc gọi trong transaction của thao tác ghi (MANDATORY): sự kiện commit / rollback cùng dữ liệu
+ * - created_at lấy NOW(3) của DB: relay so gap-timeout theo cùng đồng hồ, không phụ thuộc lệch giờ giữa các node
+ * - TransactionOutboxRelay đọc và giao cho các TransactionChangeListener
+ * - Cũng là nguồn "user nào đã thay đổi" cho AiPredictionCacheWarmer (mọi đường ghi đều qua đây)
+ */
+@Service
+@RequiredArgsConstructor
+public class TransactionOutbox {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO transaction_outbox (user_id, transaction_id, change_type, created_at) " +
+        "VALUES (:userId, :transactionId, :changeType, NOW(3))";
+
+    private static final String CHANGED_USERS_SQL =
+        "SELECT o.user_id, MIN(o.created_at) AS first_changed_at FROM transaction_outbox o " +
+        "JOIN users u ON u.id = o.user_id WHERE o.created_at > :since " +
+        "GROUP BY o.user_id, u.last_login_at " +
+        "ORDER BY u.last_login_at IS NULL, u.last_login_at DESC, o.user_id";
+
+    private static final String LAST_EVENT_ID_SQL =
+        "SELECT COALESCE(MAX(id), 0) FROM transaction_outbox WHERE user_id = :userId";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * User có sự kiện sau :since và thời điểm sự kiện đầu tiên đó
+     */
+    public record ChangedUser(Long userId, LocalDateTime firstChangedAt) {
+    }
+
+    /**
+     * Một sự kiện cho mỗi giao dịch
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(Long userId, TransactionChangeEvent.ChangeType type, Collection<Long> transactionIds) {
+        if (transactionIds.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] params = transactionIds.stream()
+            .map(id -> (SqlParameterSource) params(userId, id, type))
+            .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(INSERT_SQL, params);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(Long userId, TransactionChangeEvent.ChangeType type, Long transactionId) {
+        jdbcTemplate.update(INSERT_SQL, params(userId, transactionId, type));
+    }
+
+    /**
+     * Thay đổi hàng loạt không liệt kê id (UPDATE theo danh mục, tính lại base_amount...)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appendBulk(Long userId) {
+        append(userId, TransactionChangeEvent.ChangeType.BULK, (Long) null);
+    }
+
+    /**
+     * User có sự kiện tạo sau :since (idx_outbox_created_at), user đăng nhập gần nhất xếp trước
+     */
+    public List<ChangedUser> findUsersChangedSince(LocalDateTime since) {
+        return jdbcTemplate.query(CHANGED_USERS_SQL, new MapSqlParameterSource("since", since),
+            (rs, rowNum) -> new ChangedUser(rs.getLong("user_id"),
+                rs.getTimestamp("first_changed_at").toLocalDateTime()));
+    }
+
+    /**
+     * Id sự kiện mới nhất của user (0 nếu chưa có); đổi giữa hai lần đọc nghĩa là user vừa có thay đổi
+     */
+    public long lastEventId(Long userId) {
+        Long id = jdbcTemplate.queryForObject(LAST_EVENT_ID_SQL, new MapSqlParameterSource("userId", userId), Long.class);
+        return id != null ? id : 0;
+    }
+
+    private static MapSqlParameterSource params(Long userId, Long transactionId, TransactionChangeEvent.ChangeType type) {
+        return new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("transactionId", transactionId)
+            .addValue("changeType", type.name());
+    }
+}
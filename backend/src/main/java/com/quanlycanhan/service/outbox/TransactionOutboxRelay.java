@@ -0,0 +1,361 @@
+package com.quanlycanhan.service.outbox;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Đọc transaction_outbox và giao sự kiện theo lô cho các TransactionChangeListener
+ * - Mỗi consumer: khóa dòng offset (SELECT ... FOR UPDATE), đọc tối đa batch-size sự kiện sau offset, gọi listener,
+ *   rồi ghi offset mới trong cùng transaction; listener lỗi thì rollback, lô được giao lại (ít nhất một lần)
+ * - Id AUTO_INCREMENT có thể commit không theo thứ tự: gặp khoảng trống id thì dừng ở đó cho tới khi sự kiện sau
+ *   khoảng trống cũ hơn app.outbox.gap-timeout-ms (so với NOW(3) của DB); khi đó đi tiếp nhưng ghi id thiếu vào
+ *   outbox_consumer_gaps và mỗi lô kiểm tra lại, id nào xuất hiện (commit muộn) được giao kèm lô (không theo thứ tự id);
+ *   hết app.outbox.gap-retention-minutes mới coi là rollback và bỏ
+ * - Metric theo consumer: outbox.consumer.lag (số sự kiện chưa xử lý), outbox.consumer.lag.seconds
+ *   (tuổi sự kiện cũ nhất chưa xử lý), outbox.events.delivered, outbox.delivery.failures, outbox.gaps.recovered
+ * - Sự kiện mọi consumer đã xử lý và cũ hơn app.outbox.retention-hours được xóa định kỳ
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.outbox.relay-enabled", havingValue = "true", matchIfMissing = true)
+public class TransactionOutboxRelay {
+
+    private static final String REGISTER_SQL =
+        "INSERT IGNORE INTO outbox_consumer_offsets (consumer, last_event_id, updated_at) VALUES (:consumer, 0, NOW())";
+
+    private static final String LOCK_OFFSET_SQL =
+        "SELECT last_event_id FROM outbox_consumer_offsets WHERE consumer = :consumer FOR UPDATE";
+
+    private static final String SELECT_EVENTS_SQL =
+        "SELECT id, user_id, transaction_id, change_type, created_at FROM transaction_outbox " +
+        "WHERE id > :offset ORDER BY id LIMIT :limit";
+
+    private static final String DB_NOW_SQL = "SELECT NOW(3)";
+
+    private static final String SELECT_LATE_EVENTS_SQL =
+        "SELECT o.id, o.user_id, o.transaction_id, o.change_type, o.created_at FROM transaction_outbox o " +
+        "JOIN outbox_consumer_gaps g ON g.event_id = o.id WHERE g.consumer = :consumer ORDER BY o.id LIMIT :limit";
+
+    private static final String INSERT_GAP_SQL =
+        "INSERT IGNORE INTO outbox_consumer_gaps (consumer, event_id, skipped_at) VALUES (:consumer, :eventId, NOW(3))";
+
+    private static final String DELETE_GAPS_SQL =
+        "DELETE FROM outbox_consumer_gaps WHERE consumer = :consumer AND event_id IN (:eventIds)";
+
+    private static final String EXPIRE_GAPS_SQL = "DELETE FROM outbox_consumer_gaps WHERE skipped_at < :cutoff";
+
+    private static final String UPDATE_OFFSET_SQL =
+        "UPDATE outbox_consumer_offsets SET last_event_id = :offset, updated_at = NOW() WHERE consumer = :consumer";
+
+    private static final String HEAD_SQL = "SELECT COALESCE(MAX(id), 0) FROM transaction_outbox";
+
+    /**
+     * Tuổi sự kiện chờ lâu nhất tính bằng đồng hồ DB (created_at ghi bằng NOW(3)) nên không lệch theo đồng hồ app
+     */
+    private static final String OLDEST_PENDING_SQL =
+        "SELECT TIMESTAMPDIFF(MICROSECOND, MIN(created_at), NOW(3)) FROM transaction_outbox WHERE id > :offset";
+
+    private static final String MIN_OFFSET_SQL =
+        "SELECT MIN(last_event_id) FROM outbox_consumer_offsets WHERE consumer IN (:consumers)";
+
+    private static final String PURGE_SQL =
+        "DELETE FROM transaction_outbox WHERE id <= :offset AND created_at < :cutoff ORDER BY id LIMIT :limit";
+
+    private static final int PURGE_CHUNK_SIZE = 5000;
+
+    /**
+     * Số id thiếu tối đa ghi lại cho một lô (khoảng trống lớn hơn thường do auto_increment nhảy, không phải transaction)
+     */
+    private static final int MAX_GAP_IDS_PER_BATCH = 1000;
+
+    private static final RowMapper<TransactionChangeEvent> EVENT_MAPPER = (rs, rowNum) -> new TransactionChangeEvent(
+        rs.getLong("id"),
+        rs.getLong("user_id"),
+        rs.getObject("transaction_id") != null ? rs.getLong("transaction_id") : null,
+        TransactionChangeEvent.ChangeType.valueOf(rs.getString("change_type")),
+        rs.getTimestamp("created_at").toLocalDateTime());
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<TransactionChangeListener> listeners;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ConsumerState> consumers = new ConcurrentHashMap<>();
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${app.outbox.max-batches-per-poll:20}")
+    private int maxBatchesPerPoll = 20;
+
+    /**
+     * Phải lớn hơn thời gian transaction ghi giao dịch dài nhất, nếu không sự kiện commit muộn có thể bị bỏ qua
+     */
+    @Value("${app.outbox.gap-timeout-ms:10000}")
+    private long gapTimeoutMs = 10000;
+
+    /**
+     * Thời gian kiểm tra lại id bị vượt qua; phải ngắn hơn retention-hours để sự kiện commit muộn chưa bị xóa
+     */
+    @Value("${app.outbox.gap-retention-minutes:60}")
+    private long gapRetentionMinutes = 60;
+
+    @Value("${app.outbox.retention-hours:72}")
+    private long retentionHours = 72;
+
+    /**
+     * Trạng thái một consumer cho metric (offset đã commit gần nhất, độ trễ)
+     */
+    static final class ConsumerState {
+        volatile long offset;
+        volatile long lagEvents;
+        volatile double lagSeconds;
+        Counter delivered;
+        Counter failures;
+        Counter recovered;
+    }
+
+    /**
+     * Kết quả một lô: số sự kiện đã giao và offset mới
+     */
+    record Delivery(int delivered, long offset) {
+    }
+
+    /**
+     * Phần giao được của lô và các id thiếu đã vượt qua do quá gap-timeout
+     */
+    record Deliverable(List<TransactionChangeEvent> events, List<Long> skippedIds) {
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-ms:1000}")
+    public void pollScheduled() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.error("Outbox relay poll failed", e);
+        }
+    }
+
+    @Scheduled(cron = "${app.outbox.cleanup-cron:0 20 * * * *}")
+    public void cleanupScheduled() {
+        try {
+            int purged = purgeDelivered(LocalDateTime.now().minusHours(retentionHours));
+            if (purged > 0) {
+                log.info("Purged {} delivered outbox events", purged);
+            }
+            int expired = expireGaps(LocalDateTime.now().minusMinutes(gapRetentionMinutes));
+            if (expired > 0) {
+                log.info("Dropped {} outbox gap ids never committed", expired);
+            }
+        } catch (Exception e) {
+            log.error("Outbox cleanup failed", e);
+        }
+    }
+
+    /**
+     * Giao sự kiện mới cho mọi consumer; trả về tổng số sự kiện đã giao
+     */
+    public int poll() {
+        Long head = jdbcTemplate.queryForObject(HEAD_SQL, EmptySqlParameterSource.INSTANCE, Long.class);
+        int total = 0;
+        for (TransactionChangeListener listener : listeners.orderedStream().toList()) {
+            total += drain(listener, head != null ? head : 0);
+        }
+        return total;
+    }
+
+    /**
+     * Xóa sự kiện mọi consumer hiện có đã xử lý và tạo trước cutoff
+     */
+    public int purgeDelivered(LocalDateTime cutoff) {
+        List<String> names = listeners.orderedStream().map(TransactionChangeListener::consumerName).toList();
+        if (names.isEmpty()) {
+            return 0;
+        }
+        names.forEach(this::state);
+        Long minOffset = jdbcTemplate.queryForObject(MIN_OFFSET_SQL, new MapSqlParameterSource("consumers", names), Long.class);
+        if (minOffset == null || minOffset == 0) {
+            return 0;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("offset", minOffset)
+            .addValue("cutoff", cutoff)
+            .addValue("limit", PURGE_CHUNK_SIZE);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PURGE_SQL, params);
+            total += deleted;
+        } while (deleted == PURGE_CHUNK_SIZE);
+        return total;
+    }
+
+    /**
+     * Bỏ các id thiếu đã chờ quá lâu (coi là transaction đã rollback)
+     */
+    public int expireGaps(LocalDateTime cutoff) {
+        return jdbcTemplate.update(EXPIRE_GAPS_SQL, new MapSqlParameterSource("cutoff", cutoff));
+    }
+
+    private int drain(TransactionChangeListener listener, long head) {
+        ConsumerState state = state(listener.consumerName());
+        int total = 0;
+        try {
+            for (int i = 0; i < maxBatchesPerPoll; i++) {
+                Delivery delivery = transactionTemplate.execute(status -> deliverBatch(listener, state));
+                if (delivery == null) {
+                    break;
+                }
+                state.offset = delivery.offset();
+                if (delivery.delivered() == 0) {
+                    break;
+                }
+                total += delivery.delivered();
+                state.delivered.increment(delivery.delivered());
+                if (delivery.delivered() < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            state.failures.increment();
+            log.warn("Outbox consumer {} failed after offset {}: {}", listener.consumerName(), state.offset, e.getMessage());
+        }
+        updateLag(state, head);
+        return total;
+    }
+
+    private Delivery deliverBatch(TransactionChangeListener listener, ConsumerState state) {
+        MapSqlParameterSource consumer = new MapSqlParameterSource("consumer", listener.consumerName());
+        Long offset = jdbcTemplate.queryForObject(LOCK_OFFSET_SQL, consumer, Long.class);
+        long current = offset != null ? offset : 0;
+        LocalDateTime dbNow = jdbcTemplate.queryForObject(DB_NOW_SQL, EmptySqlParameterSource.INSTANCE, LocalDateTime.class);
+        List<TransactionChangeEvent> late = jdbcTemplate.query(SELECT_LATE_EVENTS_SQL,
+            new MapSqlParameterSource().addValue("consumer", listener.consumerName()).addValue("limit", batchSize),
+            EVENT_MAPPER);
+        List<TransactionChangeEvent> events = jdbcTemplate.query(SELECT_EVENTS_SQL,
+            new MapSqlParameterSource().addValue("offset", current).addValue("limit", batchSize), EVENT_MAPPER);
+        Deliverable ready = deliverable(current, events, dbNow != null ? dbNow : LocalDateTime.now(),
+            Duration.ofMillis(gapTimeoutMs));
+        if (late.isEmpty() && ready.events().isEmpty()) {
+            return new Delivery(0, current);
+        }
+        List<TransactionChangeEvent> batch = new ArrayList<>(late.size() + ready.events().size());
+        batch.addAll(late);
+        batch.addAll(ready.events());
+        listener.onEvents(batch);
+
+        if (!late.isEmpty()) {
+            jdbcTemplate.update(DELETE_GAPS_SQL, new MapSqlParameterSource()
+                .addValue("consumer", listener.consumerName())
+                .addValue("eventIds", late.stream().map(TransactionChangeEvent::id).toList()));
+            state.recovered.increment(late.size());
+            log.info("Outbox consumer {} received {} late-committed events", listener.consumerName(), late.size());
+        }
+        recordGaps(listener.consumerName(), ready.skippedIds());
+        long next = ready.events().isEmpty() ? current : ready.events().get(ready.events().size() - 1).id();
+        if (next != current) {
+            jdbcTemplate.update(UPDATE_OFFSET_SQL, new MapSqlParameterSource()
+                .addValue("consumer", listener.consumerName())
+                .addValue("offset", next));
+        }
+        return new Delivery(batch.size(), next);
+    }
+
+    private void recordGaps(String consumer, List<Long> skippedIds) {
+        if (skippedIds.isEmpty()) {
+            return;
+        }
+        List<Long> tracked = skippedIds.size() > MAX_GAP_IDS_PER_BATCH
+            ? skippedIds.subList(0, MAX_GAP_IDS_PER_BATCH)
+            : skippedIds;
+        if (tracked.size() < skippedIds.size()) {
+            log.warn("Outbox consumer {} skipped more than {} missing ids, re-checking only the first {}",
+                consumer, MAX_GAP_IDS_PER_BATCH, tracked.size());
+        }
+        SqlParameterSource[] params = tracked.stream()
+            .map(id -> (SqlParameterSource) new MapSqlParameterSource()
+                .addValue("consumer", consumer)
+                .addValue("eventId", id))
+            .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(INSERT_GAP_SQL, params);
+    }
+
+    /**
+     * Phần đầu liên tục của lô: dừng trước sự kiện đứng sau một khoảng trống id nếu sự kiện đó còn mới hơn gapTimeout
+     * (id thiếu có thể thuộc transaction chưa commit); vượt qua khoảng trống đã quá gapTimeout thì trả các id thiếu
+     * trong skippedIds để kiểm tra lại
+     */
+    static Deliverable deliverable(long offset, List<TransactionChangeEvent> events,
+                                   LocalDateTime now, Duration gapTimeout) {
+        LocalDateTime settledBefore = now.minus(gapTimeout);
+        long expected = offset + 1;
+        int end = 0;
+        List<Long> skipped = new ArrayList<>();
+        for (TransactionChangeEvent event : events) {
+            if (event.id() != expected) {
+                if (event.createdAt().isAfter(settledBefore)) {
+                    break;
+                }
+                for (long id = expected; id < event.id() && skipped.size() <= MAX_GAP_IDS_PER_BATCH; id++) {
+                    skipped.add(id);
+                }
+            }
+            expected = event.id() + 1;
+            end++;
+        }
+        return new Deliverable(events.subList(0, end), skipped);
+    }
+
+    private void updateLag(ConsumerState state, long head) {
+        long lag = Math.max(0, head - state.offset);
+        state.lagEvents = lag;
+        if (lag == 0) {
+            state.lagSeconds = 0;
+            return;
+        }
+        Long ageMicros = jdbcTemplate.queryForObject(OLDEST_PENDING_SQL,
+            new MapSqlParameterSource("offset", state.offset), Long.class);
+        state.lagSeconds = ageMicros != null ? Math.max(0, ageMicros / 1_000_000.0) : 0;
+    }
+
+    private ConsumerState state(String name) {
+        return consumers.computeIfAbsent(name, consumer -> {
+            jdbcTemplate.update(REGISTER_SQL, new MapSqlParameterSource("consumer", consumer));
+            ConsumerState state = new ConsumerState();
+            state.delivered = meterRegistry.counter("outbox.events.delivered", "consumer", consumer);
+            state.failures = meterRegistry.counter("outbox.delivery.failures", "consumer", consumer);
+            state.recovered = meterRegistry.counter("outbox.gaps.recovered", "consumer", consumer);
+            Gauge.builder("outbox.consumer.lag", state, s -> s.lagEvents)
+                .tag("consumer", consumer)
+                .register(meterRegistry);
+            Gauge.builder("outbox.consumer.lag.seconds", state, s -> s.lagSeconds)
+                .tag("consumer", consumer)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+            return state;
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.quanlycanhan.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Số tiền dạng long theo đơn vị nhỏ nhất (1/100 VND, khớp DECIMAL(.., 2) trong database)
+ * - Dùng cho cộng dồn trong bộ nhớ (thống kê, xu hướng, dự đoán): cộng long không cấp phát như BigDecimal
+ * - Cộng/trừ/nhân kiểm tra tràn số (ArithmeticException), không âm thầm quay vòng
+ * - Chỉ đổi sang BigDecimal ở ranh giới API (toBigDecimal) và đổi từ giá trị JDBC/entity bằng minorOf
+ * Vòng lặp nóng dùng các hàm static trên long; record Money cho chỗ cần một giá trị có kiểu.
+ */
+public record Money(long minor) implements Comparable<Money> {
+
+    /**
+     * Số chữ số thập phân của đơn vị nhỏ nhất
+     */
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+
+    public static Money of(BigDecimal amount) {
+        return new Money(minorOf(amount));
+    }
+
+    public Money plus(Money other) {
+        return new Money(add(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return new Money(subtract(minor, other.minor));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(minor);
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    /**
+     * BigDecimal -> đơn vị nhỏ nhất (làm tròn HALF_UP nếu nhiều hơn 2 chữ số thập phân); null là 0
+     */
+    public static long minorOf(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        BigDecimal scaled = amount.scale() == SCALE ? amount : amount.setScale(SCALE, RoundingMode.HALF_UP);
+        return scaled.scaleByPowerOfTen(SCALE).longValueExact();
+    }
+
+    /**
+     * Giá trị số từ JDBC/JPQL (BigDecimal, Long, Integer, BigInteger...) -> đơn vị nhỏ nhất, không qua double
+     */
+    public static long minorOf(Object raw) {
+        if (raw == null) {
+            return 0;
+        }
+        if (raw instanceof BigDecimal decimal) {
+            return minorOf(decimal);
+        }
+        if (raw instanceof Long || raw instanceof Integer || raw instanceof Short || raw instanceof Byte) {
+            return Math.multiplyExact(((Number) raw).longValue(), MINOR_PER_UNIT);
+        }
+        if (raw instanceof BigInteger integer) {
+            return Math.multiplyExact(integer.longValueExact(), MINOR_PER_UNIT);
+        }
+        return minorOf(new BigDecimal(raw.toString()));
+    }
+
+    /**
+     * Giá trị số thô -> BigDecimal giữ nguyên độ chính xác (thay cho BigDecimal.valueOf(doubleValue()))
+     */
+    public static BigDecimal decimalOf(Object raw) {
+        if (raw == null) {
+            return BigDecimal.ZERO;
+        }
+        if (raw instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (raw instanceof Long || raw instanceof Integer || raw instanceof Short || raw instanceof Byte) {
+            return BigDecimal.valueOf(((Number) raw).longValue());
+        }
+        if (raw instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        }
+        return new BigDecimal(raw.toString());
+    }
+
+    public static BigDecimal toBigDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Số tiền * hệ số (trung bình trượt, dự đoán), làm tròn về đơn vị nhỏ nhất; tràn long thì ném lỗi
+     */
+    public static long scale(long minor, double factor) {
+        return roundToMinor(minor * factor);
+    }
+
+    /**
+     * Kết quả tính toán dạng double (đơn vị nhỏ nhất) -> long, làm tròn gần nhất; NaN/vô cực/tràn thì ném lỗi
+     */
+    public static long roundToMinor(double minor) {
+        if (Double.isNaN(minor) || minor >= 0x1p63 || minor < -0x1p63) {
+            throw new ArithmeticException("Money overflow: " + minor);
+        }
+        return Math.round(minor);
+    }
+}
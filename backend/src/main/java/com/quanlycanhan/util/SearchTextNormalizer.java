@@ -0,0 +1,128 @@
+package com.quanlycanhan.util;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa văn bản cho tìm kiếm giao dịch
+ * - Bỏ dấu tiếng Việt ("ăn uống" -> "an uong", "Đi lại" -> "di lai")
+ * - Chữ thường, thay ký tự đặc biệt bằng khoảng trắng
+ * - Dùng chung cho cả lúc ghi (cột search_text) và lúc tìm (từ khóa) để hai phía luôn khớp nhau
+ */
+public final class SearchTextNormalizer {
+
+    /**
+     * Độ dài tối đa của cột search_text (note 500 + location 200 + khoảng trắng)
+     */
+    public static final int MAX_DOCUMENT_LENGTH = 720;
+
+    /**
+     * Token ngắn hơn ngram_token_size mặc định của MySQL (2) không tra được bằng FULLTEXT ngram
+     */
+    public static final int MIN_TOKEN_LENGTH = 2;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern AMOUNT_NOISE = Pattern.compile("[\\s_]|(?i)(vnd|đ|₫)$");
+    private static final Pattern AMOUNT_CHARS = Pattern.compile("\\d(?:[\\d.,]*\\d)?");
+    private static final Pattern GROUPED_DIGITS = Pattern.compile("\\d{1,3}(?:([.,])\\d{3})(?:\\1\\d{3})*");
+
+    private SearchTextNormalizer() {
+    }
+
+    /**
+     * Bỏ dấu + chữ thường + gom khoảng trắng
+     */
+    public static String fold(String input) {
+        if (input == null || input.isEmpty()) {
+            return "";
+        }
+        String s = removeDiacritics(input).toLowerCase(Locale.ROOT);
+        return NON_ALNUM.matcher(s).replaceAll(" ").trim();
+    }
+
+    /**
+     * Chỉ bỏ dấu, giữ nguyên hoa/thường và ký tự khác ("Đi lại" -> "Di lai")
+     */
+    public static String removeDiacritics(String input) {
+        if (input == null || input.isEmpty()) {
+            return input;
+        }
+        String s = input.replace('đ', 'd').replace('Đ', 'D');
+        s = Normalizer.normalize(s, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(s).replaceAll("");
+    }
+
+    /**
+     * Dựng nội dung cột search_text từ note + location
+     */
+    public static String buildDocument(String note, String location) {
+        String doc = (fold(note) + " " + fold(location)).trim();
+        if (doc.isEmpty()) {
+            return null;
+        }
+        return doc.length() > MAX_DOCUMENT_LENGTH ? doc.substring(0, MAX_DOCUMENT_LENGTH) : doc;
+    }
+
+    /**
+     * Tách từ khóa đã fold thành các token đủ dài để tra FULLTEXT
+     */
+    public static List<String> indexableTokens(String foldedKeyword) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : foldedKeyword.split(" ")) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Dựng câu truy vấn BOOLEAN MODE: mọi token đều bắt buộc ("+an +uong")
+     */
+    public static String toBooleanQuery(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('+').append(token);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Nhận diện từ khóa là số tiền ("50000", "50.000", "50,000đ", "50.5", "1.234,56") để so khớp kiểu số thay vì LIKE
+     * - Cùng quy tắc với ImportColumnMapping.parseAmount: dấu cuối cùng theo sau bởi 1-2 chữ số là dấu thập phân,
+     *   theo sau bởi 3 chữ số là dấu phân cách hàng nghìn
+     * - Không rõ nghĩa ("1.5000", "1,000.500", "1.000.50", nhóm không đủ 3 chữ số) trả về null (không so khớp số tiền)
+     */
+    public static BigDecimal parseAmount(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        String value = AMOUNT_NOISE.matcher(keyword.trim()).replaceAll("");
+        if (!AMOUNT_CHARS.matcher(value).matches()) {
+            return null;
+        }
+        int last = Math.max(value.lastIndexOf('.'), value.lastIndexOf(','));
+        String integerPart = value;
+        String fraction = "";
+        if (last >= 0 && value.length() - last - 1 <= 2) {
+            integerPart = value.substring(0, last);
+            fraction = value.substring(last + 1);
+            if (integerPart.indexOf(value.charAt(last)) >= 0) {
+                return null;
+            }
+        }
+        if (!integerPart.chars().allMatch(Character::isDigit) && !GROUPED_DIGITS.matcher(integerPart).matches()) {
+            return null;
+        }
+        String digits = integerPart.replace(".", "").replace(",", "");
+        return new BigDecimal(fraction.isEmpty() ? digits : digits + "." + fraction);
+    }
+}
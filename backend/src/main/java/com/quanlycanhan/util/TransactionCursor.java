@@ -0,0 +1,55 @@
+package com.quanlycanhan.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+
+/**
+ * Cursor cho keyset pagination của danh sách giao dịch.
+ * - Khóa sắp xếp: (transactionDate DESC, id DESC)
+ * - Token trả cho client là chuỗi Base64 URL-safe, client chỉ việc gửi lại nguyên văn
+ */
+public record TransactionCursor(LocalDate transactionDate, Long id) {
+
+    /**
+     * Cursor "đầu danh sách": lớn hơn mọi (transactionDate, id) hợp lệ,
+     * giúp trang đầu tiên dùng chung query seek với các trang sau.
+     */
+    public static final TransactionCursor START = new TransactionCursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Mã hóa cursor thành token opaque
+     */
+    public String encode() {
+        String raw = transactionDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã token; null/rỗng nghĩa là bắt đầu từ đầu danh sách
+     */
+    public static TransactionCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int idx = raw.indexOf(SEPARATOR);
+            if (idx <= 0) {
+                throw new BusinessException(ErrorCode.CURSOR_INVALID);
+            }
+            LocalDate date = LocalDate.parse(raw.substring(0, idx));
+            Long id = Long.parseLong(raw.substring(idx + 1));
+            return new TransactionCursor(date, id);
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BusinessException(ErrorCode.CURSOR_INVALID, token);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- V10: Làm nóng cache AI theo thay đổi
+-- - users.last_login_at: thời điểm đăng nhập gần nhất, dùng để ưu tiên user hoạt động khi làm nóng cache
+-- (user thay đổi kể từ lần chạy trước lấy từ transaction_outbox, V11)
+-- Idempotent: chỉ thêm cột nếu chưa tồn tại
+
+SET @dbname = DATABASE();
+
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = 'users' AND COLUMN_NAME = 'last_login_at') > 0,
+    'SELECT 1',
+    'ALTER TABLE users ADD COLUMN last_login_at DATETIME NULL AFTER failed_login_attempts'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,33 @@
+-- V11: Outbox thay đổi giao dịch
+-- - transaction_outbox: mỗi lần ghi transactions thêm 1 dòng sự kiện trong cùng transaction DB
+--   (transaction_id NULL = thay đổi hàng loạt không liệt kê id, vd. xóa danh mục kèm giao dịch)
+-- - outbox_consumer_offsets: id sự kiện cuối cùng mỗi consumer đã xử lý xong
+-- - outbox_consumer_gaps: id consumer đã vượt qua khi chưa thấy (transaction commit muộn hoặc đã rollback),
+--   được kiểm tra lại tới khi xuất hiện hoặc hết app.outbox.gap-retention-minutes
+-- Không có khóa ngoại tới transactions (bảng phân vùng, giao dịch có thể đã được lưu trữ khi sự kiện được đọc)
+
+CREATE TABLE IF NOT EXISTS transaction_outbox (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    user_id BIGINT NOT NULL,
+    transaction_id BIGINT NULL,
+    change_type VARCHAR(20) NOT NULL,
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (id),
+    KEY idx_outbox_created_at (created_at),
+    KEY idx_outbox_user_id (user_id, id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS outbox_consumer_offsets (
+    consumer VARCHAR(100) NOT NULL,
+    last_event_id BIGINT NOT NULL DEFAULT 0,
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (consumer)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS outbox_consumer_gaps (
+    consumer VARCHAR(100) NOT NULL,
+    event_id BIGINT NOT NULL,
+    skipped_at DATETIME(3) NOT NULL,
+    PRIMARY KEY (consumer, event_id),
+    KEY idx_outbox_gaps_skipped_at (skipped_at)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
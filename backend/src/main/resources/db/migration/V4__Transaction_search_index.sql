@@ -0,0 +1,45 @@
+-- V4: Tìm kiếm giao dịch không phụ thuộc dấu tiếng Việt
+-- - Cột search_text: note + location đã bỏ dấu/chữ thường (ứng dụng tự ghi, xem SearchTextNormalizer)
+-- - FULLTEXT index với parser ngram để tra token trong note thay cho LIKE '%kw%'
+-- - Index (user_id, deleted, amount) cho lọc theo khoảng số tiền
+-- Idempotent: chỉ thêm nếu chưa tồn tại. Dữ liệu cũ được TransactionSearchIndexer backfill khi khởi động.
+
+SET @dbname = DATABASE();
+SET @tablename = 'transactions';
+
+-- Cột search_text
+SET @columnname = 'search_text';
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = @tablename AND COLUMN_NAME = @columnname) > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD COLUMN search_text VARCHAR(720) NULL AFTER location'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- FULLTEXT index ngram trên search_text
+SET @idx_name = 'ft_transactions_search_text';
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.STATISTICS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = @tablename AND INDEX_NAME = @idx_name) > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD FULLTEXT INDEX ft_transactions_search_text (search_text) WITH PARSER ngram'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Index idx_transactions_user_deleted_amount: (user_id, deleted, amount)
+-- Hỗ trợ: lọc khoảng số tiền / so khớp số tiền chính xác trong tìm kiếm
+SET @idx_name = 'idx_transactions_user_deleted_amount';
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.STATISTICS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = @tablename AND INDEX_NAME = @idx_name) > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD INDEX idx_transactions_user_deleted_amount (user_id, deleted, amount)'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,19 @@
+-- V5: Bảng tổng hợp theo ngày (rollup) cho dashboard/thống kê
+-- Mỗi dòng = tổng tiền + số giao dịch (chưa xóa) của 1 user, 1 ngày, 1 danh mục.
+-- Ứng dụng cập nhật bằng delta trong cùng transaction với thao tác ghi giao dịch (xem TransactionSummaryService);
+-- dữ liệu cũ được TransactionSummaryBackfill dựng lại khi khởi động.
+-- Idempotent: chỉ tạo nếu chưa tồn tại.
+
+CREATE TABLE IF NOT EXISTS user_daily_category_summary (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    user_id BIGINT NOT NULL,
+    summary_date DATE NOT NULL,
+    category_id BIGINT NOT NULL,
+    type VARCHAR(20) NOT NULL,
+    total_amount DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    txn_count INT NOT NULL DEFAULT 0,
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_summary_user_date_category (user_id, summary_date, category_id),
+    KEY idx_summary_category (category_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
@@ -0,0 +1,25 @@
+-- V6: Bảng closure cho cây danh mục
+-- Mỗi dòng = 1 cặp (tổ tiên, hậu duệ) kèm khoảng cách; mỗi danh mục có 1 dòng tự tham chiếu (depth = 0).
+-- Tổng theo cả nhánh ("Ăn uống" gồm "Ăn uống > Cà phê") = JOIN bảng tổng hợp theo descendant_id, GROUP BY ancestor_id.
+-- Ứng dụng cập nhật khi tạo / đổi danh mục cha (xem CategoryService); dữ liệu cũ được dựng bên dưới.
+-- Idempotent: chỉ tạo nếu chưa tồn tại, INSERT IGNORE khi dựng lại.
+
+CREATE TABLE IF NOT EXISTS category_closure (
+    ancestor_id BIGINT NOT NULL,
+    descendant_id BIGINT NOT NULL,
+    depth INT NOT NULL,
+    PRIMARY KEY (ancestor_id, descendant_id),
+    KEY idx_closure_descendant (descendant_id, ancestor_id, depth)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+-- Dựng closure từ categories.parent_id (giới hạn độ sâu để dữ liệu lỗi có vòng lặp không chạy mãi)
+INSERT IGNORE INTO category_closure (ancestor_id, descendant_id, depth)
+WITH RECURSIVE tree (ancestor_id, descendant_id, depth) AS (
+    SELECT id, id, 0 FROM categories
+    UNION ALL
+    SELECT t.ancestor_id, c.id, t.depth + 1
+    FROM tree t
+    JOIN categories c ON c.parent_id = t.descendant_id
+    WHERE t.depth < 32
+)
+SELECT ancestor_id, descendant_id, MIN(depth) FROM tree GROUP BY ancestor_id, descendant_id;
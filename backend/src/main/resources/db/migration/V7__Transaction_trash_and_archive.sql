@@ -0,0 +1,52 @@
+-- V7: Thùng rác giao dịch + bảng lưu trữ
+-- - deleted_at: thời điểm xóa mềm; giao dịch khôi phục được trong app.trash.retention-days ngày
+-- - Hết hạn: TransactionTrashPurger chuyển sang transactions_archive rồi xóa cứng khỏi transactions theo lô nhỏ
+-- Idempotent: chỉ thêm cột / index / bảng nếu chưa tồn tại
+
+SET @dbname = DATABASE();
+
+-- Cột deleted_at
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = 'transactions' AND COLUMN_NAME = 'deleted_at') > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD COLUMN deleted_at DATETIME NULL AFTER deleted'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Giao dịch đã xóa trước V7: lấy updated_at làm thời điểm xóa
+UPDATE transactions SET deleted_at = updated_at WHERE deleted = 1 AND deleted_at IS NULL;
+
+-- Index idx_transactions_deleted_at: (deleted, deleted_at) - job dọn rác quét theo khoảng deleted_at
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.STATISTICS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = 'transactions' AND INDEX_NAME = 'idx_transactions_deleted_at') > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD INDEX idx_transactions_deleted_at (deleted, deleted_at)'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Bảng lưu trữ: giữ nguyên id và dữ liệu gốc, không có FK để xóa user/danh mục không bị chặn
+CREATE TABLE IF NOT EXISTS transactions_archive (
+    id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    category_id BIGINT NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    currency VARCHAR(10) NOT NULL,
+    transaction_date DATE NOT NULL,
+    note VARCHAR(500) NULL,
+    location VARCHAR(200) NULL,
+    receipt_image VARCHAR(500) NULL,
+    created_by VARCHAR(20) NOT NULL,
+    created_by_admin_id BIGINT NULL,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME NOT NULL,
+    deleted_at DATETIME NULL,
+    archived_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id),
+    KEY idx_archive_user_date (user_id, transaction_date)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
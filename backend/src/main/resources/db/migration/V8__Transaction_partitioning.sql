@@ -0,0 +1,5 @@
+-- V8: Giữ chỗ cho phiên bản migration phân vùng transactions
+-- Việc phân vùng theo năm nay do TransactionPartitionMaintainer thực hiện khi khởi động với app.partitioning.enabled=true
+-- (bật cờ sau khi đã migrate vẫn có tác dụng); migration này không thay đổi gì.
+
+SELECT 1;
@@ -0,0 +1,58 @@
+-- V9: Đa tiền tệ
+-- - fx_rates: tỷ giá quy đổi 1 đơn vị ngoại tệ ra VND, hiệu lực từ rate_date tới ngày có tỷ giá kế tiếp
+-- - transactions.base_amount: số tiền đã quy đổi ra VND lúc ghi; mọi SUM/tổng hợp dùng cột này
+-- - Giao dịch VND cũ: base_amount = amount; ngoại tệ cũ để NULL, FxRenormalizationJob điền khi đã có tỷ giá
+-- Idempotent: chỉ thêm cột / bảng nếu chưa tồn tại
+
+SET @dbname = DATABASE();
+
+CREATE TABLE IF NOT EXISTS fx_rates (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    currency VARCHAR(10) NOT NULL,
+    rate_date DATE NOT NULL,
+    rate DECIMAL(24, 10) NOT NULL,
+    source VARCHAR(255) NULL,
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_fx_rates_currency_date (currency, rate_date)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+-- Cột base_amount
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = 'transactions' AND COLUMN_NAME = 'base_amount') > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions ADD COLUMN base_amount DECIMAL(15, 2) NULL AFTER amount'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+UPDATE transactions SET currency = UPPER(TRIM(currency)) WHERE currency <> UPPER(TRIM(currency));
+UPDATE transactions SET base_amount = amount WHERE currency = 'VND' AND base_amount IS NULL;
+
+-- Bảng lưu trữ giữ cả số tiền đã quy đổi
+SET @preparedStatement = (SELECT IF(
+    (SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+     WHERE TABLE_SCHEMA = @dbname AND TABLE_NAME = 'transactions_archive' AND COLUMN_NAME = 'base_amount') > 0,
+    'SELECT 1',
+    'ALTER TABLE transactions_archive ADD COLUMN base_amount DECIMAL(15, 2) NULL AFTER amount'
+));
+PREPARE stmt FROM @preparedStatement;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Dòng tổng hợp đang cộng lẫn ngoại tệ vào VND: dựng lại từ giao dịch đã có base_amount (tổng và số lượng khớp nhau),
+-- phần ngoại tệ được cộng lại khi FxRenormalizationJob điền base_amount (job dựng lại tổng hợp của user)
+DELETE s FROM user_daily_category_summary s
+WHERE EXISTS (SELECT 1 FROM transactions t WHERE t.user_id = s.user_id AND t.currency <> 'VND');
+
+INSERT INTO user_daily_category_summary
+    (user_id, summary_date, category_id, type, total_amount, txn_count, updated_at)
+SELECT t.user_id, t.transaction_date, t.category_id, c.type, COALESCE(SUM(t.base_amount), 0), COUNT(*), NOW()
+FROM transactions t JOIN categories c ON c.id = t.category_id
+WHERE t.deleted = 0
+  AND t.base_amount IS NOT NULL
+  AND t.user_id IN (SELECT x.user_id FROM (SELECT DISTINCT user_id FROM transactions WHERE currency <> 'VND') x)
+GROUP BY t.user_id, t.transaction_date, t.category_id, c.type
+ON DUPLICATE KEY UPDATE total_amount = VALUES(total_amount), txn_count = VALUES(txn_count), updated_at = NOW();
@@ -0,0 +1,163 @@
+package com.quanlycanhan.config;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.service.AiPredictionService.PredictionResult;
+
+/**
+ * So sánh với JSON hiện tại: mvn test -Dtest=CacheValueSerializerTest -Dbenchmark=true
+ */
+@DisplayName("CacheValueSerializer Tests")
+class CacheValueSerializerTest {
+
+    private final RedisSerializer<Object> json = new GenericJackson2JsonRedisSerializer(
+            new ObjectMapper().registerModule(new JavaTimeModule()));
+    private final CacheValueSerializer serializer = new CacheValueSerializer(json, 512);
+
+    private static List<Category> categories(int count) {
+        List<Category> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Category parent = Category.builder().id(1000L + i).name("Cha " + i).build();
+            Category category = Category.builder()
+                    .id((long) i)
+                    .name("Ăn uống " + i)
+                    .icon("🍔")
+                    .color("#FF5733")
+                    .type(i % 2 == 0 ? "expense" : "income")
+                    .description("Danh mục chi tiêu hằng ngày số " + i)
+                    .systemDefault(i < 5)
+                    .sortOrder(i)
+                    .createdAt(LocalDateTime.of(2025, 1, 1, 8, 0).plusDays(i))
+                    .updatedAt(LocalDateTime.of(2025, 6, 1, 8, 0).plusDays(i))
+                    .build();
+            category.getChildren().add(parent);
+            list.add(category);
+        }
+        return list;
+    }
+
+    @Test
+    @DisplayName("List<Category> đọc lại đúng kiểu entity, bỏ children, nén khi vượt ngưỡng")
+    void testRoundTrip_CategoryList() {
+        List<Category> original = categories(30);
+
+        byte[] bytes = serializer.serialize(original);
+        Object restored = serializer.deserialize(bytes);
+
+        assertEquals(CacheValueSerializer.MAGIC, bytes[0]);
+        assertEquals(CacheValueSerializer.FLAG_DEFLATE, bytes[2] & CacheValueSerializer.FLAG_DEFLATE);
+        List<?> list = assertInstanceOf(List.class, restored);
+        Category first = assertInstanceOf(Category.class, list.get(0));
+        assertEquals("Ăn uống 0", first.getName());
+        assertEquals(original.get(0).getCreatedAt(), first.getCreatedAt());
+        assertTrue(first.getChildren().isEmpty());
+        assertEquals(30, list.size());
+    }
+
+    @Test
+    @DisplayName("DTO nhỏ: không nén, BigDecimal giữ nguyên kiểu; NullValue của cache giữ nguyên")
+    void testRoundTrip_SmallDtoAndNullValue() {
+        PredictionResult prediction = PredictionResult.builder()
+                .predictedAmount(new BigDecimal("1250000.50"))
+                .confidence(0.82)
+                .message("ok")
+                .trend("TĂNG")
+                .build();
+
+        byte[] bytes = serializer.serialize(prediction);
+
+        assertEquals(0, bytes[2]);
+        assertEquals(prediction, serializer.deserialize(bytes));
+        assertSame(NullValue.INSTANCE, serializer.deserialize(serializer.serialize(NullValue.INSTANCE)));
+        assertEquals("refresh-token", serializer.deserialize(serializer.serialize("refresh-token")));
+    }
+
+    @Test
+    @DisplayName("StampedValue của stale-while-revalidate đọc lại đúng kiểu bên trong")
+    void testRoundTrip_StampedValue() {
+        PredictionResult prediction = PredictionResult.builder()
+                .predictedAmount(new BigDecimal("99.90")).confidence(0.5).message("ok").trend("GIẢM").build();
+        SingleFlightCache.StampedValue stamped = new SingleFlightCache.StampedValue(prediction, 1_700_000_000_000L);
+
+        assertEquals(stamped, serializer.deserialize(serializer.serialize(stamped)));
+    }
+
+    @Test
+    @DisplayName("Bản JSON cũ trong Redis vẫn đọc được")
+    void testDeserialize_LegacyJson() {
+        byte[] legacy = json.serialize("refresh-token");
+
+        assertEquals("refresh-token", serializer.deserialize(legacy));
+    }
+
+    @Test
+    @DisplayName("Rollback smile -> json: giá trị đã ghi dạng Smile vẫn đọc được, ghi mới là JSON cũ")
+    void testJsonMode_ReadsSmileWrittenValues() {
+        CacheValueSerializer jsonMode = new CacheValueSerializer(json, 512, false);
+        PredictionResult prediction = PredictionResult.builder()
+                .predictedAmount(new BigDecimal("42.00")).confidence(0.7).message("ok").trend("ỔN ĐỊNH").build();
+        List<Category> list = categories(30);
+
+        assertEquals("refresh-token", jsonMode.deserialize(serializer.serialize("refresh-token")));
+        assertEquals(prediction, jsonMode.deserialize(serializer.serialize(prediction)));
+        assertEquals(30, assertInstanceOf(List.class, jsonMode.deserialize(serializer.serialize(list))).size());
+        assertSame(NullValue.INSTANCE, jsonMode.deserialize(serializer.serialize(NullValue.INSTANCE)));
+
+        byte[] written = jsonMode.serialize("otp-123456");
+        assertEquals("otp-123456", json.deserialize(written));
+        assertEquals("otp-123456", serializer.deserialize(written));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    @DisplayName("Benchmark: byte/entry và ns (de)serialize so với JSON")
+    void benchmarkAgainstJson() {
+        CacheValueSerializer uncompressed = new CacheValueSerializer(json, Integer.MAX_VALUE);
+        Object[] values = {categories(10), categories(100), PredictionResult.builder()
+                .predictedAmount(new BigDecimal("1250000.50")).confidence(0.82).message("ok").trend("TĂNG").build()};
+        String[] names = {"categories x10", "categories x100", "prediction"};
+
+        System.out.printf("%-16s %-12s %10s %12s %12s%n", "value", "codec", "bytes", "ser ns", "deser ns");
+        for (int v = 0; v < values.length; v++) {
+            report(names[v], "json", json, values[v]);
+            report(names[v], "smile", uncompressed, values[v]);
+            report(names[v], "smile+zip", serializer, values[v]);
+        }
+    }
+
+    private static void report(String name, String codec, RedisSerializer<Object> codecSerializer, Object value) {
+        int iterations = 2000;
+        byte[] bytes = codecSerializer.serialize(value);
+        for (int i = 0; i < iterations; i++) {
+            codecSerializer.deserialize(codecSerializer.serialize(value));
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = codecSerializer.serialize(value);
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            codecSerializer.deserialize(bytes);
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("%-16s %-12s %10d %12d %12d%n", name, codec, bytes.length,
+                (t1 - t0) / iterations, (t2 - t1) / iterations);
+    }
+}
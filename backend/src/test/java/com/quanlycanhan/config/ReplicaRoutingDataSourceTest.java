@@ -0,0 +1,175 @@
+package com.quanlycanhan.config;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.quanlycanhan.dto.response.TrendResponse;
+import com.quanlycanhan.service.AiPredictionService;
+import com.quanlycanhan.service.CategoryDirectory;
+import com.quanlycanhan.service.DashboardService;
+import com.quanlycanhan.service.ExpenseTrendService;
+import com.quanlycanhan.service.TransactionService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Định tuyến đọc/ghi với 2 H2 in-memory đóng vai primary và replica (bảng node ghi tên của chính nó)
+ */
+@DisplayName("Replica routing Tests")
+class ReplicaRoutingDataSourceTest {
+
+    private static final long WINDOW_MS = 5000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReplicaConsistencyTracker tracker;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readTx;
+    private TransactionTemplate writeTx;
+
+    private static DataSource node(String name) {
+        DataSource ds = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(20))");
+        jdbc.execute("DELETE FROM node");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+        return ds;
+    }
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = node("primary");
+        tracker = new ReplicaConsistencyTracker(primary, Map.of("replica-1", node("replica-1")),
+                WINDOW_MS, clock::get);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(
+                new ReplicaDataSourceConfig.WriteTrackingDataSource(primary, tracker, meterRegistry));
+        dataSource.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, tracker, meterRegistry));
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readTx = new TransactionTemplate(transactionManager);
+        readTx.setReadOnly(true);
+        writeTx = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void loginAs(String email) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(email, null, List.of()));
+    }
+
+    private String readNode() {
+        return readTx.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private void write() {
+        writeTx.executeWithoutResult(status -> jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private double count(String target, String reason) {
+        return meterRegistry.counter("datasource.routing", "target", target, "reason", reason).count();
+    }
+
+    @Test
+    @DisplayName("Transaction readOnly đọc replica, transaction ghi đi primary")
+    void testReadOnlyGoesToReplica() {
+        loginAs("a@example.com");
+
+        assertEquals("replica-1", readNode());
+        assertEquals("primary", writeTx.execute(status ->
+                jdbcTemplate.queryForObject("SELECT name FROM node", String.class)));
+        assertEquals(1.0, count("replica-1", "read_only"));
+        assertEquals(1.0, count("primary", "write"));
+    }
+
+    @Test
+    @DisplayName("Sau khi ghi: user đó đọc primary trong cửa sổ sticky, user khác vẫn đọc replica")
+    void testReadYourWrites_StickyWindow() {
+        loginAs("a@example.com");
+        write();
+
+        assertEquals("primary", readNode());
+        assertEquals(1.0, count("primary", "read_your_writes"));
+
+        loginAs("b@example.com");
+        assertEquals("replica-1", readNode());
+
+        loginAs("a@example.com");
+        clock.addAndGet(WINDOW_MS);
+        assertEquals("replica-1", readNode());
+    }
+
+    @Test
+    @DisplayName("Replica đã bắt kịp lần ghi: đọc lại từ replica trước khi hết cửa sổ")
+    void testReadYourWrites_ReplicaCaughtUp() {
+        loginAs("a@example.com");
+        write();
+        assertEquals("primary", readNode());
+
+        tracker.recordCatchUp("replica-1", clock.get());
+
+        assertEquals("replica-1", readNode());
+        assertEquals(1.0, count("replica-1", "caught_up"));
+    }
+
+    @Test
+    @DisplayName("Dashboard ngay sau khi ghi: các khối chạy trên virtual thread vẫn đọc primary")
+    void testReadYourWrites_DashboardSections() {
+        TransactionService transactionService = mock(TransactionService.class);
+        ExpenseTrendService expenseTrendService = mock(ExpenseTrendService.class);
+        List<String> nodes = new CopyOnWriteArrayList<>();
+        when(transactionService.getIncomeAndExpenseTotals(eq(1L), any(), any())).thenAnswer(inv -> {
+            nodes.add(readNode());
+            return new Object[]{BigDecimal.ZERO, BigDecimal.ZERO};
+        });
+        when(transactionService.getTotalAmountByCategoryAndType(eq(1L), any(), any(), eq("expense"))).thenAnswer(inv -> {
+            nodes.add(readNode());
+            return List.of();
+        });
+        when(expenseTrendService.getYearView(eq(1L), anyInt())).thenAnswer(inv -> {
+            nodes.add(readNode());
+            return TrendResponse.builder().build();
+        });
+        when(transactionService.getUserTransactionDtoSlice(eq(1L), any())).thenReturn(new SliceImpl<>(List.of()));
+        DashboardService dashboardService = new DashboardService(transactionService, mock(CategoryDirectory.class),
+                mock(AiPredictionService.class), expenseTrendService);
+
+        loginAs("a@example.com");
+        write();
+        Map<String, Object> summary = dashboardService.getSummary(1L,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), 10, 5);
+
+        assertEquals(List.of(), summary.get("failedSections"));
+        assertEquals(List.of("primary", "primary", "primary"), nodes);
+        assertEquals(3.0, count("primary", "read_your_writes"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.quanlycanhan.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SingleFlightCache Tests")
+class SingleFlightCacheTest {
+
+    private static final long FRESH_MS = 60_000;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ConcurrentMapCache store = new ConcurrentMapCache("aiPrediction");
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    private SingleFlightCache cache(long freshMs) {
+        return new SingleFlightCache(store, redisTemplate, new SimpleMeterRegistry(), Runnable::run,
+                freshMs, 30_000, 2_000, clock::get);
+    }
+
+    @Test
+    @DisplayName("Nhiều request cùng key khi cache trống: loader chỉ chạy 1 lần")
+    void testConcurrentMisses_LoadOnce() throws Exception {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        SingleFlightCache cache = cache(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return cache.get(1L, () -> {
+                    loads.incrementAndGet();
+                    Thread.sleep(200);
+                    return "prediction";
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<String> result : results) {
+            assertEquals("prediction", result.get());
+        }
+        pool.shutdown();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Node khác giữ lease: chờ giá trị xuất hiện thay vì tự tính")
+    void testLeaseHeldElsewhere_WaitsForValue() throws Exception {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        SingleFlightCache cache = cache(0);
+        Thread otherNode = new Thread(() -> {
+            try {
+                Thread.sleep(120);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            store.put(1L, "from-other-node");
+        });
+        otherNode.start();
+
+        String value = cache.get(1L, () -> "computed-here");
+        otherNode.join();
+
+        assertEquals("from-other-node", value);
+    }
+
+    @Test
+    @DisplayName("Hết tươi: trả bản cũ ngay, làm mới nền, lần sau nhận bản mới; evict xóa hẳn")
+    void testStaleWhileRevalidate() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        SingleFlightCache cache = cache(FRESH_MS);
+        cache.put(1L, "v1");
+
+        clock.addAndGet(FRESH_MS);
+        assertNull(cache.get(1L));
+        assertEquals("v1", cache.get(1L, () -> "v2"));
+        assertEquals("v2", cache.get(1L).get());
+
+        cache.evict(1L);
+        assertNull(store.get(1L));
+        assertEquals("v3", cache.get(1L, () -> "v3"));
+        assertEquals("v3", cache.get(1L, () -> "v4"));
+    }
+
+    @Test
+    @DisplayName("Làm mới nền chạy với SecurityContext của request kích hoạt (định tuyến read-your-writes)")
+    void testRefreshInBackground_PropagatesSecurityContext() throws Exception {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        List<Runnable> refreshes = new ArrayList<>();
+        SingleFlightCache cache = new SingleFlightCache(store, redisTemplate, new SimpleMeterRegistry(), refreshes::add,
+                FRESH_MS, 30_000, 2_000, clock::get);
+        cache.put(1L, "v1");
+        clock.addAndGet(FRESH_MS);
+        AtomicReference<String> refreshUser = new AtomicReference<>();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alice@example.com", null, List.of()));
+        try {
+            assertEquals("v1", cache.get(1L, () -> {
+                Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+                refreshUser.set(auth != null ? auth.getName() : null);
+                return "v2";
+            }));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        Thread refresher = new Thread(refreshes.get(0));
+        refresher.start();
+        refresher.join();
+
+        assertEquals("alice@example.com", refreshUser.get());
+        assertEquals("v2", cache.get(1L).get());
+    }
+}
@@ -0,0 +1,117 @@
+package com.quanlycanhan.config;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import org.mockito.Mock;
+import static org.mockito.Mockito.verify;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * L2 Redis được thay bằng ConcurrentMapCacheManager; tin pub/sub gọi thẳng handle()
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TwoLevelCacheManager Tests")
+class TwoLevelCacheManagerTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private final ConcurrentMapCacheManager l2 = new ConcurrentMapCacheManager("userCategories");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TwoLevelCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = new TwoLevelCacheManager(l2, redisTemplate, meterRegistry,
+                new MockEnvironment().withProperty("app.cache.l1.userCategories.max-size", "10"));
+    }
+
+    private double count(String tier, String result) {
+        return meterRegistry.counter("cache.tier.requests", "cache", "userCategories", "tier", tier, "result", result)
+                .count();
+    }
+
+    @Test
+    @DisplayName("Đọc trúng L2 thì nạp L1, lần sau trúng L1 không gọi Redis")
+    void testGet_FillsL1FromL2() {
+        Cache cache = cacheManager.getCache("userCategories");
+        cache.put(1L, "v1");
+
+        assertEquals("v1", cache.get(1L).get());
+        l2.getCache("userCategories").put(1L, "changed-behind-l1");
+        assertEquals("v1", cache.get(1L).get());
+
+        assertEquals(1.0, count("l2", "hit"));
+        assertEquals(1.0, count("l1", "hit"));
+        assertNull(cache.get(2L));
+        assertEquals(1.0, count("l2", "miss"));
+    }
+
+    @Test
+    @DisplayName("Evict (tin từ node khác) chạy trong lúc đọc L2: không nạp bản cũ vào L1")
+    void testGet_SkipsL1FillWhenEvictedDuringL2Read() {
+        AtomicReference<Runnable> duringRead = new AtomicReference<>();
+        ConcurrentMapCacheManager slowL2 = new ConcurrentMapCacheManager("userCategories") {
+            @Override
+            protected Cache createConcurrentMapCache(String name) {
+                return new ConcurrentMapCache(name) {
+                    @Override
+                    protected Object lookup(Object key) {
+                        Object value = super.lookup(key);
+                        Runnable hook = duringRead.getAndSet(null);
+                        if (hook != null) {
+                            hook.run();
+                        }
+                        return value;
+                    }
+                };
+            }
+        };
+        cacheManager = new TwoLevelCacheManager(slowL2, redisTemplate, meterRegistry, new MockEnvironment());
+        Cache cache = cacheManager.getCache("userCategories");
+        slowL2.getCache("userCategories").put(1L, "v1");
+        duringRead.set(() -> {
+            slowL2.getCache("userCategories").put(1L, "v2");
+            cacheManager.handle("E|other-node|userCategories|1");
+        });
+
+        assertEquals("v1", cache.get(1L).get());
+        assertEquals("v2", cache.get(1L).get());
+        assertEquals("v2", cache.get(1L).get());
+        assertEquals(2.0, count("l2", "hit"));
+        assertEquals(1.0, count("l1", "hit"));
+    }
+
+    @Test
+    @DisplayName("Ghi/xóa phát tin invalidation; tin từ node khác bỏ key ở L1")
+    void testInvalidation_AcrossNodes() {
+        Cache cache = cacheManager.getCache("userCategories");
+        cache.put(1L, "v1");
+        verify(redisTemplate).convertAndSend(eq(TwoLevelCacheManager.CHANNEL), startsWith("E|"));
+        cache.get(1L);
+
+        l2.getCache("userCategories").put(1L, "v2");
+        cacheManager.handle("E|other-node|userCategories|1");
+
+        assertEquals("v2", cache.get(1L).get());
+
+        l2.getCache("userCategories").put(1L, "v3");
+        cacheManager.handle("C|other-node|userCategories");
+        assertEquals("v3", cache.get(1L).get());
+    }
+}
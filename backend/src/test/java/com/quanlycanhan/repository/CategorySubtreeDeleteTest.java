@@ -0,0 +1,154 @@
+package com.quanlycanhan.repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.CategoryClosure;
+import com.quanlycanhan.entity.User;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Xóa mềm cả nhánh danh mục bằng 1 câu UPDATE theo bảng closure (cây 1.000 nút, mỗi nút 4 con)
+ * So sánh với cách cũ (duyệt getChildren() đệ quy + save từng nút): mvn test -Dtest=CategorySubtreeDeleteTest -Dbenchmark=true
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@DisplayName("Category subtree delete Tests")
+class CategorySubtreeDeleteTest {
+
+    private static final int NODES = 1000;
+    private static final int FAN_OUT = 4;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Long userId;
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        User user = entityManager.persist(User.builder()
+                .email("tree@example.com")
+                .password("x")
+                .fullName("Tree User")
+                .build());
+        List<Category> nodes = new ArrayList<>(NODES);
+        List<Integer> parents = new ArrayList<>(NODES);
+        // Nút i có cha (i - 1) / 4: cây 4 nhánh đánh số theo tầng
+        for (int i = 0; i < NODES; i++) {
+            int parent = i == 0 ? -1 : (i - 1) / FAN_OUT;
+            nodes.add(entityManager.persist(Category.builder()
+                    .user(user)
+                    .name("Danh mục " + i)
+                    .parent(parent >= 0 ? nodes.get(parent) : null)
+                    .build()));
+            parents.add(parent);
+        }
+        for (int i = 0; i < NODES; i++) {
+            int depth = 0;
+            for (int a = i; a >= 0; a = parents.get(a), depth++) {
+                entityManager.persist(new CategoryClosure(nodes.get(a).getId(), nodes.get(i).getId(), depth));
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        userId = user.getId();
+        nodes.forEach(c -> ids.add(c.getId()));
+    }
+
+    @Test
+    @DisplayName("1.000 nút: đúng 1 câu SQL, xóa đủ cả nhánh")
+    void testSoftDeleteSubtree_SingleStatement() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        int deleted = categoryRepository.softDeleteSubtree(ids.get(0), userId, LocalDateTime.now());
+
+        assertEquals(NODES, deleted);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertTrue(categoryRepository.findByUserIdAndDeletedFalseOrderBySortOrderAscNameAsc(userId).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Nhánh giữa cây: chỉ xóa nút đó và con cháu")
+    void testSoftDeleteSubtree_OnlyDescendants() {
+        int deleted = categoryRepository.softDeleteSubtree(ids.get(1), userId, LocalDateTime.now());
+        int remaining = categoryRepository.findByUserIdAndDeletedFalseOrderBySortOrderAscNameAsc(userId).size();
+
+        assertEquals(NODES, deleted + remaining);
+        assertEquals(subtreeSize(1), deleted);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    @DisplayName("Benchmark: duyệt đệ quy + save từng nút so với 1 câu UPDATE")
+    void benchmarkRecursiveVsSetBased() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        long t0 = System.nanoTime();
+        softDeleteRecursive(categoryRepository.findById(ids.get(0)).orElseThrow());
+        entityManager.flush();
+        long recursiveMicros = (System.nanoTime() - t0) / 1_000;
+        long recursiveStatements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+
+        categoryRepository.findAll().forEach(c -> c.setDeleted(false));
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics.clear();
+        long t1 = System.nanoTime();
+        categoryRepository.softDeleteSubtree(ids.get(0), userId, LocalDateTime.now());
+        long setMicros = (System.nanoTime() - t1) / 1_000;
+
+        System.out.printf("%-12s %12s %12s%n", "path", "statements", "us");
+        System.out.printf("%-12s %12d %12d%n", "recursive", recursiveStatements, recursiveMicros);
+        System.out.printf("%-12s %12d %12d%n", "set-based", statistics.getPrepareStatementCount(), setMicros);
+    }
+
+    private static int subtreeSize(int root) {
+        int size = 0;
+        for (int i = 0; i < NODES; i++) {
+            int a = i;
+            while (a > root) {
+                a = (a - 1) / FAN_OUT;
+            }
+            if (a == root) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void softDeleteRecursive(Category category) {
+        category.setDeleted(true);
+        for (Category child : category.getChildren()) {
+            softDeleteRecursive(child);
+        }
+        categoryRepository.save(category);
+    }
+}
@@ -0,0 +1,144 @@
+package com.quanlycanhan.repository;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.entity.User;
+import com.quanlycanhan.mapper.TransactionMapper;
+
+/**
+ * So sánh query chiếu thẳng DTO với đường cũ (entity + EntityGraph + TransactionMapper)
+ * Benchmark chỉ chạy khi bật: mvn test -Dtest=TransactionProjectionTest -Dbenchmark=true
+ */
+@DataJpaTest(properties = "spring.flyway.enabled=false")
+@DisplayName("Transaction DTO projection Tests")
+class TransactionProjectionTest {
+
+    private static final int ROWS = 600;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final TransactionMapper transactionMapper = new TransactionMapper();
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        User user = entityManager.persist(User.builder()
+                .email("projection@example.com")
+                .password("x")
+                .fullName("Projection User")
+                .build());
+        Category category = entityManager.persist(Category.builder()
+                .user(user)
+                .name("Ăn uống")
+                .icon("🍜")
+                .color("#ff0000")
+                .build());
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < ROWS; i++) {
+            entityManager.persist(Transaction.builder()
+                    .user(user)
+                    .category(category)
+                    .amount(BigDecimal.valueOf(10_000L + i))
+                    .transactionDate(start.plusDays(i % 365))
+                    .note("Giao dịch " + i)
+                    .location("Quận " + (i % 12))
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        userId = user.getId();
+    }
+
+    @Test
+    @DisplayName("DTO projection trả về giống hệt entity + mapper")
+    void testProjectionMatchesMapper() {
+        Pageable pageable = PageRequest.of(1, 20, Sort.by("transactionDate").descending().and(Sort.by("id")));
+
+        Page<TransactionResponseDTO> viaMapper =
+                transactionMapper.toDTOPage(transactionRepository.findByUserIdAndDeletedFalse(userId, pageable));
+        entityManager.clear();
+        Page<TransactionResponseDTO> viaProjection = transactionRepository.findDtoByUserId(userId, pageable);
+
+        assertEquals(ROWS, viaProjection.getTotalElements());
+        assertEquals(viaMapper.getContent(), viaProjection.getContent());
+    }
+
+    @Test
+    @DisplayName("Stream DTO cho export trả đủ dòng theo thứ tự ngày giảm dần")
+    void testStreamForExport() {
+        try (java.util.stream.Stream<TransactionResponseDTO> stream = transactionRepository.streamDtoByUserIdAndDateRange(
+                userId, LocalDate.of(1970, 1, 1), LocalDate.of(9999, 12, 31))) {
+            List<TransactionResponseDTO> rows = stream.toList();
+            assertEquals(ROWS, rows.size());
+            assertEquals(LocalDate.of(2024, 12, 30), rows.get(0).getTransactionDate());
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    @DisplayName("Benchmark: bytes cấp phát + latency mỗi trang (20/100/500 dòng)")
+    void benchmarkPageAllocation() {
+        System.out.printf("%-6s %-10s %14s %12s%n", "size", "path", "bytes/page", "us/page");
+        for (int size : new int[] {20, 100, 500}) {
+            Pageable pageable = PageRequest.of(0, size, Sort.by("transactionDate").descending());
+            Supplier<List<TransactionResponseDTO>> entityPath = () ->
+                    transactionMapper.toDTOPage(transactionRepository.findByUserIdAndDeletedFalse(userId, pageable))
+                            .getContent();
+            Supplier<List<TransactionResponseDTO>> dtoPath = () ->
+                    transactionRepository.findDtoByUserId(userId, pageable).getContent();
+
+            report(size, "entity", entityPath);
+            report(size, "dto", dtoPath);
+        }
+    }
+
+    private void report(int size, String path, Supplier<List<TransactionResponseDTO>> query) {
+        int warmup = 30;
+        int iterations = 100;
+        for (int i = 0; i < warmup; i++) {
+            query.get();
+            entityManager.clear();
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long bytes = 0;
+        long nanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long b0 = threads.getThreadAllocatedBytes(threadId);
+            long t0 = System.nanoTime();
+            query.get();
+            // flush/clear nằm trong phép đo: đó là nơi entity path trả giá dirty-checking
+            entityManager.flush();
+            entityManager.clear();
+            nanos += System.nanoTime() - t0;
+            bytes += threads.getThreadAllocatedBytes(threadId) - b0;
+        }
+        System.out.printf("%-6d %-10s %14d %12d%n", size, path, bytes / iterations, nanos / iterations / 1_000);
+    }
+}
@@ -0,0 +1,229 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.quanlycanhan.config.SingleFlightCacheManager;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AiPredictionCacheWarmer Tests")
+class AiPredictionCacheWarmerTest {
+
+    @Mock
+    private AiPredictionService aiPredictionService;
+
+    @Mock
+    private TransactionOutbox transactionOutbox;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CacheManager cacheManager;
+    private AiPredictionCacheWarmer warmer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cacheManager = new ConcurrentMapCacheManager("aiPrediction");
+        warmer = new AiPredictionCacheWarmer(aiPredictionService, transactionOutbox, redisTemplate, meterRegistry,
+                cacheManager);
+        warmer.registerMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        warmer.shutdown();
+    }
+
+    private void givenLock(boolean acquired) {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq(AiPredictionCacheWarmer.LOCK_KEY), anyString(), any(Duration.class)))
+                .thenReturn(acquired);
+    }
+
+    private static TransactionOutbox.ChangedUser changed(long userId, LocalDateTime firstChangedAt) {
+        return new TransactionOutbox.ChangedUser(userId, firstChangedAt);
+    }
+
+    @Test
+    @DisplayName("Chỉ tính lại user có sự kiện outbox từ mốc lần trước, theo thứ tự đăng nhập gần nhất, rồi lưu mốc mới")
+    void testWarmCache_ChangedUsersInPriorityOrder() {
+        ReflectionTestUtils.setField(warmer, "concurrency", 1);
+        givenLock(true);
+        when(valueOperations.get(AiPredictionCacheWarmer.WATERMARK_KEY)).thenReturn(null);
+        LocalDateTime changedAt = LocalDateTime.now().minusMinutes(5);
+        when(transactionOutbox.findUsersChangedSince(any())).thenReturn(
+                List.of(changed(7L, changedAt), changed(3L, changedAt), changed(5L, changedAt)));
+        List<Long> order = new CopyOnWriteArrayList<>();
+        when(aiPredictionService.computeNextMonth(anyLong())).thenAnswer(inv -> {
+            order.add(inv.getArgument(0));
+            return null;
+        });
+
+        LocalDateTime before = LocalDateTime.now();
+        warmer.warmCache();
+        LocalDateTime after = LocalDateTime.now();
+
+        assertEquals(List.of(7L, 3L, 5L), order);
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(transactionOutbox).findUsersChangedSince(since.capture());
+        // Chưa có mốc: xét 60 phút gần nhất, lùi thêm 120 giây
+        assertTrue(!since.getValue().isBefore(before.minusMinutes(60).minusSeconds(120))
+                && !since.getValue().isAfter(after.minusMinutes(60).minusSeconds(120)));
+        ArgumentCaptor<String> watermark = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations).set(eq(AiPredictionCacheWarmer.WATERMARK_KEY), watermark.capture());
+        assertTrue(Long.parseLong(watermark.getValue()) >= epochMilli(before));
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of(AiPredictionCacheWarmer.LOCK_KEY)), anyString());
+        assertEquals(3.0, meterRegistry.counter("ai.prediction.warm.users", "result", "warmed").count());
+    }
+
+    @Test
+    @DisplayName("Node khác đang giữ lock: bỏ lượt, không đọc thay đổi, không đổi mốc")
+    void testWarmCache_SkipsWhenAnotherNodeHoldsLock() {
+        givenLock(false);
+
+        warmer.warmCache();
+
+        verify(transactionOutbox, never()).findUsersChangedSince(any());
+        verify(valueOperations, never()).set(anyString(), anyString());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), any(List.class), any());
+    }
+
+    @Test
+    @DisplayName("User tính lỗi: mốc chỉ tiến tới ngay trước thay đổi đầu tiên của user lỗi, lượt sau thử lại")
+    void testWarmCache_FailedUserHoldsWatermark() {
+        givenLock(true);
+        LocalDateTime failedChangeAt = LocalDateTime.now().minusMinutes(30);
+        when(valueOperations.get(AiPredictionCacheWarmer.WATERMARK_KEY))
+                .thenReturn(Long.toString(epochMilli(failedChangeAt.minusMinutes(30))));
+        when(transactionOutbox.findUsersChangedSince(any())).thenReturn(
+                List.of(changed(1L, failedChangeAt.plusMinutes(10)), changed(2L, failedChangeAt)));
+        when(aiPredictionService.computeNextMonth(2L)).thenThrow(new IllegalStateException("boom"));
+
+        warmer.warmCache();
+
+        verify(valueOperations).set(AiPredictionCacheWarmer.WATERMARK_KEY,
+                Long.toString(epochMilli(failedChangeAt) - 1));
+    }
+
+    @Test
+    @DisplayName("User có sự kiện mới trong lúc tính: không put kết quả có thể đã cũ")
+    void testWarm_SkipsPutWhenUserChangedDuringCompute() throws Exception {
+        Cache cache = cacheManager.getCache("aiPrediction");
+        when(transactionOutbox.lastEventId(9L)).thenReturn(10L, 11L);
+        when(aiPredictionService.computeNextMonth(9L)).thenReturn(AiPredictionService.PredictionResult.builder()
+                .predictedAmount(BigDecimal.ONE).build());
+
+        AiPredictionCacheWarmer.WarmRun run = warmer.warm(List.of(9L));
+
+        assertEquals(0, run.warmed());
+        assertNull(cache.get(9L));
+        assertEquals(1.0, meterRegistry.counter("ai.prediction.warm.users", "result", "superseded").count());
+    }
+
+    private static long epochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    @DisplayName("Giới hạn số user chạy cùng lúc; lỗi của một user không dừng cả lượt")
+    void testWarm_BoundedConcurrencyAndFailures() throws Exception {
+        ReflectionTestUtils.setField(warmer, "concurrency", 2);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(aiPredictionService.computeNextMonth(anyLong())).thenAnswer(inv -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            Thread.sleep(5);
+            inFlight.decrementAndGet();
+            if (inv.<Long>getArgument(0) == 4L) {
+                throw new IllegalStateException("boom");
+            }
+            return null;
+        });
+
+        AiPredictionCacheWarmer.WarmRun run = warmer.warm(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L));
+
+        assertEquals(8, run.users());
+        assertEquals(7, run.warmed());
+        assertEquals(1, run.failed());
+        assertEquals(Set.of(4L), run.failedUserIds());
+        assertTrue(maxInFlight.get() <= 2, "maxInFlight=" + maxInFlight.get());
+        assertEquals(1.0, meterRegistry.counter("ai.prediction.warm.users", "result", "failed").count());
+        assertTrue(meterRegistry.get("ai.prediction.warm.throughput").gauge().value() > 0);
+    }
+
+    @Test
+    @DisplayName("SWR bật: user đã evict được tính lại trong pool của warmer và put bản tươi, không trả bản cũ")
+    void testWarm_RecomputesStaleEntryWithSwr() throws Exception {
+        List<Runnable> backgroundRefreshes = new CopyOnWriteArrayList<>();
+        cacheManager = new SingleFlightCacheManager(new ConcurrentMapCacheManager("aiPrediction"), redisTemplate,
+                meterRegistry, new MockEnvironment(), backgroundRefreshes::add, Map.of("aiPrediction", 1800L));
+        warmer = new AiPredictionCacheWarmer(aiPredictionService, transactionOutbox, redisTemplate, meterRegistry,
+                cacheManager);
+        warmer.registerMetrics();
+        Cache cache = cacheManager.getCache("aiPrediction");
+        AiPredictionService.PredictionResult stale = AiPredictionService.PredictionResult.builder()
+                .predictedAmount(BigDecimal.ONE).build();
+        AiPredictionService.PredictionResult fresh = AiPredictionService.PredictionResult.builder()
+                .predictedAmount(BigDecimal.TEN).build();
+        cache.put(7L, stale);
+        cache.evict(7L);
+        assertNull(cache.get(7L));
+
+        List<Boolean> virtualThreads = new CopyOnWriteArrayList<>();
+        when(aiPredictionService.computeNextMonth(7L)).thenAnswer(inv -> {
+            virtualThreads.add(Thread.currentThread().isVirtual());
+            return fresh;
+        });
+
+        AiPredictionCacheWarmer.WarmRun run = warmer.warm(List.of(7L));
+
+        assertEquals(1, run.warmed());
+        assertEquals(List.of(true), virtualThreads);
+        assertTrue(backgroundRefreshes.isEmpty());
+        assertSame(fresh, cache.get(7L).get());
+    }
+}
@@ -0,0 +1,88 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AiPredictionService Tests")
+class AiPredictionServiceTest {
+
+    @Mock
+    private UserDailyCategorySummaryRepository summaryRepository;
+
+    @Mock
+    private CategoryDirectory categoryDirectory;
+
+    @InjectMocks
+    private AiPredictionService aiPredictionService;
+
+    private static Object[] row(YearMonth month, long categoryId, String type, String amount) {
+        return new Object[]{month.getYear(), month.getMonthValue(), categoryId, type, new BigDecimal(amount)};
+    }
+
+    private static CategoryDirectory.Entry category(long id, String name, String type) {
+        return new CategoryDirectory.Entry(id, name, null, null, type, null, false, false, 0, name.toLowerCase());
+    }
+
+    @Test
+    @DisplayName("Tách dự đoán thu/chi và theo danh mục từ tổng theo tháng; tháng đang chạy không được đọc")
+    void testPredictNextMonth_SeparatesIncomeExpenseAndCategories() {
+        YearMonth current = YearMonth.now();
+        List<Object[]> rows = new ArrayList<>();
+        for (int back = 4; back >= 1; back--) {
+            YearMonth month = current.minusMonths(back);
+            rows.add(row(month, 1L, "expense", "300000"));
+            rows.add(row(month, 2L, "expense", "100000"));
+            rows.add(row(month, 3L, "income", "5000000"));
+        }
+        when(summaryRepository.getMonthlyCategoryStats(eq(1L), eq(current.minusMonths(24).atDay(1)),
+                eq(current.minusMonths(1).atEndOfMonth()))).thenReturn(rows);
+        when(categoryDirectory.get(1L)).thenReturn(new CategoryDirectory.Snapshot(1L, 1, 0, List.of(
+                category(1L, "Ăn uống", "expense"), category(3L, "Lương", "income"))));
+
+        AiPredictionService.PredictionResult result = aiPredictionService.predictNextMonth(1L);
+
+        assertEquals(new BigDecimal("400000.00"), result.getPredictedAmount());
+        assertEquals(new BigDecimal("400000.00"), result.getExpense().getUpper());
+        assertEquals(new BigDecimal("5000000.00"), result.getIncome().getPredicted());
+        assertEquals("BLEND", result.getExpense().getMethod());
+        assertEquals(current.plusMonths(1).toString(), result.getTargetMonth());
+        assertEquals(4, result.getHistoryMonths());
+        assertEquals(1.0, result.getConfidence());
+
+        assertEquals(3, result.getCategories().size());
+        assertEquals(1L, result.getCategories().get(0).getCategoryId());
+        assertEquals("Ăn uống", result.getCategories().get(0).getCategoryName());
+        assertEquals(new BigDecimal("300000.00"), result.getCategories().get(0).getForecast().getPredicted());
+        assertNull(result.getCategories().get(1).getCategoryName());
+        assertEquals("income", result.getCategories().get(2).getType());
+    }
+
+    @Test
+    @DisplayName("Chưa có tháng nào đã kết thúc có dữ liệu: dự đoán 0")
+    void testPredictNextMonth_NoData() {
+        when(summaryRepository.getMonthlyCategoryStats(eq(1L), any(), any())).thenReturn(List.of());
+
+        AiPredictionService.PredictionResult result = aiPredictionService.predictNextMonth(1L);
+
+        assertEquals(BigDecimal.ZERO, result.getPredictedAmount());
+        assertEquals(0.0, result.getConfidence());
+        assertEquals(0, result.getCategories().size());
+    }
+}
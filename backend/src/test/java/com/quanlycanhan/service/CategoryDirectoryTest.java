@@ -0,0 +1,146 @@
+package com.quanlycanhan.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.quanlycanhan.repository.CategoryRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CategoryDirectory Tests")
+class CategoryDirectoryTest {
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private CategoryDirectory categoryDirectory;
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+
+    @Test
+    @DisplayName("Tra theo id O(1), active() bỏ danh mục đã xóa, tên được bỏ dấu sẵn")
+    void testGet_IndexesSnapshot() {
+        when(categoryRepository.findDirectoryRows(1L)).thenReturn(rows(
+                new Object[]{10L, "Ăn uống", "food", "#f00", "expense", null, true, false, 0},
+                new Object[]{11L, "Đi lại", null, null, "expense", 10L, false, false, 1},
+                new Object[]{12L, "Cũ", null, null, "income", null, false, true, 2}));
+
+        CategoryDirectory.Snapshot snapshot = categoryDirectory.get(1L);
+
+        assertEquals(3, snapshot.size());
+        assertEquals("Ăn uống", snapshot.get(10L).name());
+        assertEquals("an uong", snapshot.get(10L).foldedName());
+        assertEquals(10L, snapshot.get(11L).parentId());
+        assertTrue(snapshot.get(12L).deleted());
+        assertNull(snapshot.get(99L));
+        assertEquals(List.of(10L, 11L), snapshot.active().stream().map(CategoryDirectory.Entry::id).toList());
+    }
+
+    @Test
+    @DisplayName("Đọc lại dùng snapshot đã cache, invalidateUser buộc load lại với version mới")
+    void testInvalidateUser_Reloads() {
+        when(categoryRepository.findDirectoryRows(1L)).thenReturn(rows(
+                new Object[]{10L, "Ăn uống", null, null, "expense", null, true, false, 0}));
+
+        CategoryDirectory.Snapshot first = categoryDirectory.get(1L);
+        assertSame(first, categoryDirectory.get(1L));
+
+        categoryDirectory.invalidateUser(1L);
+        CategoryDirectory.Snapshot second = categoryDirectory.get(1L);
+
+        assertNotSame(first, second);
+        assertTrue(second.version() > first.version());
+        verify(categoryRepository, times(2)).findDirectoryRows(1L);
+    }
+
+    @Test
+    @DisplayName("invalidateAll bỏ snapshot của mọi user (danh mục hệ thống thay đổi)")
+    void testInvalidateAll_ReloadsEveryUser() {
+        when(categoryRepository.findDirectoryRows(1L)).thenReturn(rows());
+        when(categoryRepository.findDirectoryRows(2L)).thenReturn(rows());
+
+        categoryDirectory.get(1L);
+        categoryDirectory.get(2L);
+        categoryDirectory.invalidateAll();
+        categoryDirectory.get(1L);
+        categoryDirectory.get(2L);
+
+        verify(categoryRepository, times(2)).findDirectoryRows(1L);
+        verify(categoryRepository, times(2)).findDirectoryRows(2L);
+    }
+
+    @Test
+    @DisplayName("Invalidate phát tin lên kênh Redis cho các node khác")
+    void testInvalidate_Publishes() {
+        categoryDirectory.invalidateUser(7L);
+        categoryDirectory.invalidateAll();
+
+        ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(2)).convertAndSend(eq(CategoryDirectory.CHANNEL), messages.capture());
+        assertTrue(messages.getAllValues().get(0).startsWith("U|"));
+        assertTrue(messages.getAllValues().get(0).endsWith("|7"));
+        assertTrue(messages.getAllValues().get(1).startsWith("A|"));
+    }
+
+    @Test
+    @DisplayName("Tin từ node khác bỏ snapshot; tin của chính node bị bỏ qua")
+    void testHandle_RemoteInvalidation() {
+        when(categoryRepository.findDirectoryRows(1L)).thenReturn(rows());
+        categoryDirectory.get(1L);
+
+        categoryDirectory.invalidateUser(1L);
+        ArgumentCaptor<String> own = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(CategoryDirectory.CHANNEL), own.capture());
+        categoryDirectory.get(1L);
+        categoryDirectory.handle(own.getValue());
+        categoryDirectory.get(1L);
+        verify(categoryRepository, times(2)).findDirectoryRows(1L);
+
+        categoryDirectory.handle("U|other-node|1");
+        categoryDirectory.get(1L);
+        verify(categoryRepository, times(3)).findDirectoryRows(1L);
+
+        categoryDirectory.handle("A|other-node");
+        categoryDirectory.get(1L);
+        verify(categoryRepository, times(4)).findDirectoryRows(1L);
+    }
+
+    @Test
+    @DisplayName("Redis lỗi khi phát tin: vẫn bỏ snapshot cục bộ, không ném lỗi")
+    void testInvalidate_PublishFailureIsLocalOnly() {
+        when(categoryRepository.findDirectoryRows(1L)).thenReturn(rows());
+        doThrow(new RedisConnectionFailureException("down")).when(redisTemplate).convertAndSend(anyString(), anyString());
+        categoryDirectory.get(1L);
+
+        categoryDirectory.invalidateUser(1L);
+        categoryDirectory.get(1L);
+
+        verify(categoryRepository, times(2)).findDirectoryRows(1L);
+    }
+}
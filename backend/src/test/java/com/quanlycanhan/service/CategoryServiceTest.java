@@ -0,0 +1,170 @@
+package com.quanlycanhan.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.quanlycanhan.dto.response.CategoryTreeNode;
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.User;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.CategoryClosureRepository;
+import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CategoryService Tests")
+class CategoryServiceTest {
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TransactionSummaryService transactionSummaryService;
+
+    @Mock
+    private CategoryDirectory categoryDirectory;
+
+    @Mock
+    private CategoryClosureRepository categoryClosureRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionOutbox transactionOutbox;
+
+    @InjectMocks
+    private CategoryService categoryService;
+
+    private final User user = User.builder().id(1L).build();
+
+    private Category category(Long id, Category parent) {
+        return Category.builder().id(id).user(user).name("c" + id).type("expense").parent(parent).build();
+    }
+
+    @Test
+    @DisplayName("Tạo danh mục con: thêm vào closure dưới danh mục cha")
+    void testCreateCategory_AddsToClosure() {
+        Category parent = category(10L, null);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(categoryRepository.findById(10L)).thenReturn(Optional.of(parent));
+        when(categoryRepository.save(any(Category.class))).thenAnswer(inv -> {
+            Category c = inv.getArgument(0);
+            c.setId(11L);
+            return c;
+        });
+
+        categoryService.createCategory(1L, "Cà phê", null, null, null, null, null, 10L);
+
+        verify(categoryClosureRepository).insertNode(11L, 10L);
+        verify(categoryDirectory).invalidateUser(1L);
+    }
+
+    @Test
+    @DisplayName("Đổi danh mục cha: tách cả nhánh rồi gắn dưới cha mới")
+    void testUpdateCategory_MovesSubtree() {
+        Category category = category(11L, category(10L, null));
+        when(categoryRepository.findByIdAndUserId(11L, 1L)).thenReturn(Optional.of(category));
+        when(categoryRepository.findById(20L)).thenReturn(Optional.of(category(20L, null)));
+        when(categoryRepository.save(any(Category.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(categoryClosureRepository.findSubtreeIds(11L)).thenReturn(List.of(11L, 12L));
+
+        categoryService.updateCategory(11L, 1L, null, null, null, null, null, null, 20L);
+
+        verify(categoryClosureRepository).detachSubtree(List.of(11L, 12L));
+        verify(categoryClosureRepository).attachSubtree(11L, 20L);
+    }
+
+    @Test
+    @DisplayName("Không cho chọn danh mục con cháu làm cha (tạo vòng)")
+    void testUpdateCategory_RejectsCycle() {
+        when(categoryRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(category(10L, null)));
+        when(categoryClosureRepository.existsByAncestorIdAndDescendantId(10L, 12L)).thenReturn(true);
+
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> categoryService.updateCategory(10L, 1L, null, null, null, null, null, null, 12L));
+
+        assertEquals(ErrorCode.CATEGORY_INVALID_PARENT, e.getErrorCode());
+        verify(categoryClosureRepository, never()).detachSubtree(any());
+        verify(categoryClosureRepository, never()).attachSubtree(anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Xóa nhánh kèm chuyển giao dịch: 1 UPDATE giao dịch, gộp bảng tổng hợp, 1 UPDATE danh mục")
+    void testDeleteCategory_ReassignsTransactions() {
+        when(categoryRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(category(10L, null)));
+        when(categoryClosureRepository.findSubtreeIds(10L)).thenReturn(List.of(10L, 11L, 12L));
+        when(categoryRepository.findAccessibleByIds(List.of(20L), 1L)).thenReturn(List.of(category(20L, null)));
+        when(transactionRepository.reassignCategory(eq(List.of(10L, 11L, 12L)), eq(20L), eq(1L), any())).thenReturn(7);
+        when(categoryRepository.softDeleteSubtree(eq(10L), eq(1L), any())).thenReturn(3);
+
+        CategoryService.DeleteResult result = categoryService.deleteCategory(10L, 1L, 20L, false);
+
+        assertEquals(new CategoryService.DeleteResult(3, 7), result);
+        verify(transactionSummaryService).moveCategories(1L, List.of(10L, 11L, 12L), 20L, "expense");
+        verify(transactionRepository, never()).softDeleteByCategoryIdsAndUserId(any(), any(), any());
+        verify(categoryDirectory).invalidateUser(1L);
+    }
+
+    @Test
+    @DisplayName("Xóa nhánh kèm giao dịch: xóa mềm giao dịch và dòng tổng hợp của cả nhánh")
+    void testDeleteCategory_DeletesTransactions() {
+        when(categoryRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(category(10L, null)));
+        when(categoryClosureRepository.findSubtreeIds(10L)).thenReturn(List.of(10L, 11L));
+        when(transactionRepository.softDeleteByCategoryIdsAndUserId(eq(List.of(10L, 11L)), eq(1L), any())).thenReturn(4);
+
+        categoryService.deleteCategory(10L, 1L, null, true);
+
+        verify(transactionSummaryService).removeCategories(1L, List.of(10L, 11L));
+        verify(categoryRepository).softDeleteSubtree(eq(10L), eq(1L), any());
+        verify(transactionOutbox).appendBulk(1L);
+    }
+
+    @Test
+    @DisplayName("Không cho chuyển giao dịch sang danh mục nằm trong nhánh đang xóa")
+    void testDeleteCategory_RejectsTargetInsideSubtree() {
+        when(categoryRepository.findByIdAndUserId(10L, 1L)).thenReturn(Optional.of(category(10L, null)));
+        when(categoryClosureRepository.findSubtreeIds(10L)).thenReturn(List.of(10L, 11L));
+        when(categoryRepository.findAccessibleByIds(List.of(11L), 1L)).thenReturn(List.of(category(11L, null)));
+
+        assertThrows(BusinessException.class, () -> categoryService.deleteCategory(10L, 1L, 11L, false));
+        verify(categoryRepository, never()).softDeleteSubtree(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Cây danh mục dựng từ snapshot, cha đã xóa thì con lên gốc")
+    void testGetCategoryTree() {
+        when(categoryDirectory.get(1L)).thenReturn(new CategoryDirectory.Snapshot(1L, 0L, System.nanoTime(), List.of(
+                new CategoryDirectory.Entry(10L, "Ăn uống", null, null, "expense", null, true, false, 0, "an uong"),
+                new CategoryDirectory.Entry(11L, "Cà phê", null, null, "expense", 10L, false, false, 0, "ca phe"),
+                new CategoryDirectory.Entry(12L, "Cũ", null, null, "expense", null, false, true, 1, "cu"),
+                new CategoryDirectory.Entry(13L, "Trà sữa", null, null, "expense", 12L, false, false, 2, "tra sua"))));
+
+        List<CategoryTreeNode> roots = categoryService.getCategoryTree(1L);
+
+        assertEquals(List.of(10L, 13L), roots.stream().map(CategoryTreeNode::getId).toList());
+        assertEquals(11L, roots.get(0).getChildren().get(0).getId());
+        assertEquals(1, roots.get(0).getChildren().get(0).getDepth());
+    }
+}
@@ -0,0 +1,183 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.quanlycanhan.dto.response.TrendResponse;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("DashboardService Tests")
+class DashboardServiceTest {
+
+    @Mock
+    private TransactionService transactionService;
+
+    @Mock
+    private CategoryDirectory categoryDirectory;
+
+    @Mock
+    private AiPredictionService aiPredictionService;
+
+    @Mock
+    private ExpenseTrendService expenseTrendService;
+
+    @InjectMocks
+    private DashboardService dashboardService;
+
+    private final LocalDate start = LocalDate.of(2024, 1, 1);
+    private final LocalDate end = LocalDate.of(2024, 1, 31);
+
+    @BeforeEach
+    void setUp() {
+        when(transactionService.getIncomeAndExpenseTotals(1L, start, end))
+                .thenReturn(new Object[]{new BigDecimal("1000"), new BigDecimal("400")});
+        when(transactionService.getTotalAmountByCategoryAndType(1L, start, end, "expense"))
+                .thenReturn(List.of(new Object[]{10L, new BigDecimal("100")}, new Object[]{11L, new BigDecimal("300")}));
+        when(categoryDirectory.get(1L)).thenReturn(new CategoryDirectory.Snapshot(1L, 0L, System.nanoTime(), List.of(
+                new CategoryDirectory.Entry(10L, "Đi lại", null, null, "expense", null, true, false, 0, "di lai"),
+                new CategoryDirectory.Entry(11L, "Ăn uống", null, null, "expense", null, true, false, 0, "an uong"))));
+        when(expenseTrendService.getYearView(1L, 2024)).thenReturn(TrendResponse.builder().year(2024).build());
+        when(transactionService.getUserTransactionDtoSlice(eq(1L), any())).thenReturn(new SliceImpl<>(List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dashboardService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Đủ các khối, topCategories lấy từ categoryExpenses đã sắp xếp")
+    void testGetSummary_AllSections() {
+        when(aiPredictionService.predictNextMonth(anyLong()))
+                .thenReturn(AiPredictionService.PredictionResult.builder().predictedAmount(BigDecimal.TEN).build());
+
+        Map<String, Object> summary = dashboardService.getSummary(1L, start, end, 10, 1);
+
+        assertFalse((Boolean) summary.get("partial"));
+        assertEquals(new BigDecimal("600"), ((Map<?, ?>) summary.get("stats")).get("net"));
+        List<?> top = (List<?>) summary.get("topCategories");
+        assertEquals(1, top.size());
+        assertEquals("Ăn uống", ((Map<?, ?>) top.get(0)).get("name"));
+        assertNotNull(summary.get("aiPrediction"));
+    }
+
+    @Test
+    @DisplayName("Khối AI chậm/lỗi: trả về partial, các khối khác vẫn có dữ liệu")
+    void testGetSummary_SlowSectionIsPartial() {
+        ReflectionTestUtils.setField(dashboardService, "aiTimeoutMs", 100L);
+        when(aiPredictionService.predictNextMonth(anyLong())).thenAnswer(inv -> {
+            Thread.sleep(2000);
+            return null;
+        });
+        when(expenseTrendService.getYearView(1L, 2024)).thenThrow(new IllegalStateException("db"));
+
+        long startedAt = System.currentTimeMillis();
+        Map<String, Object> summary = dashboardService.getSummary(1L, start, end, 10, 5);
+
+        assertTrue(System.currentTimeMillis() - startedAt < 1500);
+        assertTrue((Boolean) summary.get("partial"));
+        assertEquals(List.of("expenseTrend", "aiPrediction"), summary.get("failedSections"));
+        assertNull(summary.get("aiPrediction"));
+        assertNotNull(summary.get("stats"));
+    }
+
+    private AtomicInteger slowSections(AtomicInteger running, long sleepMs) {
+        AtomicInteger peak = new AtomicInteger();
+        when(aiPredictionService.predictNextMonth(anyLong())).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(sleepMs);
+            running.decrementAndGet();
+            return AiPredictionService.PredictionResult.builder().predictedAmount(BigDecimal.TEN).build();
+        });
+        when(transactionService.getIncomeAndExpenseTotals(1L, start, end)).thenAnswer(inv -> {
+            Thread.sleep(sleepMs);
+            return new Object[]{new BigDecimal("1000"), new BigDecimal("400")};
+        });
+        return peak;
+    }
+
+    private List<Map<String, Object>> concurrentSummaries(int count) throws Exception {
+        ExecutorService requests = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                futures.add(requests.submit(() -> dashboardService.getSummary(1L, start, end, 10, 5)));
+            }
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Hai summary cùng lúc (mặc định): chạy song song, đủ mọi khối, không partial")
+    void testGetSummary_TwoConcurrentSummariesComplete() throws Exception {
+        AtomicInteger peak = slowSections(new AtomicInteger(), 300);
+
+        for (Map<String, Object> summary : concurrentSummaries(2)) {
+            assertFalse((Boolean) summary.get("partial"), () -> "failed=" + summary.get("failedSections"));
+            assertNotNull(summary.get("aiPrediction"));
+        }
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    @DisplayName("Giới hạn số summary chạy cùng lúc (kết nối DB); request vượt quá chờ lượt, không partial")
+    void testGetSummary_BoundsConcurrentSummaries() throws Exception {
+        ReflectionTestUtils.invokeMethod(dashboardService, "setMaxConcurrentSummaries", 1);
+        AtomicInteger peak = slowSections(new AtomicInteger(), 50);
+
+        for (Map<String, Object> summary : concurrentSummaries(3)) {
+            assertFalse((Boolean) summary.get("partial"));
+        }
+        assertEquals(1, peak.get());
+    }
+
+    @Test
+    @DisplayName("Chờ lượt quá summary-queue-timeout-ms: mọi khối báo lỗi, không chạy khối nào")
+    void testGetSummary_QueueTimeoutIsUnavailable() throws Exception {
+        ReflectionTestUtils.invokeMethod(dashboardService, "setMaxConcurrentSummaries", 0);
+        ReflectionTestUtils.setField(dashboardService, "summaryQueueTimeoutMs", 10L);
+
+        Map<String, Object> summary = dashboardService.getSummary(1L, start, end, 10, 5);
+
+        assertTrue((Boolean) summary.get("partial"));
+        assertEquals(6, ((List<?>) summary.get("failedSections")).size());
+        verifyNoInteractions(aiPredictionService);
+    }
+}
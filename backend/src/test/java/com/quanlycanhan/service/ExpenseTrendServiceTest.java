@@ -0,0 +1,96 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.quanlycanhan.dto.response.TrendResponse;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ExpenseTrendService Tests")
+class ExpenseTrendServiceTest {
+
+    @Mock
+    private UserDailyCategorySummaryRepository summaryRepository;
+
+    @InjectMocks
+    private ExpenseTrendService expenseTrendService;
+
+    @Test
+    @DisplayName("Tuần ISO: gom ngày vào tuần bắt đầu thứ Hai, tuần trống = 0")
+    void testGetTrend_WeekBucketsZeroFilled() {
+        // 2024-01-03 là thứ Tư -> bucket đầu bắt đầu 2024-01-01
+        LocalDate start = LocalDate.of(2024, 1, 3);
+        LocalDate end = LocalDate.of(2024, 1, 21);
+        when(summaryRepository.getDailySeries(1L, LocalDate.of(2024, 1, 1), end)).thenReturn(List.of(
+                new Object[]{LocalDate.of(2024, 1, 2), new BigDecimal("1000"), new BigDecimal("100")},
+                new Object[]{LocalDate.of(2024, 1, 7), BigDecimal.ZERO, new BigDecimal("50")},
+                new Object[]{LocalDate.of(2024, 1, 20), BigDecimal.ZERO, new BigDecimal("30")}));
+
+        TrendResponse trend = expenseTrendService.getTrend(1L, ExpenseTrendService.Period.WEEK, start, end);
+
+        assertEquals(List.of("2024-W01", "2024-W02", "2024-W03"), trend.getLabels());
+        assertEquals(List.of(new BigDecimal("150.00"), new BigDecimal("0.00"), new BigDecimal("30.00")), trend.getExpense());
+        assertEquals(new BigDecimal("850.00"), trend.getNet().get(0));
+        verify(summaryRepository, never()).getMonthlyStats(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Năm: cộng các tháng vào bucket năm")
+    void testGetTrend_YearBuckets() {
+        LocalDate start = LocalDate.of(2023, 6, 1);
+        LocalDate end = LocalDate.of(2024, 3, 31);
+        when(summaryRepository.getMonthlyStats(1L, LocalDate.of(2023, 1, 1), end)).thenReturn(List.of(
+                new Object[]{2023, 7, BigDecimal.ZERO, new BigDecimal("10"), 1L},
+                new Object[]{2023, 12, BigDecimal.ZERO, new BigDecimal("20"), 1L},
+                new Object[]{2024, 2, new BigDecimal("5"), new BigDecimal("40"), 2L}));
+
+        TrendResponse trend = expenseTrendService.getTrend(1L, ExpenseTrendService.Period.YEAR, start, end);
+
+        assertEquals(List.of("2023", "2024"), trend.getLabels());
+        assertEquals(List.of(new BigDecimal("30.00"), new BigDecimal("40.00")), trend.getValues());
+        assertEquals(List.of(new BigDecimal("0.00"), new BigDecimal("5.00")), trend.getIncome());
+    }
+
+    @Test
+    @DisplayName("Chế độ xem năm: 12 tháng, nhãn Jan..Dec")
+    void testGetYearView() {
+        when(summaryRepository.getMonthlyStats(1L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31)))
+                .thenReturn(List.<Object[]>of(new Object[]{2024, 3, BigDecimal.ZERO, new BigDecimal("99"), 1L}));
+
+        TrendResponse trend = expenseTrendService.getYearView(1L, 2024);
+
+        assertEquals(12, trend.getValues().size());
+        assertEquals("Mar", trend.getLabels().get(2));
+        assertEquals(new BigDecimal("99.00"), trend.getValues().get(2));
+        assertEquals(2024, trend.getYear());
+    }
+
+    @Test
+    @DisplayName("Khoảng quá lớn / period sai: BusinessException")
+    void testGetTrend_Invalid() {
+        BusinessException tooMany = assertThrows(BusinessException.class, () -> expenseTrendService.getTrend(1L,
+                ExpenseTrendService.Period.DAY, LocalDate.of(2000, 1, 1), LocalDate.of(2024, 1, 1)));
+        assertEquals(ErrorCode.TREND_RANGE_INVALID, tooMany.getErrorCode());
+
+        BusinessException badPeriod = assertThrows(BusinessException.class,
+                () -> ExpenseTrendService.Period.parse("quarter"));
+        assertEquals(ErrorCode.TREND_PERIOD_INVALID, badPeriod.getErrorCode());
+    }
+}
@@ -0,0 +1,183 @@
+package com.quanlycanhan.service;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.quanlycanhan.entity.FxRate;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.FxRateRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("FxRateService Tests")
+class FxRateServiceTest {
+
+    @Mock
+    private FxRateRepository fxRateRepository;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private FxRateService fxRateService;
+
+    private static FxRate rate(String currency, String date, String value) {
+        return FxRate.builder().currency(currency).rateDate(LocalDate.parse(date)).rate(new BigDecimal(value)).build();
+    }
+
+    private static NavigableMap<LocalDate, BigDecimal> usd() {
+        NavigableMap<LocalDate, BigDecimal> rates = new TreeMap<>();
+        rates.put(LocalDate.of(2024, 1, 1), new BigDecimal("24000"));
+        rates.put(LocalDate.of(2024, 6, 1), new BigDecimal("25000"));
+        return rates;
+    }
+
+    @Test
+    @DisplayName("Quy đổi theo tỷ giá gần nhất trước ngày giao dịch; trước tỷ giá đầu tiên dùng tỷ giá đầu tiên")
+    void testNormalize_UsesFloorRate() {
+        when(fxRateRepository.findAllByOrderByCurrencyAscRateDateAsc()).thenReturn(List.of(
+                rate("USD", "2024-01-01", "24000"), rate("USD", "2024-06-01", "25000")));
+        Transaction transaction = Transaction.builder()
+                .amount(new BigDecimal("12.345")).currency(" usd ").transactionDate(LocalDate.of(2024, 5, 31)).build();
+
+        fxRateService.normalize(transaction);
+
+        assertEquals("USD", transaction.getCurrency());
+        assertEquals(new BigDecimal("296280.00"), transaction.getBaseAmount());
+        assertEquals(new BigDecimal("25000"), fxRateService.rateOf("USD", LocalDate.of(2024, 6, 1)));
+        assertEquals(new BigDecimal("24000"), fxRateService.rateOf("USD", LocalDate.of(2023, 1, 1)));
+    }
+
+    @Test
+    @DisplayName("VND không cần tỷ giá; loại tiền chưa có tỷ giá bị từ chối")
+    void testNormalize_BaseCurrencyAndUnknown() {
+        Transaction vnd = Transaction.builder().amount(new BigDecimal("50000")).currency(null).build();
+        fxRateService.normalize(vnd);
+        assertEquals("VND", vnd.getCurrency());
+        assertEquals(new BigDecimal("50000.00"), vnd.getBaseAmount());
+        verify(fxRateRepository, never()).findAllByOrderByCurrencyAscRateDateAsc();
+
+        when(fxRateRepository.findAllByOrderByCurrencyAscRateDateAsc()).thenReturn(List.of());
+        Transaction eur = Transaction.builder().amount(BigDecimal.TEN).currency("EUR")
+                .transactionDate(LocalDate.of(2024, 1, 1)).build();
+        BusinessException ex = assertThrows(BusinessException.class, () -> fxRateService.normalize(eur));
+        assertEquals(ErrorCode.FX_RATE_NOT_FOUND, ex.getErrorCode());
+    }
+
+    @Test
+    @DisplayName("CSV tỷ giá: bỏ header/comment, dòng sai báo số dòng")
+    void testImporterParse() throws Exception {
+        List<FxRateImporter.RateRow> rows = FxRateImporter.parse(new StringReader(
+                "currency,rate_date,rate\n# nguồn nội bộ\nusd,2024-01-01,24000\n\nEUR;2024-01-01;26000.5\n"));
+
+        assertEquals(2, rows.size());
+        assertEquals(new FxRateImporter.RateRow("USD", LocalDate.of(2024, 1, 1), new BigDecimal("24000")), rows.get(0));
+        assertEquals("EUR", rows.get(1).currency());
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> FxRateImporter.parse(new StringReader("USD,2024-01-01,0\n")));
+        assertEquals(ErrorCode.FX_RATE_IMPORT_INVALID, ex.getErrorCode());
+        assertThrows(BusinessException.class, () -> FxRateImporter.parse(new StringReader("VND,2024-01-01,1\n")));
+    }
+
+    @Test
+    @DisplayName("Sửa tỷ giá: chỉ tính lại đoạn ngày dùng tỷ giá đó, chia theo ngày hiệu lực")
+    void testAffectedRangeAndSegments() {
+        NavigableMap<LocalDate, BigDecimal> rates = usd();
+
+        LocalDate[] middle = FxRateImporter.affectedRange(rates, List.of(LocalDate.of(2024, 1, 1)));
+        assertEquals(TransactionService.MIN_DATE, middle[0]);
+        assertEquals(LocalDate.of(2024, 5, 31), middle[1]);
+
+        LocalDate[] last = FxRateImporter.affectedRange(rates, List.of(LocalDate.of(2024, 6, 1)));
+        assertEquals(LocalDate.of(2024, 6, 1), last[0]);
+        assertEquals(TransactionService.MAX_DATE, last[1]);
+
+        List<FxRenormalizationJob.Segment> segments = FxRenormalizationJob.segments(rates,
+                LocalDate.of(2023, 12, 1), LocalDate.of(2024, 7, 1));
+        assertEquals(List.of(
+                new FxRenormalizationJob.Segment(LocalDate.of(2023, 12, 1), LocalDate.of(2024, 5, 31), new BigDecimal("24000")),
+                new FxRenormalizationJob.Segment(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 7, 1), new BigDecimal("25000"))),
+                segments);
+    }
+
+    @Test
+    @DisplayName("Import: báo mọi node nạp lại, tính lại trên thread nền, hẹn tính lại lần hai sau chu kỳ nạp định kỳ")
+    void testImportCsv_BroadcastsReloadAndSchedulesRecheck() throws Exception {
+        FxRateService rates = mock(FxRateService.class);
+        FxRenormalizationJob renormalizationJob = mock(FxRenormalizationJob.class);
+        TaskScheduler taskScheduler = mock(TaskScheduler.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        FxRateImporter importer = new FxRateImporter(mock(NamedParameterJdbcTemplate.class), transactionTemplate,
+                rates, renormalizationJob, taskScheduler);
+        List<Runnable> queued = new ArrayList<>();
+        ReflectionTestUtils.setField(importer, "renormalizeExecutor", (Executor) queued::add);
+        when(rates.ratesOf("USD")).thenReturn(Collections.emptyNavigableMap(), usd());
+        when(renormalizationJob.renormalize(eq("USD"), any(), any())).thenReturn(3);
+
+        FxRateImporter.ImportResult result = importer.importCsv(new StringReader("USD,2024-06-01,25000\n"), "test");
+
+        assertEquals(new FxRateImporter.ImportResult(1, 1, 0, List.of("USD")), result);
+        verify(renormalizationJob, never()).renormalize(any(), any(), any());
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        InOrder order = inOrder(rates, renormalizationJob);
+        order.verify(rates).reloadEverywhere();
+        order.verify(renormalizationJob).renormalize("USD", LocalDate.of(2024, 6, 1), TransactionService.MAX_DATE);
+
+        ArgumentCaptor<Runnable> recheck = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(recheck.capture(), any(Instant.class));
+        recheck.getValue().run();
+        verify(rates, never()).reload();
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        verify(rates).reload();
+        verify(renormalizationJob, times(2)).renormalize("USD", LocalDate.of(2024, 6, 1), TransactionService.MAX_DATE);
+    }
+
+    @Test
+    @DisplayName("reloadEverywhere phát tin; node nhận tin nạp lại bảng tỷ giá")
+    void testReloadEverywhere_Broadcasts() {
+        when(fxRateRepository.findAllByOrderByCurrencyAscRateDateAsc()).thenReturn(List.of());
+
+        fxRateService.reloadEverywhere();
+        verify(redisTemplate).convertAndSend(FxRateService.CHANNEL, "reload");
+
+        fxRateService.onMessage(mock(Message.class), null);
+        verify(fxRateRepository, times(2)).findAllByOrderByCurrencyAscRateDateAsc();
+    }
+}
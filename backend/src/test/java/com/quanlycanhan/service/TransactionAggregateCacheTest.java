@@ -0,0 +1,144 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionAggregateCache Tests")
+class TransactionAggregateCacheTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionAggregateCache cache;
+
+    private final LocalDate start = LocalDate.of(2024, 1, 1);
+    private final LocalDate end = LocalDate.of(2024, 1, 31);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new TransactionAggregateCache(redisTemplate, meterRegistry);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.find("aggregate.cache.requests").tag("result", result).counters().stream()
+                .mapToDouble(c -> c.count()).sum();
+    }
+
+    @Test
+    @DisplayName("Hit: trả về giá trị trong Redis (đơn vị xu), không gọi loader")
+    void testGetAmounts_Hit() {
+        when(hashOperations.multiGet(eq("agg:1"), anyList())).thenReturn(Arrays.asList("3", "12345"));
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<String, BigDecimal> result = cache.getAmounts(1L, start, end, List.of("total"), () -> {
+            loads.incrementAndGet();
+            return Map.of("total", BigDecimal.ZERO);
+        });
+
+        assertEquals(new BigDecimal("123.45"), result.get("total"));
+        assertEquals(0, loads.get());
+        assertEquals(1.0, requests("hit"));
+    }
+
+    @Test
+    @DisplayName("Miss: gọi loader rồi fill kèm _gen đã đọc")
+    void testGetAmounts_MissFills() {
+        when(hashOperations.multiGet(eq("agg:1"), anyList())).thenReturn(Arrays.asList("7", null));
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("agg:1")), any(Object[].class))).thenReturn(1L);
+
+        Map<String, BigDecimal> result = cache.getAmounts(1L, start, end, List.of("total"),
+                () -> Map.of("total", new BigDecimal("50000.50")));
+
+        assertEquals(new BigDecimal("50000.50"), result.get("total"));
+        assertEquals(1.0, requests("miss"));
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("agg:1")),
+                eq("7"), eq("1800"), eq("2024-01-01|2024-01-31|total"), eq("5000050"));
+    }
+
+    @Test
+    @DisplayName("Redis lỗi: đọc thẳng từ loader, không ném lỗi")
+    void testGetByCategory_RedisDown() {
+        when(hashOperations.multiGet(eq("agg:1"), anyList())).thenThrow(new RedisConnectionFailureException("down"));
+
+        Map<Long, BigDecimal> result = cache.getByCategory(1L, start, end, "expense",
+                () -> Map.of(10L, new BigDecimal("80000")));
+
+        assertEquals(new BigDecimal("80000"), result.get(10L));
+        assertEquals(1.0, meterRegistry.counter("aggregate.cache.errors", "operation", "read").count());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Hit theo danh mục: chỉ HSCAN item của khoảng ngày, bỏ danh mục có tổng 0")
+    @SuppressWarnings("unchecked")
+    void testGetByCategory_Hit() {
+        when(hashOperations.multiGet("agg:1", List.of("_gen", "2024-01-01|2024-01-31|cat-expense")))
+                .thenReturn(Arrays.asList("3", "1"));
+        Cursor<Map.Entry<Object, Object>> items = mock(Cursor.class);
+        when(items.hasNext()).thenReturn(true, true, false);
+        when(items.next()).thenReturn(
+                Map.entry("2024-01-01|2024-01-31|cat-expense#10", "8000000"),
+                Map.entry("2024-01-01|2024-01-31|cat-expense#11", "0"));
+        ArgumentCaptor<ScanOptions> options = ArgumentCaptor.forClass(ScanOptions.class);
+        when(hashOperations.scan(eq("agg:1"), options.capture())).thenReturn(items);
+
+        Map<Long, BigDecimal> result = cache.getByCategory(1L, start, end, "expense", Map::of);
+
+        assertEquals(1, result.size());
+        assertEquals(new BigDecimal("80000.00"), result.get(10L));
+        assertEquals("2024-01-01|2024-01-31|cat-expense#*", options.getValue().getPattern());
+        verify(hashOperations, never()).entries(any());
+        verify(items).close();
+    }
+
+    @Test
+    @DisplayName("Miss theo danh mục: không quét item, fill kèm marker")
+    void testGetByCategory_MissFills() {
+        when(hashOperations.multiGet(eq("agg:1"), anyList())).thenReturn(Arrays.asList("4", null));
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("agg:1")), any(Object[].class))).thenReturn(1L);
+
+        Map<Long, BigDecimal> result = cache.getByCategory(1L, start, end, "expense",
+                () -> Map.of(10L, new BigDecimal("80000")));
+
+        assertEquals(new BigDecimal("80000"), result.get(10L));
+        verify(hashOperations, never()).scan(any(), any());
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("agg:1")),
+                eq("4"), eq("1800"), eq("2024-01-01|2024-01-31|cat-expense"), eq("1"),
+                eq("2024-01-01|2024-01-31|cat-expense#10"), eq("8000000"));
+    }
+}
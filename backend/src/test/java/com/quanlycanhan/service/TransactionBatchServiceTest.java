@@ -0,0 +1,122 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.KeyHolder;
+
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.entity.User;
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+import com.quanlycanhan.repository.CategoryRepository;
+import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionBatchService Tests")
+class TransactionBatchServiceTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private TransactionSummaryService transactionSummaryService;
+
+    @Mock
+    private FxRateService fxRateService;
+
+    @Mock
+    private TransactionOutbox transactionOutbox;
+
+    @InjectMocks
+    private TransactionBatchService transactionBatchService;
+
+    private TransactionBatchService.TransactionInput input(Long categoryId) {
+        return new TransactionBatchService.TransactionInput(null, categoryId, new BigDecimal("50000"), null,
+                LocalDate.of(2024, 1, 15), "Ăn trưa", null, null);
+    }
+
+    @Test
+    @DisplayName("Tạo hàng loạt: kiểm tra danh mục 1 lần, insert bằng 1 batch")
+    void testCreateTransactions_SingleCategoryQueryAndBatchInsert() {
+        User user = User.builder().id(1L).build();
+        Category category = Category.builder().id(10L).name("Ăn uống").build();
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(categoryRepository.findAccessibleByIds(any(), eq(1L))).thenReturn(List.of(category));
+
+        List<TransactionBatchService.TransactionInput> items = List.of(input(10L), input(10L), input(10L));
+        List<Transaction> created = transactionBatchService.createTransactions(
+                1L, items, Transaction.CreatedBy.USER, null);
+
+        assertEquals(3, created.size());
+        assertEquals("an trua", created.get(0).getSearchText());
+        verify(categoryRepository, times(1)).findAccessibleByIds(any(), eq(1L));
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(SqlParameterSource[].class),
+                any(KeyHolder.class), any(String[].class));
+        verify(transactionRepository, never()).save(any());
+        verify(transactionSummaryService, times(1)).recordCreated(created);
+    }
+
+    @Test
+    @DisplayName("Tạo hàng loạt: danh mục không hợp lệ thì không ghi gì")
+    void testCreateTransactions_InvalidCategory() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(categoryRepository.findAccessibleByIds(any(), eq(1L)))
+                .thenReturn(List.of(Category.builder().id(10L).build()));
+
+        BusinessException ex = assertThrows(BusinessException.class, () ->
+                transactionBatchService.createTransactions(1L, List.of(input(10L), input(99L)),
+                        Transaction.CreatedBy.USER, null));
+
+        assertEquals(ErrorCode.CATEGORY_INVALID, ex.getErrorCode());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class),
+                any(KeyHolder.class), any(String[].class));
+    }
+
+    @Test
+    @DisplayName("Xóa hàng loạt: 1 câu UPDATE, bỏ id trùng")
+    void testDeleteTransactions_SingleUpdate() {
+        when(transactionRepository.softDeleteByIdsAndUserId(any(), eq(1L), any())).thenReturn(2);
+
+        int deleted = transactionBatchService.deleteTransactions(1L, Arrays.asList(5L, 6L, 5L));
+
+        assertEquals(2, deleted);
+        verify(transactionRepository, times(1)).softDeleteByIdsAndUserId(
+                eq(new java.util.LinkedHashSet<>(List.of(5L, 6L))), eq(1L), any());
+    }
+}
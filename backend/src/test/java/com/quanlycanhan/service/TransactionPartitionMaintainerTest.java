@@ -0,0 +1,141 @@
+package com.quanlycanhan.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.quanlycanhan.service.TransactionPartitionMaintainer.PartitionInfo;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionPartitionMaintainer Tests")
+class TransactionPartitionMaintainerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private TransactionPartitionMaintainer maintainer;
+
+    private static final List<PartitionInfo> PARTITIONS = List.of(
+            new PartitionInfo("p2024", LocalDate.of(2025, 1, 1), 100),
+            new PartitionInfo("p2025", LocalDate.of(2026, 1, 1), 200),
+            new PartitionInfo("p_future", null, 0));
+
+    @SuppressWarnings("unchecked")
+    private void givenPartitions(List<PartitionInfo> partitions) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class))).thenReturn(partitions);
+    }
+
+    @Test
+    @DisplayName("Thiếu năm hiện tại và năm sau: tách p_future bằng 1 lệnh REORGANIZE")
+    void testEnsureFuturePartitions_ReorganizesFuture() {
+        givenPartitions(PARTITIONS);
+
+        int created = maintainer.ensureFuturePartitions(LocalDate.of(2026, 10, 18));
+
+        assertEquals(2, created);
+        verify(jdbcTemplate).execute("ALTER TABLE transactions REORGANIZE PARTITION p_future INTO ("
+                + "PARTITION p2026 VALUES LESS THAN ('2027-01-01'), "
+                + "PARTITION p2027 VALUES LESS THAN ('2028-01-01'), "
+                + "PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+    }
+
+    @Test
+    @DisplayName("Bảng chưa phân vùng: không chạy DDL")
+    void testEnsureFuturePartitions_NotPartitioned() {
+        givenPartitions(List.of());
+
+        assertEquals(0, maintainer.ensureFuturePartitions(LocalDate.of(2026, 10, 18)));
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @DisplayName("Partition chứa khoảng ngày: tháng trong năm chỉ 1 partition, năm chưa tách rơi vào p_future")
+    void testPartitionsCovering() {
+        assertEquals(List.of("p2025"), TransactionPartitionMaintainer.partitionsCovering(
+                PARTITIONS, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31)));
+        assertEquals(List.of("p2024", "p2025"), TransactionPartitionMaintainer.partitionsCovering(
+                PARTITIONS, LocalDate.of(2024, 12, 15), LocalDate.of(2025, 1, 15)));
+        assertEquals(List.of("p_future"), TransactionPartitionMaintainer.partitionsCovering(
+                PARTITIONS, LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 31)));
+    }
+
+    @Test
+    @DisplayName("DDL chuyển đổi: bỏ FK, FULLTEXT, khóa chính (id, transaction_date), partition từng năm + p_future")
+    void testConversionStatements() {
+        List<String> statements = TransactionPartitionMaintainer.conversionStatements(
+                List.of("fk_user", "fk_category"), List.of("ft_transactions_search_text"), true, 2025, 2027);
+
+        assertEquals(List.of(
+                "ALTER TABLE transactions DROP FOREIGN KEY fk_user, DROP FOREIGN KEY fk_category",
+                "ALTER TABLE transactions DROP INDEX ft_transactions_search_text",
+                "ALTER TABLE transactions DROP PRIMARY KEY, ADD PRIMARY KEY (id, transaction_date)",
+                "ALTER TABLE transactions PARTITION BY RANGE COLUMNS (transaction_date) ("
+                        + "PARTITION p2025 VALUES LESS THAN ('2026-01-01'), "
+                        + "PARTITION p2026 VALUES LESS THAN ('2027-01-01'), "
+                        + "PARTITION p2027 VALUES LESS THAN ('2028-01-01'), "
+                        + "PARTITION p_future VALUES LESS THAN (MAXVALUE))"), statements);
+    }
+
+    @Test
+    @DisplayName("Đã phân vùng: khởi động không chuyển đổi")
+    void testEnsurePartitioned_AlreadyPartitioned() {
+        givenPartitions(PARTITIONS);
+
+        maintainer.ensurePartitioned();
+
+        verify(jdbcTemplate, never()).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    @DisplayName("Bật cờ nhưng chuyển đổi không thành: từ chối khởi động")
+    void testEnsurePartitioned_RefusesUnpartitionedTable() {
+        givenPartitions(List.of());
+
+        assertThrows(IllegalStateException.class, () -> maintainer.ensurePartitioned());
+        verify(jdbcTemplate).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    @DisplayName("SQL kiểm tra pruning dịch từ @Query của TransactionRepository, không phải bản chép tay")
+    void testPruningSql_DerivedFromRepositoryQueries() {
+        Map<String, String> sql = TransactionPartitionMaintainer.pruningSql();
+
+        assertEquals(List.of("dateRange", "cursor", "export"), List.copyOf(sql.keySet()));
+        assertEquals("SELECT t.id FROM transactions t JOIN categories c ON c.id = t.category_id "
+                + "WHERE t.user_id = :userId AND t.deleted = 0 "
+                + "AND t.transaction_date BETWEEN :startDate AND :endDate LIMIT 20", sql.get("dateRange"));
+        assertEquals("SELECT t.id FROM transactions t JOIN categories c ON c.id = t.category_id "
+                + "WHERE t.user_id = :userId AND t.deleted = 0 "
+                + "AND t.transaction_date BETWEEN :startDate AND :endDate "
+                + "AND t.transaction_date <= :cursorDate "
+                + "AND (t.transaction_date < :cursorDate OR t.id < :cursorId) "
+                + "ORDER BY t.transaction_date DESC, t.id DESC LIMIT 20", sql.get("cursor"));
+        assertTrue(sql.get("export").endsWith("ORDER BY t.transaction_date DESC, t.id DESC"));
+    }
+
+    @Test
+    @DisplayName("Query dùng thuộc tính chưa ánh xạ cột: báo lỗi thay vì EXPLAIN câu SQL sai")
+    void testToSql_RejectsUnmappedProperty() {
+        assertThrows(IllegalStateException.class, () -> TransactionPartitionMaintainer.toSql(
+                "SELECT t FROM Transaction t WHERE t.user.id = :userId AND t.currency = :currency", false));
+    }
+}
@@ -0,0 +1,67 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.quanlycanhan.repository.TransactionRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionSearchService Tests")
+class TransactionSearchServiceTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private CategoryDirectory categoryDirectory;
+
+    @InjectMocks
+    private TransactionSearchService searchService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*) FROM INFORMATION_SCHEMA"),
+                any(SqlParameterSource.class), eq(Integer.class))).thenReturn(1);
+        when(categoryDirectory.get(1L)).thenReturn(new CategoryDirectory.Snapshot(1L, 0L, System.nanoTime(), List.of()));
+    }
+
+    @Test
+    @DisplayName("Từ khóa là số tiền có phần thập phân: thêm nhánh so khớp đúng số tiền")
+    void testBuildQuery_DecimalAmountKeyword() {
+        TransactionSearchService.SearchQuery query = searchService.buildQuery(1L, "50.5", null, null);
+
+        assertTrue(query.sql().contains("t.amount = :exactAmount"));
+        assertEquals(new BigDecimal("50.5"), query.params().getValue("exactAmount"));
+    }
+
+    @Test
+    @DisplayName("Số tiền không rõ nghĩa: chỉ tìm theo chữ, không so khớp số tiền sai")
+    void testBuildQuery_AmbiguousAmountKeyword() {
+        TransactionSearchService.SearchQuery query = searchService.buildQuery(1L, "1.5000", null, null);
+
+        assertFalse(query.sql().contains(":exactAmount"));
+        assertFalse(query.params().hasValue("exactAmount"));
+        assertTrue(query.sql().contains("MATCH(t.search_text)"));
+    }
+}
@@ -2,7 +2,9 @@ package com.quanlycanhan.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -13,17 +15,23 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 
+import com.quanlycanhan.dto.response.CursorPageResponse;
 import com.quanlycanhan.entity.Category;
 import com.quanlycanhan.entity.Transaction;
 import com.quanlycanhan.entity.User;
@@ -31,7 +39,11 @@ import com.quanlycanhan.exception.BusinessException;
 import com.quanlycanhan.exception.ErrorCode;
 import com.quanlycanhan.repository.CategoryRepository;
 import com.quanlycanhan.repository.TransactionRepository;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
 import com.quanlycanhan.repository.UserRepository;
+import com.quanlycanhan.service.outbox.TransactionChangeEvent;
+import com.quanlycanhan.service.outbox.TransactionOutbox;
+import com.quanlycanhan.util.TransactionCursor;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("TransactionService Tests")
@@ -49,6 +61,27 @@ class TransactionServiceTest {
     @Mock
     private FileStorageService fileStorageService;
 
+    @Mock
+    private TransactionSearchService transactionSearchService;
+
+    @Mock
+    private TransactionSummaryService transactionSummaryService;
+
+    @Mock
+    private UserDailyCategorySummaryRepository summaryRepository;
+
+    @Mock
+    private TransactionAggregateCache aggregateCache;
+
+    @Mock
+    private CategoryDirectory categoryDirectory;
+
+    @Mock
+    private FxRateService fxRateService;
+
+    @Mock
+    private TransactionOutbox transactionOutbox;
+
     @InjectMocks
     private TransactionService transactionService;
 
@@ -102,7 +135,10 @@ class TransactionServiceTest {
         // Then
         assertNotNull(result);
         assertEquals(testTransaction.getId(), result.getId());
+        verify(fxRateService, times(1)).normalize(any(Transaction.class));
         verify(transactionRepository, times(1)).save(any(Transaction.class));
+        verify(transactionSummaryService, times(1)).recordCreated(testTransaction);
+        verify(transactionOutbox, times(1)).append(userId, TransactionChangeEvent.ChangeType.CREATED, testTransaction.getId());
     }
 
     @Test
@@ -162,6 +198,65 @@ class TransactionServiceTest {
         assertEquals(testTransaction.getId(), result.getContent().get(0).getId());
     }
 
+    @Test
+    @DisplayName("Should return slice without running count query")
+    void testGetTransactionSliceByDateRange_NoDates() {
+        // Given
+        Long userId = 1L;
+        Pageable pageable = PageRequest.of(0, 10);
+        Slice<Transaction> slice = new SliceImpl<>(java.util.Arrays.asList(testTransaction), pageable, true);
+
+        when(transactionRepository.findSliceByUserIdAndDeletedFalse(userId, pageable)).thenReturn(slice);
+
+        // When
+        Slice<Transaction> result = transactionService.getTransactionSliceByDateRange(userId, null, null, pageable);
+
+        // Then
+        assertTrue(result.hasNext());
+        assertEquals(1, result.getContent().size());
+        verify(transactionRepository, never()).findByUserIdAndDeletedFalse(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should return next cursor when more transactions exist (keyset pagination)")
+    void testGetUserTransactionsByCursor_HasNext() {
+        // Given
+        Long userId = 1L;
+        Transaction second = Transaction.builder()
+                .id(2L)
+                .amount(new BigDecimal("50.00"))
+                .transactionDate(LocalDate.of(2024, 1, 10))
+                .build();
+        Transaction third = Transaction.builder()
+                .id(3L)
+                .amount(new BigDecimal("20.00"))
+                .transactionDate(LocalDate.of(2024, 1, 9))
+                .build();
+
+        when(transactionRepository.findByUserIdAfterCursor(eq(userId), any(), any(),
+                eq(TransactionCursor.START.transactionDate()), eq(TransactionCursor.START.id()), eq(Limit.of(3))))
+                .thenReturn(java.util.Arrays.asList(testTransaction, second, third));
+
+        // When
+        CursorPageResponse<Transaction> result = transactionService.getUserTransactionsByCursor(userId, null, null, null, 2);
+
+        // Then
+        assertEquals(2, result.getContent().size());
+        assertTrue(result.isHasNext());
+        TransactionCursor next = TransactionCursor.decode(result.getNextCursor());
+        assertEquals(second.getTransactionDate(), next.transactionDate());
+        assertEquals(second.getId(), next.id());
+    }
+
+    @Test
+    @DisplayName("Should reject malformed cursor")
+    void testGetUserTransactionsByCursor_InvalidCursor() {
+        BusinessException exception = assertThrows(BusinessException.class, () ->
+                transactionService.getUserTransactionsByCursor(1L, null, null, "not-a-cursor", 20));
+
+        assertEquals(ErrorCode.CURSOR_INVALID, exception.getErrorCode());
+    }
+
     @Test
     @DisplayName("Should update transaction successfully")
     void testUpdateTransaction_Success() {
@@ -218,7 +313,25 @@ class TransactionServiceTest {
 
         // Then
         assertTrue(testTransaction.isDeleted());
+        assertNotNull(testTransaction.getDeletedAt());
         verify(transactionRepository, times(1)).save(any(Transaction.class));
+        verify(transactionSummaryService, times(1)).recordDeleted(testTransaction);
+        verify(transactionOutbox, times(1)).append(userId, TransactionChangeEvent.ChangeType.DELETED, testTransaction.getId());
+    }
+
+    @Test
+    @DisplayName("Khôi phục giao dịch từ thùng rác: bỏ cờ xóa, cộng lại vào bảng tổng hợp")
+    void testRestoreTransaction_Success() {
+        testTransaction.setDeleted(true);
+        testTransaction.setDeletedAt(java.time.LocalDateTime.now().minusDays(1));
+        when(transactionRepository.findDeletedByIdAndUserId(1L, 1L)).thenReturn(Optional.of(testTransaction));
+        when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
+
+        Transaction restored = transactionService.restoreTransaction(1L, 1L);
+
+        assertTrue(!restored.isDeleted());
+        assertEquals(null, restored.getDeletedAt());
+        verify(transactionSummaryService, times(1)).recordCreated(testTransaction);
     }
 
     @Test
@@ -230,8 +343,9 @@ class TransactionServiceTest {
         LocalDate endDate = LocalDate.now();
         BigDecimal expectedTotal = new BigDecimal("500.00");
 
-        when(transactionRepository.getTotalAmountByUserIdAndDateRangeNative(userId, startDate, endDate))
+        when(summaryRepository.getTotalAmount(userId, startDate, endDate))
                 .thenReturn(expectedTotal);
+        passThroughAggregateCache();
 
         // When
         BigDecimal result = transactionService.getTotalAmount(userId, startDate, endDate);
@@ -249,10 +363,9 @@ class TransactionServiceTest {
         LocalDate startDate = LocalDate.now().minusDays(30);
         LocalDate endDate = LocalDate.now();
 
-        when(transactionRepository.getTotalAmountByUserIdAndDateRangeNative(userId, startDate, endDate))
-                .thenReturn(null);
-        when(transactionRepository.getTotalAmountByUserIdAndDateRange(userId, startDate, endDate))
+        when(summaryRepository.getTotalAmount(userId, startDate, endDate))
                 .thenReturn(null);
+        passThroughAggregateCache();
 
         // When
         BigDecimal result = transactionService.getTotalAmount(userId, startDate, endDate);
@@ -261,5 +374,26 @@ class TransactionServiceTest {
         assertNotNull(result);
         assertEquals(BigDecimal.ZERO, result);
     }
-}
 
+    @Test
+    @DisplayName("Tổng thu/chi: cache hit thì không truy vấn bảng tổng hợp")
+    void testGetIncomeAndExpenseTotals_CacheHit() {
+        Long userId = 1L;
+        LocalDate startDate = LocalDate.of(2024, 1, 1);
+        LocalDate endDate = LocalDate.of(2024, 1, 31);
+        when(aggregateCache.getAmounts(eq(userId), eq(startDate), eq(endDate), any(), any()))
+                .thenReturn(Map.of("income", new BigDecimal("1000.00"), "expense", new BigDecimal("400.00")));
+
+        Object[] totals = transactionService.getIncomeAndExpenseTotals(userId, startDate, endDate);
+
+        assertEquals(new BigDecimal("1000.00"), totals[0]);
+        assertEquals(new BigDecimal("400.00"), totals[1]);
+        verify(summaryRepository, never()).getIncomeAndExpenseTotals(any(), any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void passThroughAggregateCache() {
+        when(aggregateCache.getAmounts(any(), any(), any(), any(), any()))
+                .thenAnswer(inv -> ((Supplier<Map<String, BigDecimal>>) inv.getArgument(4)).get());
+    }
+}
@@ -0,0 +1,127 @@
+package com.quanlycanhan.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.quanlycanhan.entity.Category;
+import com.quanlycanhan.entity.Transaction;
+import com.quanlycanhan.entity.User;
+import com.quanlycanhan.repository.UserDailyCategorySummaryRepository;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionSummaryService Tests")
+class TransactionSummaryServiceTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private UserDailyCategorySummaryRepository summaryRepository;
+
+    @Mock
+    private TransactionAggregateCache aggregateCache;
+
+    @InjectMocks
+    private TransactionSummaryService transactionSummaryService;
+
+    private final User user = User.builder().id(1L).build();
+    private final Category food = Category.builder().id(10L).type("expense").build();
+    private final Category salary = Category.builder().id(20L).type("income").build();
+
+    private Transaction tx(Category category, String amount, LocalDate date) {
+        return Transaction.builder().user(user).category(category)
+                .amount(new BigDecimal(amount)).baseAmount(new BigDecimal(amount)).transactionDate(date).build();
+    }
+
+    private SqlParameterSource[] captureBatch() {
+        ArgumentCaptor<SqlParameterSource[]> captor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("Tạo hàng loạt: gom delta theo (ngày, danh mục) trước khi ghi")
+    void testRecordCreated_GroupsByDayAndCategory() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        transactionSummaryService.recordCreated(List.of(
+                tx(food, "50000", day), tx(food, "30000", day), tx(salary, "1000000", day)));
+
+        SqlParameterSource[] batch = captureBatch();
+        assertEquals(2, batch.length);
+        assertEquals(10L, batch[0].getValue("categoryId"));
+        assertEquals(new BigDecimal("80000"), batch[0].getValue("amount"));
+        assertEquals(2, batch[0].getValue("count"));
+        assertEquals("income", batch[1].getValue("type"));
+        verify(aggregateCache, times(1)).recordDeltas(eq(1L), argThat(deltas -> deltas.size() == 2));
+    }
+
+    @Test
+    @DisplayName("Sửa số tiền trong cùng ngày/danh mục: chỉ ghi phần chênh lệch")
+    void testRecordUpdated_SameKeyWritesDifference() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        Transaction transaction = tx(food, "50000", day);
+        TransactionSummaryService.Contribution before = TransactionSummaryService.Contribution.of(transaction);
+        transaction.setAmount(new BigDecimal("70000"));
+        transaction.setBaseAmount(new BigDecimal("70000"));
+
+        transactionSummaryService.recordUpdated(before, transaction);
+
+        SqlParameterSource[] batch = captureBatch();
+        assertEquals(1, batch.length);
+        assertEquals(new BigDecimal("20000"), batch[0].getValue("amount"));
+        assertEquals(0, batch[0].getValue("count"));
+    }
+
+    @Test
+    @DisplayName("Chuyển ngày: trừ ở ngày cũ, cộng ở ngày mới; không đổi gì thì không ghi")
+    void testRecordUpdated_MoveDay() {
+        Transaction transaction = tx(food, "50000", LocalDate.of(2024, 1, 15));
+        TransactionSummaryService.Contribution before = TransactionSummaryService.Contribution.of(transaction);
+
+        transactionSummaryService.recordUpdated(before, transaction);
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+
+        transaction.setTransactionDate(LocalDate.of(2024, 1, 16));
+        transactionSummaryService.recordUpdated(before, transaction);
+
+        SqlParameterSource[] batch = captureBatch();
+        assertEquals(2, batch.length);
+        assertEquals(-1, batch[0].getValue("count"));
+        assertEquals(new BigDecimal("-50000"), batch[0].getValue("amount"));
+        assertEquals(1, batch[1].getValue("count"));
+    }
+
+    @Test
+    @DisplayName("Giao dịch chưa có base_amount: không cộng vào số lượng để khớp với tổng")
+    void testRecordCreated_SkipsRowsWithoutBaseAmount() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        Transaction pending = tx(food, "20", day);
+        pending.setBaseAmount(null);
+
+        transactionSummaryService.recordCreated(List.of(tx(food, "50000", day), pending));
+
+        SqlParameterSource[] batch = captureBatch();
+        assertEquals(1, batch.length);
+        assertEquals(new BigDecimal("50000"), batch[0].getValue("amount"));
+        assertEquals(1, batch[0].getValue("count"));
+    }
+}
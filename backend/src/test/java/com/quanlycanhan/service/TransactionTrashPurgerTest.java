@@ -0,0 +1,100 @@
+package com.quanlycanhan.service;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionTrashPurger Tests")
+class TransactionTrashPurgerTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    private TransactionTrashPurger purger;
+
+    /**
+     * Mỗi phần tử = các dòng (id, receipt_image) mà một lần SELECT trả về
+     */
+    private final Deque<List<Object[]>> batches = new ArrayDeque<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        purger = new TransactionTrashPurger(jdbcTemplate, new TransactionTemplate(transactionManager), fileStorageService);
+        ReflectionTestUtils.setField(purger, "batchSize", 2);
+        ReflectionTestUtils.setField(purger, "pauseMs", 0L);
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(2);
+            for (Object[] row : batches.isEmpty() ? List.<Object[]>of() : batches.poll()) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong("id")).thenReturn((Long) row[0]);
+                when(rs.getString("receipt_image")).thenReturn((String) row[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    @DisplayName("Dọn theo lô tới khi lô ngắn hơn batchSize; chép sang archive trước khi xóa, xóa ảnh sau commit")
+    void testPurgeExpired_Batches() {
+        batches.add(List.<Object[]>of(new Object[]{1L, "/api/files/a.png"}, new Object[]{2L, null}));
+        batches.add(List.<Object[]>of(new Object[]{3L, "data:image/png;base64,xx"}));
+        lenient().when(jdbcTemplate.update(startsWith("DELETE"), any(SqlParameterSource.class))).thenReturn(2, 1);
+
+        int purged = purger.purgeExpired(LocalDateTime.now().minusDays(30));
+
+        assertEquals(3, purged);
+        InOrder order = inOrder(jdbcTemplate, transactionManager, fileStorageService);
+        order.verify(jdbcTemplate).update(startsWith("INSERT IGNORE INTO transactions_archive"), any(SqlParameterSource.class));
+        order.verify(jdbcTemplate).update(startsWith("DELETE"), any(SqlParameterSource.class));
+        order.verify(transactionManager).commit(any());
+        order.verify(fileStorageService).deleteFile("/api/files/a.png");
+        verify(jdbcTemplate, times(2)).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    @DisplayName("Không có giao dịch hết hạn: không ghi gì")
+    void testPurgeExpired_NothingToDo() {
+        int purged = purger.purgeExpired(LocalDateTime.now().minusDays(30));
+
+        assertEquals(0, purged);
+        verify(jdbcTemplate, never()).update(anyString(), any(SqlParameterSource.class));
+        verify(fileStorageService, never()).deleteFile(anyString());
+    }
+}
@@ -0,0 +1,91 @@
+package com.quanlycanhan.service.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.quanlycanhan.dto.response.TransactionResponseDTO;
+import com.quanlycanhan.service.importer.XlsxRowReader;
+
+@DisplayName("ExportWriter Tests")
+class ExportWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TransactionResponseDTO transaction(int i, String note) {
+        return TransactionResponseDTO.builder()
+                .id((long) i)
+                .transactionDate(LocalDate.of(2024, 1, 15))
+                .amount(new BigDecimal("50000"))
+                .currency("VND")
+                .note(note)
+                .category(TransactionResponseDTO.CategoryInfo.builder().name("Ăn uống").type("expense").build())
+                .build();
+    }
+
+    @Test
+    @DisplayName("CSV: có BOM, escape dấu phẩy/ngoặc kép, chặn công thức")
+    void testCsvWriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExportWriter writer = new CsvExportWriter(out)) {
+            writer.write(transaction(1, "Cơm, \"phở\""));
+            writer.write(transaction(2, "=SUM(A1)"));
+            writer.finish();
+        }
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertTrue(lines[0].startsWith("\uFEFFNgày,Danh mục"));
+        assertEquals("2024-01-15,Ăn uống,Chi,50000,VND,\"Cơm, \"\"phở\"\"\",", lines[1]);
+        assertTrue(lines[2].contains(",'=SUM(A1),"));
+    }
+
+    @Test
+    @DisplayName("XLSX: ghi SXSSF và đọc lại bằng XlsxRowReader")
+    void testXlsxWriter_RoundTrip() throws Exception {
+        int rows = 5_000;
+        Path file = tempDir.resolve("export.xlsx");
+        try (var out = Files.newOutputStream(file); ExportWriter writer = new XlsxExportWriter(out)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(transaction(i, "Ghi chú " + i));
+            }
+            writer.finish();
+        }
+
+        List<List<String>> read = new ArrayList<>();
+        new XlsxRowReader().read(file, (rowNumber, cells) -> {
+            if (rowNumber <= 2) {
+                read.add(cells);
+            }
+        });
+        assertEquals("Ngày", read.get(0).get(0));
+        assertEquals(List.of("2024-01-15", "Ăn uống", "Chi", "50000", "VND", "Ghi chú 0"), read.get(1));
+    }
+
+    @Test
+    @DisplayName("PDF: bảng lớn được flush theo lô, file hợp lệ")
+    void testPdfWriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExportWriter writer = new PdfExportWriter(out, "Lịch sử giao dịch", null)) {
+            for (int i = 0; i < 1_000; i++) {
+                writer.write(transaction(i, "Đi lại " + i));
+            }
+            writer.finish();
+        }
+
+        byte[] pdf = out.toByteArray();
+        assertTrue(pdf.length > 10_000);
+        assertEquals("%PDF", new String(pdf, 0, 4, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,86 @@
+package com.quanlycanhan.service.forecast;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("MonthlyForecaster Tests")
+class MonthlyForecasterTest {
+
+    @Test
+    @DisplayName("Chuỗi ngắn: EMA + Linear Regression, chuỗi 1-2 tháng dùng tháng gần nhất")
+    void testForecast_ShortSeries() {
+        MonthlyForecaster.Forecast flat = MonthlyForecaster.forecast(new long[]{1000, 1000, 1000, 1000}, 1);
+        assertEquals("BLEND", flat.method());
+        assertEquals(1000, flat.predicted());
+        assertEquals(1000, flat.lower());
+        assertEquals(1000, flat.upper());
+
+        MonthlyForecaster.Forecast last = MonthlyForecaster.forecast(new long[]{500, 700}, 2);
+        assertEquals("LAST", last.method());
+        assertEquals(700, last.predicted());
+        assertTrue(last.lower() < 700 && last.upper() > 700);
+
+        assertEquals(MonthlyForecaster.Forecast.NONE, MonthlyForecaster.forecast(new long[0], 1));
+    }
+
+    @Test
+    @DisplayName("Đủ 24 tháng: Holt-Winters bắt được tháng cao điểm theo mùa, khoảng dự đoán chứa giá trị thật")
+    void testForecast_SeasonalSeries() {
+        // 3 năm: chi 1.000.000 mỗi tháng, riêng tháng 12 (chỉ số 11) chi 3.000.000
+        long[] series = new long[35];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = i % 12 == 11 ? 300_000_000L : 100_000_000L;
+        }
+
+        // Điểm cuối là tháng 11 (chỉ số 34), horizon 1 -> tháng 12
+        MonthlyForecaster.Forecast december = MonthlyForecaster.forecast(series, 1);
+        assertEquals("HOLT_WINTERS+BLEND", december.method());
+        assertTrue(december.predicted() > 250_000_000L, "predicted=" + december.predicted());
+        assertTrue(december.lower() <= 300_000_000L && december.upper() >= 300_000_000L);
+
+        // Horizon 2 -> tháng 1: quay về mức thường
+        MonthlyForecaster.Forecast january = MonthlyForecaster.forecast(series, 2);
+        assertTrue(january.predicted() < 150_000_000L, "predicted=" + january.predicted());
+        assertTrue(january.lower() >= 0);
+    }
+
+    @Test
+    @DisplayName("Xu hướng ±5% và độ tin cậy theo độ biến động")
+    void testTrendAndConfidence() {
+        assertEquals("TĂNG", MonthlyForecaster.trend(new long[]{100, 90, 106}));
+        assertEquals("GIẢM", MonthlyForecaster.trend(new long[]{100, 94}));
+        assertEquals("ỔN_ĐỊNH", MonthlyForecaster.trend(new long[]{100, 105}));
+        assertEquals(1.0, MonthlyForecaster.confidence(new long[]{100, 100, 100}));
+        assertTrue(MonthlyForecaster.confidence(new long[]{0, 200, 0, 200}) < 0.6);
+    }
+
+    @Test
+    @DisplayName("Chuỗi theo mùa có nhiễu, 24 tháng: khoảng 90% chứa giá trị thật ở 85-97% số lần")
+    void testForecast_IntervalCoverageOnNoisySeasonalSeries() {
+        Random random = new Random(42);
+        int trials = 2000;
+        int horizon = 1;
+        int covered = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            long[] actual = new long[24 + horizon];
+            for (int i = 0; i < actual.length; i++) {
+                double seasonal = 5_000_000 * Math.sin(2 * Math.PI * i / 12);
+                double noise = random.nextGaussian() * 500_000;
+                actual[i] = Math.max(0, Math.round(10_000_000 + 50_000 * i + seasonal + noise));
+            }
+            MonthlyForecaster.Forecast forecast = MonthlyForecaster.forecast(Arrays.copyOf(actual, 24), horizon);
+            long target = actual[actual.length - 1];
+            if (target >= forecast.lower() && target <= forecast.upper()) {
+                covered++;
+            }
+        }
+        double coverage = (double) covered / trials;
+        // Chấm sai số trên chính các tháng đã dùng để khởi tạo Holt-Winters cho khoảng quá hẹp (~73%)
+        assertTrue(coverage >= 0.85 && coverage <= 0.97, "coverage=" + coverage);
+    }
+}
@@ -0,0 +1,67 @@
+package com.quanlycanhan.service.importer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.quanlycanhan.exception.BusinessException;
+import com.quanlycanhan.exception.ErrorCode;
+
+@DisplayName("ImportColumnMapping Tests")
+class ImportColumnMappingTest {
+
+    private static final ImportOptions DEFAULT_OPTIONS = new ImportOptions(null, null, null, null, null, null, true);
+
+    @Test
+    @DisplayName("Nhận cột theo tên không dấu và chuyển kiểu dữ liệu")
+    void testParse_VietnameseHeader() {
+        ImportColumnMapping mapping = ImportColumnMapping.fromHeader(
+                List.of("Ngày", "Ghi chú", "Số tiền", "Danh mục"), DEFAULT_OPTIONS);
+
+        ImportColumnMapping.ParsedRow row = mapping.parse(List.of("15/01/2024", "Cơm trưa", "50.000đ", "Ăn uống"));
+
+        assertEquals(LocalDate.of(2024, 1, 15), row.transactionDate());
+        assertEquals(new BigDecimal("50000"), row.amount());
+        assertEquals("Ăn uống", row.categoryName());
+        assertEquals("Cơm trưa", row.note());
+        assertNull(row.location());
+    }
+
+    @Test
+    @DisplayName("Thiếu cột số tiền thì báo lỗi file")
+    void testFromHeader_MissingAmount() {
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> ImportColumnMapping.fromHeader(List.of("date", "note"), DEFAULT_OPTIONS));
+        assertEquals(ErrorCode.IMPORT_FILE_INVALID, ex.getErrorCode());
+    }
+
+    @Test
+    @DisplayName("Số tiền theo nhiều định dạng")
+    void testParseAmount() {
+        assertEquals(new BigDecimal("1000000"), ImportColumnMapping.parseAmount("1,000,000"));
+        assertEquals(new BigDecimal("1234567.89"), ImportColumnMapping.parseAmount("1.234.567,89"));
+        assertEquals(new BigDecimal("1234.5"), ImportColumnMapping.parseAmount("1,234.5"));
+        assertEquals(new BigDecimal("12.5"), ImportColumnMapping.parseAmount("12,5"));
+        assertEquals(new BigDecimal("50000"), ImportColumnMapping.parseAmount("-50.000 VND"));
+        assertEquals(new BigDecimal("50000"), ImportColumnMapping.parseAmount("(50,000)"));
+        assertThrows(IllegalArgumentException.class, () -> ImportColumnMapping.parseAmount("abc"));
+        assertThrows(IllegalArgumentException.class, () -> ImportColumnMapping.parseAmount("0"));
+    }
+
+    @Test
+    @DisplayName("Ngày theo nhiều định dạng")
+    void testParseDate() {
+        LocalDate expected = LocalDate.of(2024, 3, 5);
+        assertEquals(expected, ImportColumnMapping.parseDate("2024-03-05"));
+        assertEquals(expected, ImportColumnMapping.parseDate("5/3/2024"));
+        assertEquals(expected, ImportColumnMapping.parseDate("05-03-2024"));
+        assertEquals(expected, ImportColumnMapping.parseDate("2024-03-05 10:30:00"));
+        assertThrows(IllegalArgumentException.class, () -> ImportColumnMapping.parseDate("32/13/2024"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.quanlycanhan.service.importer;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("RowReader Tests")
+class RowReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("CSV: BOM, dấu ';', ô trong ngoặc kép có xuống dòng")
+    void testCsvReader() throws Exception {
+        Path file = tempDir.resolve("data.csv");
+        Files.writeString(file, "\uFEFFNgày;Số tiền;Ghi chú\n"
+                + "15/01/2024;50.000;\"Cơm; trưa\"\n"
+                + "16/01/2024;20.000;\"Dòng 1\nDòng \"\"2\"\"\"\n", StandardCharsets.UTF_8);
+
+        List<List<String>> rows = new ArrayList<>();
+        new CsvRowReader().read(file, (rowNumber, cells) -> rows.add(cells));
+
+        assertEquals(3, rows.size());
+        assertEquals(List.of("Ngày", "Số tiền", "Ghi chú"), rows.get(0));
+        assertEquals(List.of("15/01/2024", "50.000", "Cơm; trưa"), rows.get(1));
+        assertEquals("Dòng 1\nDòng \"2\"", rows.get(2).get(2));
+    }
+
+    @Test
+    @DisplayName("XLSX: đọc streaming, ngày ISO, số thuần, giữ vị trí cột khi có ô trống")
+    void testXlsxReader() throws Exception {
+        int dataRows = 20_000;
+        Path file = tempDir.resolve("data.xlsx");
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100); OutputStream out = Files.newOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+            CellStyle amountStyle = workbook.createCellStyle();
+            amountStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0"));
+            Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Ngày");
+            header.createCell(1).setCellValue("Số tiền");
+            header.createCell(2).setCellValue("Danh mục");
+            header.createCell(3).setCellValue("Ghi chú");
+            for (int i = 1; i <= dataRows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue(LocalDate.of(2024, 1, 15));
+                row.getCell(0).setCellStyle(dateStyle);
+                row.createCell(1).setCellValue(1_250_000);
+                row.getCell(1).setCellStyle(amountStyle);
+                // cột danh mục để trống
+                row.createCell(3).setCellValue("Ghi chú " + i);
+            }
+            workbook.write(out);
+            workbook.dispose();
+        }
+
+        AtomicLong count = new AtomicLong();
+        List<List<String>> firstRows = new ArrayList<>();
+        new XlsxRowReader().read(file, (rowNumber, cells) -> {
+            if (count.incrementAndGet() <= 2) {
+                firstRows.add(cells);
+            }
+        });
+
+        assertEquals(dataRows + 1, count.get());
+        assertEquals(List.of("2024-01-15", "1250000", "", "Ghi chú 1"), firstRows.get(1));
+    }
+}
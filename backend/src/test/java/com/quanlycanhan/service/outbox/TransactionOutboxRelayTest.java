@@ -0,0 +1,186 @@
+package com.quanlycanhan.service.outbox;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TransactionOutboxRelay Tests")
+class TransactionOutboxRelayTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ObjectProvider<TransactionChangeListener> listeners;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<TransactionChangeEvent> received = new ArrayList<>();
+    private RuntimeException failure;
+
+    private TransactionOutboxRelay relay;
+
+    private final TransactionChangeListener listener = new TransactionChangeListener() {
+        @Override
+        public String consumerName() {
+            return "test";
+        }
+
+        @Override
+        public void onEvents(List<TransactionChangeEvent> events) {
+            if (failure != null) {
+                throw failure;
+            }
+            received.addAll(events);
+        }
+    };
+
+    private static TransactionChangeEvent event(long id, LocalDateTime createdAt) {
+        return new TransactionChangeEvent(id, 1L, id * 10, TransactionChangeEvent.ChangeType.CREATED, createdAt);
+    }
+
+    @BeforeEach
+    void setUp() {
+        relay = new TransactionOutboxRelay(jdbcTemplate, new TransactionTemplate(transactionManager), listeners, meterRegistry);
+        lenient().when(listeners.orderedStream()).thenAnswer(inv -> Stream.of(listener));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenOutbox(long head, long offset, List<TransactionChangeEvent> events) {
+        lenient().when(jdbcTemplate.queryForObject(eq("SELECT NOW(3)"), any(SqlParameterSource.class), eq(LocalDateTime.class)))
+                .thenReturn(LocalDateTime.now());
+        lenient().when(jdbcTemplate.query(startsWith("SELECT o.id"), any(SqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COALESCE(MAX(id)"), any(SqlParameterSource.class), eq(Long.class)))
+                .thenReturn(head);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT last_event_id"), any(SqlParameterSource.class), eq(Long.class)))
+                .thenReturn(offset);
+        when(jdbcTemplate.query(startsWith("SELECT id"), any(SqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(events);
+    }
+
+    @Test
+    @DisplayName("Khoảng trống id còn mới: dừng trước khoảng trống; đã quá gap-timeout: coi như rollback và đi tiếp")
+    void testDeliverable_StopsAtRecentGap() {
+        LocalDateTime now = LocalDateTime.now();
+        List<TransactionChangeEvent> events = List.of(event(6, now), event(8, now), event(9, now));
+
+        assertEquals(new TransactionOutboxRelay.Deliverable(List.of(events.get(0)), List.of()),
+                TransactionOutboxRelay.deliverable(5, events, now, Duration.ofSeconds(10)));
+        assertEquals(new TransactionOutboxRelay.Deliverable(List.of(), List.of()),
+                TransactionOutboxRelay.deliverable(4, events, now, Duration.ofSeconds(10)));
+        assertEquals(new TransactionOutboxRelay.Deliverable(events, List.of(7L)),
+                TransactionOutboxRelay.deliverable(5, events, now.plusSeconds(11), Duration.ofSeconds(10)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Id thiếu đã vượt qua do quá gap-timeout nhưng commit muộn: vẫn được giao ở lần poll sau")
+    void testPoll_DeliversGapIdCommittedAfterTimeout() {
+        LocalDateTime dbNow = LocalDateTime.now();
+        when(jdbcTemplate.queryForObject(eq("SELECT NOW(3)"), any(SqlParameterSource.class), eq(LocalDateTime.class)))
+                .thenReturn(dbNow);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COALESCE(MAX(id)"), any(SqlParameterSource.class), eq(Long.class)))
+                .thenReturn(8L);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT last_event_id"), any(SqlParameterSource.class), eq(Long.class)))
+                .thenReturn(5L, 8L);
+        when(jdbcTemplate.query(startsWith("SELECT id"), any(SqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of(event(6, dbNow.minusSeconds(20)), event(8, dbNow.minusSeconds(11))), List.of());
+        when(jdbcTemplate.query(startsWith("SELECT o.id"), any(SqlParameterSource.class), any(RowMapper.class)))
+                .thenReturn(List.of(), List.of(event(7, dbNow.minusSeconds(30))));
+
+        assertEquals(2, relay.poll());
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT IGNORE INTO outbox_consumer_gaps"),
+                argThat((SqlParameterSource[] p) -> p.length == 1 && Long.valueOf(7).equals(p[0].getValue("eventId"))));
+        verify(jdbcTemplate).update(startsWith("UPDATE outbox_consumer_offsets"),
+                argThat((SqlParameterSource p) -> Long.valueOf(8).equals(p.getValue("offset"))));
+
+        assertEquals(1, relay.poll());
+
+        assertEquals(List.of(6L, 8L, 7L), received.stream().map(TransactionChangeEvent::id).toList());
+        verify(jdbcTemplate).update(startsWith("DELETE FROM outbox_consumer_gaps"),
+                argThat((SqlParameterSource p) -> List.of(7L).equals(p.getValue("eventIds"))));
+        assertEquals(1.0, meterRegistry.counter("outbox.gaps.recovered", "consumer", "test").count());
+    }
+
+    @Test
+    @DisplayName("Giao lô theo thứ tự rồi ghi offset trong cùng transaction; hết lag")
+    void testPoll_DeliversAndCommitsOffset() {
+        LocalDateTime old = LocalDateTime.now().minusMinutes(1);
+        givenOutbox(3, 0, List.of(event(1, old), event(2, old), event(3, old)));
+
+        int delivered = relay.poll();
+
+        assertEquals(3, delivered);
+        assertEquals(List.of(1L, 2L, 3L), received.stream().map(TransactionChangeEvent::id).toList());
+        verify(jdbcTemplate).update(startsWith("UPDATE outbox_consumer_offsets"),
+                argThat((SqlParameterSource p) -> Long.valueOf(3).equals(p.getValue("offset"))));
+        assertEquals(3.0, meterRegistry.counter("outbox.events.delivered", "consumer", "test").count());
+        assertEquals(0.0, meterRegistry.get("outbox.consumer.lag").tag("consumer", "test").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Listener lỗi: offset giữ nguyên (giao lại lần sau), đếm lỗi và báo lag")
+    void testPoll_ListenerFailureKeepsOffset() {
+        LocalDateTime old = LocalDateTime.now().minusMinutes(1);
+        givenOutbox(2, 0, List.of(event(1, old), event(2, old)));
+        when(jdbcTemplate.queryForObject(startsWith("SELECT TIMESTAMPDIFF(MICROSECOND, MIN(created_at), NOW(3))"),
+                any(SqlParameterSource.class), eq(Long.class))).thenReturn(61_500_000L);
+        failure = new IllegalStateException("boom");
+
+        int delivered = relay.poll();
+
+        assertEquals(0, delivered);
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE outbox_consumer_offsets"), any(SqlParameterSource.class));
+        verify(transactionManager).rollback(any());
+        assertEquals(1.0, meterRegistry.counter("outbox.delivery.failures", "consumer", "test").count());
+        assertEquals(2.0, meterRegistry.get("outbox.consumer.lag").tag("consumer", "test").gauge().value());
+        assertEquals(61.5, meterRegistry.get("outbox.consumer.lag.seconds").tag("consumer", "test").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Chỉ xóa sự kiện mọi consumer đã xử lý, theo lô")
+    void testPurgeDelivered() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT MIN(last_event_id)"), any(SqlParameterSource.class),
+                eq(Long.class))).thenReturn(42L);
+        lenient().when(jdbcTemplate.update(startsWith("DELETE FROM transaction_outbox"), any(SqlParameterSource.class)))
+                .thenReturn(5000, 12);
+
+        int purged = relay.purgeDelivered(LocalDateTime.now().minusHours(72));
+
+        assertEquals(5012, purged);
+        verify(jdbcTemplate).update(anyString(),
+                argThat((SqlParameterSource p) -> p instanceof MapSqlParameterSource m && m.hasValue("consumer") && "test".equals(m.getValue("consumer"))));
+    }
+}
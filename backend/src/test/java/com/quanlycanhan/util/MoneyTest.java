@@ -0,0 +1,100 @@
+package com.quanlycanhan.util;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Benchmark cộng 1 triệu số tiền: mvn test -Dtest=MoneyTest -Dbenchmark=true
+ */
+@DisplayName("Money Tests")
+class MoneyTest {
+
+    @Test
+    @DisplayName("Đổi qua lại BigDecimal/giá trị JDBC không qua double, làm tròn HALF_UP")
+    void testConversions() {
+        assertEquals(12345L, Money.minorOf(new BigDecimal("123.45")));
+        assertEquals(12346L, Money.minorOf(new BigDecimal("123.455")));
+        assertEquals(10000L, Money.minorOf((Object) 100L));
+        assertEquals(10000L, Money.minorOf((Object) BigInteger.valueOf(100)));
+        assertEquals(0L, Money.minorOf((Object) null));
+        assertEquals(new BigDecimal("123.45"), Money.toBigDecimal(12345L));
+        assertEquals(new BigDecimal("9007199254740993"), Money.decimalOf(9007199254740993L));
+        assertEquals(new BigDecimal("0.30"), Money.of(new BigDecimal("0.1")).plus(Money.of(new BigDecimal("0.2"))).toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("Tràn long khi cộng/nhân/làm tròn thì ném ArithmeticException")
+    void testOverflowChecked() {
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.subtract(Long.MIN_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.minorOf((Object) Long.MAX_VALUE));
+        assertThrows(ArithmeticException.class, () -> Money.scale(Long.MAX_VALUE, 2.0));
+        assertThrows(ArithmeticException.class, () -> Money.roundToMinor(Double.NaN));
+        assertEquals(150L, Money.scale(100L, 1.5));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    @DisplayName("Benchmark: cộng 1M số tiền bằng BigDecimal và bằng long")
+    void benchmarkSumOneMillion() {
+        int n = 1_000_000;
+        Random random = new Random(42);
+        BigDecimal[] decimals = new BigDecimal[n];
+        long[] minors = new long[n];
+        for (int i = 0; i < n; i++) {
+            long minor = 1_000L + random.nextInt(50_000_000);
+            minors[i] = minor;
+            decimals[i] = BigDecimal.valueOf(minor, Money.SCALE);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        BigDecimal expected = null;
+        long expectedMinor = 0;
+        System.out.printf("%-28s %12s %14s%n", "variant", "ms/1M", "bytes/1M");
+        for (int round = 0; round < 15; round++) {
+            boolean report = round >= 10;
+
+            long a0 = threads.getThreadAllocatedBytes(thread);
+            long t0 = System.nanoTime();
+            BigDecimal sum = BigDecimal.ZERO;
+            for (BigDecimal d : decimals) {
+                sum = sum.add(d);
+            }
+            long t1 = System.nanoTime();
+            long a1 = threads.getThreadAllocatedBytes(thread);
+
+            long total = 0;
+            for (long m : minors) {
+                total = Money.add(total, m);
+            }
+            long t2 = System.nanoTime();
+            long a2 = threads.getThreadAllocatedBytes(thread);
+
+            long converted = 0;
+            for (BigDecimal d : decimals) {
+                converted = Money.add(converted, Money.minorOf(d));
+            }
+            long t3 = System.nanoTime();
+            long a3 = threads.getThreadAllocatedBytes(thread);
+
+            expected = sum;
+            expectedMinor = total;
+            assertEquals(total, converted);
+            if (report) {
+                System.out.printf("%-28s %12.3f %14d%n", "BigDecimal.add", (t1 - t0) / 1e6, a1 - a0);
+                System.out.printf("%-28s %12.3f %14d%n", "long Money.add", (t2 - t1) / 1e6, a2 - a1);
+                System.out.printf("%-28s %12.3f %14d%n", "minorOf + Money.add", (t3 - t2) / 1e6, a3 - a2);
+            }
+        }
+        assertEquals(expected, Money.toBigDecimal(expectedMinor));
+    }
+}
@@ -0,0 +1,68 @@
+package com.quanlycanhan.util;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("SearchTextNormalizer Tests")
+class SearchTextNormalizerTest {
+
+    @Test
+    @DisplayName("Bỏ dấu tiếng Việt, chữ thường, gom ký tự đặc biệt")
+    void testFold() {
+        assertEquals("an uong", SearchTextNormalizer.fold("Ăn uống"));
+        assertEquals("di lai", SearchTextNormalizer.fold("Đi lại"));
+        assertEquals("ca phe sua da", SearchTextNormalizer.fold("  Cà phê-sữa, ĐÁ! "));
+        assertEquals("", SearchTextNormalizer.fold(null));
+    }
+
+    @Test
+    @DisplayName("Từ khóa có dấu và không dấu cho cùng một truy vấn FULLTEXT")
+    void testBooleanQuery_AccentInsensitive() {
+        String withAccent = SearchTextNormalizer.toBooleanQuery(
+            SearchTextNormalizer.indexableTokens(SearchTextNormalizer.fold("ăn uống")));
+        String withoutAccent = SearchTextNormalizer.toBooleanQuery(
+            SearchTextNormalizer.indexableTokens(SearchTextNormalizer.fold("an uong")));
+        assertEquals("+an +uong", withAccent);
+        assertEquals(withAccent, withoutAccent);
+        assertEquals(List.of("ab"), SearchTextNormalizer.indexableTokens("a ab"));
+    }
+
+    @Test
+    @DisplayName("Dựng search_text từ note + location")
+    void testBuildDocument() {
+        assertEquals("com trua quan 1", SearchTextNormalizer.buildDocument("Cơm trưa", "Quận 1"));
+        assertNull(SearchTextNormalizer.buildDocument(null, " "));
+        String longNote = "a".repeat(SearchTextNormalizer.MAX_DOCUMENT_LENGTH + 50);
+        assertEquals(SearchTextNormalizer.MAX_DOCUMENT_LENGTH,
+            SearchTextNormalizer.buildDocument(longNote, null).length());
+    }
+
+    @Test
+    @DisplayName("Nhận diện từ khóa là số tiền")
+    void testParseAmount() {
+        assertEquals(new BigDecimal("50000"), SearchTextNormalizer.parseAmount("50.000đ"));
+        assertEquals(new BigDecimal("50000"), SearchTextNormalizer.parseAmount("50,000 VND"));
+        assertNull(SearchTextNormalizer.parseAmount("ăn 50k"));
+        assertNull(SearchTextNormalizer.parseAmount(""));
+    }
+
+    @Test
+    @DisplayName("Số tiền có phần thập phân: dấu cuối + 1-2 chữ số là thập phân; không rõ nghĩa thì null")
+    void testParseAmount_Decimals() {
+        assertEquals(new BigDecimal("50.5"), SearchTextNormalizer.parseAmount("50.5"));
+        assertEquals(new BigDecimal("1.5"), SearchTextNormalizer.parseAmount("1,5"));
+        assertEquals(new BigDecimal("1234.56"), SearchTextNormalizer.parseAmount("1.234,56"));
+        assertEquals(new BigDecimal("1234.56"), SearchTextNormalizer.parseAmount("1,234.56"));
+        assertEquals(new BigDecimal("1000000"), SearchTextNormalizer.parseAmount("1.000.000 ₫"));
+        assertNull(SearchTextNormalizer.parseAmount("1.5000"));
+        assertNull(SearchTextNormalizer.parseAmount("1,000.500"));
+        assertNull(SearchTextNormalizer.parseAmount("1.000.50"));
+        assertNull(SearchTextNormalizer.parseAmount("50.00.000"));
+        assertNull(SearchTextNormalizer.parseAmount("50."));
+    }
+}